@@ -0,0 +1,75 @@
+package elasticsearchclient.java.files.search.benchmark;
+
+import static java.util.Arrays.asList;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.convert.MappingElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.mapping.SimpleElasticsearchMappingContext;
+
+import elasticsearchclient.Company;
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.design.Writer;
+
+/**
+ * Fixtures shared by the benchmarks, built the same way for every run so results stay comparable.
+ */
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    static Para para(int i) {
+        Para para = new Para("Spring Data Elasticsearch " + i);
+        para.setId(String.valueOf(i));
+        para.setWriters(asList(new Writer("John Smith"), new Writer("John Doe")));
+        para.setTags("elasticsearch", "spring data", "tag" + i);
+        return para;
+    }
+
+    static List<Para> paras(int count) {
+        List<Para> paras = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            paras.add(para(i));
+        }
+        return paras;
+    }
+
+    static Writer writer() {
+        return new Writer("John Smith");
+    }
+
+    static Company company() {
+        return new Company(25, "Elastic", new Date(1_262_304_000_000L));
+    }
+
+    static List<Company> companies(int count) {
+        List<Company> companies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            companies.add(new Company(i % 100, "Company " + i, new Date(1_262_304_000_000L + i)));
+        }
+        return companies;
+    }
+
+    static ElasticsearchConverter converter() {
+        SimpleElasticsearchMappingContext mappingContext = new SimpleElasticsearchMappingContext();
+        MappingElasticsearchConverter converter = new MappingElasticsearchConverter(mappingContext);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+
+    static SearchResponse parse(byte[] json) throws Exception {
+        try (XContentParser parser = XContentType.JSON.xContent()
+            .createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, json)) {
+            return SearchResponse.fromXContent(parser);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package elasticsearchclient.java.files.search.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+
+import com.elastico.java.files.search.StubElasticsearchServer;
+
+import elasticsearchclient.java.files.search.config.ClientConnectionPool;
+import elasticsearchclient.java.files.search.config.ClientTuning;
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.service.ParaBulkIndexer;
+
+/**
+ * Documents per second through {@link ParaBulkIndexer}, {@value #DOCUMENTS} at a time, into an in-process stub that
+ * acknowledges every bulk item; one operation is one document.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkIndexingBenchmark {
+
+    private static final int DOCUMENTS = 5_000;
+    private static final String CREATED = "{\"index\":{\"_index\":\"blog\",\"_type\":\"_doc\",\"_id\":\"1\",\"_version\":1,\"result\":\"created\","
+        + "\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},\"_seq_no\":0,\"_primary_term\":1,\"status\":201}}";
+
+    private static final ParaBulkIndexer.FailureHandler FAIL = new ParaBulkIndexer.FailureHandler() {
+
+        public void onItemFailure(BulkItemResponse.Failure failure) {
+            throw new IllegalStateException(failure.getMessage());
+        }
+
+        public void onBulkFailure(BulkRequest request, Throwable cause) {
+            throw new IllegalStateException(cause);
+        }
+    };
+
+    @Param({ "500", "1000" })
+    public int bulkActions;
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private ElasticsearchRestTemplate template;
+    private List<Para> paras;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        paras = BenchmarkData.paras(DOCUMENTS);
+        server = new StubElasticsearchServer().on("/_bulk", request -> {
+            int items = 0;
+            for (byte b : request.getBody()) {
+                if (b == '\n') {
+                    items++;
+                }
+            }
+            StringBuilder response = new StringBuilder("{\"took\":1,\"errors\":false,\"items\":[");
+            for (int i = 0; i < items / 2; i++) {
+                response.append(i == 0 ? "" : ",")
+                    .append(CREATED);
+            }
+            return StubElasticsearchServer.StubResponse.ok(response.append("]}")
+                .toString());
+        });
+        client = new RestHighLevelClient(new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(server.hostAndPort())).restClientBuilder());
+        template = new ElasticsearchRestTemplate(client);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCUMENTS)
+    public long bulkIndex() throws InterruptedException {
+        ParaBulkIndexer indexer = new ParaBulkIndexer(client, template, ParaBulkIndexer.Settings.defaults()
+            .bulkActions(bulkActions)
+            .flushInterval(null)
+            .concurrentRequests(4), FAIL);
+        indexer.indexAll(paras);
+        if (!indexer.awaitClose(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("bulks still running after 30s");
+        }
+        return indexer.getIndexedCount();
+    }
+}
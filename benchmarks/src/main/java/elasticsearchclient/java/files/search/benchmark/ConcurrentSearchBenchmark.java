@@ -0,0 +1,119 @@
+package elasticsearchclient.java.files.search.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.elastico.java.files.search.CannedResponses;
+import com.elastico.java.files.search.StubElasticsearchServer;
+
+import elasticsearchclient.java.files.search.config.ClientConnectionPool;
+import elasticsearchclient.java.files.search.config.ClientTuning;
+import elasticsearchclient.java.files.search.service.BlockingCallExecutor;
+
+/**
+ * {@code concurrency} blocking searches submitted at once to a {@link BlockingCallExecutor}, each answered by an
+ * in-process stub after a fixed {@value #LATENCY_MILLIS} ms, and waited for together: one operation is one such wave.
+ * With a thread per search, a wave takes about the latency however many searches it holds, until threads or
+ * connections run out. The {@code peakLiveThreads} counter sums the peak number of live threads of every wave; divided
+ * by {@code waves} it is the peak of a wave.
+ * <p>
+ * {@code VIRTUAL} needs Java 21 and fails its setup on older JVMs; run {@code -p mode=PLATFORM} there. Client and
+ * stub sockets come from the same process, so connections are capped at {@value #MAX_CONNECTIONS} to stay within a
+ * 20000 file descriptor limit; above that, searches also wait for a connection in the client's pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentSearchBenchmark {
+
+    private static final long LATENCY_MILLIS = 50;
+    private static final int MAX_CONNECTIONS = 8000;
+
+    @Param({ "100", "1000", "10000" })
+    public int concurrency;
+
+    @Param({ "PLATFORM", "VIRTUAL" })
+    public BlockingCallExecutor.Mode mode;
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private BlockingCallExecutor executor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        int connections = Math.min(concurrency, MAX_CONNECTIONS);
+        executor = new BlockingCallExecutor(BlockingCallExecutor.Options.defaults()
+            .mode(mode)
+            .platformThreads(concurrency));
+        // the JDK server closes connections beyond 200 idle ones, which would make clients reconnect every wave
+        System.setProperty("sun.net.httpserver.maxIdleConnections", String.valueOf(connections));
+        String response = CannedResponses.searchResponse(BenchmarkData.paras(1));
+        server = new StubElasticsearchServer(8).latency(LATENCY_MILLIS)
+            .on("/blog/_search", request -> StubElasticsearchServer.StubResponse.ok(response));
+        client = new RestHighLevelClient(new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(server.hostAndPort())
+            .maxConnTotal(connections)
+            .maxConnPerRoute(connections)
+            .connectTimeoutMillis(10_000)
+            .socketTimeoutMillis(60_000)
+            .connectionRequestTimeoutMillis(60_000)).restClientBuilder());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        executor.close();
+        client.close();
+        server.close();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class WaveCounters {
+        public long waves;
+        public long peakLiveThreads;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            waves = 0;
+            peakLiveThreads = 0;
+        }
+    }
+
+    @Benchmark
+    public int searches(WaveCounters counters) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        CompletableFuture<?>[] searches = new CompletableFuture<?>[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            searches[i] = executor.submit(() -> client.search(new SearchRequest("blog"), RequestOptions.DEFAULT));
+        }
+        CompletableFuture.allOf(searches)
+            .join();
+        counters.waves++;
+        counters.peakLiveThreads += threads.getPeakThreadCount();
+        return searches.length;
+    }
+}
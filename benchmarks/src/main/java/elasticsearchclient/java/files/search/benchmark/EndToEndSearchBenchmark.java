@@ -0,0 +1,93 @@
+package elasticsearchclient.java.files.search.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.client.RestHighLevelClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.SearchHits;
+
+import com.elastico.java.files.search.CannedResponses;
+import com.elastico.java.files.search.StubElasticsearchServer;
+
+import elasticsearchclient.java.files.search.config.ClientConnectionPool;
+import elasticsearchclient.java.files.search.config.ClientTuning;
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.design.ParaTitle;
+import elasticsearchclient.java.files.search.service.AsyncParaSearchService;
+import elasticsearchclient.java.files.search.service.ProjectionSearchService;
+import elasticsearchclient.java.files.search.service.SearchRequests;
+
+/**
+ * Whole search round trips, request building to mapped hits, against an in-process stub server so the numbers
+ * measure the client rather than a cluster.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class EndToEndSearchBenchmark {
+
+    @Param({ "10", "100" })
+    public int hits;
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private ElasticsearchRestTemplate template;
+    private AsyncParaSearchService asyncService;
+    private ProjectionSearchService projectionService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        List<Para> paras = BenchmarkData.paras(hits);
+        String full = CannedResponses.searchResponse(paras);
+        String projected = CannedResponses.projectedResponse(paras, true, false);
+        server = new StubElasticsearchServer().on("/blog/_search", request -> StubElasticsearchServer.StubResponse.ok(request.getBodyAsString()
+            .contains("\"includes\"") ? projected : full));
+        client = new RestHighLevelClient(new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(server.hostAndPort())).restClientBuilder());
+        template = new ElasticsearchRestTemplate(client);
+        asyncService = new AsyncParaSearchService(client, template);
+        projectionService = new ProjectionSearchService(client, template);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public SearchHits<Para> templateSearch() {
+        return template.search(SearchRequests.byFilteredTag("elasticsearch", PageRequest.of(0, hits)), Para.class);
+    }
+
+    @Benchmark
+    public SearchHits<Para> asyncSearch() {
+        return asyncService.findByFilteredTagQuery("elasticsearch", PageRequest.of(0, hits))
+            .join();
+    }
+
+    @Benchmark
+    public SearchHits<ParaTitle> projectedSearch() {
+        return projectionService.findByFilteredTagQuery("elasticsearch", PageRequest.of(0, hits), ParaTitle.class);
+    }
+}
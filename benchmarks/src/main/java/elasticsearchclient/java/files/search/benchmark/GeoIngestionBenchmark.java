@@ -0,0 +1,198 @@
+package elasticsearchclient.java.files.search.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.client.RestHighLevelClient;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.elastico.java.files.search.StubElasticsearchServer;
+
+import elasticsearchclient.java.files.search.config.ClientConnectionPool;
+import elasticsearchclient.java.files.search.config.ClientTuning;
+import elasticsearchclient.java.files.search.service.GeoIngestionPipeline;
+import elasticsearchclient.java.files.search.service.GeoJsonStreamReader;
+
+/**
+ * Ingesting {@code FEATURES} detailed polygons through {@link GeoIngestionPipeline}, and intersecting the shapes it
+ * would index with query boxes, by simplification tolerance; a tolerance of {@code 0} is the unsimplified baseline.
+ * <p>
+ * {@code ingest} covers parsing, repair, simplification, source building and the bulks to a stub that only counts
+ * items, so the size of the shapes shows up as serialization and transfer cost. {@code intersect} stands in for
+ * {@code geo_shape} query latency: the cluster's relation checks scale with vertex count the same way the local ones
+ * do. The vertices kept out of those read and the bulk bytes sent are reported next to the times as the counters of
+ * {@link #ingest}, summed over its runs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeoIngestionBenchmark {
+
+    private static final int FEATURES = 400;
+    private static final int VERTICES = 2_000;
+    private static final int QUERIES = 200;
+
+    @Param({ "0", "0.0005", "0.005" })
+    public double tolerance;
+
+    private byte[] geoJson;
+    private List<Geometry> shapes;
+    private List<Geometry> queries;
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private long bulkBytes;
+    private long keptVertices;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Random random = new Random(42);
+        StringBuilder collection = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = 0; i < FEATURES; i++) {
+            collection.append(i == 0 ? "" : ",")
+                .append(feature(i, -170 + random.nextDouble() * 340, -70 + random.nextDouble() * 140, 0.5 + random.nextDouble() * 2));
+        }
+        geoJson = collection.append("]}")
+            .toString()
+            .getBytes(StandardCharsets.UTF_8);
+
+        GeometryFactory factory = new GeometryFactory();
+        shapes = new ArrayList<>(FEATURES);
+        try (GeoIngestionPipeline pipeline = new GeoIngestionPipeline(null, GeoIngestionPipeline.Options.defaults()
+            .tolerance(tolerance))) {
+            new GeoJsonStreamReader(factory).read(new ByteArrayInputStream(geoJson), feature -> shapes.add(pipeline.prepare(feature
+                .getGeometry())), rejected -> {
+                    throw rejected;
+                });
+        }
+        keptVertices = shapes.stream()
+            .mapToLong(Geometry::getNumPoints)
+            .sum();
+        queries = new ArrayList<>(QUERIES);
+        for (int i = 0; i < QUERIES; i++) {
+            double x = -175 + random.nextDouble() * 350;
+            double y = -75 + random.nextDouble() * 150;
+            queries.add(factory.toGeometry(new Envelope(x, x + 3, y, y + 3)));
+        }
+
+        server = new StubElasticsearchServer(16).on("/_bulk", request -> {
+            byte[] body = request.getBody();
+            synchronized (this) {
+                bulkBytes += body.length;
+            }
+            return StubElasticsearchServer.StubResponse.ok(bulkResponse(request.getBodyAsString()));
+        });
+        client = new RestHighLevelClient(new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(server.hostAndPort())).restClientBuilder());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class IngestCounters {
+        public long readVertices;
+        public long keptVertices;
+        public long bulkBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            readVertices = 0;
+            keptVertices = 0;
+            bulkBytes = 0;
+        }
+    }
+
+    @Benchmark
+    public long ingest(IngestCounters counters) throws Exception {
+        long sentBefore = sentBulkBytes();
+        try (GeoIngestionPipeline pipeline = new GeoIngestionPipeline(client, GeoIngestionPipeline.Options.defaults()
+            .tolerance(tolerance))) {
+            pipeline.ingest(new ByteArrayInputStream(geoJson));
+            if (!pipeline.awaitClose(1, TimeUnit.MINUTES) || pipeline.getIndexedCount() != FEATURES) {
+                throw new IllegalStateException("Indexed " + pipeline.getIndexedCount() + " of " + FEATURES + " features");
+            }
+            counters.readVertices += (long) FEATURES * (VERTICES + 1);
+            counters.keptVertices += keptVertices;
+            counters.bulkBytes += sentBulkBytes() - sentBefore;
+            return pipeline.getIndexedCount();
+        }
+    }
+
+    private synchronized long sentBulkBytes() {
+        return bulkBytes;
+    }
+
+    @Benchmark
+    public long intersect() {
+        long hits = 0;
+        for (Geometry query : queries) {
+            for (Geometry shape : shapes) {
+                if (shape.intersects(query)) {
+                    hits++;
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * A closed polygon of {@code VERTICES} points around a circle with a jagged outline, like a digitized coast.
+     */
+    private static String feature(int id, double x, double y, double radius) {
+        StringBuilder ring = new StringBuilder();
+        for (int i = 0; i <= VERTICES; i++) {
+            double angle = 2 * Math.PI * (i % VERTICES) / VERTICES;
+            double r = radius * (1 + 0.05 * Math.sin((i % VERTICES) * 0.37) + 0.002 * Math.sin((i % VERTICES) * 7.3));
+            ring.append(i == 0 ? "" : ",")
+                .append('[')
+                .append(x + r * Math.cos(angle))
+                .append(',')
+                .append(y + r * Math.sin(angle))
+                .append(']');
+        }
+        return "{\"type\":\"Feature\",\"id\":\"" + id + "\",\"properties\":{\"name\":\"Wonder " + id
+            + "\"},\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[" + ring + "]]}}";
+    }
+
+    private static String bulkResponse(String body) {
+        StringBuilder items = new StringBuilder();
+        int actions = 0;
+        for (String line : body.split("\n")) {
+            if (!line.isEmpty() && actions++ % 2 == 0) {
+                items.append(items.length() == 0 ? "" : ",")
+                    .append("{\"index\":{\"_index\":\"wonders-of-world\",\"_type\":\"_doc\",\"_id\":\"")
+                    .append(actions)
+                    .append("\",\"_version\":1,\"result\":\"created\",\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},"
+                        + "\"_seq_no\":0,\"_primary_term\":1,\"status\":201}}");
+            }
+        }
+        return "{\"took\":1,\"errors\":false,\"items\":[" + items + "]}";
+    }
+}
@@ -0,0 +1,153 @@
+package elasticsearchclient.java.files.search.benchmark;
+
+import static org.elasticsearch.index.query.QueryBuilders.geoDistanceQuery;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.DistanceUnit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.elastico.java.files.search.StubElasticsearchServer;
+
+import elasticsearchclient.java.files.search.config.ClientConnectionPool;
+import elasticsearchclient.java.files.search.config.ClientTuning;
+import elasticsearchclient.java.files.search.service.GeoShapeCache;
+
+/**
+ * "What's near me" lookups over {@code points} random points: answered by {@link GeoShapeCache}, and as a
+ * {@code geo_distance} search round trip to an in-process stub that returns ten canned hits, which is the floor of
+ * what the same lookup costs against a cluster.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeoLookupBenchmark {
+
+    private static final int CENTRES = 1024;
+
+    @Param({ "1000", "100000" })
+    public int points;
+
+    private double[] lats;
+    private double[] lons;
+    private int next;
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private GeoShapeCache cache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Random random = new Random(42);
+        double[] pointLats = new double[points];
+        double[] pointLons = new double[points];
+        StringBuilder hits = new StringBuilder();
+        for (int i = 0; i < points; i++) {
+            pointLats[i] = -60 + random.nextDouble() * 130;
+            pointLons[i] = -180 + random.nextDouble() * 360;
+            hits.append(i == 0 ? "" : ",")
+                .append("{\"_index\":\"wonders-of-world\",\"_type\":\"_doc\",\"_id\":\"")
+                .append(i)
+                .append("\",\"_version\":1,\"_score\":null,\"sort\":[0]}");
+        }
+        String shards = "\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0}";
+        String page = "{\"_scroll_id\":\"scroll\"," + shards + ",\"hits\":{\"total\":{\"value\":" + points
+            + ",\"relation\":\"eq\"},\"max_score\":null,\"hits\":[" + hits + "]}}";
+        String nearby = "{" + shards + ",\"hits\":{\"total\":{\"value\":10,\"relation\":\"eq\"},\"max_score\":1.0,\"hits\":["
+            + hits.substring(0, hits.indexOf("{", hits.indexOf("\"9\"")) - 1)
+                .replace("\"_score\":null,\"sort\":[0]", "\"_score\":1.0,\"_source\":{\"name\":\"Wonder\",\"location\":[31.13,29.97]}")
+            + "]}}";
+
+        server = new StubElasticsearchServer(8).on("/wonders-of-world/_search", request -> StubElasticsearchServer.StubResponse.ok(request
+            .getBodyAsString()
+            .contains("geo_distance") ? nearby : page))
+            .on("/_search/scroll", request -> StubElasticsearchServer.StubResponse.ok("DELETE".equals(request.getMethod())
+                ? "{\"succeeded\":true,\"num_freed\":1}"
+                : "{\"_scroll_id\":\"scroll\"," + shards + ",\"hits\":{\"total\":{\"value\":0,\"relation\":\"eq\"},\"hits\":[]}}"))
+            .on("/_mget", request -> {
+                StringBuilder docs = new StringBuilder("{\"docs\":[");
+                List<Object> items = JSON.parseObject(request.getBodyAsString())
+                    .getJSONArray("docs");
+                for (int i = 0; i < items.size(); i++) {
+                    int id = Integer.parseInt(((JSONObject) items.get(i)).getString("_id"));
+                    docs.append(i == 0 ? "" : ",")
+                        .append("{\"_index\":\"wonders-of-world\",\"_type\":\"_doc\",\"_id\":\"")
+                        .append(id)
+                        .append("\",\"_version\":1,\"_seq_no\":0,\"_primary_term\":1,\"found\":true,\"_source\":{\"location\":[")
+                        .append(pointLons[id])
+                        .append(',')
+                        .append(pointLats[id])
+                        .append("]}}");
+                }
+                return StubElasticsearchServer.StubResponse.ok(docs.append("]}")
+                    .toString());
+            });
+        client = new RestHighLevelClient(new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(server.hostAndPort())).restClientBuilder());
+        cache = new GeoShapeCache(client, GeoShapeCache.Options.defaults()
+            .refreshIntervalMillis(0)
+            .pageSize(points));
+        if (!cache.awaitLoaded(1, TimeUnit.MINUTES) || cache.size() != points) {
+            throw new IllegalStateException("Loaded " + cache.size() + " of " + points + " points");
+        }
+
+        lats = new double[CENTRES];
+        lons = new double[CENTRES];
+        for (int i = 0; i < CENTRES; i++) {
+            lats[i] = -60 + random.nextDouble() * 130;
+            lons[i] = -180 + random.nextDouble() * 360;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        cache.close();
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public int cachedWithinDistance() {
+        int centre = next++ & (CENTRES - 1);
+        return cache.withinDistance(lats[centre], lons[centre], 200_000)
+            .size();
+    }
+
+    @Benchmark
+    public int cachedBoundingBox() {
+        int centre = next++ & (CENTRES - 1);
+        return cache.boundingBox(lats[centre] + 2, lons[centre] - 2, lats[centre] - 2, lons[centre] + 2)
+            .size();
+    }
+
+    @Benchmark
+    public SearchResponse remoteWithinDistance() throws Exception {
+        int centre = next++ & (CENTRES - 1);
+        return client.search(new SearchRequest("wonders-of-world").source(new SearchSourceBuilder().query(geoDistanceQuery("location")
+            .point(lats[centre], lons[centre])
+            .distance(200, DistanceUnit.KILOMETERS))), RequestOptions.DEFAULT);
+    }
+}
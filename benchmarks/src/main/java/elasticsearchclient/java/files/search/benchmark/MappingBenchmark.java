@@ -0,0 +1,81 @@
+package elasticsearchclient.java.files.search.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
+
+import com.alibaba.fastjson.JSON;
+
+/**
+ * Entity to JSON and back, Spring Data's mapping converter against fastjson as used by {@code EsTest}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MappingBenchmark {
+
+    @Param({ "Para", "Writer", "Company" })
+    public String entity;
+
+    private ElasticsearchConverter converter;
+    private Object value;
+    private Class<?> type;
+    private String springJson;
+    private String fastjsonJson;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        converter = BenchmarkData.converter();
+        switch (entity) {
+        case "Para":
+            value = BenchmarkData.para(1);
+            break;
+        case "Writer":
+            value = BenchmarkData.writer();
+            break;
+        default:
+            value = BenchmarkData.company();
+        }
+        type = value.getClass();
+        springJson = converter.mapObject(value)
+            .toJson();
+        fastjsonJson = JSON.toJSONString(value);
+    }
+
+    @Benchmark
+    public String springWrite() {
+        return converter.mapObject(value)
+            .toJson();
+    }
+
+    @Benchmark
+    public Object springRead() {
+        return converter.read(type, Document.parse(springJson));
+    }
+
+    @Benchmark
+    public String fastjsonWrite() {
+        return JSON.toJSONString(value);
+    }
+
+    @Benchmark
+    public Object fastjsonRead() {
+        return JSON.parseObject(fastjsonJson, type);
+    }
+}
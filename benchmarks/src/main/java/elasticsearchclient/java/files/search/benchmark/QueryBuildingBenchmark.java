@@ -0,0 +1,71 @@
+package elasticsearchclient.java.files.search.benchmark;
+
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.common.Strings;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import elasticsearchclient.java.files.search.service.SearchRequests;
+
+/**
+ * Building the {@code ParaRepository} queries and turning them into the request body that goes on the wire.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBuildingBenchmark {
+
+    private final IndexCoordinates index = IndexCoordinates.of("blog");
+    private NativeSearchQuery query;
+    private SearchRequest request;
+
+    @Setup
+    public void setUp() {
+        query = buildQuery();
+        request = SearchRequests.searchRequest(query, index);
+    }
+
+    @Benchmark
+    public NativeSearchQuery buildQuery() {
+        return new NativeSearchQueryBuilder().withQuery(boolQuery().must(matchQuery("writers.name", "John Smith"))
+            .filter(termQuery("tags", "elasticsearch")))
+            .withPageable(PageRequest.of(0, 10))
+            .build();
+    }
+
+    @Benchmark
+    public NativeSearchQuery buildQueryWithHelper() {
+        return SearchRequests.byWritersNameAndFilteredTag("John Smith", "elasticsearch", PageRequest.of(0, 10));
+    }
+
+    @Benchmark
+    public SearchRequest translate() {
+        return SearchRequests.searchRequest(query, index);
+    }
+
+    @Benchmark
+    public String serializeSource() {
+        return Strings.toString(request.source());
+    }
+}
@@ -0,0 +1,123 @@
+package elasticsearchclient.java.files.search.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.search.SearchHit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.elasticsearch.core.SearchHits;
+
+import com.alibaba.fastjson.JSON;
+import com.elastico.java.files.search.CannedResponses;
+
+import elasticsearchclient.Company;
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.design.ParaTitle;
+import elasticsearchclient.java.files.search.service.Projection;
+import elasticsearchclient.java.files.search.service.ProjectionSearchService;
+import elasticsearchclient.java.files.search.service.SearchHitsMapper;
+import elasticsearchclient.java.files.search.service.StreamingHitReader;
+
+/**
+ * Parsing a canned search response and mapping its hits, per page of {@code hits}.
+ * <p>
+ * Run with {@code -prof gc} to see the allocation per operation next to the time; {@code parseAndMapWithFastjson} against
+ * {@code streamAndMap} compares re-parsing every {@code _source} string with the single streaming pass, and
+ * {@code parseAndMap} against {@code parseAndMapProjection} what a {@code ParaTitle} page saves over full entities. The
+ * {@code Companies} pair compares the same two routes for the flat {@code Company} documents {@code EsTest} reads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchResponseParsingBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int hits;
+
+    private byte[] fullResponse;
+    private byte[] projectedResponse;
+    private byte[] companyResponse;
+    private SearchHitsMapper mapper;
+    private Projection<ParaTitle> projection;
+    private StreamingHitReader streamingReader;
+
+    @Setup
+    public void setUp() {
+        List<Para> paras = BenchmarkData.paras(hits);
+        fullResponse = CannedResponses.searchResponse(paras)
+            .getBytes(StandardCharsets.UTF_8);
+        projectedResponse = CannedResponses.projectedResponse(paras, true, false)
+            .getBytes(StandardCharsets.UTF_8);
+        companyResponse = CannedResponses.companySearchResponse(BenchmarkData.companies(hits))
+            .getBytes(StandardCharsets.UTF_8);
+        mapper = new SearchHitsMapper(BenchmarkData.converter());
+        projection = Projection.of(ParaTitle.class);
+        // the client is never used by read()
+        streamingReader = new StreamingHitReader((RestClient) null);
+    }
+
+    @Benchmark
+    public SearchResponse parse() throws Exception {
+        return BenchmarkData.parse(fullResponse);
+    }
+
+    @Benchmark
+    public SearchHits<Para> parseAndMap() throws Exception {
+        return mapper.mapHits(BenchmarkData.parse(fullResponse), Para.class);
+    }
+
+    @Benchmark
+    public List<Para> parseAndMapWithFastjson() throws Exception {
+        SearchResponse response = BenchmarkData.parse(fullResponse);
+        List<Para> paras = new ArrayList<>(hits);
+        for (SearchHit hit : response.getHits()
+            .getHits()) {
+            paras.add(JSON.parseObject(hit.getSourceAsString(), Para.class));
+        }
+        return paras;
+    }
+
+    @Benchmark
+    public SearchHits<ParaTitle> parseAndMapProjection() throws Exception {
+        return ProjectionSearchService.mapHits(BenchmarkData.parse(projectedResponse), projection);
+    }
+
+    @Benchmark
+    public SearchHits<Para> streamAndMap() throws Exception {
+        return streamingReader.read(new ByteArrayInputStream(fullResponse), Para.class);
+    }
+
+    @Benchmark
+    public List<Company> parseAndMapCompaniesWithFastjson() throws Exception {
+        SearchResponse response = BenchmarkData.parse(companyResponse);
+        List<Company> companies = new ArrayList<>(hits);
+        for (SearchHit hit : response.getHits()
+            .getHits()) {
+            companies.add(JSON.parseObject(hit.getSourceAsString(), Company.class));
+        }
+        return companies;
+    }
+
+    @Benchmark
+    public SearchHits<Company> streamAndMapCompanies() throws Exception {
+        return streamingReader.read(new ByteArrayInputStream(companyResponse), Company.class);
+    }
+}
@@ -0,0 +1,101 @@
+package elasticsearchclient.java.files.search.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.elasticsearch.client.RestHighLevelClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+
+import com.alibaba.fastjson.JSON;
+import com.elastico.java.files.search.CannedResponses;
+import com.elastico.java.files.search.StubElasticsearchServer;
+
+import elasticsearchclient.java.files.search.config.ClientConnectionPool;
+import elasticsearchclient.java.files.search.config.ClientTuning;
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.service.SlicedIndexReader;
+import elasticsearchclient.java.files.search.service.SlicedIndexReader.Options;
+
+/**
+ * Time to read a whole index of {@code DOCUMENTS} documents through {@link SlicedIndexReader}, by slice count.
+ * <p>
+ * The stub spends {@code shardMillis} on every page, standing in for the shard-side work of a real scroll, so the
+ * speed-up from reading slices concurrently shows up as it would against a cluster with that many shards.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SlicedReadBenchmark {
+
+    private static final int DOCUMENTS = 8_000;
+    private static final int PAGE_SIZE = 250;
+
+    @Param({ "1", "2", "4", "8" })
+    public int slices;
+
+    @Param({ "20" })
+    public int shardMillis;
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private SlicedIndexReader reader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        String fullPage = CannedResponses.pageResponse(BenchmarkData.paras(PAGE_SIZE), "%s");
+        int pagesPerSlice = DOCUMENTS / slices / PAGE_SIZE;
+        server = new StubElasticsearchServer(64).on("/blog/_search", request -> page(fullPage, pagesPerSlice - 1))
+            .on("/_search/scroll", request -> {
+                if ("DELETE".equals(request.getMethod())) {
+                    return StubElasticsearchServer.StubResponse.ok("{\"succeeded\":true,\"num_freed\":1}");
+                }
+                int remaining = Integer.parseInt(JSON.parseObject(request.getBodyAsString())
+                    .getString("scroll_id"));
+                return remaining == 0 ? page(CannedResponses.pageResponse(BenchmarkData.paras(0), "%s"), 0) : page(fullPage, remaining - 1);
+            });
+        client = new RestHighLevelClient(new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(server.hostAndPort())).restClientBuilder());
+        reader = new SlicedIndexReader(client, new ElasticsearchRestTemplate(client));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public long readIndex() {
+        LongAdder titles = new LongAdder();
+        long read = reader.read(Para.class, Options.defaults()
+            .slices(slices)
+            .parallelism(slices)
+            .pageSize(PAGE_SIZE), para -> titles.add(para.getTitle()
+                .length()));
+        if (read != DOCUMENTS) {
+            throw new IllegalStateException("Read " + read + " of " + DOCUMENTS + " documents");
+        }
+        return titles.sum();
+    }
+
+    private StubElasticsearchServer.StubResponse page(String template, int remaining) throws InterruptedException {
+        Thread.sleep(shardMillis);
+        return StubElasticsearchServer.StubResponse.ok(template.replace("\"%s\"", "\"" + remaining + "\""));
+    }
+}
@@ -0,0 +1,82 @@
+package elasticsearchclient.java.files.search.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.data.domain.PageRequest;
+
+import com.elastico.java.files.search.CannedResponses;
+import com.elastico.java.files.search.StubElasticsearchServer;
+
+import elasticsearchclient.java.files.search.config.AotConfigurations;
+import elasticsearchclient.java.files.search.config.Configurations;
+import elasticsearchclient.java.files.search.repository.ParaRepository;
+
+/**
+ * What a short-lived job pays before its first result: starting the Spring context, getting {@link ParaRepository}
+ * and running one {@code findByWritersName} against an in-process stub, in a fresh JVM each time.
+ * <p>
+ * {@code SPRING_DATA} starts {@link Configurations}, which scans for repositories, builds the repository proxy and
+ * reads the entity mapping on first use; {@code GENERATED} starts {@link AotConfigurations} and the repository and
+ * mappers generated at build time. {@link Configurations} also defines the services the generated mode leaves out, so
+ * the difference is what a job that only needs the repository saves.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    public enum StartupMode {
+        SPRING_DATA(Configurations.class), GENERATED(AotConfigurations.class);
+
+        private final Class<?> configuration;
+
+        StartupMode(Class<?> configuration) {
+            this.configuration = configuration;
+        }
+    }
+
+    @Param({ "SPRING_DATA", "GENERATED" })
+    public StartupMode mode;
+
+    private StubElasticsearchServer server;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        String response = CannedResponses.searchResponse(BenchmarkData.paras(10));
+        // Spring Data checks that the index exists when it creates the repository
+        server = new StubElasticsearchServer().on("/blog", request -> StubElasticsearchServer.StubResponse.ok("{}"))
+            .on("/blog/_search", request -> StubElasticsearchServer.StubResponse.ok(response));
+        System.setProperty("elasticsearch.client.hosts", server.hostAndPort());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Benchmark
+    public long firstSearch() {
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(mode.configuration)) {
+            return context.getBean(ParaRepository.class)
+                .findByWritersName("John Smith", PageRequest.of(0, 10))
+                .getTotalElements();
+        }
+    }
+}
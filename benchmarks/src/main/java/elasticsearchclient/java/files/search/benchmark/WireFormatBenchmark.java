@@ -0,0 +1,124 @@
+package elasticsearchclient.java.files.search.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.service.SourceCodec;
+
+/**
+ * Encoding and decoding {@code BATCH} {@link Para} sources through {@link SourceCodec}, per wire format and with or
+ * without the gzip the client applies with compression on.
+ * <p>
+ * The bytes each combination puts on the wire are reported next to the times as the {@code wireBytes} and
+ * {@code batches} counters of {@link #encode}; their ratio is the size of one batch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WireFormatBenchmark {
+
+    private static final int BATCH = 1000;
+
+    @Param({ "JSON", "SMILE", "CBOR" })
+    public XContentType format;
+
+    @Param({ "false", "true" })
+    public boolean gzip;
+
+    private SourceCodec codec;
+    private List<Para> paras;
+    private int[] lengths;
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        codec = new SourceCodec(BenchmarkData.converter(), format);
+        paras = BenchmarkData.paras(BATCH);
+        lengths = new int[BATCH];
+        payload = encodeBatch();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class WireBytes {
+        public long wireBytes;
+        public long batches;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            wireBytes = 0;
+            batches = 0;
+        }
+    }
+
+    @Benchmark
+    public byte[] encode(WireBytes counters) throws IOException {
+        byte[] encoded = encodeBatch();
+        counters.wireBytes += encoded.length;
+        counters.batches++;
+        return encoded;
+    }
+
+    private byte[] encodeBatch() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = gzip ? new GZIPOutputStream(bytes) : bytes) {
+            for (int i = 0; i < BATCH; i++) {
+                BytesReference source = codec.write(paras.get(i));
+                lengths[i] = source.length();
+                source.writeTo(out);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) throws IOException {
+        byte[] raw = gzip ? gunzip(payload) : payload;
+        int offset = 0;
+        for (int i = 0; i < BATCH; i++) {
+            blackhole.consume(codec.read(Para.class, new BytesArray(raw, offset, lengths[i])));
+            offset += lengths[i];
+        }
+    }
+
+    private static byte[] gunzip(byte[] gzipped) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(gzipped.length * 4);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -2,6 +2,9 @@ package elasticsearchclient;
 
 import java.util.Date;
 
+import elasticsearchclient.java.files.search.aot.GenerateMapper;
+
+@GenerateMapper
 public class Company {
 
     private int age;
@@ -0,0 +1,31 @@
+package elasticsearchclient.java.files.search.aot;
+
+import java.util.Map;
+
+/**
+ * Converts one entity type to and from its document source with plain getter and setter calls, generated at build
+ * time for types marked with {@link GenerateMapper} or used by a {@link GenerateRepository} repository.
+ * <p>
+ * Sources are the ones Spring Data's {@code MappingElasticsearchConverter} writes: the entity's class under
+ * {@code _class}, then its non-null properties in declaration order, with dates as epoch milliseconds and enums by
+ * name. Reading is as lenient as the converter about numbers sent as strings and single values where an array or
+ * collection is declared.
+ */
+public interface EntityMapper<T> {
+
+    Class<T> getType();
+
+    Map<String, Object> write(T entity);
+
+    T read(Map<String, Object> source);
+
+    /**
+     * The id property as a string, or {@code null} when the entity has none or it is not set.
+     */
+    String getId(T entity);
+
+    /**
+     * Sets the id property, if the entity has one, from the document id.
+     */
+    void setId(T entity, String id);
+}
@@ -0,0 +1,21 @@
+package elasticsearchclient.java.files.search.aot;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Asks the build for an {@link EntityMapper} of the annotated entity, named after it with a {@code Mapper} suffix in
+ * the same package, and of the types nested in it. Entities of a {@link GenerateRepository} repository get one without
+ * being annotated.
+ * <p>
+ * Every non-static, non-transient field without Spring Data's {@code @Transient} is mapped, under its
+ * {@code @Field(name)} when it has one, through a public getter and setter; the entity needs a public no-argument
+ * constructor. Supported property types are strings, primitives and their wrappers, {@link java.util.Date}, enums,
+ * other mapped entities, and arrays and collections of those.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateMapper {
+}
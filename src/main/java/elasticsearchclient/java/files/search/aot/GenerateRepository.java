@@ -0,0 +1,20 @@
+package elasticsearchclient.java.files.search.aot;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Asks the build for a concrete implementation of an {@code ElasticsearchRepository} interface, named after it with a
+ * {@code Generated} prefix, and for {@link GenerateMapper mappers} of its entity and the types nested in it.
+ * <p>
+ * {@code @Query} methods become compiled {@code QueryTemplate}s and derived {@code findBy...} methods are resolved
+ * against the entity's properties by the compiler, so a query method the generator cannot implement fails the build.
+ * Derived methods may only combine properties with {@code And}, each matched as Spring Data matches equality; anything
+ * else needs a {@code @Query}.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateRepository {
+}
@@ -0,0 +1,377 @@
+package elasticsearchclient.java.files.search.aot;
+
+import static org.elasticsearch.index.query.QueryBuilders.idsQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.moreLikeThisQuery;
+import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.lucene.queryparser.flexible.standard.QueryParserUtil;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.index.query.MoreLikeThisQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.reindex.DeleteByQueryRequest;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.CriteriaQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.Query;
+import org.springframework.data.elasticsearch.core.query.StringQuery;
+import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
+
+import elasticsearchclient.java.files.search.service.SearchRequests;
+
+/**
+ * Base of the repositories generated for {@link GenerateRepository} interfaces: the {@link ElasticsearchRepository}
+ * methods, sent through the client and mapped by the entity's generated {@link EntityMapper}, with no mapping context,
+ * converter or proxy behind them.
+ * <p>
+ * Requests are the ones {@code SimpleElasticsearchRepository} sends: saves and deletes refresh the index, and
+ * {@code findAll()} and {@code search(QueryBuilder)} count the documents first to fetch them all in one page. Unlike
+ * it, the repository does not create the index and its mapping; that is left to {@code IndexMigrationService}.
+ * Native, string and criteria queries are supported; criteria with geo conditions are rejected.
+ */
+public abstract class GeneratedRepositorySupport<T, ID> implements ElasticsearchRepository<T, ID> {
+
+    protected final RestHighLevelClient client;
+    protected final EntityMapper<T> mapper;
+    protected final IndexCoordinates index;
+
+    protected GeneratedRepositorySupport(RestHighLevelClient client, EntityMapper<T> mapper, String indexName) {
+        this.client = client;
+        this.mapper = mapper;
+        this.index = IndexCoordinates.of(indexName);
+    }
+
+    /**
+     * The query Spring Data derives for a property of a {@code findBy} method name matched by equality.
+     */
+    protected static QueryBuilder equalTo(String field, Object value) {
+        return queryStringQuery(QueryParserUtil.escape(String.valueOf(value))).field(field)
+            .defaultOperator(Operator.AND);
+    }
+
+    /**
+     * Runs {@code query}, a {@link NativeSearchQuery}, {@link StringQuery} or {@link CriteriaQuery}, for one page of
+     * entities.
+     */
+    protected Page<T> page(Query query) {
+        SearchResponse response = execute(searchRequest(query));
+        return new PageImpl<>(read(response), query.getPageable(), response.getHits()
+            .getTotalHits().value);
+    }
+
+    /**
+     * Runs {@code query} for all of its entities, counting them first when it is unpaged.
+     */
+    protected List<T> list(Query query) {
+        SearchRequest request = searchRequest(query);
+        if (query.getPageable()
+            .isUnpaged()) {
+            long count = count(request.source()
+                .query());
+            if (count == 0) {
+                return new ArrayList<>();
+            }
+            request.source()
+                .from(0)
+                .size((int) count);
+        }
+        return read(execute(request));
+    }
+
+    @Deprecated
+    @Override
+    public <S extends T> S indexWithoutRefresh(S entity) {
+        try {
+            String id = client.index(indexRequest(entity), RequestOptions.DEFAULT)
+                .getId();
+            mapper.setId(entity, id);
+            return entity;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <S extends T> S save(S entity) {
+        indexWithoutRefresh(entity);
+        refresh();
+        return entity;
+    }
+
+    @Override
+    public <S extends T> Iterable<S> saveAll(Iterable<S> entities) {
+        List<S> saved = new ArrayList<>();
+        BulkRequest bulk = new BulkRequest();
+        for (S entity : entities) {
+            saved.add(entity);
+            bulk.add(indexRequest(entity));
+        }
+        if (saved.isEmpty()) {
+            return saved;
+        }
+        try {
+            BulkResponse response = client.bulk(bulk, RequestOptions.DEFAULT);
+            if (response.hasFailures()) {
+                throw new IllegalStateException("Bulk indexing into " + index.getIndexName() + " failed: " + response.buildFailureMessage());
+            }
+            BulkItemResponse[] items = response.getItems();
+            for (int i = 0; i < items.length; i++) {
+                mapper.setId(saved.get(i), items[i].getId());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        refresh();
+        return saved;
+    }
+
+    @Override
+    public Optional<T> findById(ID id) {
+        try {
+            GetResponse response = client.get(new GetRequest(index.getIndexName(), id.toString()), RequestOptions.DEFAULT);
+            return response.isExists() ? Optional.of(read(response.getId(), response.getSourceAsMap())) : Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean existsById(ID id) {
+        try {
+            return client.exists(new GetRequest(index.getIndexName(), id.toString()).fetchSourceContext(FetchSourceContext.DO_NOT_FETCH_SOURCE),
+                RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Iterable<T> findAll() {
+        return search(matchAllQuery());
+    }
+
+    @Override
+    public Iterable<T> findAll(Sort sort) {
+        NativeSearchQuery query = new NativeSearchQueryBuilder().withQuery(matchAllQuery())
+            .build();
+        query.addSort(sort);
+        return list(query);
+    }
+
+    @Override
+    public Page<T> findAll(Pageable pageable) {
+        return search(matchAllQuery(), pageable);
+    }
+
+    @Override
+    public Iterable<T> findAllById(Iterable<ID> ids) {
+        MultiGetRequest request = new MultiGetRequest();
+        for (ID id : ids) {
+            request.add(index.getIndexName(), id.toString());
+        }
+        if (request.getItems()
+            .isEmpty()) {
+            return Collections.emptyList();
+        }
+        try {
+            List<T> found = new ArrayList<>();
+            for (MultiGetItemResponse item : client.mget(request, RequestOptions.DEFAULT)) {
+                if (!item.isFailed() && item.getResponse()
+                    .isExists()) {
+                    found.add(read(item.getId(), item.getResponse()
+                        .getSourceAsMap()));
+                }
+            }
+            return found;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public long count() {
+        return count(matchAllQuery());
+    }
+
+    @Override
+    public void deleteById(ID id) {
+        delete(id.toString());
+        refresh();
+    }
+
+    @Override
+    public void delete(T entity) {
+        String id = mapper.getId(entity);
+        if (id == null) {
+            throw new IllegalArgumentException("Cannot delete an entity without an id");
+        }
+        delete(id);
+        refresh();
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends T> entities) {
+        List<String> ids = new ArrayList<>();
+        for (T entity : entities) {
+            String id = mapper.getId(entity);
+            if (id == null) {
+                throw new IllegalArgumentException("Cannot delete an entity without an id");
+            }
+            ids.add(id);
+        }
+        if (!ids.isEmpty()) {
+            deleteByQuery(idsQuery().addIds(ids.toArray(new String[0])));
+        }
+    }
+
+    @Override
+    public void deleteAll() {
+        deleteByQuery(matchAllQuery());
+    }
+
+    @Deprecated
+    @Override
+    public Iterable<T> search(QueryBuilder query) {
+        return list(new NativeSearchQueryBuilder().withQuery(query)
+            .build());
+    }
+
+    @Deprecated
+    @Override
+    public Page<T> search(QueryBuilder query, Pageable pageable) {
+        return page(new NativeSearchQueryBuilder().withQuery(query)
+            .withPageable(pageable)
+            .build());
+    }
+
+    @Deprecated
+    @Override
+    public Page<T> search(Query query) {
+        return page(query);
+    }
+
+    /**
+     * A {@code more_like_this} query on {@code fields}, or on every field when there are none, liking the stored
+     * document of {@code entity}.
+     */
+    @Override
+    public Page<T> searchSimilar(T entity, String[] fields, Pageable pageable) {
+        String id = mapper.getId(entity);
+        if (id == null) {
+            throw new IllegalArgumentException("Cannot search for entities similar to one without an id");
+        }
+        MoreLikeThisQueryBuilder.Item item = new MoreLikeThisQueryBuilder.Item(index.getIndexName(), id);
+        return search(moreLikeThisQuery(fields == null || fields.length == 0 ? null : fields, null, new MoreLikeThisQueryBuilder.Item[] { item }),
+            pageable);
+    }
+
+    @Deprecated
+    @Override
+    public void refresh() {
+        try {
+            client.indices()
+                .refresh(new RefreshRequest(index.getIndexName()), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private IndexRequest indexRequest(T entity) {
+        return new IndexRequest(index.getIndexName()).id(mapper.getId(entity))
+            .source(mapper.write(entity));
+    }
+
+    private SearchRequest searchRequest(Query query) {
+        if (query instanceof NativeSearchQuery) {
+            return SearchRequests.searchRequest((NativeSearchQuery) query, index);
+        }
+        if (query instanceof StringQuery) {
+            return SearchRequests.searchRequest((StringQuery) query, index);
+        }
+        if (query instanceof CriteriaQuery) {
+            return SearchRequests.searchRequest((CriteriaQuery) query, index);
+        }
+        throw new IllegalArgumentException("Generated repositories run native, string and criteria queries, not " + query.getClass()
+            .getSimpleName());
+    }
+
+    private SearchResponse execute(SearchRequest request) {
+        try {
+            return client.search(request, RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<T> read(SearchResponse response) {
+        SearchHit[] hits = response.getHits()
+            .getHits();
+        List<T> entities = new ArrayList<>(hits.length);
+        for (SearchHit hit : hits) {
+            entities.add(read(hit.getId(), hit.getSourceAsMap()));
+        }
+        return entities;
+    }
+
+    private T read(String id, Map<String, Object> source) {
+        T entity = mapper.read(source == null ? Collections.emptyMap() : source);
+        mapper.setId(entity, id);
+        return entity;
+    }
+
+    private long count(QueryBuilder query) {
+        try {
+            return client.count(new CountRequest(index.getIndexName()).query(query == null ? matchAllQuery() : query), RequestOptions.DEFAULT)
+                .getCount();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void delete(String id) {
+        try {
+            client.delete(new DeleteRequest(index.getIndexName(), id), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void deleteByQuery(QueryBuilder query) {
+        try {
+            client.deleteByQuery(new DeleteByQueryRequest(index.getIndexName()).setQuery(query)
+                .setRefresh(true), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package elasticsearchclient.java.files.search.aot;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Conversions of values read from a document source, used by the generated {@link EntityMapper}s.
+ */
+public final class SourceValues {
+
+    private SourceValues() {
+    }
+
+    public static String asString(Object value) {
+        return value.toString();
+    }
+
+    public static int asInt(Object value) {
+        return value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString());
+    }
+
+    public static long asLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
+    }
+
+    public static short asShort(Object value) {
+        return value instanceof Number ? ((Number) value).shortValue() : Short.parseShort(value.toString());
+    }
+
+    public static byte asByte(Object value) {
+        return value instanceof Number ? ((Number) value).byteValue() : Byte.parseByte(value.toString());
+    }
+
+    public static double asDouble(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString());
+    }
+
+    public static float asFloat(Object value) {
+        return value instanceof Number ? ((Number) value).floatValue() : Float.parseFloat(value.toString());
+    }
+
+    public static boolean asBoolean(Object value) {
+        return value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean(value.toString());
+    }
+
+    public static char asChar(Object value) {
+        String string = value.toString();
+        if (string.length() != 1) {
+            throw new IllegalArgumentException("Cannot read '" + string + "' as a single character");
+        }
+        return string.charAt(0);
+    }
+
+    /**
+     * Dates are written as epoch milliseconds.
+     */
+    public static Date asDate(Object value) {
+        if (value instanceof Date) {
+            return (Date) value;
+        }
+        return new Date(asLong(value));
+    }
+
+    /**
+     * The elements of an array or collection property; a single value reads as a one element list.
+     */
+    public static List<?> asList(Object value) {
+        return value instanceof List ? (List<?>) value : Collections.singletonList(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> asMap(Object value) {
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("Cannot read " + value.getClass()
+                .getSimpleName() + " '" + value + "' as an object");
+        }
+        return (Map<String, Object>) value;
+    }
+}
@@ -0,0 +1,1000 @@
+package elasticsearchclient.java.files.search.aot.processor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates the {@code EntityMapper}s and repository implementations asked for with {@code @GenerateMapper} and
+ * {@code @GenerateRepository}, so that nothing about the entities or the query methods is worked out by reflection
+ * when the application starts.
+ * <p>
+ * Compiled ahead of the rest of the module and run on it by the compiler plugin; it only knows the annotations and the
+ * Spring Data types by name. Whatever it cannot generate, such as an unsupported property type or a derived query it
+ * does not understand, is reported as a compile error on the element concerned.
+ */
+@SupportedAnnotationTypes({ RepositoryProcessor.GENERATE_REPOSITORY, RepositoryProcessor.GENERATE_MAPPER })
+public class RepositoryProcessor extends AbstractProcessor {
+
+    static final String GENERATE_REPOSITORY = "elasticsearchclient.java.files.search.aot.GenerateRepository";
+    static final String GENERATE_MAPPER = "elasticsearchclient.java.files.search.aot.GenerateMapper";
+
+    private static final String AOT_PACKAGE = "elasticsearchclient.java.files.search.aot";
+    private static final String ELASTICSEARCH_REPOSITORY = "org.springframework.data.elasticsearch.repository.ElasticsearchRepository";
+    private static final String DOCUMENT = "org.springframework.data.elasticsearch.annotations.Document";
+    private static final String FIELD = "org.springframework.data.elasticsearch.annotations.Field";
+    private static final String QUERY = "org.springframework.data.elasticsearch.annotations.Query";
+    private static final String ID = "org.springframework.data.annotation.Id";
+    private static final String TRANSIENT = "org.springframework.data.annotation.Transient";
+    private static final String PAGE = "org.springframework.data.domain.Page";
+    private static final String PAGEABLE = "org.springframework.data.domain.Pageable";
+    private static final String SORT = "org.springframework.data.domain.Sort";
+
+    private static final Pattern DERIVED_QUERY = Pattern.compile("(find|read|get|query|search|stream)([A-Z]\\w*)?By([A-Z]\\w*)");
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\?(\\d+)");
+
+    private final Set<String> generatedMappers = new HashSet<>();
+    private Elements elements;
+    private Types types;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+        for (TypeElement annotation : annotations) {
+            for (Element element : round.getElementsAnnotatedWith(annotation)) {
+                try {
+                    if (annotation.getQualifiedName()
+                        .contentEquals(GENERATE_MAPPER)) {
+                        mapper(asClass(element));
+                    } else {
+                        repository(element);
+                    }
+                } catch (GenerationException e) {
+                    processingEnv.getMessager()
+                        .printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Thrown for anything that cannot be generated, and reported as a compile error on {@code element}.
+     */
+    private static class GenerationException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Element element;
+
+        GenerationException(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+
+    private enum Kind {
+        STRING("asString"), BOOLEAN("asBoolean"), BYTE("asByte"), SHORT("asShort"), INT("asInt"), LONG("asLong"), FLOAT("asFloat"),
+        DOUBLE("asDouble"), CHAR("asChar"), DATE("asDate"), ENUM(null), ENTITY(null), ARRAY(null), COLLECTION(null);
+
+        private final String conversion;
+
+        Kind(String conversion) {
+            this.conversion = conversion;
+        }
+    }
+
+    /**
+     * How a property type, or the element type of an array or collection property, is written and read.
+     */
+    private static class Value {
+        private final Kind kind;
+        private final TypeMirror type;
+        private final Value element;
+        private final String collectionClass;
+
+        Value(Kind kind, TypeMirror type, Value element, String collectionClass) {
+            this.kind = kind;
+            this.type = type;
+            this.element = element;
+            this.collectionClass = collectionClass;
+        }
+
+        boolean isPrimitive() {
+            return type.getKind()
+                .isPrimitive();
+        }
+    }
+
+    private static class Property {
+        private final VariableElement field;
+        private final String documentName;
+        private final String getter;
+        private final String setter;
+        private final Value value;
+
+        Property(VariableElement field, String documentName, String getter, String setter, Value value) {
+            this.field = field;
+            this.documentName = documentName;
+            this.getter = getter;
+            this.setter = setter;
+            this.value = value;
+        }
+
+        String name() {
+            return field.getSimpleName()
+                .toString();
+        }
+    }
+
+    // ----- mappers
+
+    private void mapper(TypeElement entity) {
+        String mapperName = mapperName(entity);
+        if (!generatedMappers.add(mapperName)) {
+            return;
+        }
+        if (!entity.getModifiers()
+            .contains(Modifier.PUBLIC) || entity.getModifiers()
+                .contains(Modifier.ABSTRACT)) {
+            throw new GenerationException(entity, "A mapper can only be generated for a public, concrete class");
+        }
+        boolean constructor = false;
+        for (ExecutableElement candidate : ElementFilter.constructorsIn(entity.getEnclosedElements())) {
+            constructor |= candidate.getParameters()
+                .isEmpty() && candidate.getModifiers()
+                    .contains(Modifier.PUBLIC);
+        }
+        if (!constructor) {
+            throw new GenerationException(entity, entity.getSimpleName() + " needs a public no-argument constructor to be mapped");
+        }
+        List<Property> properties = properties(entity);
+        Property id = idProperty(entity, properties);
+
+        String entityName = entity.getQualifiedName()
+            .toString();
+        String simpleName = mapperName.substring(mapperName.lastIndexOf('.') + 1);
+        StringBuilder out = new StringBuilder();
+        out.append("package ")
+            .append(packageName(entity))
+            .append(";\n\n");
+        out.append("import java.util.LinkedHashMap;\nimport java.util.List;\nimport java.util.Map;\n\n");
+        out.append("import " + AOT_PACKAGE + ".EntityMapper;\nimport " + AOT_PACKAGE + ".SourceValues;\n\n");
+        out.append("/**\n * {@link EntityMapper} of {@link ")
+            .append(entityName)
+            .append("}, generated at build time from its fields.\n */\n");
+        out.append("public final class ")
+            .append(simpleName)
+            .append(" implements EntityMapper<")
+            .append(entityName)
+            .append("> {\n\n");
+        out.append("    public static final ")
+            .append(simpleName)
+            .append(" INSTANCE = new ")
+            .append(simpleName)
+            .append("();\n\n");
+        out.append("    private static final String TYPE_HINT = \"")
+            .append(elements.getBinaryName(entity))
+            .append("\";\n\n");
+
+        out.append("    @Override\n    public Class<")
+            .append(entityName)
+            .append("> getType() {\n        return ")
+            .append(entityName)
+            .append(".class;\n    }\n\n");
+
+        out.append("    @Override\n    public Map<String, Object> write(")
+            .append(entityName)
+            .append(" entity) {\n");
+        out.append("        Map<String, Object> source = new LinkedHashMap<>();\n");
+        out.append("        source.put(\"_class\", TYPE_HINT);\n");
+        out.append("        writeProperties(entity, source);\n        return source;\n    }\n\n");
+
+        out.append("    /**\n     * The properties of {@code entity}, without the type hint, as they are written when it is nested.\n     */\n");
+        out.append("    public Map<String, Object> writeProperties(")
+            .append(entityName)
+            .append(" entity) {\n");
+        out.append("        Map<String, Object> source = new LinkedHashMap<>();\n");
+        out.append("        writeProperties(entity, source);\n        return source;\n    }\n\n");
+
+        out.append("    private void writeProperties(")
+            .append(entityName)
+            .append(" entity, Map<String, Object> source) {\n");
+        for (int i = 0; i < properties.size(); i++) {
+            writeProperty(out, properties.get(i), "value" + i);
+        }
+        out.append("    }\n\n");
+
+        out.append("    @Override\n    public ")
+            .append(entityName)
+            .append(" read(Map<String, Object> source) {\n");
+        out.append("        ")
+            .append(entityName)
+            .append(" entity = new ")
+            .append(entityName)
+            .append("();\n");
+        for (int i = 0; i < properties.size(); i++) {
+            readProperty(out, properties.get(i), "value" + i);
+        }
+        out.append("        return entity;\n    }\n\n");
+
+        out.append("    @Override\n    public String getId(")
+            .append(entityName)
+            .append(" entity) {\n");
+        if (id == null) {
+            out.append("        return null;\n");
+        } else if (id.value.isPrimitive()) {
+            out.append("        return String.valueOf(entity.")
+                .append(id.getter)
+                .append("());\n");
+        } else {
+            out.append("        Object id = entity.")
+                .append(id.getter)
+                .append("();\n        return id == null ? null : id.toString();\n");
+        }
+        out.append("    }\n\n");
+
+        out.append("    @Override\n    public void setId(")
+            .append(entityName)
+            .append(" entity, String id) {\n");
+        if (id != null) {
+            out.append("        if (id != null) {\n            entity.")
+                .append(id.setter)
+                .append("(")
+                .append(readExpression(id.value, "id"))
+                .append(");\n        }\n");
+        }
+        out.append("    }\n}\n");
+
+        writeSource(mapperName, out, entity);
+    }
+
+    private void writeProperty(StringBuilder out, Property property, String variable) {
+        Value value = property.value;
+        out.append("        ")
+            .append(value.type)
+            .append(' ')
+            .append(variable)
+            .append(" = entity.")
+            .append(property.getter)
+            .append("();\n");
+        String indent = "        ";
+        if (!value.isPrimitive()) {
+            out.append("        if (")
+                .append(variable)
+                .append(" != null) {\n");
+            indent = "            ";
+        }
+        if (value.kind == Kind.ARRAY || value.kind == Kind.COLLECTION) {
+            Value element = value.element;
+            String list = variable + "List";
+            out.append(indent)
+                .append("List<Object> ")
+                .append(list)
+                .append(" = new java.util.ArrayList<>();\n");
+            out.append(indent)
+                .append("for (")
+                .append(element.type)
+                .append(" element : ")
+                .append(variable)
+                .append(") {\n");
+            out.append(indent)
+                .append("    ")
+                .append(list)
+                .append(".add(")
+                .append(element.isPrimitive() || writeExpression(element, "element").equals("element") ? writeExpression(element, "element")
+                    : "element == null ? null : " + writeExpression(element, "element"))
+                .append(");\n");
+            out.append(indent)
+                .append("}\n");
+            out.append(indent)
+                .append("source.put(\"")
+                .append(property.documentName)
+                .append("\", ")
+                .append(list)
+                .append(");\n");
+        } else {
+            out.append(indent)
+                .append("source.put(\"")
+                .append(property.documentName)
+                .append("\", ")
+                .append(writeExpression(value, variable))
+                .append(");\n");
+        }
+        if (!value.isPrimitive()) {
+            out.append("        }\n");
+        }
+    }
+
+    private String writeExpression(Value value, String variable) {
+        switch (value.kind) {
+        case CHAR:
+            return "String.valueOf(" + variable + ")";
+        case DATE:
+            return variable + ".getTime()";
+        case ENUM:
+            return variable + ".name()";
+        case ENTITY:
+            return mapperName(asClass(types.asElement(value.type))) + ".INSTANCE.writeProperties(" + variable + ")";
+        default:
+            return variable;
+        }
+    }
+
+    private void readProperty(StringBuilder out, Property property, String variable) {
+        Value value = property.value;
+        out.append("        Object ")
+            .append(variable)
+            .append(" = source.get(\"")
+            .append(property.documentName)
+            .append("\");\n");
+        out.append("        if (")
+            .append(variable)
+            .append(" != null) {\n");
+        if (value.kind == Kind.ARRAY || value.kind == Kind.COLLECTION) {
+            Value element = value.element;
+            String list = variable + "List";
+            String values = variable + "Values";
+            out.append("            List<?> ")
+                .append(list)
+                .append(" = SourceValues.asList(")
+                .append(variable)
+                .append(");\n");
+            if (value.kind == Kind.ARRAY) {
+                String component = types.erasure(element.type)
+                    .toString();
+                out.append("            ")
+                    .append(component)
+                    .append("[] ")
+                    .append(values)
+                    .append(" = new ")
+                    .append(component)
+                    .append('[')
+                    .append(list)
+                    .append(".size()];\n");
+                out.append("            for (int i = 0; i < ")
+                    .append(values)
+                    .append(".length; i++) {\n");
+                out.append("                Object element = ")
+                    .append(list)
+                    .append(".get(i);\n");
+                out.append("                if (element != null) {\n");
+                out.append("                    ")
+                    .append(values)
+                    .append("[i] = ")
+                    .append(readExpression(element, "element"))
+                    .append(";\n");
+                out.append("                }\n            }\n");
+            } else {
+                out.append("            ")
+                    .append(value.type)
+                    .append(' ')
+                    .append(values)
+                    .append(" = new ")
+                    .append(value.collectionClass)
+                    .append("<>(")
+                    .append(list)
+                    .append(".size());\n");
+                out.append("            for (Object element : ")
+                    .append(list)
+                    .append(") {\n");
+                out.append("                ")
+                    .append(values)
+                    .append(".add(element == null ? null : ")
+                    .append(readExpression(element, "element"))
+                    .append(");\n            }\n");
+            }
+            out.append("            entity.")
+                .append(property.setter)
+                .append('(')
+                .append(values)
+                .append(");\n");
+        } else {
+            out.append("            entity.")
+                .append(property.setter)
+                .append('(')
+                .append(readExpression(value, variable))
+                .append(");\n");
+        }
+        out.append("        }\n");
+    }
+
+    private String readExpression(Value value, String variable) {
+        switch (value.kind) {
+        case ENUM:
+            return types.erasure(value.type) + ".valueOf(SourceValues.asString(" + variable + "))";
+        case ENTITY:
+            return mapperName(asClass(types.asElement(value.type))) + ".INSTANCE.read(SourceValues.asMap(" + variable + "))";
+        default:
+            return "SourceValues." + value.kind.conversion + "(" + variable + ")";
+        }
+    }
+
+    /**
+     * The mapped fields of {@code entity} and its superclasses, superclass fields first, in declaration order.
+     */
+    private List<Property> properties(TypeElement entity) {
+        List<TypeElement> hierarchy = new ArrayList<>();
+        for (TypeElement type = entity; type != null && !type.getQualifiedName()
+            .contentEquals("java.lang.Object"); type = superclass(type)) {
+            hierarchy.add(0, type);
+        }
+        List<ExecutableElement> methods = ElementFilter.methodsIn(elements.getAllMembers(entity));
+        List<Property> properties = new ArrayList<>();
+        for (TypeElement type : hierarchy) {
+            for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+                if (field.getModifiers()
+                    .contains(Modifier.STATIC) || field.getModifiers()
+                        .contains(Modifier.TRANSIENT) || annotation(field, TRANSIENT) != null) {
+                    continue;
+                }
+                String name = field.getSimpleName()
+                    .toString();
+                String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+                String getter = accessor(methods, field, "get" + capitalized, 0);
+                if (getter == null && field.asType()
+                    .getKind() == TypeKind.BOOLEAN) {
+                    getter = accessor(methods, field, "is" + capitalized, 0);
+                }
+                String setter = accessor(methods, field, "set" + capitalized, 1);
+                if (getter == null || setter == null) {
+                    throw new GenerationException(field, "Mapped field " + name + " of " + entity.getSimpleName() + " needs a public getter and setter");
+                }
+                String documentName = stringValue(annotation(field, FIELD), "name");
+                if (documentName == null || documentName.isEmpty()) {
+                    documentName = stringValue(annotation(field, FIELD), "value");
+                }
+                if (documentName == null || documentName.isEmpty()) {
+                    documentName = name;
+                }
+                properties.add(new Property(field, documentName, getter, setter, value(field, field.asType(), true)));
+            }
+        }
+        return properties;
+    }
+
+    private String accessor(List<ExecutableElement> methods, VariableElement field, String name, int parameters) {
+        for (ExecutableElement method : methods) {
+            if (method.getSimpleName()
+                .contentEquals(name) && method.getParameters()
+                    .size() == parameters && method.getModifiers()
+                        .contains(Modifier.PUBLIC) && !method.getModifiers()
+                            .contains(Modifier.STATIC)) {
+                TypeMirror type = parameters == 0 ? method.getReturnType()
+                    : method.getParameters()
+                        .get(0)
+                        .asType();
+                if (types.isSameType(types.erasure(type), types.erasure(field.asType()))) {
+                    return name;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The {@code @Id} property, or the one named {@code id} when none is annotated, as Spring Data picks it.
+     */
+    private Property idProperty(TypeElement entity, List<Property> properties) {
+        Property named = null;
+        for (Property property : properties) {
+            if (annotation(property.field, ID) != null) {
+                return checkId(property);
+            }
+            if (property.name()
+                .equals("id")) {
+                named = property;
+            }
+        }
+        return named == null ? null : checkId(named);
+    }
+
+    private Property checkId(Property id) {
+        Kind kind = id.value.kind;
+        if (kind == Kind.ARRAY || kind == Kind.COLLECTION || kind == Kind.ENTITY || kind == Kind.DATE || kind == Kind.ENUM) {
+            throw new GenerationException(id.field, "The id property must be a string or a number");
+        }
+        return id;
+    }
+
+    private Value value(Element owner, TypeMirror type, boolean allowContainer) {
+        switch (type.getKind()) {
+        case BOOLEAN:
+            return new Value(Kind.BOOLEAN, type, null, null);
+        case BYTE:
+            return new Value(Kind.BYTE, type, null, null);
+        case SHORT:
+            return new Value(Kind.SHORT, type, null, null);
+        case INT:
+            return new Value(Kind.INT, type, null, null);
+        case LONG:
+            return new Value(Kind.LONG, type, null, null);
+        case FLOAT:
+            return new Value(Kind.FLOAT, type, null, null);
+        case DOUBLE:
+            return new Value(Kind.DOUBLE, type, null, null);
+        case CHAR:
+            return new Value(Kind.CHAR, type, null, null);
+        case ARRAY:
+            if (allowContainer) {
+                return new Value(Kind.ARRAY, type, value(owner, ((ArrayType) type).getComponentType(), false), null);
+            }
+            break;
+        case DECLARED:
+            return declaredValue(owner, (DeclaredType) type, allowContainer);
+        default:
+            break;
+        }
+        throw new GenerationException(owner, "Cannot map a property of type " + type + (allowContainer ? "" : " inside an array or collection"));
+    }
+
+    private Value declaredValue(Element owner, DeclaredType type, boolean allowContainer) {
+        TypeElement element = asClass(types.asElement(type));
+        String name = element.getQualifiedName()
+            .toString();
+        switch (name) {
+        case "java.lang.String":
+            return new Value(Kind.STRING, type, null, null);
+        case "java.lang.Boolean":
+            return new Value(Kind.BOOLEAN, type, null, null);
+        case "java.lang.Byte":
+            return new Value(Kind.BYTE, type, null, null);
+        case "java.lang.Short":
+            return new Value(Kind.SHORT, type, null, null);
+        case "java.lang.Integer":
+            return new Value(Kind.INT, type, null, null);
+        case "java.lang.Long":
+            return new Value(Kind.LONG, type, null, null);
+        case "java.lang.Float":
+            return new Value(Kind.FLOAT, type, null, null);
+        case "java.lang.Double":
+            return new Value(Kind.DOUBLE, type, null, null);
+        case "java.lang.Character":
+            return new Value(Kind.CHAR, type, null, null);
+        case "java.util.Date":
+            return new Value(Kind.DATE, type, null, null);
+        default:
+            break;
+        }
+        if (element.getKind() == ElementKind.ENUM) {
+            return new Value(Kind.ENUM, type, null, null);
+        }
+        if (types.isAssignable(types.erasure(type), erasure("java.util.Collection"))) {
+            if (!allowContainer || type.getTypeArguments()
+                .size() != 1) {
+                throw new GenerationException(owner, "Cannot map a property of type " + type);
+            }
+            String collectionClass;
+            if (types.isAssignable(erasure("java.util.ArrayList"), types.erasure(type))) {
+                collectionClass = "java.util.ArrayList";
+            } else if (types.isAssignable(erasure("java.util.LinkedHashSet"), types.erasure(type))) {
+                collectionClass = "java.util.LinkedHashSet";
+            } else {
+                throw new GenerationException(owner, "Cannot map a collection of type " + type + ", declare it as a List, Set or Collection");
+            }
+            TypeMirror elementType = type.getTypeArguments()
+                .get(0);
+            if (elementType instanceof WildcardType && ((WildcardType) elementType).getExtendsBound() != null) {
+                elementType = ((WildcardType) elementType).getExtendsBound();
+            }
+            return new Value(Kind.COLLECTION, type, value(owner, elementType, false), collectionClass);
+        }
+        if (element.getKind() == ElementKind.CLASS && !name.startsWith("java.") && !name.startsWith("javax.") && type.getTypeArguments()
+            .isEmpty()) {
+            mapper(element);
+            return new Value(Kind.ENTITY, type, null, null);
+        }
+        throw new GenerationException(owner, "Cannot map a property of type " + type);
+    }
+
+    // ----- repositories
+
+    private void repository(Element element) {
+        if (element.getKind() != ElementKind.INTERFACE) {
+            throw new GenerationException(element, "@GenerateRepository goes on a repository interface");
+        }
+        TypeElement repository = (TypeElement) element;
+        DeclaredType elasticsearchRepository = findSupertype(repository.asType(), ELASTICSEARCH_REPOSITORY);
+        if (elasticsearchRepository == null || elasticsearchRepository.getTypeArguments()
+            .size() != 2 || elasticsearchRepository.getTypeArguments()
+                .get(0)
+                .getKind() != TypeKind.DECLARED) {
+            throw new GenerationException(repository, repository.getSimpleName() + " must extend ElasticsearchRepository with a concrete entity type");
+        }
+        TypeMirror entityType = elasticsearchRepository.getTypeArguments()
+            .get(0);
+        TypeMirror idType = elasticsearchRepository.getTypeArguments()
+            .get(1);
+        TypeElement entity = asClass(types.asElement(entityType));
+        String indexName = stringValue(annotation(entity, DOCUMENT), "indexName");
+        if (indexName == null || indexName.isEmpty() || indexName.contains("#{")) {
+            throw new GenerationException(repository, entity.getSimpleName() + " needs a @Document with a literal indexName for a generated repository");
+        }
+        mapper(entity);
+
+        String repositoryName = repository.getQualifiedName()
+            .toString();
+        String simpleName = "Generated" + repository.getSimpleName();
+        String entityName = entity.getQualifiedName()
+            .toString();
+        StringBuilder constants = new StringBuilder();
+        StringBuilder methods = new StringBuilder();
+        Set<String> constantNames = new HashSet<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(repository))) {
+            TypeElement declaring = (TypeElement) method.getEnclosingElement();
+            if (!method.getModifiers()
+                .contains(Modifier.ABSTRACT) || declaring.getQualifiedName()
+                    .toString()
+                    .startsWith("org.springframework.")) {
+                continue;
+            }
+            queryMethod(method, entity, constants, methods, constantNames);
+        }
+
+        StringBuilder out = new StringBuilder();
+        out.append("package ")
+            .append(packageName(repository))
+            .append(";\n\n");
+        out.append("import static org.elasticsearch.index.query.QueryBuilders.boolQuery;\n\n");
+        out.append("import org.elasticsearch.client.RestHighLevelClient;\n");
+        out.append("import org.springframework.data.domain.Pageable;\nimport org.springframework.data.domain.Sort;\n");
+        out.append("import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;\n");
+        out.append("import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;\n\n");
+        out.append("import " + AOT_PACKAGE + ".GeneratedRepositorySupport;\n");
+        out.append("import elasticsearchclient.java.files.search.service.QueryTemplate;\n");
+        out.append("import elasticsearchclient.java.files.search.service.TemplateStringQuery;\n\n");
+        out.append("/**\n * {@link ")
+            .append(repositoryName)
+            .append("} over the {@code ")
+            .append(indexName)
+            .append("} index, generated at build time from its query methods.\n */\n");
+        out.append("public class ")
+            .append(simpleName)
+            .append(" extends GeneratedRepositorySupport<")
+            .append(entityName)
+            .append(", ")
+            .append(idType)
+            .append("> implements ")
+            .append(repositoryName)
+            .append(" {\n\n");
+        out.append(constants);
+        if (constants.length() > 0) {
+            out.append('\n');
+        }
+        out.append("    public ")
+            .append(simpleName)
+            .append("(RestHighLevelClient client) {\n        super(client, ")
+            .append(mapperName(entity))
+            .append(".INSTANCE, \"")
+            .append(javaString(indexName))
+            .append("\");\n    }\n");
+        out.append(methods);
+        out.append("}\n");
+
+        writeSource(packageName(repository) + "." + simpleName, out, repository);
+    }
+
+    private void queryMethod(ExecutableElement method, TypeElement entity, StringBuilder constants, StringBuilder methods, Set<String> constantNames) {
+        String name = method.getSimpleName()
+            .toString();
+        if (!method.getTypeParameters()
+            .isEmpty()) {
+            throw new GenerationException(method, "Generic query methods are not supported by generated repositories");
+        }
+        boolean page = isOf(method.getReturnType(), PAGE, entity);
+        if (!page && !isOf(method.getReturnType(), "java.util.List", entity) && !isOf(method.getReturnType(), "java.util.Collection", entity) && !isOf(
+            method.getReturnType(), "java.lang.Iterable", entity)) {
+            throw new GenerationException(method, name + " must return a Page, List, Collection or Iterable of " + entity.getSimpleName());
+        }
+
+        String pageable = null;
+        String sort = null;
+        List<String> bindable = new ArrayList<>();
+        StringBuilder parameters = new StringBuilder();
+        for (VariableElement parameter : method.getParameters()) {
+            String parameterName = parameter.getSimpleName()
+                .toString();
+            String typeName = types.erasure(parameter.asType())
+                .toString();
+            if (PAGEABLE.equals(typeName)) {
+                pageable = parameterName;
+            } else if (SORT.equals(typeName)) {
+                sort = parameterName;
+            } else {
+                bindable.add(parameterName);
+            }
+            parameters.append(parameters.length() == 0 ? "" : ", ")
+                .append(parameter.asType())
+                .append(' ')
+                .append(parameterName);
+        }
+        String pageableExpression = pageable == null ? "Pageable.unpaged()" : pageable;
+        String sortExpression = sort != null ? sort : pageable != null ? pageable + ".getSort()" : "Sort.unsorted()";
+
+        methods.append("\n    @Override\n    public ")
+            .append(method.getReturnType())
+            .append(' ')
+            .append(name)
+            .append('(')
+            .append(parameters)
+            .append(") {\n");
+
+        String query = stringValue(annotation(method, QUERY), "value");
+        if (query != null) {
+            Matcher placeholder = PLACEHOLDER.matcher(query);
+            while (placeholder.find()) {
+                if (Integer.parseInt(placeholder.group(1)) >= bindable.size()) {
+                    throw new GenerationException(method, "@Query of " + name + " uses ?" + placeholder.group(1) + " but the method has " + bindable
+                        .size() + " bindable parameters");
+                }
+            }
+            String constant = constantName(name, constantNames);
+            constants.append("    private static final QueryTemplate ")
+                .append(constant)
+                .append(" = QueryTemplate.of(\"")
+                .append(javaString(query))
+                .append("\");\n");
+            methods.append("        TemplateStringQuery query = new TemplateStringQuery(")
+                .append(constant)
+                .append(", new Object[] { ")
+                .append(String.join(", ", bindable))
+                .append(" }, ")
+                .append(pageableExpression)
+                .append(", ")
+                .append(sortExpression)
+                .append(");\n");
+        } else {
+            Matcher derived = DERIVED_QUERY.matcher(name);
+            if (!derived.matches() || derived.group(2) != null && (derived.group(2)
+                .contains("Distinct") || derived.group(2)
+                    .contains("First") || derived.group(2)
+                        .contains("Top"))) {
+                throw new GenerationException(method, name + " is neither a @Query method nor a findBy... method a generated repository can derive");
+            }
+            String[] parts = derived.group(3)
+                .split("And(?=[A-Z])");
+            if (parts.length != bindable.size()) {
+                throw new GenerationException(method, name + " has " + parts.length + " properties but " + bindable.size() + " bindable parameters");
+            }
+            methods.append("        NativeSearchQuery query = new NativeSearchQueryBuilder().withQuery(boolQuery()");
+            for (int i = 0; i < parts.length; i++) {
+                String path = propertyPath(entity, parts[i]);
+                if (path == null) {
+                    throw new GenerationException(method, "No property " + parts[i] + " on " + entity.getSimpleName() + " for " + name
+                        + "; generated repositories derive only And-ed equality, anything else needs a @Query");
+                }
+                methods.append(".must(equalTo(\"")
+                    .append(javaString(path))
+                    .append("\", ")
+                    .append(bindable.get(i))
+                    .append("))");
+            }
+            methods.append(")\n            .build();\n");
+            if (pageable != null) {
+                methods.append("        query.setPageable(")
+                    .append(pageable)
+                    .append(");\n");
+            }
+            if (sort != null) {
+                methods.append("        query.addSort(")
+                    .append(sort)
+                    .append(");\n");
+            }
+        }
+        methods.append(page ? "        return page(query);\n" : "        return list(query);\n");
+        methods.append("    }\n");
+    }
+
+    /**
+     * The document path of a property path written in a method name, such as {@code writers.name} for
+     * {@code WritersName}, trying the longest property name first as Spring Data does.
+     */
+    private String propertyPath(TypeElement type, String camel) {
+        List<Property> properties = properties(type);
+        for (int end = camel.length(); end > 0; end--) {
+            if (end < camel.length() && !Character.isUpperCase(camel.charAt(end))) {
+                continue;
+            }
+            String head = Character.toLowerCase(camel.charAt(0)) + camel.substring(1, end);
+            for (Property property : properties) {
+                if (!property.name()
+                    .equals(head)) {
+                    continue;
+                }
+                if (end == camel.length()) {
+                    return property.documentName;
+                }
+                Value value = property.value.element != null ? property.value.element : property.value;
+                if (value.kind == Kind.ENTITY) {
+                    String rest = propertyPath(asClass(types.asElement(value.type)), camel.substring(end));
+                    if (rest != null) {
+                        return property.documentName + "." + rest;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String constantName(String methodName, Set<String> taken) {
+        StringBuilder name = new StringBuilder();
+        for (char c : methodName.toCharArray()) {
+            if (Character.isUpperCase(c) && name.length() > 0) {
+                name.append('_');
+            }
+            name.append(Character.toUpperCase(c));
+        }
+        name.append("_QUERY");
+        String candidate = name.toString();
+        for (int i = 2; !taken.add(candidate); i++) {
+            candidate = name + "_" + i;
+        }
+        return candidate;
+    }
+
+    // ----- helpers
+
+    private boolean isOf(TypeMirror type, String container, TypeElement entity) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        DeclaredType declared = (DeclaredType) type;
+        return types.erasure(declared)
+            .toString()
+            .equals(container) && declared.getTypeArguments()
+                .size() == 1 && types.isSameType(declared.getTypeArguments()
+                    .get(0), entity.asType());
+    }
+
+    private DeclaredType findSupertype(TypeMirror type, String name) {
+        for (TypeMirror supertype : types.directSupertypes(type)) {
+            if (types.erasure(supertype)
+                .toString()
+                .equals(name)) {
+                return (DeclaredType) supertype;
+            }
+            DeclaredType found = findSupertype(supertype, name);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private TypeElement superclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) types.asElement(superclass) : null;
+    }
+
+    private TypeMirror erasure(String className) {
+        return types.erasure(elements.getTypeElement(className)
+            .asType());
+    }
+
+    private static TypeElement asClass(Element element) {
+        if (!(element instanceof TypeElement)) {
+            throw new GenerationException(element, "Expected a class");
+        }
+        return (TypeElement) element;
+    }
+
+    private String packageName(TypeElement type) {
+        return elements.getPackageOf(type)
+            .getQualifiedName()
+            .toString();
+    }
+
+    /**
+     * {@code ParaMapper} for {@code Para}, {@code Outer_InnerMapper} for a nested {@code Outer.Inner}.
+     */
+    private String mapperName(TypeElement entity) {
+        String packageName = packageName(entity);
+        String binaryName = elements.getBinaryName(entity)
+            .toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)).replace('$', '_');
+        return (packageName.isEmpty() ? "" : packageName + ".") + simpleName + "Mapper";
+    }
+
+    private static AnnotationMirror annotation(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType()
+                .asElement()).getQualifiedName()
+                    .contentEquals(annotationName)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private static String stringValue(AnnotationMirror annotation, String name) {
+        if (annotation == null) {
+            return null;
+        }
+        Map<String, Object> values = new HashMap<>();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues()
+            .entrySet()) {
+            values.put(entry.getKey()
+                .getSimpleName()
+                .toString(), entry.getValue()
+                    .getValue());
+        }
+        Object value = values.get(name);
+        return value instanceof String ? (String) value : null;
+    }
+
+    private static String javaString(String value) {
+        StringBuilder out = new StringBuilder(value.length() + 16);
+        for (char c : value.toCharArray()) {
+            switch (c) {
+            case '"':
+                out.append("\\\"");
+                break;
+            case '\\':
+                out.append("\\\\");
+                break;
+            case '\n':
+                out.append("\\n");
+                break;
+            case '\r':
+                out.append("\\r");
+                break;
+            case '\t':
+                out.append("\\t");
+                break;
+            default:
+                if (c < 0x20 || c > 0x7e) {
+                    out.append(String.format("\\u%04x", (int) c));
+                } else {
+                    out.append(c);
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private void writeSource(String className, StringBuilder source, Element origin) {
+        try (Writer writer = processingEnv.getFiler()
+            .createSourceFile(className, origin)
+            .openWriter()) {
+            writer.write(source.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
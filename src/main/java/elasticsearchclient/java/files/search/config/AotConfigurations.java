@@ -0,0 +1,40 @@
+package elasticsearchclient.java.files.search.config;
+
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.Environment;
+
+import elasticsearchclient.java.files.search.repository.GeneratedParaRepository;
+import elasticsearchclient.java.files.search.repository.ParaRepository;
+
+/**
+ * Fast-startup alternative to {@link Configurations} for batch jobs and autoscaled pods: serves
+ * {@link ParaRepository} from the implementation generated at build time, so the context scans no packages, builds no
+ * repository proxy and reads no entity mapping metadata. Bean methods are called directly, without a CGLIB subclass of
+ * this class.
+ * <p>
+ * Only the client and the repository are defined; the services of {@link Configurations} are not.
+ */
+@Configuration(proxyBeanMethods = false)
+@PropertySource(value = "classpath:" + ClientTuning.PROPERTIES_FILE, ignoreResourceNotFound = true)
+public class AotConfigurations {
+
+    @Bean
+    public ClientConnectionPool clientConnectionPool(Environment environment) {
+        return new ClientConnectionPool("high-level", ClientTuning.from(environment));
+    }
+
+    @Bean
+    RestHighLevelClient client(ClientConnectionPool clientConnectionPool) {
+        RestHighLevelClient client = new RestHighLevelClient(clientConnectionPool.restClientBuilder());
+        clientConnectionPool.attach(client.getLowLevelClient());
+        return client;
+    }
+
+    @Bean
+    public ParaRepository paraRepository(RestHighLevelClient client) {
+        return new GeneratedParaRepository(client);
+    }
+}
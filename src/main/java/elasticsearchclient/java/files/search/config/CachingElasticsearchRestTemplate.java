@@ -0,0 +1,159 @@
+package elasticsearchclient.java.files.search.config;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.BulkOptions;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.Query;
+import org.springframework.data.elasticsearch.core.query.UpdateQuery;
+import org.springframework.data.elasticsearch.core.query.UpdateResponse;
+
+import elasticsearchclient.java.files.search.service.DocumentWriteListener;
+import elasticsearchclient.java.files.search.service.QueryTemplateSearch;
+import elasticsearchclient.java.files.search.service.SearchResultCache;
+import elasticsearchclient.java.files.search.service.TemplateStringQuery;
+
+/**
+ * {@link ElasticsearchRestTemplate} answering repeated searches from a {@link SearchResultCache}.
+ * <p>
+ * Every repository query method, derived or {@code @Query}, ends up in {@link #search(Query, Class, IndexCoordinates)},
+ * and every repository save and delete in one of the write methods below, so caching here covers both the repository
+ * and direct template use. Writes invalidate the index once they have been acknowledged, and acknowledged writes are
+ * passed on to the registered {@link DocumentWriteListener}s. Compiled {@code @Query} templates, see
+ * {@link CompiledQueryRepositoryFactoryBean}, are sent by a {@link QueryTemplateSearch}.
+ */
+public class CachingElasticsearchRestTemplate extends ElasticsearchRestTemplate {
+
+    private final SearchResultCache cache;
+    private final QueryTemplateSearch templateSearch;
+    private final List<DocumentWriteListener> writeListeners = new CopyOnWriteArrayList<>();
+
+    public CachingElasticsearchRestTemplate(RestHighLevelClient client, SearchResultCache cache) {
+        this(client, cache, false);
+    }
+
+    /**
+     * @param storedTemplates whether compiled query templates are registered and run as stored search templates
+     */
+    public CachingElasticsearchRestTemplate(RestHighLevelClient client, SearchResultCache cache, boolean storedTemplates) {
+        super(client);
+        this.cache = cache;
+        this.templateSearch = new QueryTemplateSearch(client, getElasticsearchConverter(), storedTemplates);
+    }
+
+    public SearchResultCache getCache() {
+        return cache;
+    }
+
+    public void addWriteListener(DocumentWriteListener listener) {
+        writeListeners.add(listener);
+    }
+
+    @Override
+    public <T> SearchHits<T> search(Query query, Class<T> clazz, IndexCoordinates index) {
+        if (query instanceof TemplateStringQuery) {
+            return cache.get(query, clazz, index, () -> templateSearch.search((TemplateStringQuery) query, clazz, index));
+        }
+        return cache.get(query, clazz, index, () -> super.search(query, clazz, index));
+    }
+
+    @Override
+    public String index(IndexQuery query, IndexCoordinates index) {
+        String id;
+        try {
+            id = super.index(query, index);
+        } finally {
+            cache.invalidate(index);
+        }
+        for (DocumentWriteListener listener : writeListeners) {
+            listener.indexed(id, query.getObject(), index);
+        }
+        return id;
+    }
+
+    @Override
+    public List<String> bulkIndex(List<IndexQuery> queries, BulkOptions bulkOptions, IndexCoordinates index) {
+        List<String> ids;
+        try {
+            ids = super.bulkIndex(queries, bulkOptions, index);
+        } finally {
+            cache.invalidate(index);
+        }
+        for (DocumentWriteListener listener : writeListeners) {
+            for (int i = 0; i < ids.size(); i++) {
+                listener.indexed(ids.get(i), queries.get(i)
+                    .getObject(), index);
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public void bulkUpdate(List<UpdateQuery> queries, BulkOptions bulkOptions, IndexCoordinates index) {
+        try {
+            super.bulkUpdate(queries, bulkOptions, index);
+        } finally {
+            cache.invalidate(index);
+        }
+        changed(index);
+    }
+
+    @Override
+    public UpdateResponse update(UpdateQuery query, IndexCoordinates index) {
+        UpdateResponse response;
+        try {
+            response = super.update(query, index);
+        } finally {
+            cache.invalidate(index);
+        }
+        changed(index);
+        return response;
+    }
+
+    @Override
+    public String delete(String id, IndexCoordinates index) {
+        String deleted;
+        try {
+            deleted = super.delete(id, index);
+        } finally {
+            cache.invalidate(index);
+        }
+        for (DocumentWriteListener listener : writeListeners) {
+            listener.deleted(id, index);
+        }
+        return deleted;
+    }
+
+    @Override
+    public void delete(Query query, Class<?> clazz, IndexCoordinates index) {
+        try {
+            super.delete(query, clazz, index);
+        } finally {
+            cache.invalidate(index);
+        }
+        changed(index);
+    }
+
+    // overridden only to invalidate the cache; the type is qualified because importing it is itself deprecated use
+    @Deprecated
+    @Override
+    public void delete(org.springframework.data.elasticsearch.core.query.DeleteQuery deleteQuery, IndexCoordinates index) {
+        try {
+            super.delete(deleteQuery, index);
+        } finally {
+            cache.invalidate(index);
+        }
+        changed(index);
+    }
+
+    private void changed(IndexCoordinates index) {
+        for (DocumentWriteListener listener : writeListeners) {
+            listener.changed(index);
+        }
+    }
+}
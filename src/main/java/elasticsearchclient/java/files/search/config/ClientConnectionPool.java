@@ -0,0 +1,166 @@
+package elasticsearchclient.java.files.search.config;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.pool.PoolStats;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientBuilder;
+import org.elasticsearch.common.xcontent.XContentType;
+
+/**
+ * Owns the connection manager behind one REST client so the pool can be sized from {@link ClientTuning} and its
+ * statistics read while the client is running.
+ * <p>
+ * Each request goes to the node picked by the pool's {@link NodeScoreboard}, which prefers fast, idle nodes and ejects
+ * failing ones. A request that cannot connect to its node is sent to the other admitted nodes in turn, best first; a
+ * hedged copy is not. Once the client is {@link #attach(RestClient) attached} the scoreboard's circuit breakers
+ * replace the client's own dead-node list, which would otherwise keep a node out for at least a minute after one
+ * failure, and with a sniff interval set the hosts are replaced by the cluster's node list.
+ * Every request is recorded in the pool's {@link ClientMetrics}.
+ */
+public class ClientConnectionPool {
+
+    private final String name;
+    private final ClientTuning tuning;
+    private final PoolingNHttpClientConnectionManager connectionManager;
+    private final ClientMetrics metrics;
+    private final NodeScoreboard scoreboard;
+    private volatile TunedHttpAsyncClient httpClient;
+    private volatile RestClient attached;
+    private volatile NodeSniffer sniffer;
+
+    public ClientConnectionPool(ClientTuning tuning) {
+        this(null, tuning);
+    }
+
+    /**
+     * @param name when not {@code null}, the client's {@link ClientMetrics} are exported over JMX under this name while
+     *            the client is open
+     */
+    public ClientConnectionPool(String name, ClientTuning tuning) {
+        this.name = name;
+        this.tuning = tuning;
+        this.metrics = new ClientMetrics(name == null ? "unnamed" : name, this::getTotalStats);
+        this.scoreboard = new NodeScoreboard(tuning.getLatencyDecayMillis(), tuning.getBreakerFailureThreshold(), tuning.getBreakerOpenMillis());
+        try {
+            this.connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(IOReactorConfig.custom()
+                .setIoThreadCount(tuning.getIoThreadCount())
+                .setConnectTimeout(tuning.getConnectTimeoutMillis())
+                .setSoTimeout(tuning.getSocketTimeoutMillis())
+                .setSoKeepAlive(true)
+                .build()));
+        } catch (IOReactorException e) {
+            throw new IllegalStateException("Could not start the IO reactor", e);
+        }
+        connectionManager.setMaxTotal(tuning.getMaxConnTotal());
+        connectionManager.setDefaultMaxPerRoute(tuning.getMaxConnPerRoute());
+    }
+
+    /**
+     * A builder for the single client that uses this pool; the pool is shut down when that client is closed. With a
+     * binary {@link ClientTuning#getContentType() content type} every request asks for responses in that format unless
+     * it sets its own {@code Accept} header.
+     */
+    public RestClientBuilder restClientBuilder() {
+        RestClientBuilder builder = RestClient.builder(tuning.getHosts()
+            .toArray(new HttpHost[0]));
+        if (tuning.getContentType() != XContentType.JSON) {
+            builder.setDefaultHeaders(new Header[] { new BasicHeader(HttpHeaders.ACCEPT, tuning.getContentType()
+                .mediaTypeWithoutParameters()) });
+        }
+        return builder.setNodeSelector(scoreboard)
+            .setFailureListener(new RestClient.FailureListener() {
+
+                @Override
+                public void onFailure(Node node) {
+                    RestClient client = attached;
+                    if (client != null) {
+                        // drops the node the client has just marked dead; the scoreboard has already counted the failure
+                        client.setNodes(client.getNodes());
+                    }
+                }
+            })
+            .setHttpClientConfigCallback(ignored -> new TunedHttpAsyncClientBuilder());
+    }
+
+    /**
+     * Hands the node list of {@code client}, built from this pool, to the pool: failing nodes are only ejected by the
+     * scoreboard and, when a sniff interval is configured, the nodes are kept in step with the cluster until the client
+     * is closed.
+     */
+    public void attach(RestClient client) {
+        attached = client;
+        if (tuning.getSniffIntervalMillis() > 0 && sniffer == null) {
+            sniffer = new NodeSniffer(client, tuning.getSniffIntervalMillis());
+        }
+    }
+
+    public ClientTuning getTuning() {
+        return tuning;
+    }
+
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    public NodeScoreboard getScoreboard() {
+        return scoreboard;
+    }
+
+    public ClientPoolStats getTotalStats() {
+        PoolStats pool = connectionManager.getTotalStats();
+        TunedHttpAsyncClient client = httpClient;
+        int inFlight = client == null ? 0 : client.getInFlight();
+        return new ClientPoolStats(pool.getLeased(), Math.max(0, inFlight - pool.getLeased() - pool.getPending()), pool.getPending(),
+            pool.getAvailable(), pool.getMax());
+    }
+
+    private void stopSniffing() {
+        NodeSniffer current = sniffer;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private ConnectionKeepAliveStrategy keepAliveStrategy() {
+        return (response, context) -> {
+            long advertised = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return advertised > 0 ? Math.min(advertised, tuning.getKeepAliveMillis()) : tuning.getKeepAliveMillis();
+        };
+    }
+
+    private class TunedHttpAsyncClientBuilder extends HttpAsyncClientBuilder {
+
+        TunedHttpAsyncClientBuilder() {
+            setConnectionManager(connectionManager);
+            setKeepAliveStrategy(keepAliveStrategy());
+            setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(tuning.getConnectTimeoutMillis())
+                .setSocketTimeout(tuning.getSocketTimeoutMillis())
+                .setConnectionRequestTimeout(tuning.getConnectionRequestTimeoutMillis())
+                .build());
+        }
+
+        @Override
+        public CloseableHttpAsyncClient build() {
+            httpClient = new TunedHttpAsyncClient(super.build(), tuning.isCompression(), tuning.getCompressionThresholdBytes(), metrics, scoreboard,
+                ClientConnectionPool.this::stopSniffing);
+            if (name != null) {
+                metrics.registerMBeans();
+            }
+            return httpClient;
+        }
+    }
+}
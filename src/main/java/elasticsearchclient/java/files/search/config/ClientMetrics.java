@@ -0,0 +1,350 @@
+package elasticsearchclient.java.files.search.config;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Per-operation, per-index metrics of every request one REST client sends, recorded by the HTTP layer both the
+ * high-level and the low-level client go through.
+ * <p>
+ * Requests are classified from their method and path, e.g. {@code POST /blog/_search} is {@code search} on
+ * {@code blog}. Once an operation and index have been seen, finding their {@link OperationMetrics} and recording into
+ * them allocates nothing. At most {@value #MAX_INDICES_PER_OPERATION} indices are tracked per operation, further ones
+ * share the {@code _other} entry, so time based index names cannot grow the registry without bound.
+ */
+public class ClientMetrics implements ClientMetricsMBean {
+
+    static final int MAX_INDICES_PER_OPERATION = 64;
+
+    private static final String DOMAIN = "elasticsearchclient";
+    private static final String NO_INDEX = "_all";
+    private static final String OTHER_INDEX = "_other";
+
+    private static final String[] OPERATIONS = { "search", "scroll", "clear_scroll", "msearch", "count", "bulk", "index", "get", "exists", "delete",
+        "update", "mget", "delete_by_query", "update_by_query", "reindex", "refresh", "forcemerge", "aliases", "mapping", "settings", "create_index",
+        "delete_index", "index_exists", "get_index", "cluster", "info", "other" };
+
+    private static final int SEARCH = 0, SCROLL = 1, CLEAR_SCROLL = 2, MSEARCH = 3, COUNT = 4, BULK = 5, INDEX = 6, GET = 7, EXISTS = 8, DELETE = 9,
+        UPDATE = 10, MGET = 11, DELETE_BY_QUERY = 12, UPDATE_BY_QUERY = 13, REINDEX = 14, REFRESH = 15, FORCEMERGE = 16, ALIASES = 17, MAPPING = 18,
+        SETTINGS = 19, CREATE_INDEX = 20, DELETE_INDEX = 21, INDEX_EXISTS = 22, GET_INDEX = 23, CLUSTER = 24, INFO = 25, OTHER = 26;
+
+    private final String name;
+    private final Supplier<ClientPoolStats> poolStats;
+    private final AtomicReferenceArray<OperationMetrics[]> operations = new AtomicReferenceArray<>(OPERATIONS.length);
+    private MBeanServer mbeanServer;
+
+    public ClientMetrics(String name, Supplier<ClientPoolStats> poolStats) {
+        this.name = name;
+        this.poolStats = poolStats;
+        for (int i = 0; i < operations.length(); i++) {
+            operations.set(i, new OperationMetrics[0]);
+        }
+    }
+
+    /**
+     * The metrics for a request, creating them the first time an operation and index are seen.
+     */
+    public OperationMetrics forRequest(String method, String path) {
+        int end = path.indexOf('?');
+        end = end < 0 ? path.length() : end;
+        int first = path.startsWith("/") ? 1 : 0;
+        int firstEnd = segmentEnd(path, first, end);
+
+        int indexStart = -1;
+        int indexEnd = -1;
+        int endpoint = first;
+        if (firstEnd > first && path.charAt(first) != '_') {
+            indexStart = first;
+            indexEnd = firstEnd;
+            endpoint = firstEnd + 1;
+        }
+        int operation = operation(method, path, endpoint, end, indexStart >= 0);
+        return lookup(operation, path, indexStart, indexEnd);
+    }
+
+    public List<OperationMetrics> getOperationMetrics() {
+        List<OperationMetrics> all = new ArrayList<>();
+        for (int i = 0; i < operations.length(); i++) {
+            all.addAll(Arrays.asList(operations.get(i)));
+        }
+        return all;
+    }
+
+    /**
+     * The metrics of {@code operation} on {@code index}, or {@code null} when no such request has been sent.
+     */
+    public OperationMetrics get(String operation, String index) {
+        int id = Arrays.asList(OPERATIONS)
+            .indexOf(operation);
+        if (id < 0) {
+            return null;
+        }
+        for (OperationMetrics metrics : operations.get(id)) {
+            if (metrics.getIndex()
+                .equals(index)) {
+                return metrics;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Exposes these metrics on the platform MBean server, under the {@code elasticsearchclient} domain.
+     */
+    public synchronized void registerMBeans() {
+        if (mbeanServer != null) {
+            return;
+        }
+        mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        register(this, clientObjectName());
+        for (OperationMetrics metrics : getOperationMetrics()) {
+            register(metrics, operationObjectName(metrics));
+        }
+    }
+
+    public synchronized void unregisterMBeans() {
+        if (mbeanServer == null) {
+            return;
+        }
+        try {
+            for (ObjectName registered : mbeanServer.queryNames(new ObjectName(DOMAIN + ":client=" + ObjectName.quote(name) + ",*"), null)) {
+                mbeanServer.unregisterMBean(registered);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not unregister the metrics of " + name, e);
+        }
+        mbeanServer = null;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        long count = 0;
+        for (OperationMetrics metrics : getOperationMetrics()) {
+            count += metrics.getCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getErrorCount() {
+        long errors = 0;
+        for (OperationMetrics metrics : getOperationMetrics()) {
+            errors += metrics.getErrorCount();
+        }
+        return errors;
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        long timeouts = 0;
+        for (OperationMetrics metrics : getOperationMetrics()) {
+            timeouts += metrics.getTimeoutCount();
+        }
+        return timeouts;
+    }
+
+    @Override
+    public int getInFlight() {
+        int inFlight = 0;
+        for (OperationMetrics metrics : getOperationMetrics()) {
+            inFlight += metrics.getInFlight();
+        }
+        return inFlight;
+    }
+
+    @Override
+    public int getLeasedConnections() {
+        return poolStats.get()
+            .getLeased();
+    }
+
+    @Override
+    public int getPendingRequests() {
+        return poolStats.get()
+            .getPending();
+    }
+
+    @Override
+    public void reset() {
+        getOperationMetrics().forEach(OperationMetrics::reset);
+    }
+
+    private OperationMetrics lookup(int operation, String path, int indexStart, int indexEnd) {
+        OperationMetrics[] byIndex = operations.get(operation);
+        OperationMetrics found = find(byIndex, path, indexStart, indexEnd);
+        return found != null ? found : create(operation, path, indexStart, indexEnd);
+    }
+
+    private synchronized OperationMetrics create(int operation, String path, int indexStart, int indexEnd) {
+        OperationMetrics[] byIndex = operations.get(operation);
+        OperationMetrics found = find(byIndex, path, indexStart, indexEnd);
+        if (found != null) {
+            return found;
+        }
+        String index = indexStart < 0 ? NO_INDEX : byIndex.length >= MAX_INDICES_PER_OPERATION ? OTHER_INDEX : path.substring(indexStart, indexEnd);
+        if (OTHER_INDEX.equals(index)) {
+            found = find(byIndex, OTHER_INDEX, 0, OTHER_INDEX.length());
+            if (found != null) {
+                return found;
+            }
+        }
+        OperationMetrics metrics = new OperationMetrics(OPERATIONS[operation], index);
+        OperationMetrics[] grown = Arrays.copyOf(byIndex, byIndex.length + 1);
+        grown[byIndex.length] = metrics;
+        operations.set(operation, grown);
+        if (mbeanServer != null) {
+            register(metrics, operationObjectName(metrics));
+        }
+        return metrics;
+    }
+
+    private static OperationMetrics find(OperationMetrics[] byIndex, String path, int indexStart, int indexEnd) {
+        OperationMetrics other = null;
+        for (OperationMetrics metrics : byIndex) {
+            String index = metrics.getIndex();
+            if (indexStart < 0) {
+                if (index == NO_INDEX) {
+                    return metrics;
+                }
+            } else if (index.length() == indexEnd - indexStart && path.regionMatches(indexStart, index, 0, index.length())) {
+                return metrics;
+            } else if (index == OTHER_INDEX) {
+                other = metrics;
+            }
+        }
+        return other;
+    }
+
+    private static int operation(String method, String path, int start, int end, boolean hasIndex) {
+        if (start >= end) {
+            if (!hasIndex) {
+                return INFO;
+            }
+            switch (method) {
+            case "PUT":
+                return CREATE_INDEX;
+            case "DELETE":
+                return DELETE_INDEX;
+            case "HEAD":
+                return INDEX_EXISTS;
+            default:
+                return GET_INDEX;
+            }
+        }
+        int segmentEnd = segmentEnd(path, start, end);
+        if (is(path, start, segmentEnd, "_search")) {
+            if (is(path, segmentEnd + 1, segmentEnd(path, segmentEnd + 1, end), "scroll")) {
+                return "DELETE".equals(method) ? CLEAR_SCROLL : SCROLL;
+            }
+            return SEARCH;
+        }
+        if (is(path, start, segmentEnd, "_doc") || is(path, start, segmentEnd, "_create")) {
+            switch (method) {
+            case "GET":
+                return GET;
+            case "HEAD":
+                return EXISTS;
+            case "DELETE":
+                return DELETE;
+            default:
+                return INDEX;
+            }
+        }
+        if (is(path, start, segmentEnd, "_bulk")) {
+            return BULK;
+        }
+        if (is(path, start, segmentEnd, "_msearch")) {
+            return MSEARCH;
+        }
+        if (is(path, start, segmentEnd, "_count")) {
+            return COUNT;
+        }
+        if (is(path, start, segmentEnd, "_update")) {
+            return UPDATE;
+        }
+        if (is(path, start, segmentEnd, "_mget")) {
+            return MGET;
+        }
+        if (is(path, start, segmentEnd, "_delete_by_query")) {
+            return DELETE_BY_QUERY;
+        }
+        if (is(path, start, segmentEnd, "_update_by_query")) {
+            return UPDATE_BY_QUERY;
+        }
+        if (is(path, start, segmentEnd, "_reindex")) {
+            return REINDEX;
+        }
+        if (is(path, start, segmentEnd, "_refresh")) {
+            return REFRESH;
+        }
+        if (is(path, start, segmentEnd, "_forcemerge")) {
+            return FORCEMERGE;
+        }
+        if (is(path, start, segmentEnd, "_aliases") || is(path, start, segmentEnd, "_alias")) {
+            return ALIASES;
+        }
+        if (is(path, start, segmentEnd, "_mapping") || is(path, start, segmentEnd, "_mappings")) {
+            return MAPPING;
+        }
+        if (is(path, start, segmentEnd, "_settings")) {
+            return SETTINGS;
+        }
+        if (is(path, start, segmentEnd, "_cluster") || is(path, start, segmentEnd, "_cat") || is(path, start, segmentEnd, "_nodes")) {
+            return CLUSTER;
+        }
+        return OTHER;
+    }
+
+    private static int segmentEnd(String path, int start, int end) {
+        if (start >= end) {
+            return end;
+        }
+        int slash = path.indexOf('/', start);
+        return slash < 0 || slash > end ? end : slash;
+    }
+
+    private static boolean is(String path, int start, int end, String segment) {
+        return end - start == segment.length() && path.regionMatches(start, segment, 0, segment.length());
+    }
+
+    private ObjectName clientObjectName() {
+        return objectName(DOMAIN + ":client=" + ObjectName.quote(name) + ",type=ClientMetrics");
+    }
+
+    private ObjectName operationObjectName(OperationMetrics metrics) {
+        return objectName(DOMAIN + ":client=" + ObjectName.quote(name) + ",type=OperationMetrics,operation=" + metrics.getOperation() + ",index="
+            + ObjectName.quote(metrics.getIndex()));
+    }
+
+    private static ObjectName objectName(String name) {
+        try {
+            return new ObjectName(name);
+        } catch (JMException e) {
+            throw new IllegalArgumentException(name, e);
+        }
+    }
+
+    private void register(Object mbean, ObjectName objectName) {
+        try {
+            if (mbeanServer.isRegistered(objectName)) {
+                mbeanServer.unregisterMBean(objectName);
+            }
+            mbeanServer.registerMBean(mbean, objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register " + objectName, e);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package elasticsearchclient.java.files.search.config;
+
+/**
+ * JMX view of all traffic of one REST client, see {@link ClientMetrics}.
+ */
+public interface ClientMetricsMBean {
+
+    String getName();
+
+    long getCount();
+
+    long getErrorCount();
+
+    long getTimeoutCount();
+
+    int getInFlight();
+
+    int getLeasedConnections();
+
+    int getPendingRequests();
+
+    void reset();
+}
@@ -0,0 +1,59 @@
+package elasticsearchclient.java.files.search.config;
+
+/**
+ * Point-in-time view of a {@link ClientConnectionPool}.
+ */
+public class ClientPoolStats {
+
+    private final int leased;
+    private final int pending;
+    private final int connecting;
+    private final int available;
+    private final int max;
+
+    public ClientPoolStats(int leased, int pending, int connecting, int available, int max) {
+        this.leased = leased;
+        this.pending = pending;
+        this.connecting = connecting;
+        this.available = available;
+        this.max = max;
+    }
+
+    /**
+     * Connections currently carrying a request.
+     */
+    public int getLeased() {
+        return leased;
+    }
+
+    /**
+     * Requests queued for a connection because the pool or the route limit is exhausted.
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * Connections being established.
+     */
+    public int getConnecting() {
+        return connecting;
+    }
+
+    /**
+     * Idle connections kept alive for reuse.
+     */
+    public int getAvailable() {
+        return available;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "ClientPoolStats [leased=" + leased + ", pending=" + pending + ", connecting=" + connecting + ", available=" + available + ", max="
+            + max + "]";
+    }
+}
@@ -0,0 +1,262 @@
+package elasticsearchclient.java.files.search.config;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.ResourcePropertySource;
+
+/**
+ * Connection pool and HTTP transport settings shared by the REST clients.
+ * <p>
+ * Values are read from {@code elasticsearch-client.properties} on the classpath; system properties and environment
+ * variables with the same keys take precedence. Every key is optional and falls back to the default below.
+ */
+public class ClientTuning {
+
+    public static final String PROPERTIES_FILE = "elasticsearch-client.properties";
+
+    private static final String PREFIX = "elasticsearch.client.";
+
+    private List<HttpHost> hosts = Arrays.asList(HttpHost.create("localhost:9200"));
+    private int maxConnTotal = 100;
+    private int maxConnPerRoute = 50;
+    private int ioThreadCount = Runtime.getRuntime()
+        .availableProcessors();
+    private long keepAliveMillis = 60_000;
+    private boolean compression = false;
+    private int compressionThresholdBytes = 1024;
+    private int connectTimeoutMillis = 1000;
+    private int socketTimeoutMillis = 5000;
+    private int connectionRequestTimeoutMillis = 1000;
+    private long sniffIntervalMillis = 0;
+    private long latencyDecayMillis = 10_000;
+    private int breakerFailureThreshold = 3;
+    private long breakerOpenMillis = 5000;
+    private long hedgeMinDelayMillis = 0;
+    private XContentType contentType = XContentType.JSON;
+
+    public static ClientTuning defaults() {
+        return new ClientTuning();
+    }
+
+    /**
+     * Reads the settings from the classpath properties file, overridden by system properties and the environment.
+     */
+    public static ClientTuning load() {
+        StandardEnvironment environment = new StandardEnvironment();
+        ClassPathResource resource = new ClassPathResource(PROPERTIES_FILE);
+        if (resource.exists()) {
+            try {
+                environment.getPropertySources()
+                    .addLast(new ResourcePropertySource(resource));
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read " + PROPERTIES_FILE, e);
+            }
+        }
+        return from(environment);
+    }
+
+    public static ClientTuning from(PropertyResolver properties) {
+        ClientTuning tuning = new ClientTuning();
+        String hosts = properties.getProperty(PREFIX + "hosts");
+        if (hosts != null) {
+            tuning.hosts(hosts.split(","));
+        }
+        tuning.maxConnTotal = properties.getProperty(PREFIX + "max-conn-total", Integer.class, tuning.maxConnTotal);
+        tuning.maxConnPerRoute = properties.getProperty(PREFIX + "max-conn-per-route", Integer.class, tuning.maxConnPerRoute);
+        tuning.ioThreadCount = properties.getProperty(PREFIX + "io-thread-count", Integer.class, tuning.ioThreadCount);
+        tuning.keepAliveMillis = properties.getProperty(PREFIX + "keep-alive-millis", Long.class, tuning.keepAliveMillis);
+        tuning.compression = properties.getProperty(PREFIX + "compression", Boolean.class, tuning.compression);
+        tuning.compressionThresholdBytes = properties.getProperty(PREFIX + "compression-threshold-bytes", Integer.class, tuning.compressionThresholdBytes);
+        tuning.connectTimeoutMillis = properties.getProperty(PREFIX + "connect-timeout-millis", Integer.class, tuning.connectTimeoutMillis);
+        tuning.socketTimeoutMillis = properties.getProperty(PREFIX + "socket-timeout-millis", Integer.class, tuning.socketTimeoutMillis);
+        tuning.connectionRequestTimeoutMillis = properties.getProperty(PREFIX + "connection-request-timeout-millis", Integer.class,
+            tuning.connectionRequestTimeoutMillis);
+        tuning.sniffIntervalMillis = properties.getProperty(PREFIX + "sniff-interval-millis", Long.class, tuning.sniffIntervalMillis);
+        tuning.latencyDecayMillis = properties.getProperty(PREFIX + "latency-decay-millis", Long.class, tuning.latencyDecayMillis);
+        tuning.breakerFailureThreshold = properties.getProperty(PREFIX + "breaker-failure-threshold", Integer.class, tuning.breakerFailureThreshold);
+        tuning.breakerOpenMillis = properties.getProperty(PREFIX + "breaker-open-millis", Long.class, tuning.breakerOpenMillis);
+        tuning.hedgeMinDelayMillis = properties.getProperty(PREFIX + "hedge-min-delay-millis", Long.class, tuning.hedgeMinDelayMillis);
+        String contentType = properties.getProperty(PREFIX + "content-type");
+        if (contentType != null) {
+            tuning.contentType(XContentType.fromMediaTypeOrFormat(contentType.trim()));
+        }
+        return tuning;
+    }
+
+    public ClientTuning hosts(String... hosts) {
+        this.hosts = Arrays.stream(hosts)
+            .map(String::trim)
+            .filter(host -> !host.isEmpty())
+            .map(HttpHost::create)
+            .collect(Collectors.toList());
+        return this;
+    }
+
+    public ClientTuning maxConnTotal(int maxConnTotal) {
+        this.maxConnTotal = maxConnTotal;
+        return this;
+    }
+
+    public ClientTuning maxConnPerRoute(int maxConnPerRoute) {
+        this.maxConnPerRoute = maxConnPerRoute;
+        return this;
+    }
+
+    public ClientTuning ioThreadCount(int ioThreadCount) {
+        this.ioThreadCount = ioThreadCount;
+        return this;
+    }
+
+    public ClientTuning keepAliveMillis(long keepAliveMillis) {
+        this.keepAliveMillis = keepAliveMillis;
+        return this;
+    }
+
+    public ClientTuning compression(boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public ClientTuning compressionThresholdBytes(int compressionThresholdBytes) {
+        this.compressionThresholdBytes = compressionThresholdBytes;
+        return this;
+    }
+
+    public ClientTuning connectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        return this;
+    }
+
+    public ClientTuning socketTimeoutMillis(int socketTimeoutMillis) {
+        this.socketTimeoutMillis = socketTimeoutMillis;
+        return this;
+    }
+
+    public ClientTuning connectionRequestTimeoutMillis(int connectionRequestTimeoutMillis) {
+        this.connectionRequestTimeoutMillis = connectionRequestTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * How often the cluster's nodes are re-read from {@code _nodes/http}; {@code 0} keeps the configured hosts.
+     */
+    public ClientTuning sniffIntervalMillis(long sniffIntervalMillis) {
+        this.sniffIntervalMillis = sniffIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Time constant of the per-node response time average, see {@link NodeScoreboard}.
+     */
+    public ClientTuning latencyDecayMillis(long latencyDecayMillis) {
+        this.latencyDecayMillis = latencyDecayMillis;
+        return this;
+    }
+
+    public ClientTuning breaker(int failureThreshold, long openMillis) {
+        this.breakerFailureThreshold = failureThreshold;
+        this.breakerOpenMillis = openMillis;
+        return this;
+    }
+
+    /**
+     * Lower bound for the delay after which {@link HedgedSearches} sends a second search; {@code 0} turns hedging off.
+     */
+    public ClientTuning hedgeMinDelayMillis(long hedgeMinDelayMillis) {
+        this.hedgeMinDelayMillis = hedgeMinDelayMillis;
+        return this;
+    }
+
+    /**
+     * Format asked for in responses and used for document sources; {@code JSON}, {@code SMILE} or {@code CBOR}.
+     */
+    public ClientTuning contentType(XContentType contentType) {
+        if (contentType != XContentType.JSON && contentType != XContentType.SMILE && contentType != XContentType.CBOR) {
+            throw new IllegalArgumentException("Unsupported content type " + contentType + ", use json, smile or cbor");
+        }
+        this.contentType = contentType;
+        return this;
+    }
+
+    public List<HttpHost> getHosts() {
+        return hosts;
+    }
+
+    public int getMaxConnTotal() {
+        return maxConnTotal;
+    }
+
+    public int getMaxConnPerRoute() {
+        return maxConnPerRoute;
+    }
+
+    public int getIoThreadCount() {
+        return ioThreadCount;
+    }
+
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public int getCompressionThresholdBytes() {
+        return compressionThresholdBytes;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public int getSocketTimeoutMillis() {
+        return socketTimeoutMillis;
+    }
+
+    public int getConnectionRequestTimeoutMillis() {
+        return connectionRequestTimeoutMillis;
+    }
+
+    public long getSniffIntervalMillis() {
+        return sniffIntervalMillis;
+    }
+
+    public long getLatencyDecayMillis() {
+        return latencyDecayMillis;
+    }
+
+    public int getBreakerFailureThreshold() {
+        return breakerFailureThreshold;
+    }
+
+    public long getBreakerOpenMillis() {
+        return breakerOpenMillis;
+    }
+
+    public long getHedgeMinDelayMillis() {
+        return hedgeMinDelayMillis;
+    }
+
+    public XContentType getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public String toString() {
+        return "ClientTuning [hosts=" + hosts + ", maxConnTotal=" + maxConnTotal + ", maxConnPerRoute=" + maxConnPerRoute + ", ioThreadCount="
+            + ioThreadCount + ", keepAliveMillis=" + keepAliveMillis + ", compression=" + compression + ", connectTimeoutMillis="
+            + connectTimeoutMillis + ", socketTimeoutMillis=" + socketTimeoutMillis + ", connectionRequestTimeoutMillis="
+            + connectionRequestTimeoutMillis + ", sniffIntervalMillis=" + sniffIntervalMillis + ", latencyDecayMillis=" + latencyDecayMillis
+            + ", breakerFailureThreshold=" + breakerFailureThreshold + ", breakerOpenMillis=" + breakerOpenMillis + ", hedgeMinDelayMillis="
+            + hedgeMinDelayMillis + ", contentType=" + contentType + "]";
+    }
+}
@@ -0,0 +1,93 @@
+package elasticsearchclient.java.files.search.config;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.Optional;
+
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.query.StringQuery;
+import org.springframework.data.elasticsearch.repository.query.ElasticsearchQueryMethod;
+import org.springframework.data.elasticsearch.repository.query.ElasticsearchStringQuery;
+import org.springframework.data.elasticsearch.repository.support.ElasticsearchRepositoryFactory;
+import org.springframework.data.elasticsearch.repository.support.ElasticsearchRepositoryFactoryBean;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.core.NamedQueries;
+import org.springframework.data.repository.core.RepositoryMetadata;
+import org.springframework.data.repository.core.support.RepositoryFactorySupport;
+import org.springframework.data.repository.query.ParametersParameterAccessor;
+import org.springframework.data.repository.query.QueryLookupStrategy;
+import org.springframework.data.repository.query.QueryMethodEvaluationContextProvider;
+
+import elasticsearchclient.java.files.search.service.QueryTemplate;
+import elasticsearchclient.java.files.search.service.TemplateStringQuery;
+
+/**
+ * Repository factory bean compiling every {@code @Query} into a {@link QueryTemplate} when the repository is created.
+ * <p>
+ * Spring Data substitutes the parameters into the query string with a regular expression on every call; the
+ * repositories built here bind them into the compiled template instead, and a malformed query fails at startup rather
+ * than on its first call. Derived queries are left as they are.
+ */
+public class CompiledQueryRepositoryFactoryBean<T extends Repository<S, ID>, S, ID extends Serializable> extends ElasticsearchRepositoryFactoryBean<T, S, ID> {
+
+    private ElasticsearchOperations operations;
+
+    public CompiledQueryRepositoryFactoryBean(Class<? extends T> repositoryInterface) {
+        super(repositoryInterface);
+    }
+
+    @Override
+    public void setElasticsearchOperations(ElasticsearchOperations operations) {
+        super.setElasticsearchOperations(operations);
+        this.operations = operations;
+    }
+
+    @Override
+    protected RepositoryFactorySupport createRepositoryFactory() {
+        return new Factory(operations);
+    }
+
+    private static class Factory extends ElasticsearchRepositoryFactory {
+        private final ElasticsearchOperations operations;
+
+        Factory(ElasticsearchOperations operations) {
+            super(operations);
+            this.operations = operations;
+        }
+
+        @Override
+        protected Optional<QueryLookupStrategy> getQueryLookupStrategy(QueryLookupStrategy.Key key,
+            QueryMethodEvaluationContextProvider evaluationContextProvider) {
+            return super.getQueryLookupStrategy(key, evaluationContextProvider)
+                .map(delegate -> (Method method, RepositoryMetadata metadata, ProjectionFactory factory, NamedQueries namedQueries) -> {
+                    ElasticsearchQueryMethod queryMethod = new ElasticsearchQueryMethod(method, metadata, factory, operations.getElasticsearchConverter()
+                        .getMappingContext());
+                    if (queryMethod.hasAnnotatedQuery()) {
+                        return new CompiledStringQuery(queryMethod, operations, queryMethod.getAnnotatedQuery());
+                    }
+                    return delegate.resolveQuery(method, metadata, factory, namedQueries);
+                });
+        }
+    }
+
+    private static class CompiledStringQuery extends ElasticsearchStringQuery {
+        private final QueryTemplate template;
+
+        CompiledStringQuery(ElasticsearchQueryMethod queryMethod, ElasticsearchOperations operations, String query) {
+            super(queryMethod, operations, query);
+            this.template = QueryTemplate.of(query);
+        }
+
+        @Override
+        protected StringQuery createQuery(ParametersParameterAccessor accessor) {
+            Object[] arguments = new Object[accessor.getParameters()
+                .getBindableParameters()
+                .getNumberOfParameters()];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = accessor.getBindableValue(i);
+            }
+            return new TemplateStringQuery(template, arguments, accessor.getPageable(), accessor.getSort());
+        }
+    }
+}
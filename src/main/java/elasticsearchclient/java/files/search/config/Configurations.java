@@ -1,32 +1,111 @@
 package elasticsearchclient.java.files.search.config;
 
 import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.elasticsearch.client.ClientConfiguration;
-import org.springframework.data.elasticsearch.client.RestClients;
-import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
-import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.Environment;
 import org.springframework.data.elasticsearch.repository.config.EnableElasticsearchRepositories;
 
+import elasticsearchclient.java.files.search.service.BlockingCallExecutor;
+import elasticsearchclient.java.files.search.service.GeoShapeCache;
+import elasticsearchclient.java.files.search.service.GeoTileHeatmap;
+import elasticsearchclient.java.files.search.service.IngestionGovernor;
+import elasticsearchclient.java.files.search.service.MultiSearchBatcher;
+import elasticsearchclient.java.files.search.service.ParaTermCounts;
+import elasticsearchclient.java.files.search.service.SearchResultCache;
+import elasticsearchclient.java.files.search.service.WriteBehindIndexer;
+
 @Configuration
-@EnableElasticsearchRepositories(basePackages = "elasticsearchclient.java.files.search.repository")
+@EnableElasticsearchRepositories(basePackages = "elasticsearchclient.java.files.search.repository", repositoryFactoryBeanClass = CompiledQueryRepositoryFactoryBean.class)
 @ComponentScan(basePackages = { "elasticsearchclient.java.files.search.service" })
+@PropertySource(value = "classpath:" + ClientTuning.PROPERTIES_FILE, ignoreResourceNotFound = true)
 public class Configurations {
 
+    @Autowired
+    private Environment environment;
+
+    @Bean
+    public ClientConnectionPool clientConnectionPool() {
+        return new ClientConnectionPool("high-level", ClientTuning.from(environment));
+    }
+
     @Bean
     RestHighLevelClient client() {
-        ClientConfiguration clientConfiguration = ClientConfiguration.builder()
-            .connectedTo("localhost:9200")
-            .build();
+        RestHighLevelClient client = new RestHighLevelClient(clientConnectionPool().restClientBuilder());
+        clientConnectionPool().attach(client.getLowLevelClient());
+        return client;
+    }
+
+    @Bean
+    public HedgedSearches hedgedSearches() {
+        return new HedgedSearches(client(), clientConnectionPool().getTuning()
+            .getHedgeMinDelayMillis());
+    }
+
+    @Bean
+    public SearchResultCache searchResultCache() {
+        return SearchResultCache.from(environment);
+    }
 
-        return RestClients.create(clientConfiguration)
-            .rest();
+    @Bean
+    public CachingElasticsearchRestTemplate elasticsearchTemplate() {
+        return new CachingElasticsearchRestTemplate(client(), searchResultCache(),
+            environment.getProperty("elasticsearch.query-templates.stored", Boolean.class, false));
+    }
+
+    @Bean
+    public MultiSearchBatcher multiSearchBatcher() {
+        return MultiSearchBatcher.from(client(), elasticsearchTemplate().getElasticsearchConverter(), environment);
+    }
+
+    @Bean
+    public IngestionGovernor ingestionGovernor() {
+        return IngestionGovernor.from(environment);
+    }
+
+    /**
+     * Where callers run blocking repository and client calls, on virtual threads when the JVM has them.
+     */
+    @Bean
+    public BlockingCallExecutor blockingCallExecutor() {
+        return BlockingCallExecutor.from(environment);
+    }
+
+    /**
+     * Only created, with its log and drainer thread, when something asks for write-behind saves.
+     */
+    @Bean
+    @Lazy
+    public WriteBehindIndexer writeBehindIndexer() {
+        return WriteBehindIndexer.from(client(), elasticsearchTemplate(), environment);
+    }
+
+    /**
+     * Only created, with its seeding read of the index, when something asks for the counts.
+     */
+    @Bean
+    @Lazy
+    public ParaTermCounts paraTermCounts() {
+        ParaTermCounts counts = ParaTermCounts.from(client(), elasticsearchTemplate(), environment);
+        elasticsearchTemplate().addWriteListener(counts);
+        return counts;
+    }
+
+    /**
+     * Only created, with its first load of the geo index, when something asks for cached geo lookups.
+     */
+    @Bean
+    @Lazy
+    public GeoShapeCache geoShapeCache() {
+        return GeoShapeCache.from(client(), environment);
     }
 
     @Bean
-    public ElasticsearchOperations elasticsearchTemplate() {
-        return new ElasticsearchRestTemplate(client());
+    public GeoTileHeatmap geoTileHeatmap() {
+        return GeoTileHeatmap.from(client(), environment);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,33 @@
+package elasticsearchclient.java.files.search.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.Environment;
+
+import elasticsearchclient.java.files.search.repository.EmbeddedParaRepository;
+import elasticsearchclient.java.files.search.repository.ParaRepository;
+import elasticsearchclient.java.files.search.service.EmbeddedParaIndex;
+
+/**
+ * Serves {@link ParaRepository} from an in-process Lucene index instead of a cluster; use in place of
+ * {@link Configurations} for local reference data and for tests that should run without Elasticsearch.
+ */
+@Configuration
+@PropertySource(value = "classpath:" + ClientTuning.PROPERTIES_FILE, ignoreResourceNotFound = true)
+public class EmbeddedConfigurations {
+
+    @Autowired
+    private Environment environment;
+
+    @Bean
+    public EmbeddedParaIndex embeddedParaIndex() {
+        return EmbeddedParaIndex.from(environment);
+    }
+
+    @Bean
+    public ParaRepository paraRepository() {
+        return new EmbeddedParaRepository(embeddedParaIndex());
+    }
+}
@@ -0,0 +1,188 @@
+package elasticsearchclient.java.files.search.config;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+
+/**
+ * Searches that are sent a second time, to another node, when the first copy is slow.
+ * <p>
+ * A search that has not answered after the current p95 search latency, but at least {@code minDelayMillis}, is
+ * duplicated to a different node chosen by the client's {@link NodeScoreboard}; the first response wins and the other
+ * request is cancelled. One copy failing while the other is still running does not fail the search. The p95 is taken
+ * from the latencies of answered copies and refreshed every {@value #REFRESH_SAMPLES} searches, over a window of
+ * roughly the last {@value #WINDOW_SAMPLES}. Only use it for reads: a duplicated write would be applied twice.
+ */
+public class HedgedSearches implements AutoCloseable {
+
+    private static final int REFRESH_SAMPLES = 100;
+    private static final int WINDOW_SAMPLES = 10_000;
+    private static final long MAX_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final RestHighLevelClient client;
+    private final long minDelayMicros;
+    private final ScheduledExecutorService timer;
+    private final RecordedHistogram latency = new RecordedHistogram(MAX_MICROS);
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private volatile long p95Micros;
+
+    /**
+     * @param minDelayMillis lower bound of the hedge delay; {@code 0} sends every search once
+     */
+    public HedgedSearches(RestHighLevelClient client, long minDelayMillis) {
+        this.client = client;
+        this.minDelayMicros = TimeUnit.MILLISECONDS.toMicros(minDelayMillis);
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hedged-searches");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public SearchResponse search(SearchRequest request) throws IOException {
+        try {
+            return searchAsync(request).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                .interrupt();
+            throw new IOException("Interrupted while searching", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    public CompletableFuture<SearchResponse> searchAsync(SearchRequest request) {
+        searches.incrementAndGet();
+        CompletableFuture<SearchResponse> result = new CompletableFuture<>();
+        Copies copies = new Copies(result);
+        Cancellable primary = client.searchAsync(request, RequestOptions.DEFAULT, new Copy(copies, false));
+        HttpHost primaryHost = NodeScoreboard.lastSelected();
+        if (minDelayMicros <= 0) {
+            return result;
+        }
+        ScheduledFuture<?> hedge = timer.schedule(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            hedges.incrementAndGet();
+            copies.outstanding.incrementAndGet();
+            Cancellable second = NodeScoreboard.excluding(primaryHost,
+                () -> client.searchAsync(request, RequestOptions.DEFAULT, new Copy(copies, true)));
+            result.whenComplete((response, failure) -> second.cancel());
+        }, hedgeDelayMicros(), TimeUnit.MICROSECONDS);
+        result.whenComplete((response, failure) -> {
+            hedge.cancel(false);
+            primary.cancel();
+        });
+        return result;
+    }
+
+    /**
+     * Current delay before a search is hedged.
+     */
+    public long getHedgeDelayMillis() {
+        return TimeUnit.MICROSECONDS.toMillis(hedgeDelayMicros());
+    }
+
+    public long getSearchCount() {
+        return searches.get();
+    }
+
+    /**
+     * Searches that were sent a second time.
+     */
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+
+    /**
+     * Hedged copies that answered first.
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.get();
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private long hedgeDelayMicros() {
+        return Math.max(minDelayMicros, p95Micros);
+    }
+
+    private void record(long micros) {
+        latency.record(micros);
+        if (samples.incrementAndGet() % REFRESH_SAMPLES == 0) {
+            p95Micros = latency.windowPercentile(95, WINDOW_SAMPLES);
+        }
+    }
+
+    /**
+     * The copies of one search.
+     */
+    private static class Copies {
+        private final CompletableFuture<SearchResponse> result;
+        private final AtomicInteger outstanding = new AtomicInteger(1);
+        private final AtomicBoolean answered = new AtomicBoolean();
+
+        Copies(CompletableFuture<SearchResponse> result) {
+            this.result = result;
+        }
+    }
+
+    private class Copy implements ActionListener<SearchResponse> {
+        private final Copies copies;
+        private final boolean hedge;
+        private final long start = System.nanoTime();
+
+        Copy(Copies copies, boolean hedge) {
+            this.copies = copies;
+            this.hedge = hedge;
+        }
+
+        @Override
+        public void onResponse(SearchResponse response) {
+            record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            if (copies.answered.compareAndSet(false, true)) {
+                // counted before the caller can see the response
+                if (hedge) {
+                    hedgeWins.incrementAndGet();
+                }
+                copies.result.complete(response);
+            }
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            if (copies.outstanding.decrementAndGet() == 0) {
+                copies.result.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package elasticsearchclient.java.files.search.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.NodeSelector;
+
+/**
+ * Scores every node a REST client talks to and picks the target of each request from those scores, replacing the
+ * client's plain round robin.
+ * <p>
+ * A node's score is its EWMA response time multiplied by its outstanding requests plus one; the EWMA decays with time
+ * rather than per sample, and an idle node's score decays towards zero so it is tried again once it may have
+ * recovered. Each request goes to the better of two randomly drawn nodes ("power of two choices"), which keeps load
+ * off slow nodes without herding everything onto the single fastest one. The client is left only that node, since it
+ * rotates whatever it is left by a counter of its own; the other admitted nodes, best first, are kept as the
+ * {@link #fallbacks(HttpHost) fallbacks} of a request that cannot connect to it. A hedged copy has none.
+ * <p>
+ * Every node also has a circuit breaker: after {@code failureThreshold} consecutive failures (connection errors,
+ * timeouts, {@code 502}, {@code 503} and {@code 504}) the node is ejected for {@code openMillis}, then the next
+ * request sent to it is its probe and no other is admitted until the probe answers or is cancelled. A successful probe closes the breaker; a failed one ejects the node again for twice as long,
+ * up to a minute. When every node is ejected the one due back soonest is used.
+ */
+public class NodeScoreboard implements NodeSelector {
+
+    private static final long MAX_OPEN_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long FAILURE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final ThreadLocal<HttpHost> EXCLUDED = new ThreadLocal<>();
+    private static final ThreadLocal<HttpHost> SELECTED = new ThreadLocal<>();
+    private static final ThreadLocal<List<HttpHost>> FALLBACKS = new ThreadLocal<>();
+
+    public enum BreakerState {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final long decayNanos;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier clock;
+    private final Map<HttpHost, NodeStats> nodes = new ConcurrentHashMap<>();
+
+    public NodeScoreboard(long decayMillis, int failureThreshold, long openMillis) {
+        this(decayMillis, failureThreshold, openMillis, System::nanoTime);
+    }
+
+    NodeScoreboard(long decayMillis, int failureThreshold, long openMillis, LongSupplier clock) {
+        this.decayNanos = TimeUnit.MILLISECONDS.toNanos(decayMillis);
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.clock = clock;
+    }
+
+    /**
+     * Runs {@code request} so that the node it selects is not {@code host} unless no other is available; used to send a
+     * hedged request somewhere else. The request has to pick its node on the calling thread, as
+     * {@code performRequestAsync} and the high level client's async methods do.
+     */
+    public static <T> T excluding(HttpHost host, Supplier<T> request) {
+        HttpHost previous = EXCLUDED.get();
+        EXCLUDED.set(host);
+        try {
+            return request.get();
+        } finally {
+            EXCLUDED.set(previous);
+        }
+    }
+
+    /**
+     * Host chosen by the last request sent from the calling thread.
+     */
+    public static HttpHost lastSelected() {
+        return SELECTED.get();
+    }
+
+    @Override
+    public void select(Iterable<Node> candidates) {
+        long now = clock.getAsLong();
+        List<Node> allowed = new ArrayList<>();
+        Node soonest = null;
+        for (Node node : candidates) {
+            NodeStats stats = stats(node.getHost());
+            if (stats.admits(now)) {
+                allowed.add(node);
+            } else if (soonest == null || stats.reopenAt < stats(soonest.getHost()).reopenAt) {
+                soonest = node;
+            }
+        }
+        HttpHost excluded = EXCLUDED.get();
+        if (excluded != null && allowed.size() > 1) {
+            allowed.removeIf(node -> node.getHost()
+                .equals(excluded));
+        }
+
+        Node chosen;
+        if (allowed.isEmpty()) {
+            chosen = soonest;
+        } else if (allowed.size() == 1) {
+            chosen = allowed.get(0);
+        } else {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(allowed.size());
+            int second = random.nextInt(allowed.size() - 1);
+            if (second >= first) {
+                second++;
+            }
+            Node a = allowed.get(first);
+            Node b = allowed.get(second);
+            chosen = stats(a.getHost()).score(now) <= stats(b.getHost()).score(now) ? a : b;
+        }
+        if (chosen == null) {
+            return;
+        }
+        SELECTED.set(chosen.getHost());
+        FALLBACKS.set(excluded == null ? fallbacks(allowed, chosen, now) : Collections.emptyList());
+        // the client rotates what is left by its own counter, which only leaves a single node where it was
+        for (Iterator<Node> iterator = candidates.iterator(); iterator.hasNext();) {
+            if (iterator.next() != chosen) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private List<HttpHost> fallbacks(List<Node> allowed, Node chosen, long now) {
+        Map<HttpHost, Double> scores = new HashMap<>();
+        for (Node node : allowed) {
+            if (node != chosen) {
+                scores.put(node.getHost(), stats(node.getHost()).score(now));
+            }
+        }
+        List<HttpHost> fallbacks = new ArrayList<>(scores.keySet());
+        fallbacks.sort(Comparator.comparing(scores::get));
+        return fallbacks;
+    }
+
+    /**
+     * Hosts to send a request to, in turn, when it cannot connect to {@code target}, the node {@link #select} last
+     * picked on the calling thread: the other admitted nodes, best first. Empty for a hedged copy, or when the request
+     * was not routed by this scoreboard.
+     */
+    List<HttpHost> fallbacks(HttpHost target) {
+        List<HttpHost> fallbacks = FALLBACKS.get();
+        FALLBACKS.remove();
+        return fallbacks != null && target.equals(SELECTED.get()) ? fallbacks : Collections.<HttpHost> emptyList();
+    }
+
+    void started(HttpHost host) {
+        stats(host).started(clock.getAsLong());
+    }
+
+    void finished(HttpHost host, long nanos, boolean failed) {
+        stats(host).finished(clock.getAsLong(), nanos, failed);
+    }
+
+    void cancelled(HttpHost host) {
+        stats(host).cancelled();
+    }
+
+    /**
+     * EWMA response time of {@code host} in milliseconds, as of its last response.
+     */
+    public double getLatencyMillis(HttpHost host) {
+        return stats(host).ewmaNanos / 1_000_000.0;
+    }
+
+    public int getOutstanding(HttpHost host) {
+        return stats(host).outstanding;
+    }
+
+    public BreakerState getBreakerState(HttpHost host) {
+        return stats(host).state;
+    }
+
+    public double getScore(HttpHost host) {
+        return stats(host).score(clock.getAsLong());
+    }
+
+    private NodeStats stats(HttpHost host) {
+        return nodes.computeIfAbsent(host, ignored -> new NodeStats());
+    }
+
+    private class NodeStats {
+        private double ewmaNanos;
+        private long lastSampleAt;
+        private int outstanding;
+        private int consecutiveFailures;
+        private BreakerState state = BreakerState.CLOSED;
+        private long reopenAt;
+        private long currentOpenNanos = openNanos;
+        private boolean probing;
+
+        synchronized boolean admits(long now) {
+            return state == BreakerState.CLOSED || state == BreakerState.OPEN && now >= reopenAt && !probing;
+        }
+
+        synchronized double score(long now) {
+            double latency = ewmaNanos;
+            if (latency > 0 && now > lastSampleAt) {
+                latency *= Math.exp(-(double) (now - lastSampleAt) / decayNanos);
+            }
+            return latency * (outstanding + 1);
+        }
+
+        /**
+         * Counts a request actually sent to the node; the first one sent once an open breaker is due is its probe.
+         */
+        synchronized void started(long now) {
+            outstanding++;
+            if (state == BreakerState.OPEN && now >= reopenAt) {
+                state = BreakerState.HALF_OPEN;
+                probing = true;
+            }
+        }
+
+        synchronized void cancelled() {
+            outstanding = Math.max(0, outstanding - 1);
+            probing = false;
+            if (state == BreakerState.HALF_OPEN) {
+                state = BreakerState.OPEN;
+            }
+        }
+
+        synchronized void finished(long now, long nanos, boolean failed) {
+            outstanding = Math.max(0, outstanding - 1);
+            if (failed) {
+                // a node refusing connections answers fast; never let that look like a good latency
+                nanos = Math.max(nanos, Math.max(2 * (long) ewmaNanos, FAILURE_PENALTY_NANOS));
+            }
+            if (lastSampleAt == 0 || ewmaNanos == 0) {
+                ewmaNanos = nanos;
+            } else {
+                double weight = Math.exp(-(double) Math.max(0, now - lastSampleAt) / decayNanos);
+                ewmaNanos = ewmaNanos * weight + nanos * (1 - weight);
+            }
+            lastSampleAt = now;
+
+            if (!failed) {
+                consecutiveFailures = 0;
+                state = BreakerState.CLOSED;
+                currentOpenNanos = openNanos;
+                probing = false;
+                return;
+            }
+            consecutiveFailures++;
+            if (state == BreakerState.HALF_OPEN) {
+                currentOpenNanos = Math.min(MAX_OPEN_NANOS, currentOpenNanos * 2);
+                open(now);
+            } else if (state == BreakerState.CLOSED && consecutiveFailures >= failureThreshold) {
+                open(now);
+            }
+        }
+
+        private void open(long now) {
+            state = BreakerState.OPEN;
+            reopenAt = now + currentOpenNanos;
+            probing = false;
+        }
+    }
+}
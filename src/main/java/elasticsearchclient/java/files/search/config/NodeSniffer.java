@@ -0,0 +1,106 @@
+package elasticsearchclient.java.files.search.config;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Keeps a REST client's node list in step with the cluster by reading {@code _nodes/http} through the client itself,
+ * once at start and then every {@code intervalMillis}.
+ * <p>
+ * The 7.6 client's own sniffer is a separate artifact this project does not ship, and only the publish addresses are
+ * needed. A failed sniff keeps the current nodes; so does one that returns no node with HTTP enabled.
+ */
+public class NodeSniffer implements Closeable {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    // overrides a binary Accept header the client may send by default
+    private static final RequestOptions JSON_RESPONSE = RequestOptions.DEFAULT.toBuilder()
+        .addHeader(HttpHeaders.ACCEPT, "application/json")
+        .build();
+
+    private final RestClient client;
+    private final ScheduledExecutorService timer;
+    private final AtomicLong failures = new AtomicLong();
+
+    public NodeSniffer(RestClient client, long intervalMillis) {
+        this.client = client;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "node-sniffer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::sniffQuietly, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads the nodes now and hands them to the client; returns what was found.
+     */
+    public List<HttpHost> sniff() throws IOException {
+        String scheme = client.getNodes()
+            .get(0)
+            .getHost()
+            .getSchemeName();
+        Request request = new Request("GET", "/_nodes/http");
+        request.addParameter("filter_path", "nodes.*.http.publish_address");
+        request.setOptions(JSON_RESPONSE);
+        Response response = client.performRequest(request);
+        List<HttpHost> hosts = new ArrayList<>();
+        try (InputStream body = response.getEntity()
+            .getContent()) {
+            JsonNode nodes = JSON.readTree(body)
+                .path("nodes");
+            for (Iterator<JsonNode> iterator = nodes.elements(); iterator.hasNext();) {
+                String address = iterator.next()
+                    .path("http")
+                    .path("publish_address")
+                    .asText(null);
+                if (address != null) {
+                    // "hostname/ip:port" when the node has a name, "ip:port" otherwise
+                    hosts.add(HttpHost.create(scheme + "://" + address.substring(address.lastIndexOf('/') + 1)));
+                }
+            }
+        }
+        if (!hosts.isEmpty()) {
+            List<Node> nodes = new ArrayList<>();
+            hosts.forEach(host -> nodes.add(new Node(host)));
+            client.setNodes(nodes);
+        }
+        return hosts;
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private void sniffQuietly() {
+        try {
+            sniff();
+        } catch (IOException | RuntimeException e) {
+            failures.incrementAndGet();
+        }
+    }
+}
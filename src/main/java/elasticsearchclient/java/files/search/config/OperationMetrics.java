@@ -0,0 +1,204 @@
+package elasticsearchclient.java.files.search.config;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Counters and latency histograms of one operation, such as {@code search} or {@code bulk}, on one index.
+ * <p>
+ * Wall-clock latency is measured around the HTTP exchange. {@code took}, the time Elasticsearch reports having spent,
+ * is recorded for the responses that carry it; the gap between the two is time spent queueing, on the network and in
+ * the HTTP layers.
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+
+    private static final long MAX_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final long MAX_BYTES = 1L << 31;
+
+    private final String operation;
+    private final String index;
+
+    private final RecordedHistogram latency = new RecordedHistogram(MAX_MICROS);
+    private final RecordedHistogram took = new RecordedHistogram(MAX_MICROS);
+    private final RecordedHistogram requestBytes = new RecordedHistogram(MAX_BYTES);
+    private final RecordedHistogram responseBytes = new RecordedHistogram(MAX_BYTES);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder requestBytesTotal = new LongAdder();
+    private final LongAdder responseBytesTotal = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    OperationMetrics(String operation, String index) {
+        this.operation = operation;
+        this.index = index;
+    }
+
+    /**
+     * @param requestBytes the request body size, or a negative value when it is not known
+     */
+    public void started(long requestBytes) {
+        inFlight.incrementAndGet();
+        if (requestBytes >= 0) {
+            this.requestBytes.record(requestBytes);
+            requestBytesTotal.add(requestBytes);
+        }
+    }
+
+    /**
+     * @param tookMillis the {@code took} of the response, or a negative value when it had none
+     */
+    public void completed(long latencyNanos, long responseBytes, long tookMillis, boolean error) {
+        inFlight.decrementAndGet();
+        count.increment();
+        latency.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        if (responseBytes >= 0) {
+            this.responseBytes.record(responseBytes);
+            responseBytesTotal.add(responseBytes);
+        }
+        if (tookMillis >= 0) {
+            took.record(TimeUnit.MILLISECONDS.toMicros(tookMillis));
+        }
+        if (error) {
+            errors.increment();
+        }
+    }
+
+    public void failed(long latencyNanos, boolean timeout) {
+        inFlight.decrementAndGet();
+        count.increment();
+        latency.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        if (timeout) {
+            timeouts.increment();
+        } else {
+            errors.increment();
+        }
+    }
+
+    public void cancelled() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * The wall-clock latency histogram in microseconds, for exporters that want more than the fixed percentiles.
+     */
+    public Histogram getLatencyHistogram() {
+        return latency.snapshot();
+    }
+
+    public Histogram getTookHistogram() {
+        return took.snapshot();
+    }
+
+    @Override
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public String getIndex() {
+        return index;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public long getLatencyP50Micros() {
+        return latency.percentile(50);
+    }
+
+    @Override
+    public long getLatencyP99Micros() {
+        return latency.percentile(99);
+    }
+
+    @Override
+    public long getLatencyP999Micros() {
+        return latency.percentile(99.9);
+    }
+
+    @Override
+    public long getLatencyMaxMicros() {
+        return latency.maxValue();
+    }
+
+    @Override
+    public long getTookCount() {
+        return took.totalCount();
+    }
+
+    @Override
+    public long getTookP50Micros() {
+        return took.percentile(50);
+    }
+
+    @Override
+    public long getTookP99Micros() {
+        return took.percentile(99);
+    }
+
+    @Override
+    public long getTookP999Micros() {
+        return took.percentile(99.9);
+    }
+
+    @Override
+    public long getRequestBytesTotal() {
+        return requestBytesTotal.sum();
+    }
+
+    @Override
+    public long getRequestBytesP99() {
+        return requestBytes.percentile(99);
+    }
+
+    @Override
+    public long getResponseBytesTotal() {
+        return responseBytesTotal.sum();
+    }
+
+    @Override
+    public long getResponseBytesP99() {
+        return responseBytes.percentile(99);
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        took.reset();
+        requestBytes.reset();
+        responseBytes.reset();
+        count.reset();
+        errors.reset();
+        timeouts.reset();
+        requestBytesTotal.reset();
+        responseBytesTotal.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "OperationMetrics [operation=" + operation + ", index=" + index + ", count=" + getCount() + ", errors=" + getErrorCount() + ", timeouts="
+            + getTimeoutCount() + ", p50=" + getLatencyP50Micros() + "us, p99=" + getLatencyP99Micros() + "us, p999=" + getLatencyP999Micros() + "us]";
+    }
+}
@@ -0,0 +1,45 @@
+package elasticsearchclient.java.files.search.config;
+
+/**
+ * JMX view of one operation on one index, see {@link OperationMetrics}. Latencies are in microseconds.
+ */
+public interface OperationMetricsMBean {
+
+    String getOperation();
+
+    String getIndex();
+
+    long getCount();
+
+    long getErrorCount();
+
+    long getTimeoutCount();
+
+    int getInFlight();
+
+    long getLatencyP50Micros();
+
+    long getLatencyP99Micros();
+
+    long getLatencyP999Micros();
+
+    long getLatencyMaxMicros();
+
+    long getTookCount();
+
+    long getTookP50Micros();
+
+    long getTookP99Micros();
+
+    long getTookP999Micros();
+
+    long getRequestBytesTotal();
+
+    long getRequestBytesP99();
+
+    long getResponseBytesTotal();
+
+    long getResponseBytesP99();
+
+    void reset();
+}
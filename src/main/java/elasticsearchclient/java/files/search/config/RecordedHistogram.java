@@ -0,0 +1,74 @@
+package elasticsearchclient.java.files.search.config;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * HDR histogram that is written wait-free and without allocation from the IO threads and read, rarely, by the
+ * metrics exporter. Values above the trackable range are clamped to it.
+ */
+class RecordedHistogram {
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final long highestTrackableValue;
+    private final Recorder recorder;
+    private final Histogram total;
+    private Histogram interval;
+
+    RecordedHistogram(long highestTrackableValue) {
+        this.highestTrackableValue = highestTrackableValue;
+        this.recorder = new Recorder(highestTrackableValue, SIGNIFICANT_DIGITS);
+        this.total = new Histogram(highestTrackableValue, SIGNIFICANT_DIGITS);
+    }
+
+    void record(long value) {
+        recorder.recordValue(Math.max(0, Math.min(value, highestTrackableValue)));
+    }
+
+    /**
+     * A copy of everything recorded since creation or the last {@link #reset()}.
+     */
+    synchronized Histogram snapshot() {
+        return update().copy();
+    }
+
+    synchronized long percentile(double percentile) {
+        return update().getValueAtPercentile(percentile);
+    }
+
+    /**
+     * The value at {@code percentile} of the current window, which starts over once it holds {@code windowCount}
+     * values; read and reset under one lock, so no value recorded in between is lost.
+     */
+    synchronized long windowPercentile(double percentile, long windowCount) {
+        Histogram window = update();
+        long value = window.getValueAtPercentile(percentile);
+        if (window.getTotalCount() >= windowCount) {
+            total.reset();
+        }
+        return value;
+    }
+
+    synchronized long maxValue() {
+        return update().getMaxValue();
+    }
+
+    synchronized long totalCount() {
+        return update().getTotalCount();
+    }
+
+    synchronized void reset() {
+        recorder.reset();
+        total.reset();
+    }
+
+    /**
+     * Folds the values recorded since the last call into the running total; callers hold the lock.
+     */
+    private Histogram update() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        return total;
+    }
+}
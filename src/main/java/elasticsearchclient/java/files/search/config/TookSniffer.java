@@ -0,0 +1,57 @@
+package elasticsearchclient.java.files.search.config;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Picks the top level {@code "took":<millis>} out of a response body as its bytes stream past, without buffering or
+ * allocating. Search, scroll, msearch and bulk responses carry it near the start, after the scroll id if there is one,
+ * so only the first {@value #LIMIT} bytes are looked at.
+ */
+class TookSniffer {
+
+    private static final int LIMIT = 8192;
+    private static final byte[] KEY = { '"', 't', 'o', 'o', 'k', '"', ':' };
+
+    private int matched;
+    private int seen;
+    private boolean inValue;
+    private boolean done;
+    private long took = -1;
+
+    void accept(ByteBuffer buffer, int from, int to) {
+        for (int i = from; i < to && !done; i++) {
+            accept(buffer.get(i));
+        }
+    }
+
+    void accept(byte[] bytes) {
+        for (int i = 0; i < bytes.length && !done; i++) {
+            accept(bytes[i]);
+        }
+    }
+
+    /**
+     * The {@code took} in milliseconds, or {@code -1} when the body had none.
+     */
+    long getTook() {
+        return took;
+    }
+
+    private void accept(byte b) {
+        if (++seen > LIMIT) {
+            done = true;
+        } else if (inValue) {
+            if (b >= '0' && b <= '9') {
+                took = (took < 0 ? 0 : took * 10) + (b - '0');
+            } else if (took >= 0 || b != ' ') {
+                done = true;
+            }
+        } else if (b == KEY[matched]) {
+            if (++matched == KEY.length) {
+                inValue = true;
+            }
+        } else {
+            matched = b == KEY[0] ? 1 : 0;
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package elasticsearchclient.java.files.search.config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.RequestLine;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Sits between the {@code RestClient} and the Apache async client it drives to count the requests in flight, record
+ * {@link ClientMetrics} and, when enabled, compress traffic: request bodies above a size threshold are gzipped,
+ * gzipped responses are asked for and inflated before the {@code RestClient} reads them. The 7.6 REST client has no
+ * compression support of its own. Response times and failures per target node are reported to the
+ * {@link NodeScoreboard} that picks the nodes, and a request that cannot connect to its node is sent to the
+ * scoreboard's fallbacks in turn.
+ */
+class TunedHttpAsyncClient extends CloseableHttpAsyncClient {
+
+    private static final String GZIP = "gzip";
+
+    private final CloseableHttpAsyncClient delegate;
+    private final boolean compression;
+    private final int thresholdBytes;
+    private final ClientMetrics metrics;
+    private final NodeScoreboard scoreboard;
+    private final Runnable onClose;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    TunedHttpAsyncClient(CloseableHttpAsyncClient delegate, boolean compression, int thresholdBytes, ClientMetrics metrics,
+        NodeScoreboard scoreboard, Runnable onClose) {
+        this.delegate = delegate;
+        this.compression = compression;
+        this.thresholdBytes = thresholdBytes;
+        this.metrics = metrics;
+        this.scoreboard = scoreboard;
+        this.onClose = onClose;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public <T> Future<T> execute(HttpAsyncRequestProducer requestProducer, HttpAsyncResponseConsumer<T> responseConsumer, HttpContext context,
+        FutureCallback<T> callback) {
+        ResponseFuture<T> future = new ResponseFuture<>(callback);
+        HttpAsyncRequestProducer producer;
+        HttpRequest request;
+        try {
+            producer = compression ? compress(requestProducer) : requestProducer;
+            request = producer.generateRequest();
+        } catch (Exception e) {
+            future.failed(e);
+            return future;
+        }
+        HttpHost target = producer.getTarget();
+        send(producer, request, responseConsumer, context, future, scoreboard.fallbacks(target)
+            .iterator());
+        return future;
+    }
+
+    private <T> void send(HttpAsyncRequestProducer producer, HttpRequest request, HttpAsyncResponseConsumer<T> responseConsumer,
+        HttpContext context, ResponseFuture<T> future, Iterator<HttpHost> fallbacks) {
+        OperationMetrics operation = operationMetrics(request);
+        operation.started(contentLength(request));
+        inFlight.incrementAndGet();
+        HttpHost target = producer.getTarget();
+        scoreboard.started(target);
+        Exchange<T> exchange = new Exchange<>(responseConsumer, future, operation, target, request, context, fallbacks);
+        delegate.execute(producer, exchange, context, exchange);
+    }
+
+    private OperationMetrics operationMetrics(HttpRequest request) {
+        if (request instanceof HttpUriRequest) {
+            HttpUriRequest uriRequest = (HttpUriRequest) request;
+            return metrics.forRequest(uriRequest.getMethod(), uriRequest.getURI()
+                .getRawPath());
+        }
+        RequestLine line = request.getRequestLine();
+        return metrics.forRequest(line.getMethod(), line.getUri());
+    }
+
+    private static long contentLength(HttpRequest request) {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            return entity == null ? 0 : entity.getContentLength();
+        }
+        return 0;
+    }
+
+    private static boolean isTimeout(Exception e) {
+        return e instanceof SocketTimeoutException || e instanceof ConnectTimeoutException || e instanceof TimeoutException;
+    }
+
+    /**
+     * Whether {@code e} means no connection was made, so the request never reached the node and can go to another.
+     */
+    private static boolean isConnectFailure(Exception e) {
+        return e instanceof ConnectException || e instanceof ConnectTimeoutException || e instanceof NoRouteToHostException
+            || e instanceof UnknownHostException;
+    }
+
+    /**
+     * Wraps the {@code RestClient}'s response consumer and callback, and the content decoder, of one request so its
+     * response bytes and {@code took} are seen as they are read. Measuring a request allocates this, its
+     * {@link TookSniffer} and the {@link ResponseFuture} with its {@code CompletableFuture}, all of fixed size.
+     * <p>
+     * When the node cannot be connected to, the request is sent to the next of its scoreboard fallbacks with the same
+     * consumer and future, so the {@code RestClient} sees a single exchange; it still reports the node it picked as
+     * the response's host.
+     */
+    private class Exchange<T> implements HttpAsyncResponseConsumer<T>, FutureCallback<T>, ContentDecoder {
+        private final HttpAsyncResponseConsumer<T> consumer;
+        private final ResponseFuture<T> future;
+        private final OperationMetrics operation;
+        private final HttpHost target;
+        private final HttpRequest request;
+        private final HttpContext context;
+        private final Iterator<HttpHost> fallbacks;
+        private final long start = System.nanoTime();
+        private final TookSniffer took = new TookSniffer();
+        private ContentDecoder decoder;
+        private long responseBytes;
+        private int status;
+        private boolean gzipped;
+        private boolean finished;
+        private volatile boolean handedOver;
+
+        Exchange(HttpAsyncResponseConsumer<T> consumer, ResponseFuture<T> future, OperationMetrics operation, HttpHost target,
+            HttpRequest request, HttpContext context, Iterator<HttpHost> fallbacks) {
+            this.consumer = consumer;
+            this.future = future;
+            this.operation = operation;
+            this.target = target;
+            this.request = request;
+            this.context = context;
+            this.fallbacks = fallbacks;
+        }
+
+        private synchronized boolean finish() {
+            boolean first = !finished;
+            finished = true;
+            return first;
+        }
+
+        @Override
+        public void responseReceived(HttpResponse response) throws IOException, HttpException {
+            status = response.getStatusLine()
+                .getStatusCode();
+            Header encoding = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+            gzipped = encoding != null && GZIP.equalsIgnoreCase(encoding.getValue());
+            consumer.responseReceived(response);
+        }
+
+        @Override
+        public void consumeContent(ContentDecoder decoder, IOControl ioControl) throws IOException {
+            this.decoder = decoder;
+            consumer.consumeContent(this, ioControl);
+        }
+
+        @Override
+        public int read(ByteBuffer destination) throws IOException {
+            int position = destination.position();
+            int read = decoder.read(destination);
+            if (read > 0) {
+                responseBytes += read;
+                if (!gzipped) {
+                    took.accept(destination, position, position + read);
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public boolean isCompleted() {
+            return decoder.isCompleted();
+        }
+
+        @Override
+        public void responseCompleted(HttpContext context) {
+            consumer.responseCompleted(context);
+        }
+
+        /**
+         * Both the consumer and the callback side of the exchange are told about a failure, through this one method.
+         */
+        @Override
+        public void failed(Exception ex) {
+            if (!finish()) {
+                return;
+            }
+            inFlight.decrementAndGet();
+            long nanos = System.nanoTime() - start;
+            operation.failed(nanos, isTimeout(ex));
+            scoreboard.finished(target, nanos, true);
+            if (status == 0 && isConnectFailure(ex) && fallbacks.hasNext() && !future.isDone()) {
+                // the consumer has seen nothing yet; it moves to the next exchange, which closes it instead
+                handedOver = true;
+                send(HttpAsyncMethods.create(fallbacks.next(), request), request, consumer, context, future, fallbacks);
+                return;
+            }
+            consumer.failed(ex);
+            future.failed(ex);
+        }
+
+        @Override
+        public Exception getException() {
+            return consumer.getException();
+        }
+
+        @Override
+        public T getResult() {
+            return consumer.getResult();
+        }
+
+        @Override
+        public boolean isDone() {
+            return consumer.isDone();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!handedOver) {
+                consumer.close();
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            return consumer.cancel();
+        }
+
+        @Override
+        public void completed(T result) {
+            if (!finish()) {
+                return;
+            }
+            inFlight.decrementAndGet();
+            if (compression && result instanceof HttpResponse) {
+                try {
+                    byte[] inflated = inflate((HttpResponse) result);
+                    if (inflated != null) {
+                        took.accept(inflated);
+                    }
+                } catch (IOException e) {
+                    operation.failed(System.nanoTime() - start, false);
+                    scoreboard.finished(target, System.nanoTime() - start, false);
+                    future.failed(e);
+                    return;
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            operation.completed(nanos, responseBytes, took.getTook(), status >= 400 && status != 404);
+            scoreboard.finished(target, nanos, status == 502 || status == 503 || status == 504);
+            future.completed(result);
+        }
+
+        @Override
+        public void cancelled() {
+            if (!finish()) {
+                return;
+            }
+            inFlight.decrementAndGet();
+            operation.cancelled();
+            scoreboard.cancelled(target);
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * What {@link #execute} returns in place of Apache's {@code BasicFuture}, whose {@code get()} waits on its own
+     * monitor. The {@code RestClient} blocks on that {@code get()} for every synchronous request, and a virtual thread
+     * waiting on a monitor keeps its carrier thread; waiting on a {@link CompletableFuture} parks it instead.
+     */
+    static final class ResponseFuture<T> implements Future<T> {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final FutureCallback<T> callback;
+
+        ResponseFuture(FutureCallback<T> callback) {
+            this.callback = callback;
+        }
+
+        void completed(T value) {
+            if (result.complete(value) && callback != null) {
+                callback.completed(value);
+            }
+        }
+
+        void failed(Exception e) {
+            if (result.completeExceptionally(e) && callback != null) {
+                callback.failed(e);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = result.cancel(mayInterruptIfRunning);
+            if (cancelled && callback != null) {
+                callback.cancelled();
+            }
+            return cancelled;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return result.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return result.isDone();
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            return result.get();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return result.get(timeout, unit);
+        }
+    }
+
+    private HttpAsyncRequestProducer compress(HttpAsyncRequestProducer producer) throws Exception {
+        HttpRequest request = producer.generateRequest();
+        request.setHeader(HttpHeaders.ACCEPT_ENCODING, GZIP);
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntityEnclosingRequest enclosing = (HttpEntityEnclosingRequest) request;
+            HttpEntity entity = enclosing.getEntity();
+            if (entity != null && entity.getContentEncoding() == null && (entity.getContentLength() < 0 || entity.getContentLength() >= thresholdBytes)) {
+                enclosing.setEntity(gzip(entity));
+                request.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+            }
+        }
+        return HttpAsyncMethods.create(producer.getTarget(), request);
+    }
+
+    private static HttpEntity gzip(HttpEntity entity) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream((int) Math.max(64, entity.getContentLength() / 4));
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            entity.writeTo(out);
+        }
+        ByteArrayEntity gzipped = new ByteArrayEntity(compressed.toByteArray());
+        gzipped.setContentType(entity.getContentType());
+        gzipped.setContentEncoding(GZIP);
+        return gzipped;
+    }
+
+    /**
+     * Returns the inflated body, or {@code null} when the response was not gzipped.
+     */
+    private static byte[] inflate(HttpResponse response) throws IOException {
+        Header encoding = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+        HttpEntity entity = response.getEntity();
+        if (entity != null && encoding != null && GZIP.equalsIgnoreCase(encoding.getValue())) {
+            byte[] body = EntityUtils.toByteArray(new GzipDecompressingEntity(entity));
+            ByteArrayEntity inflated = new ByteArrayEntity(body);
+            inflated.setContentType(entity.getContentType());
+            response.setEntity(inflated);
+            response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+            return body;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return delegate.isRunning();
+    }
+
+    @Override
+    public void start() {
+        delegate.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            delegate.close();
+        } finally {
+            metrics.unregisterMBeans();
+            onClose.run();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package elasticsearchclient.java.files.search.design;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a projection property that is read from {@code docvalue_fields} instead of {@code _source}. Only fields with
+ * doc values, such as {@code keyword} fields, can be used.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.FIELD })
+public @interface DocValueField {
+
+    /**
+     * The indexed field name, e.g. {@code title.verbatim}.
+     */
+    String value();
+}
@@ -0,0 +1,38 @@
+package elasticsearchclient.java.files.search.design;
+
+import java.util.Map;
+
+import org.locationtech.jts.geom.Geometry;
+
+/**
+ * One GeoJSON feature: its optional id, its properties and its geometry.
+ */
+public class GeoFeature {
+
+    private final String id;
+    private final Map<String, Object> properties;
+    private final Geometry geometry;
+
+    public GeoFeature(String id, Map<String, Object> properties, Geometry geometry) {
+        this.id = id;
+        this.properties = properties;
+        this.geometry = geometry;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Map<String, Object> getProperties() {
+        return properties;
+    }
+
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    @Override
+    public String toString() {
+        return "GeoFeature{" + "id='" + id + '\'' + ", properties=" + properties + ", geometry=" + geometry.getGeometryType() + '}';
+    }
+}
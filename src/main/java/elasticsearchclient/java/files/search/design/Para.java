@@ -13,6 +13,10 @@ import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.InnerField;
 import org.springframework.data.elasticsearch.annotations.MultiField;
 
+/**
+ * {@code blog} is an alias over a versioned index once {@code IndexMigrationService} has run, so mapping changes are
+ * rolled out by migrating to the next version instead of recreating the live index.
+ */
 @Document(indexName = "blog", type = "article")
 public class Para {
 
@@ -0,0 +1,33 @@
+package elasticsearchclient.java.files.search.design;
+
+import java.util.Arrays;
+
+/**
+ * {@link Para} without its writers; the tags come from doc values so no {@code _source} is needed for them.
+ */
+public class ParaSummary {
+
+    private String id;
+
+    private String title;
+
+    @DocValueField("tags")
+    private String[] tags;
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String[] getTags() {
+        return tags;
+    }
+
+    @Override
+    public String toString() {
+        return "ParaSummary{" + "id='" + id + '\'' + ", title='" + title + '\'' + ", tags=" + Arrays.toString(tags) + '}';
+    }
+}
@@ -0,0 +1,11 @@
+package elasticsearchclient.java.files.search.design;
+
+/**
+ * List view of a {@link Para}: only the id and title are fetched.
+ */
+public interface ParaTitle {
+
+    String getId();
+
+    String getTitle();
+}
@@ -0,0 +1,210 @@
+package elasticsearchclient.java.files.search.repository;
+
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.idsQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.elasticsearch.index.query.QueryBuilders.moreLikeThisQuery;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.elasticsearch.index.query.MoreLikeThisQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.annotations.Query;
+import org.springframework.data.elasticsearch.core.query.CriteriaQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.elasticsearch.core.query.StringQuery;
+
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.service.EmbeddedParaIndex;
+import elasticsearchclient.java.files.search.service.QueryTemplate;
+import elasticsearchclient.java.files.search.service.SearchRequests;
+
+/**
+ * {@link ParaRepository} served by an {@link EmbeddedParaIndex} in this process instead of by a cluster.
+ * <p>
+ * {@code @Query} methods run the JSON of their annotation, bound like the cluster-backed repository binds it, and the
+ * derived {@code findByWritersName} runs the match on {@code writers.name} Spring Data would generate. Native, string
+ * and criteria queries are supported, criteria translated as {@code ElasticsearchRestTemplate} translates them, and
+ * {@code searchSimilar} runs the {@code more_like_this} query the cluster-backed repository sends.
+ */
+public class EmbeddedParaRepository implements ParaRepository {
+
+    private final EmbeddedParaIndex index;
+    private final Map<String, QueryTemplate> annotatedQueries = new HashMap<>();
+
+    public EmbeddedParaRepository(EmbeddedParaIndex index) {
+        this.index = index;
+        for (Method method : ParaRepository.class.getDeclaredMethods()) {
+            Query query = method.getAnnotation(Query.class);
+            if (query != null) {
+                annotatedQueries.put(method.getName(), QueryTemplate.of(query.value()));
+            }
+        }
+    }
+
+    @Override
+    public Page<Para> findByWritersName(String name, Pageable pageable) {
+        return index.search(matchQuery("writers.name", name).operator(Operator.AND), pageable);
+    }
+
+    @Override
+    public Page<Para> findByWritersNameUsingCustomQuery(String name, Pageable pageable) {
+        return index.search(annotated("findByWritersNameUsingCustomQuery", name), pageable);
+    }
+
+    @Override
+    public Page<Para> findByFilteredTagQuery(String tag, Pageable pageable) {
+        return index.search(annotated("findByFilteredTagQuery", tag), pageable);
+    }
+
+    @Override
+    public Page<Para> findByWritersNameAndFilteredTagQuery(String name, String tag, Pageable pageable) {
+        return index.search(annotated("findByWritersNameAndFilteredTagQuery", name, tag), pageable);
+    }
+
+    @Deprecated
+    @Override
+    public <S extends Para> S indexWithoutRefresh(S entity) {
+        index.save(entity, false);
+        return entity;
+    }
+
+    @Deprecated
+    @Override
+    public Iterable<Para> search(QueryBuilder query) {
+        return index.search(query, Pageable.unpaged())
+            .getContent();
+    }
+
+    @Deprecated
+    @Override
+    public Page<Para> search(QueryBuilder query, Pageable pageable) {
+        return index.search(query, pageable);
+    }
+
+    @Deprecated
+    @Override
+    public Page<Para> search(org.springframework.data.elasticsearch.core.query.Query query) {
+        if (query instanceof NativeSearchQuery) {
+            NativeSearchQuery nativeQuery = (NativeSearchQuery) query;
+            QueryBuilder filtered = nativeQuery.getFilter() == null ? nativeQuery.getQuery()
+                : boolQuery().must(nativeQuery.getQuery() == null ? matchAllQuery() : nativeQuery.getQuery())
+                    .filter(nativeQuery.getFilter());
+            return index.search(filtered, query.getPageable());
+        }
+        if (query instanceof StringQuery) {
+            return index.search(EmbeddedParaIndex.parseQuery(((StringQuery) query).getSource()), query.getPageable());
+        }
+        if (query instanceof CriteriaQuery) {
+            return index.search(SearchRequests.criteriaQuery(((CriteriaQuery) query).getCriteria()), query.getPageable());
+        }
+        throw new IllegalArgumentException("The embedded repository runs native, string and criteria queries, not " + query.getClass()
+            .getSimpleName());
+    }
+
+    @Override
+    public Page<Para> searchSimilar(Para entity, String[] fields, Pageable pageable) {
+        if (entity.getId() == null) {
+            throw new IllegalArgumentException("Cannot search for entities similar to one without an id");
+        }
+        MoreLikeThisQueryBuilder.Item item = new MoreLikeThisQueryBuilder.Item("blog", entity.getId());
+        return index.search(moreLikeThisQuery(fields == null || fields.length == 0 ? null : fields, null, new MoreLikeThisQueryBuilder.Item[] { item }),
+            pageable);
+    }
+
+    @Deprecated
+    @Override
+    public void refresh() {
+        index.refresh();
+    }
+
+    @Override
+    public Iterable<Para> findAll(Sort sort) {
+        return index.search(matchAllQuery(), sort);
+    }
+
+    @Override
+    public Page<Para> findAll(Pageable pageable) {
+        return index.search(matchAllQuery(), pageable);
+    }
+
+    @Override
+    public <S extends Para> S save(S entity) {
+        index.save(entity, true);
+        return entity;
+    }
+
+    @Override
+    public <S extends Para> Iterable<S> saveAll(Iterable<S> entities) {
+        List<S> saved = new ArrayList<>();
+        for (S entity : entities) {
+            saved.add(indexWithoutRefresh(entity));
+        }
+        index.refresh();
+        return saved;
+    }
+
+    @Override
+    public Optional<Para> findById(String id) {
+        return index.get(id);
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        return index.get(id)
+            .isPresent();
+    }
+
+    @Override
+    public Iterable<Para> findAll() {
+        return search(matchAllQuery());
+    }
+
+    @Override
+    public Iterable<Para> findAllById(Iterable<String> ids) {
+        List<String> idList = new ArrayList<>();
+        ids.forEach(idList::add);
+        return search(idsQuery().addIds(idList.toArray(new String[0])));
+    }
+
+    @Override
+    public long count() {
+        return index.count(matchAllQuery());
+    }
+
+    @Override
+    public void deleteById(String id) {
+        index.delete(id);
+    }
+
+    @Override
+    public void delete(Para entity) {
+        index.delete(entity.getId());
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Para> entities) {
+        entities.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        index.deleteAll();
+    }
+
+    private QueryBuilder annotated(String method, Object... arguments) {
+        return EmbeddedParaIndex.parseQuery(new String(annotatedQueries.get(method)
+            .render(arguments), StandardCharsets.UTF_8));
+    }
+}
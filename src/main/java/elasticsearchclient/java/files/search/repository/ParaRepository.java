@@ -6,11 +6,13 @@ import org.springframework.data.elasticsearch.annotations.Query;
 import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
 import org.springframework.stereotype.Repository;
 
+import elasticsearchclient.java.files.search.aot.GenerateRepository;
 import elasticsearchclient.java.files.search.design.Para;
 
 
 
 @Repository
+@GenerateRepository
 public interface ParaRepository extends ElasticsearchRepository<Para, String> {
 
     Page<Para> findByWritersName(String name, Pageable pageable);
@@ -0,0 +1,75 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.stereotype.Service;
+
+import elasticsearchclient.java.files.search.design.Para;
+
+/**
+ * Non-blocking counterpart of the {@code ParaRepository} query methods.
+ * <p>
+ * Requests go through {@link RestHighLevelClient#searchAsync}, which hands them to the low-level client's IO reactor
+ * and completes the returned future from its callback, so no caller thread waits for the round trip. Hits are mapped
+ * on the IO thread; callers doing heavy work on the result should continue with one of the {@code *Async} stages.
+ */
+@Service
+public class AsyncParaSearchService {
+
+    private final RestHighLevelClient client;
+    private final SearchHitsMapper mapper;
+    private final IndexCoordinates index;
+
+    @Autowired
+    public AsyncParaSearchService(RestHighLevelClient client, ElasticsearchOperations operations) {
+        this.client = client;
+        this.mapper = new SearchHitsMapper(operations.getElasticsearchConverter());
+        this.index = operations.getIndexCoordinatesFor(Para.class);
+    }
+
+    public CompletableFuture<SearchHits<Para>> findByWritersName(String name, Pageable pageable) {
+        return search(SearchRequests.byWritersName(name, pageable));
+    }
+
+    public CompletableFuture<SearchHits<Para>> findByFilteredTagQuery(String tag, Pageable pageable) {
+        return search(SearchRequests.byFilteredTag(tag, pageable));
+    }
+
+    public CompletableFuture<SearchHits<Para>> findByWritersNameAndFilteredTagQuery(String name, String tag, Pageable pageable) {
+        return search(SearchRequests.byWritersNameAndFilteredTag(name, tag, pageable));
+    }
+
+    public CompletableFuture<SearchHits<Para>> search(NativeSearchQuery query) {
+        return search(SearchRequests.searchRequest(query, index), Para.class);
+    }
+
+    public <T> CompletableFuture<SearchHits<T>> search(SearchRequest request, Class<T> type) {
+        CompletableFuture<SearchHits<T>> future = new CompletableFuture<>();
+        client.searchAsync(request, RequestOptions.DEFAULT, new ActionListener<SearchResponse>() {
+
+            public void onResponse(SearchResponse response) {
+                try {
+                    future.complete(mapper.mapHits(response, type));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            public void onFailure(Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,241 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.core.env.PropertyResolver;
+
+/**
+ * Runs blocking repository and client calls, such as {@code () -> paraRepository.findByWritersName(name, page)} or
+ * {@code () -> client.search(request, RequestOptions.DEFAULT)}, one thread per call, and on virtual threads when the
+ * JVM has them.
+ * <p>
+ * A virtual thread blocked on a round trip to the cluster gives its carrier thread back, so tens of thousands of calls
+ * can wait at once for the memory of their stacks; a platform thread per call would need as many kernel threads. The
+ * paths those calls block on underneath wait on {@code java.util.concurrent} locks and futures rather than monitors,
+ * which would pin the carrier for the whole wait: the REST client's synchronous requests wait on the future of the
+ * tuned async client, and the services here that do I/O under a lock use a {@code ReentrantLock}.
+ * <p>
+ * Virtual threads are looked up reflectively, so the code still builds for Java 8; on JVMs before 21 {@link Mode#AUTO}
+ * falls back to a bounded pool of platform threads, and {@link Mode#VIRTUAL} fails. Either way
+ * {@link Options#maxConcurrency(int)} can cap the calls running at once, for example below the connection pool's
+ * size, without bounding how many are submitted.
+ */
+public class BlockingCallExecutor implements Executor, Closeable {
+
+    private static final String PREFIX = "elasticsearch.blocking.";
+
+    public enum Mode {
+        /**
+         * Virtual threads when the JVM has them, platform threads otherwise.
+         */
+        AUTO,
+        /**
+         * Virtual threads, or fail.
+         */
+        VIRTUAL,
+        /**
+         * A pool of {@link Options#platformThreads(int)} platform threads.
+         */
+        PLATFORM
+    }
+
+    public static class Options {
+        private Mode mode = Mode.AUTO;
+        private int platformThreads = 256;
+        private int maxConcurrency;
+        private String threadNamePrefix = "es-blocking-";
+
+        public static Options defaults() {
+            return new Options();
+        }
+
+        /**
+         * Reads the {@code elasticsearch.blocking.*} keys, falling back to the defaults above.
+         */
+        public static Options from(PropertyResolver properties) {
+            Options options = new Options();
+            options.mode = properties.getProperty(PREFIX + "mode", Mode.class, options.mode);
+            options.platformThreads = properties.getProperty(PREFIX + "platform-threads", Integer.class, options.platformThreads);
+            options.maxConcurrency = properties.getProperty(PREFIX + "max-concurrency", Integer.class, options.maxConcurrency);
+            options.threadNamePrefix = properties.getProperty(PREFIX + "thread-name-prefix", options.threadNamePrefix);
+            return options;
+        }
+
+        public Options mode(Mode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        /**
+         * Size of the pool used without virtual threads.
+         */
+        public Options platformThreads(int platformThreads) {
+            this.platformThreads = platformThreads;
+            return this;
+        }
+
+        /**
+         * Calls allowed to run at once, the others wait for a permit on their own thread; {@code 0} for no limit.
+         */
+        public Options maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        public Options threadNamePrefix(String threadNamePrefix) {
+            this.threadNamePrefix = threadNamePrefix;
+            return this;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final Semaphore permits;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * @throws IllegalStateException when {@link Mode#VIRTUAL} is asked for and the JVM has no virtual threads
+     */
+    public BlockingCallExecutor(Options options) {
+        ExecutorService virtualThreads = options.mode == Mode.PLATFORM ? null : virtualThreadPerTaskExecutor(options.threadNamePrefix);
+        if (virtualThreads == null && options.mode == Mode.VIRTUAL) {
+            throw new IllegalStateException("Virtual threads need Java 21, this is Java " + System.getProperty("java.version"));
+        }
+        this.virtual = virtualThreads != null;
+        this.executor = virtual ? virtualThreads : platformThreadPool(options.platformThreads, options.threadNamePrefix);
+        this.permits = options.maxConcurrency > 0 ? new Semaphore(options.maxConcurrency) : null;
+    }
+
+    public static BlockingCallExecutor from(PropertyResolver properties) {
+        return new BlockingCallExecutor(Options.from(properties));
+    }
+
+    /**
+     * Whether calls run on virtual threads.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Runs {@code call} on its own thread; the future completes with its result or its failure.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> run(call, future));
+        return future;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        submit(Executors.callable(command));
+    }
+
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * Most calls seen running at once.
+     */
+    public int getPeakInFlightCount() {
+        return peakInFlight.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Stops accepting calls; submitted ones still run.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private <T> void run(Callable<T> call, CompletableFuture<T> future) {
+        if (permits != null) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread()
+                    .interrupt();
+                future.completeExceptionally(e);
+                return;
+            }
+        }
+        int running = inFlight.incrementAndGet();
+        peakInFlight.accumulateAndGet(running, Math::max);
+        T result = null;
+        Throwable failure = null;
+        try {
+            result = call.call();
+        } catch (Throwable e) {
+            failure = e;
+        }
+        // counters first, so whoever the future wakes sees this call as finished
+        inFlight.decrementAndGet();
+        if (permits != null) {
+            permits.release();
+        }
+        if (failure == null) {
+            completed.incrementAndGet();
+            future.complete(result);
+        } else {
+            failed.incrementAndGet();
+            future.completeExceptionally(failure);
+        }
+    }
+
+    private static ExecutorService platformThreadPool(int threads, String namePrefix) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * {@code Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 1).factory())}, or {@code null}
+     * before Java 21; on 19 and 20 {@code ofVirtual()} throws unless preview features are enabled.
+     */
+    static ExecutorService virtualThreadPerTaskExecutor(String namePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual")
+                .invoke(null);
+            Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            builder = ofVirtual.getMethod("name", String.class, long.class)
+                .invoke(builder, namePrefix, 1L);
+            ThreadFactory factory = (ThreadFactory) ofVirtual.getMethod("factory")
+                .invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                .invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package elasticsearchclient.java.files.search.service;
+
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+
+/**
+ * Told about writes made through {@code CachingElasticsearchRestTemplate}, and so through the repositories, once
+ * Elasticsearch has acknowledged them.
+ */
+public interface DocumentWriteListener {
+
+    /**
+     * A document was indexed; {@code entity} is {@code null} when it was given as a raw source.
+     */
+    void indexed(String id, Object entity, IndexCoordinates index);
+
+    void deleted(String id, IndexCoordinates index);
+
+    /**
+     * Documents of {@code index} changed in ways that do not say which, such as updates and deletes by query.
+     */
+    void changed(IndexCoordinates index);
+}
@@ -0,0 +1,919 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queries.mlt.MoreLikeThis;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.DocValuesFieldExistsQuery;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.NormsFieldExistsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedSetSortField;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.join.BitSetProducer;
+import org.apache.lucene.search.join.QueryBitSetProducer;
+import org.apache.lucene.search.join.ToParentBlockJoinQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.QueryBuilder;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.lucene.BytesRefs;
+import org.elasticsearch.common.lucene.search.Queries;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.Fuzziness;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.AbstractQueryBuilder;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.ExistsQueryBuilder;
+import org.elasticsearch.index.query.FuzzyQueryBuilder;
+import org.elasticsearch.index.query.IdsQueryBuilder;
+import org.elasticsearch.index.query.MatchAllQueryBuilder;
+import org.elasticsearch.index.query.MatchPhraseQueryBuilder;
+import org.elasticsearch.index.query.MatchQueryBuilder;
+import org.elasticsearch.index.query.MoreLikeThisQueryBuilder;
+import org.elasticsearch.index.query.MultiMatchQueryBuilder;
+import org.elasticsearch.index.query.NestedQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryStringQueryBuilder;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.index.query.TermQueryBuilder;
+import org.elasticsearch.index.query.TermsQueryBuilder;
+import org.elasticsearch.search.SearchModule;
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.InnerField;
+import org.springframework.data.elasticsearch.annotations.MultiField;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.convert.MappingElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.mapping.SimpleElasticsearchMappingContext;
+
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.service.TermCountMap.TermCount;
+
+/**
+ * An in-process Lucene index of {@link Para}s on a memory-mapped directory, answering the queries used against the
+ * {@code blog} index without a cluster: for small, rarely changing reference data served locally, and for tests.
+ * <p>
+ * Fields are indexed as the mapping annotations of {@code Para} ask Elasticsearch to: {@code Text} analyzed by the
+ * standard analyzer without stop words, with doc values of its terms when {@code fielddata} is on; {@code Keyword} as
+ * single terms with doc values; the inner fields of a {@code @MultiField} as {@code field.suffix}; and {@code Nested}
+ * objects as child documents in their parent's block, also copied into the parent with {@code includeInParent}.
+ * Properties without a {@code @Field} are kept in the source but not indexed.
+ * <p>
+ * Queries are Elasticsearch {@link org.elasticsearch.index.query.QueryBuilder}s, translated to Lucene: match, with
+ * fuzziness, match_phrase, multi_match, term, terms, ids, bool, nested, match_all, and the query_string, range, fuzzy
+ * and exists queries of Spring Data criteria are supported. query_string needs its fields named, and range compares
+ * terms, as every indexed value is a string. more_like_this likes texts and stored documents by id, with the
+ * Elasticsearch defaults, but not unlike. Anything else is rejected with an {@link IllegalArgumentException}. Writes are searchable once they return, unless saved without
+ * refresh, and are made durable by {@link #commit()} and {@link #close()}.
+ */
+public class EmbeddedParaIndex implements Closeable {
+
+    private static final String PREFIX = "elasticsearch.embedded.";
+    private static final String ID = "_id";
+    private static final String SOURCE = "_source";
+    private static final String NESTED_PATH = "_nested_path";
+    private static final String ROOT = "_root";
+    private static final Query ROOTS = new TermQuery(new Term(ROOT, "T"));
+
+    /**
+     * How one property is indexed, read from its mapping annotations.
+     */
+    private static class FieldMapping {
+        private final String path;
+        private final FieldType type;
+        private final boolean fielddata;
+        private final boolean includeInParent;
+        private final List<FieldMapping> innerFields = new ArrayList<>();
+        private final Map<String, FieldMapping> properties = new LinkedHashMap<>();
+
+        private FieldMapping(String path, FieldType type, boolean fielddata, boolean includeInParent) {
+            this.path = path;
+            this.type = type;
+            this.fielddata = fielddata;
+            this.includeInParent = includeInParent;
+        }
+
+        private boolean hasDocValues() {
+            return type == FieldType.Keyword || fielddata;
+        }
+    }
+
+    /**
+     * Counts the doc values of a field per segment ordinal, looking each term up once per segment rather than once per
+     * hit.
+     */
+    private static class TermsCollector extends SimpleCollector {
+        private final String field;
+        private final TermCountMap counts;
+        private SortedSetDocValues values;
+        private long[] ordinalCounts;
+
+        private TermsCollector(String field, TermCountMap counts) {
+            this.field = field;
+            this.counts = counts;
+        }
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext context) throws IOException {
+            flush();
+            values = context.reader()
+                .getSortedSetDocValues(field);
+            ordinalCounts = values == null ? null : new long[(int) values.getValueCount()];
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            if (values != null && values.advanceExact(doc)) {
+                for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+                    ordinalCounts[(int) ord]++;
+                }
+            }
+        }
+
+        @Override
+        public ScoreMode scoreMode() {
+            return ScoreMode.COMPLETE_NO_SCORES;
+        }
+
+        private void flush() throws IOException {
+            if (ordinalCounts == null) {
+                return;
+            }
+            for (int ord = 0; ord < ordinalCounts.length; ord++) {
+                if (ordinalCounts[ord] > 0) {
+                    counts.add(values.lookupOrd(ord)
+                        .utf8ToString(), ordinalCounts[ord]);
+                }
+            }
+            ordinalCounts = null;
+        }
+    }
+
+    private static class QueryParsers {
+        private static final NamedXContentRegistry REGISTRY = new NamedXContentRegistry(new SearchModule(Settings.EMPTY, false,
+            Collections.emptyList()).getNamedXContents());
+    }
+
+    private final Path path;
+    private final boolean temporary;
+    private final Directory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searchers;
+    private final Map<String, FieldMapping> properties;
+    private final Map<String, FieldMapping> fields = new HashMap<>();
+    private final Analyzer analyzer;
+    private final QueryBuilder queries;
+    private final ElasticsearchConverter converter;
+    private final SourceCodec codec;
+    private final BitSetProducer parents = new QueryBitSetProducer(ROOTS);
+
+    public EmbeddedParaIndex(Path path) {
+        this(path, false);
+    }
+
+    private EmbeddedParaIndex(Path path, boolean temporary) {
+        this.path = path;
+        this.temporary = temporary;
+        this.properties = mapping(Para.class, "");
+        properties.values()
+            .forEach(this::register);
+        Map<String, Analyzer> keywordFields = new HashMap<>();
+        for (FieldMapping field : fields.values()) {
+            if (field.type == FieldType.Keyword) {
+                keywordFields.put(field.path, new KeywordAnalyzer());
+            }
+        }
+        keywordFields.put(ID, new KeywordAnalyzer());
+        this.analyzer = new PerFieldAnalyzerWrapper(new StandardAnalyzer(CharArraySet.EMPTY_SET), keywordFields);
+        this.queries = new QueryBuilder(analyzer);
+        MappingElasticsearchConverter mappingConverter = new MappingElasticsearchConverter(new SimpleElasticsearchMappingContext());
+        mappingConverter.afterPropertiesSet();
+        this.converter = mappingConverter;
+        this.codec = new SourceCodec(converter, XContentType.JSON);
+        try {
+            Files.createDirectories(path);
+            this.directory = new MMapDirectory(path);
+            this.writer = new IndexWriter(directory, new IndexWriterConfig(analyzer));
+            this.searchers = new SearcherManager(writer, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the embedded index in " + path, e);
+        }
+    }
+
+    /**
+     * Opens the index in {@code elasticsearch.embedded.directory}, or in a temporary directory deleted on close when
+     * it is not set.
+     */
+    public static EmbeddedParaIndex from(PropertyResolver properties) {
+        String directory = properties.getProperty(PREFIX + "directory");
+        if (directory != null) {
+            return new EmbeddedParaIndex(Paths.get(directory));
+        }
+        try {
+            return new EmbeddedParaIndex(Files.createTempDirectory("embedded-para-index"), true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Indexes {@code para}, replacing any earlier version, and gives it a random id if it has none.
+     */
+    public Para save(Para para, boolean refresh) {
+        if (para.getId() == null) {
+            para.setId(UUID.randomUUID()
+                .toString());
+        }
+        try {
+            writer.updateDocuments(new Term(ID, para.getId()), block(para));
+            if (refresh) {
+                searchers.maybeRefreshBlocking();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return para;
+    }
+
+    public void delete(String id) {
+        try {
+            writer.deleteDocuments(new Term(ID, id));
+            searchers.maybeRefreshBlocking();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void deleteAll() {
+        try {
+            writer.deleteAll();
+            searchers.maybeRefreshBlocking();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void refresh() {
+        try {
+            searchers.maybeRefreshBlocking();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void commit() {
+        try {
+            writer.commit();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Optional<Para> get(String id) {
+        List<Para> found = search(new TermQuery(new Term(ID, id)), 0, 1, Sort.INDEXORDER).getContent();
+        return found.isEmpty() ? Optional.empty() : Optional.of(found.get(0));
+    }
+
+    public long count(org.elasticsearch.index.query.QueryBuilder query) {
+        IndexSearcher searcher = acquire();
+        try {
+            return searcher.count(root(toLucene(query)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            release(searcher);
+        }
+    }
+
+    /**
+     * The page of documents matching {@code query}, by score unless the page asks for a sort on fields with doc
+     * values.
+     */
+    public Page<Para> search(org.elasticsearch.index.query.QueryBuilder query, Pageable pageable) {
+        Page<Para> page = search(toLucene(query), pageable.isPaged() ? (int) pageable.getOffset() : 0,
+            pageable.isPaged() ? pageable.getPageSize() : Integer.MAX_VALUE, sort(pageable.getSort()));
+        return pageable.isPaged() ? new PageImpl<>(page.getContent(), pageable, page.getTotalElements()) : page;
+    }
+
+    public List<Para> search(org.elasticsearch.index.query.QueryBuilder query, org.springframework.data.domain.Sort sort) {
+        return search(toLucene(query), 0, Integer.MAX_VALUE, sort(sort)).getContent();
+    }
+
+    /**
+     * The {@code size} most frequent terms of {@code field} among the documents matching {@code query}, as a terms
+     * aggregation returns them: by document count, then by term. The field needs doc values, as a keyword field or a
+     * text field with {@code fielddata}.
+     */
+    public List<TermCount> terms(String field, org.elasticsearch.index.query.QueryBuilder query, int size) {
+        FieldMapping mapping = fields.get(field);
+        if (mapping == null || !mapping.hasDocValues()) {
+            throw new IllegalArgumentException("Field [" + field + "] has no doc values to aggregate on, "
+                + "use a keyword field or enable fielddata on a text field");
+        }
+        TermCountMap counts = new TermCountMap();
+        IndexSearcher searcher = acquire();
+        try {
+            TermsCollector collector = new TermsCollector(field, counts);
+            searcher.search(root(toLucene(query)), collector);
+            collector.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            release(searcher);
+        }
+        return counts.top(size);
+    }
+
+    /**
+     * Parses a query written as Elasticsearch JSON, such as the body of a {@code @Query}.
+     */
+    public static org.elasticsearch.index.query.QueryBuilder parseQuery(String json) {
+        try (XContentParser parser = XContentType.JSON.xContent()
+            .createParser(QueryParsers.REGISTRY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, json)) {
+            return AbstractQueryBuilder.parseInnerQueryBuilder(parser);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            searchers.close();
+            writer.close();
+            directory.close();
+            if (temporary) {
+                try (Stream<Path> files = Files.walk(path)) {
+                    files.sorted(Comparator.reverseOrder())
+                        .forEach(file -> file.toFile()
+                            .delete());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            analyzer.close();
+        }
+    }
+
+    private Page<Para> search(Query query, int offset, int size, Sort sort) {
+        IndexSearcher searcher = acquire();
+        try {
+            int wanted = (int) Math.min((long) offset + size, Math.max(1, searcher.getIndexReader()
+                .maxDoc()));
+            TopDocsCollector<?> collector = sort == null ? TopScoreDocCollector.create(wanted, Integer.MAX_VALUE)
+                : TopFieldCollector.create(sort, wanted, Integer.MAX_VALUE);
+            searcher.search(root(query), collector);
+            TopDocs top = collector.topDocs(offset, size);
+            List<Para> content = new ArrayList<>(top.scoreDocs.length);
+            for (ScoreDoc hit : top.scoreDocs) {
+                BytesRef source = searcher.doc(hit.doc, Collections.singleton(SOURCE))
+                    .getBinaryValue(SOURCE);
+                content.add(codec.read(Para.class, Arrays.copyOfRange(source.bytes, source.offset, source.offset + source.length)));
+            }
+            return new PageImpl<>(content, Pageable.unpaged(), collector.getTotalHits());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            release(searcher);
+        }
+    }
+
+    private Sort sort(org.springframework.data.domain.Sort sort) {
+        if (sort.isUnsorted()) {
+            return null;
+        }
+        List<SortField> sortFields = new ArrayList<>();
+        for (org.springframework.data.domain.Sort.Order order : sort) {
+            FieldMapping mapping = fields.get(order.getProperty());
+            if (!ID.equals(order.getProperty()) && (mapping == null || !mapping.hasDocValues())) {
+                throw new IllegalArgumentException("Field [" + order.getProperty() + "] has no doc values to sort on");
+            }
+            sortFields.add(new SortedSetSortField(order.getProperty(), order.isDescending()));
+        }
+        return new Sort(sortFields.toArray(new SortField[0]));
+    }
+
+    private IndexSearcher acquire() {
+        try {
+            return searchers.acquire();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void release(IndexSearcher searcher) {
+        try {
+            searchers.release(searcher);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Query root(Query query) {
+        return new BooleanQuery.Builder().add(query, Occur.MUST)
+            .add(ROOTS, Occur.FILTER)
+            .build();
+    }
+
+    // documents
+
+    /**
+     * A block of one child document per nested object followed by the parent, as block joins expect.
+     */
+    private List<Document> block(Para para) {
+        Map<String, Object> source = converter.mapObject(para);
+        List<Document> block = new ArrayList<>();
+        Document parent = new Document();
+        addFields(parent, block, properties, source, para.getId());
+        parent.add(new StringField(ID, para.getId(), Store.NO));
+        parent.add(new SortedSetDocValuesField(ID, new BytesRef(para.getId())));
+        parent.add(new StringField(ROOT, "T", Store.NO));
+        BytesRef bytes = codec.write(para)
+            .toBytesRef();
+        parent.add(new StoredField(SOURCE, bytes.bytes, bytes.offset, bytes.length));
+        block.add(parent);
+        return block;
+    }
+
+    private void addFields(Document document, List<Document> children, Map<String, FieldMapping> mappings, Map<?, ?> source,
+        String id) {
+        for (Map.Entry<String, FieldMapping> property : mappings.entrySet()) {
+            FieldMapping mapping = property.getValue();
+            for (Object value : values(source.get(property.getKey()))) {
+                if (mapping.type == FieldType.Nested) {
+                    Document child = new Document();
+                    addFields(child, children, mapping.properties, (Map<?, ?>) value, id);
+                    child.add(new StringField(ID, id, Store.NO));
+                    child.add(new StringField(NESTED_PATH, mapping.path, Store.NO));
+                    children.add(child);
+                    if (mapping.includeInParent) {
+                        addFields(document, children, mapping.properties, (Map<?, ?>) value, id);
+                    }
+                } else if (mapping.type == FieldType.Object) {
+                    addFields(document, children, mapping.properties, (Map<?, ?>) value, id);
+                } else {
+                    addValue(document, mapping, value.toString());
+                    for (FieldMapping inner : mapping.innerFields) {
+                        addValue(document, inner, value.toString());
+                    }
+                }
+            }
+        }
+    }
+
+    private void addValue(Document document, FieldMapping mapping, String value) {
+        if (mapping.type == FieldType.Keyword) {
+            document.add(new StringField(mapping.path, value, Store.NO));
+            document.add(new SortedSetDocValuesField(mapping.path, new BytesRef(value)));
+            return;
+        }
+        document.add(new TextField(mapping.path, value, Store.NO));
+        if (mapping.fielddata) {
+            for (String term : analyze(mapping.path, value)) {
+                document.add(new SortedSetDocValuesField(mapping.path, new BytesRef(term)));
+            }
+        }
+    }
+
+    private static Collection<?> values(Object value) {
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        if (value instanceof Collection) {
+            return (Collection<?>) value;
+        }
+        if (value instanceof Object[]) {
+            return Arrays.asList((Object[]) value);
+        }
+        return Collections.singletonList(value);
+    }
+
+    private Set<String> analyze(String field, String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        try (TokenStream tokens = analyzer.tokenStream(field, text)) {
+            CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+            tokens.reset();
+            while (tokens.incrementToken()) {
+                terms.add(term.toString());
+            }
+            tokens.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return terms;
+    }
+
+    // mapping
+
+    private static Map<String, FieldMapping> mapping(Class<?> type, String prefix) {
+        Map<String, FieldMapping> mappings = new LinkedHashMap<>();
+        for (java.lang.reflect.Field property : type.getDeclaredFields()) {
+            Field field = property.getAnnotation(Field.class);
+            MultiField multiField = property.getAnnotation(MultiField.class);
+            if (property.isAnnotationPresent(Id.class) || field == null && multiField == null) {
+                continue;
+            }
+            Field main = multiField != null ? multiField.mainField() : field;
+            String name = main.name()
+                .isEmpty() ? property.getName() : main.name();
+            FieldMapping mapping = new FieldMapping(prefix + name, main.type(), main.fielddata(), main.includeInParent());
+            if (multiField != null) {
+                for (InnerField inner : multiField.otherFields()) {
+                    mapping.innerFields.add(new FieldMapping(mapping.path + "." + inner.suffix(), inner.type(), inner.fielddata(), false));
+                }
+            }
+            if (main.type() == FieldType.Nested || main.type() == FieldType.Object) {
+                mapping.properties.putAll(mapping(elementType(property), mapping.path + "."));
+            }
+            mappings.put(name, mapping);
+        }
+        return mappings;
+    }
+
+    private static Class<?> elementType(java.lang.reflect.Field property) {
+        if (property.getType()
+            .isArray()) {
+            return property.getType()
+                .getComponentType();
+        }
+        Type generic = property.getGenericType();
+        if (generic instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) generic).getActualTypeArguments()[0];
+        }
+        return property.getType();
+    }
+
+    private void register(FieldMapping mapping) {
+        fields.put(mapping.path, mapping);
+        mapping.innerFields.forEach(this::register);
+        mapping.properties.values()
+            .forEach(this::register);
+    }
+
+    // queries
+
+    private Query toLucene(org.elasticsearch.index.query.QueryBuilder query) {
+        if (query == null) {
+            return new MatchAllDocsQuery();
+        }
+        Query lucene = translate(query);
+        return query.boost() == AbstractQueryBuilder.DEFAULT_BOOST ? lucene : new BoostQuery(lucene, query.boost());
+    }
+
+    private Query translate(org.elasticsearch.index.query.QueryBuilder query) {
+        if (query instanceof MatchAllQueryBuilder) {
+            return new MatchAllDocsQuery();
+        }
+        if (query instanceof MatchQueryBuilder) {
+            MatchQueryBuilder match = (MatchQueryBuilder) query;
+            return match(match.fieldName(), match.value(), match.operator(), match.fuzziness(), match.prefixLength(), match.maxExpansions(),
+                match.fuzzyTranspositions());
+        }
+        if (query instanceof MatchPhraseQueryBuilder) {
+            MatchPhraseQueryBuilder phrase = (MatchPhraseQueryBuilder) query;
+            return orNone(queries.createPhraseQuery(field(phrase.fieldName()), phrase.value()
+                .toString(), phrase.slop()));
+        }
+        if (query instanceof MultiMatchQueryBuilder) {
+            return multiMatch((MultiMatchQueryBuilder) query);
+        }
+        if (query instanceof TermQueryBuilder) {
+            TermQueryBuilder term = (TermQueryBuilder) query;
+            return new TermQuery(new Term(field(term.fieldName()), BytesRefs.toString(term.value())));
+        }
+        if (query instanceof TermsQueryBuilder) {
+            TermsQueryBuilder terms = (TermsQueryBuilder) query;
+            List<BytesRef> values = new ArrayList<>();
+            for (Object value : terms.values()) {
+                values.add(BytesRefs.toBytesRef(value));
+            }
+            return new TermInSetQuery(field(terms.fieldName()), values);
+        }
+        if (query instanceof IdsQueryBuilder) {
+            List<BytesRef> ids = new ArrayList<>();
+            for (String id : ((IdsQueryBuilder) query).ids()) {
+                ids.add(new BytesRef(id));
+            }
+            return new TermInSetQuery(ID, ids);
+        }
+        if (query instanceof BoolQueryBuilder) {
+            return bool((BoolQueryBuilder) query);
+        }
+        if (query instanceof QueryStringQueryBuilder) {
+            return queryString((QueryStringQueryBuilder) query);
+        }
+        if (query instanceof RangeQueryBuilder) {
+            RangeQueryBuilder range = (RangeQueryBuilder) query;
+            return new TermRangeQuery(field(range.fieldName()), range.from() == null ? null : BytesRefs.toBytesRef(range.from()),
+                range.to() == null ? null : BytesRefs.toBytesRef(range.to()), range.includeLower(), range.includeUpper());
+        }
+        if (query instanceof FuzzyQueryBuilder) {
+            FuzzyQueryBuilder fuzzy = (FuzzyQueryBuilder) query;
+            String value = BytesRefs.toString(fuzzy.value());
+            return new FuzzyQuery(new Term(field(fuzzy.fieldName()), value), fuzzy.fuzziness()
+                .asDistance(value), fuzzy.prefixLength(), fuzzy.maxExpansions(), fuzzy.transpositions());
+        }
+        if (query instanceof ExistsQueryBuilder) {
+            String field = field(((ExistsQueryBuilder) query).fieldName());
+            FieldMapping mapping = fields.get(field);
+            return mapping != null && mapping.type == FieldType.Keyword ? new DocValuesFieldExistsQuery(field) : new NormsFieldExistsQuery(field);
+        }
+        if (query instanceof MoreLikeThisQueryBuilder) {
+            return moreLikeThis((MoreLikeThisQueryBuilder) query);
+        }
+        if (query instanceof NestedQueryBuilder) {
+            NestedQueryBuilder nested = (NestedQueryBuilder) query;
+            String path = nestedPath(nested);
+            FieldMapping mapping = fields.get(path);
+            if (mapping == null || mapping.type != FieldType.Nested) {
+                if (nested.ignoreUnmapped()) {
+                    return new MatchNoDocsQuery();
+                }
+                throw new IllegalArgumentException("[nested] failed to find nested object under path [" + path + "]");
+            }
+            Query children = new BooleanQuery.Builder().add(toLucene(nested.query()), Occur.MUST)
+                .add(new TermQuery(new Term(NESTED_PATH, path)), Occur.FILTER)
+                .build();
+            return new ToParentBlockJoinQuery(children, parents, nested.scoreMode());
+        }
+        throw new IllegalArgumentException("The embedded index does not support [" + query.getWriteableName() + "] queries");
+    }
+
+    private Query match(String fieldName, Object value, Operator operator, Fuzziness fuzziness, int prefixLength, int maxExpansions,
+        boolean transpositions) {
+        String field = field(fieldName);
+        Occur occur = operator == Operator.AND ? Occur.MUST : Occur.SHOULD;
+        if (fuzziness == null || fuzziness == Fuzziness.ZERO) {
+            return orNone(queries.createBooleanQuery(field, value.toString(), occur));
+        }
+        BooleanQuery.Builder fuzzy = new BooleanQuery.Builder();
+        Set<String> terms = analyze(field, value.toString());
+        for (String term : terms) {
+            fuzzy.add(new FuzzyQuery(new Term(field, term), fuzziness.asDistance(term), prefixLength, maxExpansions, transpositions), occur);
+        }
+        return terms.isEmpty() ? new MatchNoDocsQuery() : fuzzy.build();
+    }
+
+    private Query multiMatch(MultiMatchQueryBuilder multiMatch) {
+        List<Query> perField = new ArrayList<>();
+        for (Map.Entry<String, Float> field : multiMatch.fields()
+            .entrySet()) {
+            Query query;
+            switch (multiMatch.type()) {
+            case BEST_FIELDS:
+            case MOST_FIELDS:
+                query = match(field.getKey(), multiMatch.value(), multiMatch.operator(), multiMatch.fuzziness(), multiMatch.prefixLength(),
+                    multiMatch.maxExpansions(), multiMatch.fuzzyTranspositions());
+                break;
+            case PHRASE:
+                query = orNone(queries.createPhraseQuery(field(field.getKey()), multiMatch.value()
+                    .toString(), multiMatch.slop()));
+                break;
+            default:
+                throw new IllegalArgumentException("The embedded index does not support multi_match of type [" + multiMatch.type() + "]");
+            }
+            perField.add(field.getValue() == AbstractQueryBuilder.DEFAULT_BOOST ? query : new BoostQuery(query, field.getValue()));
+        }
+        if (multiMatch.type() == MultiMatchQueryBuilder.Type.MOST_FIELDS) {
+            BooleanQuery.Builder mostFields = new BooleanQuery.Builder();
+            perField.forEach(query -> mostFields.add(query, Occur.SHOULD));
+            return mostFields.build();
+        }
+        Float tieBreaker = multiMatch.tieBreaker();
+        return new DisjunctionMaxQuery(perField, tieBreaker == null ? 0f : tieBreaker);
+    }
+
+    /**
+     * Parses the query string once per field with the Lucene classic parser, which analyzes terms with the field's
+     * analyzer and normalizes wildcard terms the way {@code analyze_wildcard} does for single tokens.
+     */
+    private Query queryString(QueryStringQueryBuilder queryString) {
+        Map<String, Float> queryFields = queryString.fields()
+            .isEmpty() && queryString.defaultField() != null ? Collections.singletonMap(queryString.defaultField(), AbstractQueryBuilder.DEFAULT_BOOST)
+                : queryString.fields();
+        if (queryFields.isEmpty() || queryFields.containsKey("*")) {
+            throw new IllegalArgumentException("The embedded index runs query_string queries on named fields only");
+        }
+        List<Query> perField = new ArrayList<>();
+        for (Map.Entry<String, Float> field : queryFields.entrySet()) {
+            QueryParser parser = new QueryParser(field(field.getKey()), analyzer);
+            parser.setDefaultOperator(queryString.defaultOperator() == Operator.AND ? QueryParser.Operator.AND : QueryParser.Operator.OR);
+            parser.setAllowLeadingWildcard(queryString.allowLeadingWildcard() == null || queryString.allowLeadingWildcard());
+            parser.setPhraseSlop(queryString.phraseSlop());
+            parser.setFuzzyPrefixLength(queryString.fuzzyPrefixLength());
+            Query query;
+            try {
+                query = parser.parse(queryString.queryString());
+            } catch (ParseException e) {
+                throw new IllegalArgumentException("Failed to parse query [" + queryString.queryString() + "]", e);
+            }
+            perField.add(field.getValue() == AbstractQueryBuilder.DEFAULT_BOOST ? query : new BoostQuery(query, field.getValue()));
+        }
+        Float tieBreaker = queryString.tieBreaker();
+        Query query = perField.size() == 1 ? perField.get(0) : new DisjunctionMaxQuery(perField, tieBreaker == null ? 0f : tieBreaker);
+        return Queries.maybeApplyMinimumShouldMatch(query, queryString.minimumShouldMatch());
+    }
+
+    /**
+     * Likes the indexed values of the liked documents and texts, excluding the liked documents unless {@code include} is
+     * set; term and document frequencies are those of this index.
+     */
+    private Query moreLikeThis(MoreLikeThisQueryBuilder moreLikeThis) {
+        if (moreLikeThis.unlikeItems().length > 0 || moreLikeThis.unlikeTexts().length > 0) {
+            throw new IllegalArgumentException("The embedded index does not support unlike in more_like_this queries");
+        }
+        Set<String> names = new LinkedHashSet<>();
+        if (moreLikeThis.fields() == null) {
+            for (FieldMapping mapping : fields.values()) {
+                if (mapping.type == FieldType.Text || mapping.type == FieldType.Keyword) {
+                    names.add(mapping.path);
+                }
+            }
+        } else {
+            for (String name : moreLikeThis.fields()) {
+                names.add(field(name));
+            }
+        }
+        Map<String, Collection<Object>> like = new HashMap<>();
+        for (String text : moreLikeThis.likeTexts()) {
+            names.forEach(name -> like.computeIfAbsent(name, key -> new ArrayList<>())
+                .add(text));
+        }
+        List<BytesRef> likedIds = new ArrayList<>();
+        for (MoreLikeThisQueryBuilder.Item item : moreLikeThis.likeItems()) {
+            if (item.id() == null) {
+                throw new IllegalArgumentException("The embedded index likes stored documents by id only");
+            }
+            likedIds.add(new BytesRef(item.id()));
+            get(item.id()).ifPresent(para -> {
+                List<Document> block = block(para);
+                for (IndexableField field : block.get(block.size() - 1)) {
+                    if (field.stringValue() != null && names.contains(field.name())) {
+                        like.computeIfAbsent(field.name(), key -> new ArrayList<>())
+                            .add(field.stringValue());
+                    }
+                }
+            });
+        }
+        if (like.isEmpty()) {
+            return new MatchNoDocsQuery();
+        }
+        IndexSearcher searcher = acquire();
+        try {
+            MoreLikeThis similar = new MoreLikeThis(searcher.getIndexReader());
+            similar.setAnalyzer(analyzer);
+            similar.setFieldNames(names.toArray(new String[0]));
+            similar.setMinTermFreq(moreLikeThis.minTermFreq());
+            similar.setMinDocFreq(moreLikeThis.minDocFreq());
+            similar.setMaxDocFreq(moreLikeThis.maxDocFreq());
+            similar.setMaxQueryTerms(moreLikeThis.maxQueryTerms());
+            similar.setMinWordLen(moreLikeThis.minWordLength());
+            similar.setMaxWordLen(moreLikeThis.maxWordLength());
+            if (moreLikeThis.stopWords() != null) {
+                similar.setStopWords(new HashSet<>(Arrays.asList(moreLikeThis.stopWords())));
+            }
+            if (moreLikeThis.boostTerms() != 0) {
+                similar.setBoost(true);
+                similar.setBoostFactor(moreLikeThis.boostTerms());
+            }
+            Query query = Queries.maybeApplyMinimumShouldMatch(similar.like(like), moreLikeThis.minimumShouldMatch());
+            if (moreLikeThis.include() || likedIds.isEmpty()) {
+                return query;
+            }
+            return new BooleanQuery.Builder().add(query, Occur.MUST)
+                .add(new TermInSetQuery(ID, likedIds), Occur.MUST_NOT)
+                .build();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            release(searcher);
+        }
+    }
+
+    private Query bool(BoolQueryBuilder bool) {
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        bool.must()
+            .forEach(clause -> builder.add(toLucene(clause), Occur.MUST));
+        bool.filter()
+            .forEach(clause -> builder.add(toLucene(clause), Occur.FILTER));
+        bool.should()
+            .forEach(clause -> builder.add(toLucene(clause), Occur.SHOULD));
+        bool.mustNot()
+            .forEach(clause -> builder.add(toLucene(clause), Occur.MUST_NOT));
+        if (bool.must()
+            .isEmpty()
+            && bool.filter()
+                .isEmpty()
+            && bool.should()
+                .isEmpty()) {
+            // a bool query of only must_not clauses excludes from everything, as in Elasticsearch
+            builder.add(new MatchAllDocsQuery(), Occur.MUST);
+        }
+        if (bool.minimumShouldMatch() != null) {
+            builder.setMinimumNumberShouldMatch(Integer.parseInt(bool.minimumShouldMatch()));
+        }
+        return builder.build();
+    }
+
+    /**
+     * {@code NestedQueryBuilder} has no getter for its path in 7.6, so it is read back from the query's JSON.
+     */
+    private static String nestedPath(NestedQueryBuilder nested) {
+        try (XContentBuilder json = XContentFactory.jsonBuilder()) {
+            Map<?, ?> body = (Map<?, ?>) XContentHelper.convertToMap(BytesReference.bytes(nested.toXContent(json, ToXContent.EMPTY_PARAMS)),
+                false, XContentType.JSON)
+                .v2()
+                .get(NestedQueryBuilder.NAME);
+            return (String) body.get("path");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String field(String name) {
+        if (!ID.equals(name) && !fields.containsKey(name)) {
+            throw new IllegalArgumentException("No field [" + name + "] is mapped in the embedded index");
+        }
+        return name;
+    }
+
+    private static Query orNone(Query query) {
+        return query == null ? new MatchNoDocsQuery() : query;
+    }
+}
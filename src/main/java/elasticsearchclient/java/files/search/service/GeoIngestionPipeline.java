@@ -0,0 +1,477 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.noding.snapround.GeometryNoder;
+import org.locationtech.jts.operation.polygonize.Polygonizer;
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
+import org.springframework.core.env.PropertyResolver;
+
+import elasticsearchclient.java.files.search.design.GeoFeature;
+
+/**
+ * Loads GeoJSON features into a geo index such as {@code wonders-of-world}: streamed from the input, repaired,
+ * simplified and bulk-indexed by several threads at once.
+ * <p>
+ * Every feature's geometry is checked for validity and, when a polygon is not valid, repaired by noding its rings and
+ * keeping the area they enclose under the even-odd rule, which resolves self-intersections and wrong ring nesting. It is then simplified with JTS's topology-preserving
+ * simplifier, which drops vertices closer than the {@link Options#tolerance(double) tolerance}, in degrees, to the
+ * simplified line without letting rings cross or holes escape their shells. Indexing cost and the cost of every
+ * {@code geo_shape} query against the shape grow with its vertex count, so this is where detailed polygons get cheap.
+ * Features that stay invalid, lie outside valid coordinates or cannot be parsed are dropped and counted.
+ * <p>
+ * Next to the shape every document carries a {@code geo_point} inside it and its bounding envelope, so bounding box,
+ * distance and polygon queries can run on the point and coarse shape filters on the envelope. The source is the
+ * feature's properties plus those three fields. Preparation runs on {@link Options#parallelism(int) parallelism}
+ * threads, bulks are sent by a {@link BulkProcessor} with {@link Options#concurrentRequests(int) concurrent requests}
+ * in flight.
+ */
+public class GeoIngestionPipeline implements Closeable {
+
+    private static final String PREFIX = "elasticsearch.geo.";
+
+    public static class Options {
+        private String index = "wonders-of-world";
+        private String shapeField = "region";
+        private String pointField = "location";
+        private String envelopeField = "envelope";
+        private double tolerance = 0.0001;
+        private int parallelism = Runtime.getRuntime()
+            .availableProcessors();
+        private int bulkActions = 500;
+        private int concurrentRequests = 2;
+
+        public static Options defaults() {
+            return new Options();
+        }
+
+        /**
+         * Reads the {@code elasticsearch.geo.*} keys, falling back to the defaults above.
+         */
+        public static Options from(PropertyResolver properties) {
+            Options options = new Options();
+            options.index = properties.getProperty(PREFIX + "index", options.index);
+            options.tolerance = properties.getProperty(PREFIX + "tolerance", Double.class, options.tolerance);
+            options.parallelism = properties.getProperty(PREFIX + "parallelism", Integer.class, options.parallelism);
+            options.bulkActions = properties.getProperty(PREFIX + "bulk-actions", Integer.class, options.bulkActions);
+            options.concurrentRequests = properties.getProperty(PREFIX + "concurrent-requests", Integer.class, options.concurrentRequests);
+            return options;
+        }
+
+        public Options index(String index) {
+            this.index = index;
+            return this;
+        }
+
+        public Options fields(String shapeField, String pointField, String envelopeField) {
+            this.shapeField = shapeField;
+            this.pointField = pointField;
+            this.envelopeField = envelopeField;
+            return this;
+        }
+
+        /**
+         * Distance in degrees within which vertices are dropped; {@code 0} keeps every vertex.
+         */
+        public Options tolerance(double tolerance) {
+            this.tolerance = tolerance;
+            return this;
+        }
+
+        /**
+         * Threads repairing and simplifying features.
+         */
+        public Options parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public Options bulkActions(int bulkActions) {
+            this.bulkActions = bulkActions;
+            return this;
+        }
+
+        public Options concurrentRequests(int concurrentRequests) {
+            this.concurrentRequests = concurrentRequests;
+            return this;
+        }
+    }
+
+    private static final Envelope WORLD = new Envelope(-180, 180, -90, 90);
+
+    private final RestHighLevelClient client;
+    private final Options options;
+    /**
+     * Snap-rounds the crossings of a ring being repaired to a nanodegree, far below any simplification tolerance.
+     */
+    private static final PrecisionModel NODING_PRECISION = new PrecisionModel(1e9);
+
+    private final GeometryFactory factory = new GeometryFactory();
+    private final GeoJsonStreamReader reader = new GeoJsonStreamReader(factory);
+    private final ExecutorService workers;
+    private final Semaphore pending;
+    private final BulkProcessor processor;
+
+    private final AtomicLong read = new AtomicLong();
+    private final AtomicLong repaired = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong verticesIn = new AtomicLong();
+    private final AtomicLong verticesOut = new AtomicLong();
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public GeoIngestionPipeline(RestHighLevelClient client, Options options) {
+        this.client = client;
+        this.options = options;
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(options.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "geo-ingest-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // enough prepared features to keep every worker busy without reading the whole input ahead
+        this.pending = new Semaphore(options.parallelism * 4);
+        this.processor = BulkProcessor.builder((request, listener) -> client.bulkAsync(request, RequestOptions.DEFAULT, listener), new Listener())
+            .setBulkActions(options.bulkActions)
+            .setBulkSize(new ByteSizeValue(5, ByteSizeUnit.MB))
+            .setFlushInterval(TimeValue.timeValueSeconds(1))
+            .setConcurrentRequests(options.concurrentRequests)
+            .build();
+    }
+
+    public static GeoIngestionPipeline from(RestHighLevelClient client, PropertyResolver properties) {
+        return new GeoIngestionPipeline(client, Options.from(properties));
+    }
+
+    /**
+     * Creates the index with the shape, point and envelope fields mapped.
+     */
+    public void createIndex() throws IOException {
+        try (XContentBuilder mapping = XContentFactory.jsonBuilder()) {
+            mapping.startObject()
+                .startObject("properties")
+                .startObject("name")
+                .field("type", "text")
+                .field("index", false)
+                .endObject()
+                .startObject(options.shapeField)
+                .field("type", "geo_shape")
+                .endObject()
+                .startObject(options.pointField)
+                .field("type", "geo_point")
+                .endObject()
+                .startObject(options.envelopeField)
+                .field("type", "geo_shape")
+                .endObject()
+                .endObject()
+                .endObject();
+            client.indices()
+                .create(new CreateIndexRequest(options.index).mapping(mapping), RequestOptions.DEFAULT);
+        }
+    }
+
+    /**
+     * Reads every feature of {@code in} and returns once each has been handed to the bulk processor or dropped; call
+     * {@link #awaitClose(long, TimeUnit)} to wait for the last bulks.
+     */
+    public long ingest(InputStream in) throws IOException {
+        long features = reader.read(in, feature -> {
+            pending.acquireUninterruptibly();
+            try {
+                workers.execute(() -> {
+                    try {
+                        index(feature);
+                    } finally {
+                        pending.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                pending.release();
+                throw e;
+            }
+        }, rejected -> dropped.incrementAndGet());
+        read.addAndGet(features);
+        int permits = options.parallelism * 4;
+        pending.acquireUninterruptibly(permits);
+        pending.release(permits);
+        return features;
+    }
+
+    /**
+     * The geometry as it will be indexed, or {@code null} if it is dropped.
+     */
+    public Geometry prepare(Geometry geometry) {
+        verticesIn.addAndGet(geometry.getNumPoints());
+        if (!WORLD.covers(geometry.getEnvelopeInternal())) {
+            return null;
+        }
+        Geometry prepared = repair(geometry);
+        if (prepared != null && options.tolerance > 0) {
+            prepared = repair(TopologyPreservingSimplifier.simplify(prepared, options.tolerance));
+        }
+        if (prepared == null || prepared.isEmpty()) {
+            return null;
+        }
+        verticesOut.addAndGet(prepared.getNumPoints());
+        return prepared;
+    }
+
+    public void flush() {
+        processor.flush();
+    }
+
+    /**
+     * Flushes the buffer and waits for all in-flight bulks to complete.
+     */
+    public boolean awaitClose(long timeout, TimeUnit unit) throws InterruptedException {
+        workers.shutdown();
+        return processor.awaitClose(timeout, unit);
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+        processor.close();
+    }
+
+    public long getReadCount() {
+        return read.get();
+    }
+
+    public long getRepairedCount() {
+        return repaired.get();
+    }
+
+    /**
+     * Features that could not be parsed, lay outside valid coordinates or could not be repaired.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getIndexedCount() {
+        return indexed.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Vertices of the prepared geometries over those of the parsed ones.
+     */
+    public double getVertexRatio() {
+        long in = verticesIn.get();
+        return in == 0 ? 1 : (double) verticesOut.get() / in;
+    }
+
+    private void index(GeoFeature feature) {
+        Geometry geometry = prepare(feature.getGeometry());
+        if (geometry == null) {
+            dropped.incrementAndGet();
+            return;
+        }
+        IndexRequest request = new IndexRequest(options.index).source(source(feature, geometry));
+        if (feature.getId() != null) {
+            request.id(feature.getId());
+        }
+        processor.add(request);
+    }
+
+    private Geometry repair(Geometry geometry) {
+        if (geometry.isValid()) {
+            return geometry;
+        }
+        if (!(geometry instanceof Polygonal)) {
+            return null;
+        }
+        Geometry repairedGeometry = factory.createPolygon();
+        for (int i = 0; i < geometry.getNumGeometries(); i++) {
+            repairedGeometry = repairedGeometry.union(repair((Polygon) geometry.getGeometryN(i)));
+        }
+        if (!repairedGeometry.isValid()) {
+            repairedGeometry = repairedGeometry.buffer(0);
+        }
+        if (repairedGeometry.isEmpty() || !repairedGeometry.isValid() || !(repairedGeometry instanceof Polygonal)) {
+            return null;
+        }
+        repaired.incrementAndGet();
+        return repairedGeometry;
+    }
+
+    /**
+     * The area a polygon's rings enclose under the even-odd rule: each ring is noded where it crosses itself and the
+     * faces it forms are combined by symmetric difference, so both lobes of a bowtie survive, which is not the case with
+     * a buffer by zero; the holes are then cut from the shell.
+     */
+    private Geometry repair(Polygon polygon) {
+        Geometry area = evenOdd(polygon.getExteriorRing());
+        for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+            area = area.difference(evenOdd(polygon.getInteriorRingN(i)));
+        }
+        return area;
+    }
+
+    private Geometry evenOdd(LineString ring) {
+        Polygonizer polygonizer = new Polygonizer();
+        polygonizer.add(new GeometryNoder(NODING_PRECISION).node(Collections.singletonList(ring)));
+        Geometry area = factory.createPolygon();
+        for (Object face : polygonizer.getPolygons()) {
+            area = area.symDifference((Geometry) face);
+        }
+        return area;
+    }
+
+    private XContentBuilder source(GeoFeature feature, Geometry geometry) {
+        try {
+            XContentBuilder source = XContentFactory.contentBuilder(XContentType.JSON)
+                .startObject();
+            for (Map.Entry<String, Object> property : feature.getProperties()
+                .entrySet()) {
+                if (!property.getKey()
+                    .equals(options.shapeField)
+                    && !property.getKey()
+                        .equals(options.pointField)
+                    && !property.getKey()
+                        .equals(options.envelopeField)) {
+                    source.field(property.getKey(), property.getValue());
+                }
+            }
+            source.field(options.shapeField);
+            writeGeometry(source, geometry);
+            Point inside = geometry.getInteriorPoint();
+            source.array(options.pointField, inside.getX(), inside.getY());
+            Envelope envelope = geometry.getEnvelopeInternal();
+            source.startObject(options.envelopeField)
+                .field("type", "envelope")
+                .startArray("coordinates")
+                .startArray()
+                .value(envelope.getMinX())
+                .value(envelope.getMaxY())
+                .endArray()
+                .startArray()
+                .value(envelope.getMaxX())
+                .value(envelope.getMinY())
+                .endArray()
+                .endArray()
+                .endObject();
+            return source.endObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeGeometry(XContentBuilder builder, Geometry geometry) throws IOException {
+        builder.startObject()
+            .field("type", geometry.getGeometryType());
+        if (geometry instanceof GeometryCollection && !(geometry instanceof MultiPoint) && !(geometry instanceof MultiLineString)
+            && !(geometry instanceof MultiPolygon)) {
+            builder.startArray("geometries");
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                writeGeometry(builder, geometry.getGeometryN(i));
+            }
+            builder.endArray();
+        } else {
+            builder.field("coordinates");
+            writeCoordinates(builder, geometry);
+        }
+        builder.endObject();
+    }
+
+    private static void writeCoordinates(XContentBuilder builder, Geometry geometry) throws IOException {
+        if (geometry instanceof Point) {
+            writePosition(builder, geometry.getCoordinate());
+        } else if (geometry instanceof LineString) {
+            writePositions(builder, geometry.getCoordinates());
+        } else if (geometry instanceof Polygon) {
+            Polygon polygon = (Polygon) geometry;
+            builder.startArray();
+            writePositions(builder, polygon.getExteriorRing()
+                .getCoordinates());
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                writePositions(builder, polygon.getInteriorRingN(i)
+                    .getCoordinates());
+            }
+            builder.endArray();
+        } else {
+            builder.startArray();
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                writeCoordinates(builder, geometry.getGeometryN(i));
+            }
+            builder.endArray();
+        }
+    }
+
+    private static void writePositions(XContentBuilder builder, Coordinate[] coordinates) throws IOException {
+        builder.startArray();
+        for (Coordinate coordinate : coordinates) {
+            writePosition(builder, coordinate);
+        }
+        builder.endArray();
+    }
+
+    private static void writePosition(XContentBuilder builder, Coordinate coordinate) throws IOException {
+        builder.startArray()
+            .value(coordinate.x)
+            .value(coordinate.y)
+            .endArray();
+    }
+
+    private class Listener implements BulkProcessor.Listener {
+
+        public void beforeBulk(long executionId, BulkRequest request) {
+        }
+
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            for (BulkItemResponse item : response.getItems()) {
+                if (item.isFailed()) {
+                    failed.incrementAndGet();
+                } else {
+                    indexed.incrementAndGet();
+                }
+            }
+        }
+
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            failed.addAndGet(request.numberOfActions());
+        }
+    }
+}
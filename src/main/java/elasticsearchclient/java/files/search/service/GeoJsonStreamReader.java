@@ -0,0 +1,165 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import elasticsearchclient.java.files.search.design.GeoFeature;
+
+/**
+ * Reads GeoJSON features one at a time, so a feature collection of any size is parsed in the memory of its largest
+ * feature.
+ * <p>
+ * The input may be a {@code FeatureCollection}, a single {@code Feature}, or a sequence of either, such as
+ * newline-delimited features. Only the features of a collection are materialized; the collection itself is walked
+ * token by token. A feature whose geometry cannot be built, such as a ring of fewer than four positions, is passed to
+ * the rejection handler and reading goes on.
+ */
+public class GeoJsonStreamReader {
+
+    private static final TypeReference<Map<String, Object>> PROPERTIES = new TypeReference<Map<String, Object>>() {
+    };
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final GeometryFactory factory;
+
+    public GeoJsonStreamReader(GeometryFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Feeds every feature of {@code in} to {@code consumer} and returns how many were read, rejected ones included.
+     */
+    public long read(InputStream in, Consumer<GeoFeature> consumer, Consumer<RuntimeException> rejected) throws IOException {
+        long read = 0;
+        try (JsonParser parser = mapper.getFactory()
+            .createParser(in)) {
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                read += readObject(parser, consumer, rejected);
+            }
+        }
+        return read;
+    }
+
+    private long readObject(JsonParser parser, Consumer<GeoFeature> consumer, Consumer<RuntimeException> rejected) throws IOException {
+        long read = 0;
+        String type = null;
+        ObjectNode feature = mapper.createObjectNode();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("features".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    read++;
+                    accept(parser.readValueAsTree(), consumer, rejected);
+                }
+            } else if ("type".equals(field)) {
+                type = parser.getText();
+            } else {
+                feature.set(field, parser.readValueAsTree());
+            }
+        }
+        if ("Feature".equals(type)) {
+            read++;
+            accept(feature, consumer, rejected);
+        }
+        return read;
+    }
+
+    private void accept(JsonNode feature, Consumer<GeoFeature> consumer, Consumer<RuntimeException> rejected) {
+        GeoFeature parsed;
+        try {
+            JsonNode id = feature.get("id");
+            JsonNode properties = feature.get("properties");
+            parsed = new GeoFeature(id == null || id.isNull() ? null : id.asText(), properties == null || properties.isNull()
+                ? Collections.emptyMap() : mapper.convertValue(properties, PROPERTIES), geometry(feature.get("geometry")));
+        } catch (RuntimeException e) {
+            rejected.accept(e);
+            return;
+        }
+        consumer.accept(parsed);
+    }
+
+    private Geometry geometry(JsonNode geometry) {
+        if (geometry == null || geometry.isNull()) {
+            throw new IllegalArgumentException("Feature has no geometry");
+        }
+        String type = geometry.path("type")
+            .asText();
+        JsonNode coordinates = geometry.get("coordinates");
+        switch (type) {
+        case "Point":
+            return factory.createPoint(coordinate(coordinates));
+        case "MultiPoint":
+            return factory.createMultiPointFromCoords(coordinates(coordinates));
+        case "LineString":
+            return factory.createLineString(coordinates(coordinates));
+        case "MultiLineString":
+            LineString[] lines = new LineString[coordinates.size()];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = factory.createLineString(coordinates(coordinates.get(i)));
+            }
+            return factory.createMultiLineString(lines);
+        case "Polygon":
+            return polygon(coordinates);
+        case "MultiPolygon":
+            Polygon[] polygons = new Polygon[coordinates.size()];
+            for (int i = 0; i < polygons.length; i++) {
+                polygons[i] = polygon(coordinates.get(i));
+            }
+            return factory.createMultiPolygon(polygons);
+        case "GeometryCollection":
+            JsonNode members = geometry.path("geometries");
+            Geometry[] geometries = new Geometry[members.size()];
+            for (int i = 0; i < geometries.length; i++) {
+                geometries[i] = geometry(members.get(i));
+            }
+            return factory.createGeometryCollection(geometries);
+        default:
+            throw new IllegalArgumentException("Unsupported GeoJSON geometry type [" + type + "]");
+        }
+    }
+
+    private Polygon polygon(JsonNode rings) {
+        LinearRing shell = factory.createLinearRing(coordinates(rings.get(0)));
+        LinearRing[] holes = new LinearRing[rings.size() - 1];
+        for (int i = 0; i < holes.length; i++) {
+            holes[i] = factory.createLinearRing(coordinates(rings.get(i + 1)));
+        }
+        return factory.createPolygon(shell, holes);
+    }
+
+    private static Coordinate[] coordinates(JsonNode positions) {
+        Coordinate[] coordinates = new Coordinate[positions.size()];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = coordinate(positions.get(i));
+        }
+        return coordinates;
+    }
+
+    private static Coordinate coordinate(JsonNode position) {
+        if (position == null || position.size() < 2) {
+            throw new IllegalArgumentException("A position needs a longitude and a latitude");
+        }
+        return new Coordinate(position.get(0)
+            .asDouble(),
+            position.get(1)
+                .asDouble());
+    }
+}
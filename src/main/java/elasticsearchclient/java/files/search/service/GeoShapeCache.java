@@ -0,0 +1,700 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.common.geo.GeoUtils;
+import org.elasticsearch.common.geo.GeometryParser;
+import org.elasticsearch.common.geo.ShapeRelation;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.geometry.Circle;
+import org.elasticsearch.geometry.GeometryVisitor;
+import org.elasticsearch.geometry.Line;
+import org.elasticsearch.geometry.MultiLine;
+import org.elasticsearch.geometry.MultiPoint;
+import org.elasticsearch.geometry.MultiPolygon;
+import org.elasticsearch.geometry.Rectangle;
+import org.elasticsearch.index.query.GeoBoundingBoxQueryBuilder;
+import org.elasticsearch.index.query.GeoDistanceQueryBuilder;
+import org.elasticsearch.index.query.GeoPolygonQueryBuilder;
+import org.elasticsearch.index.query.GeoShapeQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.elasticsearch.search.sort.SortOrder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.springframework.core.env.PropertyResolver;
+
+/**
+ * An in-memory copy of the points and shapes of a geo index such as {@code wonders-of-world}, answering bounding box,
+ * distance, polygon and shape queries without a round trip to the cluster.
+ * <p>
+ * Every document's {@link Options#pointField(String) point} and {@link Options#shapeField(String) shape} go into two
+ * JTS {@link STRtree}s; a query walks the tree for candidates whose envelope it touches and checks each exactly.
+ * {@link #search(QueryBuilder)} takes the same {@code geo_bounding_box}, {@code geo_distance}, {@code geo_polygon}
+ * and {@code geo_shape} query builders a search would, with their semantics: boxes include their edges and may cross
+ * the dateline, distances are arc distances on the mean earth radius whatever distance type the builder names, as
+ * Elasticsearch 7 computes them, and shapes relate as in {@code geo_shape} queries, with straight edges in latitude
+ * and longitude. Shapes referenced from another index are not supported.
+ * <p>
+ * Refreshes are incremental: every {@link Options#refreshIntervalMillis(long) interval} the index is scrolled for
+ * document ids and versions only, and just the documents that are new or have a new version are fetched with a
+ * multi-get. When anything changed, new trees are built from the documents in memory and swapped in, so lookups never
+ * wait on a refresh. {@link #refresh()} can also be called directly, after an ingestion job for example.
+ */
+public class GeoShapeCache implements Closeable {
+
+    private static final String PREFIX = "elasticsearch.geo-cache.";
+
+    public static class Options {
+        private String index = "wonders-of-world";
+        private String pointField = "location";
+        private String shapeField = "region";
+        private long refreshIntervalMillis = TimeUnit.MINUTES.toMillis(5);
+        private int pageSize = 1000;
+
+        public static Options defaults() {
+            return new Options();
+        }
+
+        /**
+         * Reads the {@code elasticsearch.geo-cache.*} keys, falling back to the defaults above.
+         */
+        public static Options from(PropertyResolver properties) {
+            Options options = new Options();
+            options.index = properties.getProperty(PREFIX + "index", options.index);
+            options.pointField = properties.getProperty(PREFIX + "point-field", options.pointField);
+            options.shapeField = properties.getProperty(PREFIX + "shape-field", options.shapeField);
+            options.refreshIntervalMillis = properties.getProperty(PREFIX + "refresh-interval-millis", Long.class,
+                options.refreshIntervalMillis);
+            options.pageSize = properties.getProperty(PREFIX + "page-size", Integer.class, options.pageSize);
+            return options;
+        }
+
+        public Options index(String index) {
+            this.index = index;
+            return this;
+        }
+
+        /**
+         * The {@code geo_point} field answering bounding box, distance and polygon queries.
+         */
+        public Options pointField(String pointField) {
+            this.pointField = pointField;
+            return this;
+        }
+
+        /**
+         * The {@code geo_shape} field answering shape queries.
+         */
+        public Options shapeField(String shapeField) {
+            this.shapeField = shapeField;
+            return this;
+        }
+
+        /**
+         * Time between refreshes; {@code 0} leaves only the first load.
+         */
+        public Options refreshIntervalMillis(long refreshIntervalMillis) {
+            this.refreshIntervalMillis = refreshIntervalMillis;
+            return this;
+        }
+
+        /**
+         * Ids per scroll page and per multi-get.
+         */
+        public Options pageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+    }
+
+    /**
+     * One cached document: its source and, when it has them, its point and its shape.
+     */
+    public static class Document {
+        private final String id;
+        private final long version;
+        private final Map<String, Object> source;
+        private final GeoPoint location;
+        private final Geometry region;
+
+        Document(String id, long version, Map<String, Object> source, GeoPoint location, Geometry region) {
+            this.id = id;
+            this.version = version;
+            this.source = source;
+            this.location = location;
+            this.region = region;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public Map<String, Object> getSource() {
+            return source;
+        }
+
+        public GeoPoint getLocation() {
+            return location;
+        }
+
+        /**
+         * The shape with x as longitude and y as latitude.
+         */
+        public Geometry getRegion() {
+            return region;
+        }
+
+        @Override
+        public String toString() {
+            return "Document{" + "id='" + id + '\'' + ", version=" + version + ", location=" + location + '}';
+        }
+    }
+
+    /**
+     * The documents and the trees over them, replaced as a whole on every refresh that finds changes.
+     */
+    private static class Snapshot {
+        private final Map<String, Document> documents;
+        private final STRtree points = new STRtree();
+        private final STRtree regions = new STRtree();
+
+        private Snapshot(Map<String, Document> documents) {
+            this.documents = documents;
+            for (Document document : documents.values()) {
+                if (document.location != null) {
+                    points.insert(new Envelope(document.location.lon(), document.location.lon(), document.location.lat(),
+                        document.location.lat()), document);
+                }
+                if (document.region != null) {
+                    regions.insert(document.region.getEnvelopeInternal(), document);
+                }
+            }
+            // building up front keeps the first queries from racing to build the trees
+            points.build();
+            regions.build();
+        }
+    }
+
+    private final RestHighLevelClient client;
+    private final Options options;
+    private final GeometryFactory factory = new GeometryFactory();
+    private final GeometryParser parser = new GeometryParser(true, true, true);
+    private final ScheduledExecutorService scheduler;
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyMap());
+
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+    private final AtomicLong fetched = new AtomicLong();
+    private final AtomicLong unparsable = new AtomicLong();
+
+    public GeoShapeCache(RestHighLevelClient client, Options options) {
+        this.client = client;
+        this.options = options;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "geo-shape-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (options.refreshIntervalMillis > 0) {
+            scheduler.scheduleWithFixedDelay(this::refreshQuietly, 0, options.refreshIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler.execute(this::refreshQuietly);
+        }
+    }
+
+    public static GeoShapeCache from(RestHighLevelClient client, PropertyResolver properties) {
+        return new GeoShapeCache(client, Options.from(properties));
+    }
+
+    /**
+     * Waits for the first load to complete.
+     */
+    public boolean awaitLoaded(long timeout, TimeUnit unit) throws InterruptedException {
+        return loaded.await(timeout, unit);
+    }
+
+    /**
+     * The documents a geo query would find, in no particular order.
+     *
+     * @throws IllegalArgumentException for any other query, a field other than the configured ones or a shape
+     *             referenced from another index
+     */
+    public List<Document> search(QueryBuilder query) {
+        if (query instanceof GeoBoundingBoxQueryBuilder) {
+            GeoBoundingBoxQueryBuilder box = (GeoBoundingBoxQueryBuilder) query;
+            checkField(box.fieldName(), options.pointField);
+            return boundingBox(box.topLeft()
+                .lat(),
+                box.topLeft()
+                    .lon(),
+                box.bottomRight()
+                    .lat(),
+                box.bottomRight()
+                    .lon());
+        }
+        if (query instanceof GeoDistanceQueryBuilder) {
+            GeoDistanceQueryBuilder distance = (GeoDistanceQueryBuilder) query;
+            checkField(distance.fieldName(), options.pointField);
+            return withinDistance(distance.point()
+                .lat(),
+                distance.point()
+                    .lon(),
+                distance.distance());
+        }
+        if (query instanceof GeoPolygonQueryBuilder) {
+            GeoPolygonQueryBuilder polygon = (GeoPolygonQueryBuilder) query;
+            checkField(polygon.fieldName(), options.pointField);
+            Coordinate[] shell = new Coordinate[polygon.points()
+                .size()];
+            for (int i = 0; i < shell.length; i++) {
+                GeoPoint point = polygon.points()
+                    .get(i);
+                shell[i] = new Coordinate(point.lon(), point.lat());
+            }
+            return pointsIn(factory.createPolygon(shell));
+        }
+        if (query instanceof GeoShapeQueryBuilder) {
+            GeoShapeQueryBuilder shape = (GeoShapeQueryBuilder) query;
+            checkField(shape.fieldName(), options.shapeField);
+            if (shape.shape() == null) {
+                throw new IllegalArgumentException("Indexed shapes are not cached; pass the shape itself");
+            }
+            return shapes(shape.shape()
+                .visit(new ToJts()), shape.relation());
+        }
+        throw new IllegalArgumentException("Not a geo query: " + query.getName());
+    }
+
+    /**
+     * Documents whose point lies in the box, edges included; a {@code left} east of {@code right} crosses the
+     * dateline.
+     */
+    public List<Document> boundingBox(double top, double left, double bottom, double right) {
+        List<Document> found = new ArrayList<>();
+        STRtree points = snapshot.points;
+        if (left <= right) {
+            points.query(new Envelope(left, right, bottom, top), item -> found.add((Document) item));
+        } else {
+            points.query(new Envelope(left, 180, bottom, top), item -> found.add((Document) item));
+            points.query(new Envelope(-180, right, bottom, top), item -> found.add((Document) item));
+        }
+        return found;
+    }
+
+    /**
+     * Documents whose point is at most {@code meters} from the given one, by arc distance.
+     */
+    public List<Document> withinDistance(double lat, double lon, double meters) {
+        // the box around the circle, a little wider so rounding never loses a point on its edge
+        double radians = meters / GeoUtils.EARTH_MEAN_RADIUS * 1.0001;
+        double minLat = lat - Math.toDegrees(radians);
+        double maxLat = lat + Math.toDegrees(radians);
+        double deltaLon = 180;
+        if (minLat > -90 && maxLat < 90) {
+            double sine = Math.sin(radians) / Math.cos(Math.toRadians(lat));
+            deltaLon = sine >= 1 ? 180 : Math.toDegrees(Math.asin(sine));
+        }
+        List<Document> candidates = deltaLon >= 180 ? boundingBox(Math.min(maxLat, 90), -180, Math.max(minLat, -90), 180)
+            : boundingBox(Math.min(maxLat, 90), wrap(lon - deltaLon), Math.max(minLat, -90), wrap(lon + deltaLon));
+        List<Document> found = new ArrayList<>(candidates.size());
+        for (Document document : candidates) {
+            if (GeoUtils.arcDistance(lat, lon, document.location.lat(), document.location.lon()) <= meters) {
+                found.add(document);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Documents whose point lies in or on the polygon.
+     */
+    public List<Document> pointsIn(Geometry polygon) {
+        PreparedGeometry prepared = PreparedGeometryFactory.prepare(polygon);
+        List<Document> found = new ArrayList<>();
+        snapshot.points.query(polygon.getEnvelopeInternal(), item -> {
+            Document document = (Document) item;
+            if (prepared.covers(factory.createPoint(new Coordinate(document.location.lon(), document.location.lat())))) {
+                found.add(document);
+            }
+        });
+        return found;
+    }
+
+    /**
+     * Documents whose shape intersects {@code shape}.
+     */
+    public List<Document> intersecting(Geometry shape) {
+        return shapes(shape, ShapeRelation.INTERSECTS);
+    }
+
+    public int size() {
+        return snapshot.documents.size();
+    }
+
+    public Document get(String id) {
+        return snapshot.documents.get(id);
+    }
+
+    /**
+     * Brings the cache up to date with the index and returns the number of documents added, changed or removed.
+     */
+    public long refresh() {
+        refreshLock.lock();
+        try {
+            Snapshot current = snapshot;
+            Map<String, Long> versions = versions();
+            List<String> stale = new ArrayList<>();
+            for (Map.Entry<String, Long> version : versions.entrySet()) {
+                Document cached = current.documents.get(version.getKey());
+                if (cached == null || cached.version != version.getValue()) {
+                    stale.add(version.getKey());
+                }
+            }
+            long removed = current.documents.keySet()
+                .stream()
+                .filter(id -> !versions.containsKey(id))
+                .count();
+            if (!stale.isEmpty() || removed > 0) {
+                Map<String, Document> documents = new HashMap<>(versions.size() * 4 / 3 + 1);
+                for (Map.Entry<String, Document> document : current.documents.entrySet()) {
+                    if (versions.containsKey(document.getKey())) {
+                        documents.put(document.getKey(), document.getValue());
+                    }
+                }
+                for (int from = 0; from < stale.size(); from += options.pageSize) {
+                    for (Document document : fetch(stale.subList(from, Math.min(from + options.pageSize, stale.size())))) {
+                        documents.put(document.id, document);
+                    }
+                }
+                snapshot = new Snapshot(documents);
+            }
+            refreshes.incrementAndGet();
+            loaded.countDown();
+            return stale.size() + removed;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    public long getRefreshFailureCount() {
+        return refreshFailures.get();
+    }
+
+    /**
+     * Documents fetched by all refreshes; after the first load, only those that changed.
+     */
+    public long getFetchedCount() {
+        return fetched.get();
+    }
+
+    /**
+     * Points or shapes in the index that could not be parsed and are left out of the trees.
+     */
+    public long getUnparsableCount() {
+        return unparsable.get();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            refreshFailures.incrementAndGet();
+        }
+    }
+
+    private List<Document> shapes(Geometry shape, ShapeRelation relation) {
+        PreparedGeometry prepared = PreparedGeometryFactory.prepare(shape);
+        List<Document> found = new ArrayList<>();
+        Snapshot current = snapshot;
+        switch (relation) {
+        case INTERSECTS:
+            current.regions.query(shape.getEnvelopeInternal(), item -> {
+                if (prepared.intersects(((Document) item).region)) {
+                    found.add((Document) item);
+                }
+            });
+            return found;
+        case WITHIN:
+            current.regions.query(shape.getEnvelopeInternal(), item -> {
+                if (prepared.covers(((Document) item).region)) {
+                    found.add((Document) item);
+                }
+            });
+            return found;
+        case CONTAINS:
+            current.regions.query(shape.getEnvelopeInternal(), item -> {
+                if (((Document) item).region.covers(shape)) {
+                    found.add((Document) item);
+                }
+            });
+            return found;
+        case DISJOINT:
+            for (Document document : current.documents.values()) {
+                if (document.region != null && !prepared.intersects(document.region)) {
+                    found.add(document);
+                }
+            }
+            return found;
+        default:
+            throw new IllegalArgumentException("Unsupported shape relation [" + relation + "]");
+        }
+    }
+
+    private void checkField(String field, String cached) {
+        if (!cached.equals(field)) {
+            throw new IllegalArgumentException("Field [" + field + "] is not cached; only [" + cached + "] is");
+        }
+    }
+
+    /**
+     * Every id of the index with its version, read without sources.
+     */
+    private Map<String, Long> versions() {
+        Map<String, Long> versions = new HashMap<>();
+        TimeValue keepAlive = TimeValue.timeValueMinutes(1);
+        try {
+            SearchResponse response = client.search(new SearchRequest(options.index).scroll(keepAlive)
+                .source(new SearchSourceBuilder().size(options.pageSize)
+                    .fetchSource(false)
+                    .version(true)
+                    .sort("_doc", SortOrder.ASC)), RequestOptions.DEFAULT);
+            String scrollId = response.getScrollId();
+            try {
+                while (true) {
+                    SearchHit[] hits = response.getHits()
+                        .getHits();
+                    for (SearchHit hit : hits) {
+                        versions.put(hit.getId(), hit.getVersion());
+                    }
+                    if (hits.length < options.pageSize) {
+                        return versions;
+                    }
+                    response = client.scroll(new SearchScrollRequest(scrollId).scroll(keepAlive), RequestOptions.DEFAULT);
+                    scrollId = response.getScrollId();
+                }
+            } finally {
+                ClearScrollRequest clear = new ClearScrollRequest();
+                clear.addScrollId(scrollId);
+                client.clearScroll(clear, RequestOptions.DEFAULT);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<Document> fetch(List<String> ids) {
+        MultiGetRequest request = new MultiGetRequest();
+        for (String id : ids) {
+            request.add(new MultiGetRequest.Item(options.index, id).fetchSourceContext(FetchSourceContext.FETCH_SOURCE));
+        }
+        MultiGetResponse response;
+        try {
+            response = client.mget(request, RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<Document> documents = new ArrayList<>(ids.size());
+        for (MultiGetItemResponse item : response.getResponses()) {
+            if (item.isFailed()) {
+                throw new IllegalStateException("Fetching " + item.getId() + " failed", item.getFailure()
+                    .getFailure());
+            }
+            // deleted between the scroll and the fetch; the next refresh will not see it either
+            if (!item.getResponse()
+                .isExists()) {
+                continue;
+            }
+            Map<String, Object> source = item.getResponse()
+                .getSourceAsMap();
+            documents.add(new Document(item.getId(), item.getResponse()
+                .getVersion(), source, location(source.get(options.pointField)), region(source.get(options.shapeField))));
+        }
+        fetched.addAndGet(documents.size());
+        return documents;
+    }
+
+    private GeoPoint location(Object value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return GeoUtils.parseGeoPoint(value, true);
+        } catch (ElasticsearchParseException e) {
+            unparsable.incrementAndGet();
+            return null;
+        }
+    }
+
+    private Geometry region(Object value) {
+        if (value == null) {
+            return null;
+        }
+        try (XContentBuilder builder = XContentFactory.contentBuilder(XContentType.JSON)
+            .value(value);
+            XContentParser shape = XContentType.JSON.xContent()
+                .createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, BytesReference.bytes(builder)
+                    .streamInput())) {
+            shape.nextToken();
+            return parser.parse(shape)
+                .visit(new ToJts());
+        } catch (IOException | ParseException | RuntimeException e) {
+            unparsable.incrementAndGet();
+            return null;
+        }
+    }
+
+    private static double wrap(double lon) {
+        return lon > 180 ? lon - 360 : lon < -180 ? lon + 360 : lon;
+    }
+
+    /**
+     * Turns Elasticsearch's geometries, as parsed from a source or held by a {@code geo_shape} query, into JTS ones.
+     */
+    private class ToJts implements GeometryVisitor<Geometry, RuntimeException> {
+
+        @Override
+        public Geometry visit(Circle circle) {
+            throw new IllegalArgumentException("Circles are not supported in shapes");
+        }
+
+        @Override
+        public Geometry visit(org.elasticsearch.geometry.GeometryCollection<?> collection) {
+            Geometry[] geometries = new Geometry[collection.size()];
+            for (int i = 0; i < geometries.length; i++) {
+                geometries[i] = collection.get(i)
+                    .visit(this);
+            }
+            return factory.createGeometryCollection(geometries);
+        }
+
+        @Override
+        public Geometry visit(Line line) {
+            return factory.createLineString(coordinates(line));
+        }
+
+        @Override
+        public Geometry visit(org.elasticsearch.geometry.LinearRing ring) {
+            return factory.createLinearRing(coordinates(ring));
+        }
+
+        @Override
+        public Geometry visit(MultiLine multiLine) {
+            LineString[] lines = new LineString[multiLine.size()];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = factory.createLineString(coordinates(multiLine.get(i)));
+            }
+            return factory.createMultiLineString(lines);
+        }
+
+        @Override
+        public Geometry visit(MultiPoint multiPoint) {
+            Point[] points = new Point[multiPoint.size()];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = (Point) visit(multiPoint.get(i));
+            }
+            return factory.createMultiPoint(points);
+        }
+
+        @Override
+        public Geometry visit(MultiPolygon multiPolygon) {
+            Polygon[] polygons = new Polygon[multiPolygon.size()];
+            for (int i = 0; i < polygons.length; i++) {
+                polygons[i] = (Polygon) visit(multiPolygon.get(i));
+            }
+            return factory.createMultiPolygon(polygons);
+        }
+
+        @Override
+        public Geometry visit(org.elasticsearch.geometry.Point point) {
+            return factory.createPoint(new Coordinate(point.getX(), point.getY()));
+        }
+
+        @Override
+        public Geometry visit(org.elasticsearch.geometry.Polygon polygon) {
+            LinearRing[] holes = new LinearRing[polygon.getNumberOfHoles()];
+            for (int i = 0; i < holes.length; i++) {
+                holes[i] = factory.createLinearRing(coordinates(polygon.getHole(i)));
+            }
+            return factory.createPolygon(factory.createLinearRing(coordinates(polygon.getPolygon())), holes);
+        }
+
+        @Override
+        public Geometry visit(Rectangle rectangle) {
+            if (rectangle.getMinX() <= rectangle.getMaxX()) {
+                return factory.toGeometry(new Envelope(rectangle.getMinX(), rectangle.getMaxX(), rectangle.getMinY(), rectangle.getMaxY()));
+            }
+            // crosses the dateline
+            return factory.createMultiPolygon(new Polygon[] {
+                (Polygon) factory.toGeometry(new Envelope(rectangle.getMinX(), 180, rectangle.getMinY(), rectangle.getMaxY())),
+                (Polygon) factory.toGeometry(new Envelope(-180, rectangle.getMaxX(), rectangle.getMinY(), rectangle.getMaxY())) });
+        }
+
+        private Coordinate[] coordinates(Line line) {
+            Coordinate[] coordinates = new Coordinate[line.length()];
+            for (int i = 0; i < coordinates.length; i++) {
+                coordinates[i] = new Coordinate(line.getX(i), line.getY(i));
+            }
+            return coordinates;
+        }
+    }
+}
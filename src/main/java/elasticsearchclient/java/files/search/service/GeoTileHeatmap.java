@@ -0,0 +1,448 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.geometry.Rectangle;
+import org.elasticsearch.geometry.utils.Geohash;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.filter.Filters;
+import org.elasticsearch.search.aggregations.bucket.filter.FiltersAggregator.KeyedFilter;
+import org.elasticsearch.search.aggregations.bucket.geogrid.GeoGrid;
+import org.elasticsearch.search.aggregations.bucket.geogrid.GeoGridAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.geogrid.GeoTileUtils;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.springframework.core.env.PropertyResolver;
+
+/**
+ * Heatmap buckets of a {@code geo_point} field for a map viewport, from {@code geotile_grid} or {@code geohash_grid}
+ * aggregations instead of raw hits, cached per map tile.
+ * <p>
+ * A viewport at a zoom level is covered by the web map tiles {@code zoom/x/y} it touches. Every tile is aggregated on
+ * its own, under a {@code filters} bucket bounding the field to the tile, into cells {@link Options#detail(int)
+ * detail} zoom levels finer than the tile, so a tile holds at most {@code 4^detail} buckets however many points it
+ * covers. Tiles are cached by key in a least recently used map of {@link Options#maximumTiles(long) maximum tiles}
+ * for {@link Options#ttlMillis(long) a time to live}: panning aggregates only the tiles that came into view, all in
+ * one multi-search, and a viewport seen before costs no request at all.
+ * <p>
+ * Geotile cells nest in tiles, so every point is counted in exactly one tile; a point on the edge shared by two tiles
+ * is kept in the one its cell belongs to. Geohash cells do not line up with tiles, so a cell straddling a tile edge
+ * appears in both tiles with the points of each side.
+ */
+public class GeoTileHeatmap {
+
+    private static final String PREFIX = "elasticsearch.heatmap.";
+    private static final String TILES = "tiles";
+    private static final String CELLS = "cells";
+    private static final double MAX_MERCATOR_LAT = 85.05112878;
+
+    public enum Grid {
+        GEOTILE, GEOHASH
+    }
+
+    public static class Options {
+        private String index = "wonders-of-world";
+        private String field = "location";
+        private Grid grid = Grid.GEOTILE;
+        private int detail = 4;
+        private long maximumTiles = 4096;
+        private long ttlMillis = TimeUnit.MINUTES.toMillis(10);
+        private int maxBucketsPerSearch = 10_000;
+
+        public static Options defaults() {
+            return new Options();
+        }
+
+        /**
+         * Reads the {@code elasticsearch.heatmap.*} keys, falling back to the defaults above.
+         */
+        public static Options from(PropertyResolver properties) {
+            Options options = new Options();
+            options.index = properties.getProperty(PREFIX + "index", options.index);
+            options.field = properties.getProperty(PREFIX + "field", options.field);
+            options.grid = properties.getProperty(PREFIX + "grid", Grid.class, options.grid);
+            options.detail = properties.getProperty(PREFIX + "detail", Integer.class, options.detail);
+            options.maximumTiles = properties.getProperty(PREFIX + "maximum-tiles", Long.class, options.maximumTiles);
+            options.ttlMillis = properties.getProperty(PREFIX + "ttl-millis", Long.class, options.ttlMillis);
+            options.maxBucketsPerSearch = properties.getProperty(PREFIX + "max-buckets-per-search", Integer.class,
+                options.maxBucketsPerSearch);
+            return options;
+        }
+
+        public Options index(String index) {
+            this.index = index;
+            return this;
+        }
+
+        public Options field(String field) {
+            this.field = field;
+            return this;
+        }
+
+        public Options grid(Grid grid) {
+            this.grid = grid;
+            return this;
+        }
+
+        /**
+         * Zoom levels between a tile and its cells; every tile splits into up to {@code 2^detail} by
+         * {@code 2^detail} cells.
+         */
+        public Options detail(int detail) {
+            this.detail = detail;
+            return this;
+        }
+
+        public Options maximumTiles(long maximumTiles) {
+            this.maximumTiles = maximumTiles;
+            return this;
+        }
+
+        public Options ttlMillis(long ttlMillis) {
+            this.ttlMillis = ttlMillis;
+            return this;
+        }
+
+        /**
+         * The cluster's {@code search.max_buckets}; missing tiles are split over as many searches of one multi-search
+         * as it takes to stay below it.
+         */
+        public Options maxBucketsPerSearch(int maxBucketsPerSearch) {
+            this.maxBucketsPerSearch = maxBucketsPerSearch;
+            return this;
+        }
+    }
+
+    /**
+     * One cell of a tile: its grid key, its centre and the number of points in it.
+     */
+    public static class Bucket {
+        private final String key;
+        private final double lat;
+        private final double lon;
+        private final long count;
+
+        Bucket(String key, double lat, double lon, long count) {
+            this.key = key;
+            this.lat = lat;
+            this.lon = lon;
+            this.count = count;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public double getLat() {
+            return lat;
+        }
+
+        public double getLon() {
+            return lon;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + count;
+        }
+    }
+
+    /**
+     * The buckets of one web map tile; cached tiles are shared between callers.
+     */
+    public static class Tile {
+        private final int zoom;
+        private final int x;
+        private final int y;
+        private final List<Bucket> buckets;
+        private final long fetchedAt;
+
+        Tile(int zoom, int x, int y, List<Bucket> buckets, long fetchedAt) {
+            this.zoom = zoom;
+            this.x = x;
+            this.y = y;
+            this.buckets = buckets;
+            this.fetchedAt = fetchedAt;
+        }
+
+        public int getZoom() {
+            return zoom;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public List<Bucket> getBuckets() {
+            return buckets;
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (Bucket bucket : buckets) {
+                count += bucket.count;
+            }
+            return count;
+        }
+
+        public String getKey() {
+            return key(zoom, x, y);
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + buckets;
+        }
+    }
+
+    private final RestHighLevelClient client;
+    private final Options options;
+    private final LongSupplier clock;
+    private final Map<String, Tile> tiles;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong searches = new AtomicLong();
+
+    public GeoTileHeatmap(RestHighLevelClient client, Options options) {
+        this(client, options, System::currentTimeMillis);
+    }
+
+    public GeoTileHeatmap(RestHighLevelClient client, Options options, LongSupplier clock) {
+        this.client = client;
+        this.options = options;
+        this.clock = clock;
+        this.tiles = new LinkedHashMap<String, Tile>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tile> eldest) {
+                if (size() > options.maximumTiles) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static GeoTileHeatmap from(RestHighLevelClient client, PropertyResolver properties) {
+        return new GeoTileHeatmap(client, Options.from(properties));
+    }
+
+    /**
+     * The tiles covering the viewport at {@code zoom}, row by row from the top left; a {@code left} east of
+     * {@code right} crosses the dateline.
+     */
+    public List<Tile> heatmap(int zoom, double top, double left, double bottom, double right) {
+        GeoTileUtils.checkPrecisionRange(zoom + options.detail);
+        int[] topLeft = tile(zoom, top, left);
+        int[] bottomRight = tile(zoom, bottom, right);
+        int columns = Math.floorMod(bottomRight[0] - topLeft[0], 1 << zoom) + 1;
+        List<int[]> keys = new ArrayList<>();
+        for (int y = topLeft[1]; y <= bottomRight[1]; y++) {
+            for (int column = 0; column < columns; column++) {
+                keys.add(new int[] { (topLeft[0] + column) % (1 << zoom), y });
+            }
+        }
+
+        Tile[] found = new Tile[keys.size()];
+        List<Integer> missing = new ArrayList<>();
+        long now = clock.getAsLong();
+        synchronized (tiles) {
+            for (int i = 0; i < found.length; i++) {
+                String key = key(zoom, keys.get(i)[0], keys.get(i)[1]);
+                Tile tile = tiles.get(key);
+                if (tile != null && now - tile.fetchedAt >= options.ttlMillis) {
+                    tiles.remove(key);
+                    tile = null;
+                }
+                if (tile == null) {
+                    missing.add(i);
+                } else {
+                    found[i] = tile;
+                }
+            }
+        }
+        hits.addAndGet(found.length - missing.size());
+        misses.addAndGet(missing.size());
+        if (!missing.isEmpty()) {
+            List<int[]> fetch = new ArrayList<>(missing.size());
+            for (int i : missing) {
+                fetch.add(keys.get(i));
+            }
+            List<Tile> fetched = fetch(zoom, fetch, now);
+            synchronized (tiles) {
+                for (int i = 0; i < fetched.size(); i++) {
+                    found[missing.get(i)] = fetched.get(i);
+                    tiles.put(fetched.get(i)
+                        .getKey(), fetched.get(i));
+                }
+            }
+        }
+        List<Tile> viewport = new ArrayList<>(found.length);
+        Collections.addAll(viewport, found);
+        return viewport;
+    }
+
+    /**
+     * Drops every cached tile, for after the index was reloaded.
+     */
+    public void invalidate() {
+        synchronized (tiles) {
+            tiles.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Searches sent for missing tiles; a multi-search of several counts as several.
+     */
+    public long getSearchCount() {
+        return searches.get();
+    }
+
+    private List<Tile> fetch(int zoom, List<int[]> keys, long now) {
+        int tilesPerSearch = Math.max(1, options.maxBucketsPerSearch / ((1 << 2 * options.detail) + 1));
+        MultiSearchRequest request = new MultiSearchRequest();
+        for (int from = 0; from < keys.size(); from += tilesPerSearch) {
+            List<int[]> chunk = keys.subList(from, Math.min(from + tilesPerSearch, keys.size()));
+            KeyedFilter[] filters = new KeyedFilter[chunk.size()];
+            for (int i = 0; i < filters.length; i++) {
+                int x = chunk.get(i)[0];
+                int y = chunk.get(i)[1];
+                // the outermost rows reach the poles, which the grid folds into them
+                filters[i] = new KeyedFilter(key(zoom, x, y), QueryBuilders.geoBoundingBoxQuery(options.field)
+                    .setCorners(y == 0 ? 90 : lat(zoom, y), lon(zoom, x), y == (1 << zoom) - 1 ? -90 : lat(zoom, y + 1), lon(zoom, x + 1)));
+            }
+            request.add(new SearchRequest(options.index).source(new SearchSourceBuilder().size(0)
+                .aggregation(AggregationBuilders.filters(TILES, filters)
+                    .subAggregation(grid(zoom)))));
+        }
+        MultiSearchResponse response;
+        try {
+            response = client.msearch(request, RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        searches.addAndGet(request.requests()
+            .size());
+
+        List<Tile> fetched = new ArrayList<>(keys.size());
+        for (int from = 0, search = 0; from < keys.size(); from += tilesPerSearch, search++) {
+            MultiSearchResponse.Item item = response.getResponses()[search];
+            if (item.isFailure()) {
+                throw new IllegalStateException("Aggregating tiles of " + options.index + " failed", item.getFailure());
+            }
+            Filters perTile = item.getResponse()
+                .getAggregations()
+                .get(TILES);
+            for (int[] key : keys.subList(from, Math.min(from + tilesPerSearch, keys.size()))) {
+                Filters.Bucket tile = perTile.getBucketByKey(key(zoom, key[0], key[1]));
+                List<Bucket> buckets = tile == null ? Collections.emptyList() : buckets(zoom, key[0], key[1], tile.getAggregations()
+                    .get(CELLS));
+                fetched.add(new Tile(zoom, key[0], key[1], Collections.unmodifiableList(buckets), now));
+            }
+        }
+        return fetched;
+    }
+
+    private GeoGridAggregationBuilder grid(int zoom) {
+        int cells = 1 << 2 * options.detail;
+        if (options.grid == Grid.GEOHASH) {
+            // a geohash character halves longitude two or three times; pick the length closest to the cell zoom
+            int precision = Math.max(1, Math.min(12, (int) Math.round((zoom + options.detail) * 2 / 5.0)));
+            return AggregationBuilders.geohashGrid(CELLS)
+                .field(options.field)
+                .precision(precision)
+                .size(cells);
+        }
+        return AggregationBuilders.geotileGrid(CELLS)
+            .field(options.field)
+            .precision(zoom + options.detail)
+            .size(cells);
+    }
+
+    private List<Bucket> buckets(int zoom, int x, int y, GeoGrid grid) {
+        List<Bucket> buckets = new ArrayList<>(grid.getBuckets()
+            .size());
+        for (GeoGrid.Bucket cell : grid.getBuckets()) {
+            String key = cell.getKeyAsString();
+            if (options.grid == Grid.GEOHASH) {
+                Rectangle bounds = Geohash.toBoundingBox(key);
+                buckets.add(new Bucket(key, (bounds.getMinLat() + bounds.getMaxLat()) / 2, (bounds.getMinLon() + bounds.getMaxLon()) / 2,
+                    cell.getDocCount()));
+                continue;
+            }
+            String[] parts = key.split("/");
+            int cellZoom = Integer.parseInt(parts[0]);
+            int cellX = Integer.parseInt(parts[1]);
+            int cellY = Integer.parseInt(parts[2]);
+            // a point on the edge matched this tile's bounds but its cell belongs to the neighbour
+            if (cellX >> cellZoom - zoom != x || cellY >> cellZoom - zoom != y) {
+                continue;
+            }
+            buckets.add(new Bucket(key, lat(cellZoom, cellY + 0.5), lon(cellZoom, cellX + 0.5), cell.getDocCount()));
+        }
+        return buckets;
+    }
+
+    /**
+     * The column and row of the tile holding the point at {@code zoom}, as the {@code geotile_grid} computes them
+     * except that longitude 180 stays in the last column, so a viewport can end there.
+     */
+    private static int[] tile(int zoom, double lat, double lon) {
+        int tiles = 1 << zoom;
+        double sin = Math.sin(Math.toRadians(Math.max(-MAX_MERCATOR_LAT, Math.min(MAX_MERCATOR_LAT, lat))));
+        int x = (int) Math.floor((lon + 180) / 360 * tiles);
+        int y = (int) Math.floor((0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI)) * tiles);
+        return new int[] { Math.max(0, Math.min(tiles - 1, x)), Math.max(0, Math.min(tiles - 1, y)) };
+    }
+
+    private static double lon(int zoom, double x) {
+        return x / (1 << zoom) * 360 - 180;
+    }
+
+    private static double lat(int zoom, double y) {
+        double lat = Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y / (1 << zoom)))));
+        return Math.max(-MAX_MERCATOR_LAT, Math.min(MAX_MERCATOR_LAT, lat));
+    }
+
+    private static String key(int zoom, int x, int y) {
+        return zoom + "/" + x + "/" + y;
+    }
+}
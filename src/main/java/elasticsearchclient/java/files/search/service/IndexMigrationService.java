@@ -0,0 +1,381 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.HttpHeaders;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.GetAliasesResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.document.DocumentField;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.stereotype.Service;
+
+/**
+ * Rebuilds the index behind an entity's {@code @Document} name without taking search offline.
+ * <p>
+ * The document name is served as an alias over a versioned index ({@code blog} over {@code blog_v1}, {@code blog_v2},
+ * ...), so repositories and the template keep reading and writing {@code blog} throughout. A migration creates the
+ * next version with the entity's current mapping and a bulk-load profile (no refresh, no replicas, async translog),
+ * copies every document from the live index with parallel sliced scrolls, restores the live index's replica count,
+ * refresh interval and translog durability, force-merges, and then moves the alias in a single atomic aliases request.
+ * A {@code blog} that is still a concrete index is replaced by the alias in that same request. When any step fails
+ * before the alias has moved, the half-built index is deleted and the live index keeps being served.
+ * <p>
+ * Writes keep going to the old index while the copy runs; documents written after their slice has passed them are not
+ * carried over, so writers should be paused or the changes replayed for a fully consistent switch.
+ */
+@Service
+public class IndexMigrationService {
+
+    public static class Options {
+        private int slices = 4;
+        private int pageSize = 1000;
+        private TimeValue keepAlive = TimeValue.timeValueMinutes(5);
+        private int maxNumSegments = 1;
+
+        public static Options defaults() {
+            return new Options();
+        }
+
+        /**
+         * Number of sliced scrolls reading the old index in parallel, ideally a multiple of its shard count.
+         */
+        public Options slices(int slices) {
+            this.slices = slices;
+            return this;
+        }
+
+        /**
+         * Documents per scroll page and per bulk request.
+         */
+        public Options pageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        public Options keepAlive(TimeValue keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Segment count the new index is force-merged to before it is served.
+         */
+        public Options maxNumSegments(int maxNumSegments) {
+            this.maxNumSegments = maxNumSegments;
+            return this;
+        }
+    }
+
+    public static class Migration {
+        private final String alias;
+        private final String source;
+        private final String target;
+        private final long copied;
+
+        Migration(String alias, String source, String target, long copied) {
+            this.alias = alias;
+            this.source = source;
+            this.target = target;
+            this.copied = copied;
+        }
+
+        public String getAlias() {
+            return alias;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public long getCopied() {
+            return copied;
+        }
+
+        @Override
+        public String toString() {
+            return "Migration [alias=" + alias + ", source=" + source + ", target=" + target + ", copied=" + copied + "]";
+        }
+    }
+
+    private static final String REFRESH_INTERVAL = "index.refresh_interval";
+    private static final String NUMBER_OF_REPLICAS = "index.number_of_replicas";
+    private static final String TRANSLOG_DURABILITY = "index.translog.durability";
+    // hits carry their _source in the response's format, and the copy bulks it as JSON
+    private static final RequestOptions JSON_RESPONSE = RequestOptions.DEFAULT.toBuilder()
+        .addHeader(HttpHeaders.ACCEPT, "application/json")
+        .build();
+
+    private final RestHighLevelClient client;
+    private final ElasticsearchOperations operations;
+
+    @Autowired
+    public IndexMigrationService(RestHighLevelClient client, ElasticsearchOperations operations) {
+        this.client = client;
+        this.operations = operations;
+    }
+
+    /**
+     * Creates {@code <name>_v1} behind the alias when neither an alias nor an index of the entity's name exists yet.
+     *
+     * @return whether the index was created
+     */
+    public boolean createIfMissing(Class<?> type) {
+        String alias = aliasName(type);
+        try {
+            if (client.indices()
+                .exists(new GetIndexRequest(alias), RequestOptions.DEFAULT)) {
+                return false;
+            }
+            String index = alias + "_v1";
+            create(type, index, Settings.EMPTY);
+            client.indices()
+                .updateAliases(new IndicesAliasesRequest().addAliasAction(AliasActions.add()
+                    .index(index)
+                    .alias(alias)
+                    .writeIndex(true)), RequestOptions.DEFAULT);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The concrete index currently served under the entity's name.
+     */
+    public String currentIndex(Class<?> type) {
+        try {
+            return currentIndex(aliasName(type));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Migration migrate(Class<?> type) {
+        return migrate(type, Options.defaults());
+    }
+
+    public Migration migrate(Class<?> type, Options options) {
+        String alias = aliasName(type);
+        try {
+            String source = currentIndex(alias);
+            String target = alias + "_v" + (version(alias, source) + 1);
+
+            GetSettingsResponse live = client.indices()
+                .getSettings(new GetSettingsRequest().indices(source)
+                    .includeDefaults(true), RequestOptions.DEFAULT);
+            String replicas = live.getSetting(source, NUMBER_OF_REPLICAS);
+            String refreshInterval = live.getSetting(source, REFRESH_INTERVAL);
+            String durability = live.getSetting(source, TRANSLOG_DURABILITY);
+
+            create(type, target, Settings.builder()
+                .put(REFRESH_INTERVAL, "-1")
+                .put(NUMBER_OF_REPLICAS, 0)
+                .put(TRANSLOG_DURABILITY, "async")
+                .build());
+            try {
+                long copied = copy(source, target, options);
+
+                client.indices()
+                    .putSettings(new UpdateSettingsRequest(target).settings(Settings.builder()
+                        .put(REFRESH_INTERVAL, refreshInterval == null ? "1s" : refreshInterval)
+                        .put(NUMBER_OF_REPLICAS, replicas == null ? "1" : replicas)
+                        .put(TRANSLOG_DURABILITY, durability == null ? "request" : durability)), RequestOptions.DEFAULT);
+                client.indices()
+                    .refresh(new RefreshRequest(target), RequestOptions.DEFAULT);
+                client.indices()
+                    .forcemerge(new ForceMergeRequest(target).maxNumSegments(options.maxNumSegments), RequestOptions.DEFAULT);
+
+                IndicesAliasesRequest swap = new IndicesAliasesRequest().addAliasAction(AliasActions.add()
+                    .index(target)
+                    .alias(alias)
+                    .writeIndex(true));
+                if (source.equals(alias)) {
+                    swap.addAliasAction(AliasActions.removeIndex()
+                        .index(source));
+                } else {
+                    swap.addAliasAction(AliasActions.remove()
+                        .index(source)
+                        .alias(alias));
+                }
+                client.indices()
+                    .updateAliases(swap, RequestOptions.DEFAULT);
+                return new Migration(alias, source, target, copied);
+            } catch (IOException | RuntimeException e) {
+                discard(target, e);
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Deletes the target of a failed migration; a failure to do so is kept with the one that stopped the migration.
+     */
+    private void discard(String target, Exception failure) {
+        try {
+            client.indices()
+                .delete(new DeleteIndexRequest(target), RequestOptions.DEFAULT);
+        } catch (IOException | RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private String aliasName(Class<?> type) {
+        return operations.getIndexCoordinatesFor(type)
+            .getIndexName();
+    }
+
+    private String currentIndex(String alias) throws IOException {
+        GetAliasesResponse aliases = client.indices()
+            .getAlias(new GetAliasesRequest(alias), RequestOptions.DEFAULT);
+        if (aliases.status() != RestStatus.NOT_FOUND && !aliases.getAliases()
+            .isEmpty()) {
+            if (aliases.getAliases()
+                .size() > 1) {
+                throw new IllegalStateException("Alias " + alias + " points to several indices: " + aliases.getAliases()
+                    .keySet());
+            }
+            return aliases.getAliases()
+                .keySet()
+                .iterator()
+                .next();
+        }
+        if (client.indices()
+            .exists(new GetIndexRequest(alias), RequestOptions.DEFAULT)) {
+            return alias;
+        }
+        throw new IllegalStateException("Neither an alias nor an index named " + alias + " exists");
+    }
+
+    private static int version(String alias, String index) {
+        Matcher matcher = Pattern.compile(Pattern.quote(alias) + "_v(\\d+)")
+            .matcher(index);
+        // a concrete index named after the alias counts as the first version
+        return matcher.matches() ? Integer.parseInt(matcher.group(1)) : 1;
+    }
+
+    private void create(Class<?> type, String index, Settings settings) throws IOException {
+        Map<String, Object> mapping = operations.indexOps(type)
+            .createMapping(type);
+        client.indices()
+            .create(new CreateIndexRequest(index).settings(settings)
+                .mapping(mapping), RequestOptions.DEFAULT);
+    }
+
+    private long copy(String source, String target, Options options) throws IOException {
+        AtomicLong copied = new AtomicLong();
+        if (options.slices <= 1) {
+            copySlice(source, target, null, options, copied);
+            return copied.get();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(options.slices);
+        try {
+            List<Future<?>> slices = new ArrayList<>();
+            for (int slice = 0; slice < options.slices; slice++) {
+                SliceBuilder sliceBuilder = new SliceBuilder(slice, options.slices);
+                slices.add(executor.submit(() -> {
+                    copySlice(source, target, sliceBuilder, options, copied);
+                    return null;
+                }));
+            }
+            for (Future<?> slice : slices) {
+                slice.get();
+            }
+            return copied.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                .interrupt();
+            throw new IllegalStateException("Interrupted while copying " + source + " to " + target, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Copying " + source + " to " + target + " failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void copySlice(String source, String target, SliceBuilder slice, Options options, AtomicLong copied) throws IOException {
+        SearchSourceBuilder query = new SearchSourceBuilder().query(QueryBuilders.matchAllQuery())
+            .size(options.pageSize)
+            .sort("_doc");
+        if (slice != null) {
+            query.slice(slice);
+        }
+        SearchResponse page = client.search(new SearchRequest(source).source(query)
+            .scroll(options.keepAlive), JSON_RESPONSE);
+        String scrollId = page.getScrollId();
+        try {
+            while (page.getHits()
+                .getHits().length > 0) {
+                BulkRequest bulk = new BulkRequest();
+                for (SearchHit hit : page.getHits()
+                    .getHits()) {
+                    IndexRequest request = new IndexRequest(target).id(hit.getId())
+                        .source(hit.getSourceRef(), XContentType.JSON);
+                    DocumentField routing = hit.field("_routing");
+                    if (routing != null) {
+                        request.routing(routing.getValue());
+                    }
+                    bulk.add(request);
+                }
+                BulkResponse response = client.bulk(bulk, RequestOptions.DEFAULT);
+                if (response.hasFailures()) {
+                    throw new IllegalStateException("Copying to " + target + " failed: " + response.buildFailureMessage());
+                }
+                copied.addAndGet(bulk.numberOfActions());
+                page = client.scroll(new SearchScrollRequest(scrollId).scroll(options.keepAlive), JSON_RESPONSE);
+                scrollId = page.getScrollId();
+            }
+        } finally {
+            ClearScrollRequest clear = new ClearScrollRequest();
+            clear.addScrollId(scrollId);
+            client.clearScroll(clear, RequestOptions.DEFAULT);
+        }
+    }
+}
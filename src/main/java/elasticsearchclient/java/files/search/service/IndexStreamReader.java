@@ -0,0 +1,232 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import elasticsearchclient.java.files.search.design.Para;
+
+/**
+ * Reads a whole index as a lazily evaluated stream, for exports that go far beyond {@code max_result_window}.
+ * <p>
+ * While the consumer works through one page the next one is already being fetched, so at most two pages are held in
+ * memory. Elasticsearch 7.6 has no point-in-time API, so {@link Mode#SCROLL} (sorted by {@code _doc}) is the default
+ * and gives a consistent snapshot; {@link Mode#SEARCH_AFTER} keeps no server-side context but sees concurrent writes.
+ * Streams must be closed so the scroll context is released early.
+ */
+@Service
+public class IndexStreamReader {
+
+    public enum Mode {
+        SCROLL, SEARCH_AFTER
+    }
+
+    public static class Options {
+        private int pageSize = 1000;
+        private Mode mode = Mode.SCROLL;
+        private TimeValue keepAlive = TimeValue.timeValueMinutes(1);
+        private String sortField = "_id";
+        private QueryBuilder query = QueryBuilders.matchAllQuery();
+
+        public static Options defaults() {
+            return new Options();
+        }
+
+        public Options pageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        public Options mode(Mode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        /**
+         * How long the scroll context survives between two pages.
+         */
+        public Options keepAlive(TimeValue keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Unique field used as the {@code search_after} tiebreaker.
+         */
+        public Options sortField(String sortField) {
+            this.sortField = sortField;
+            return this;
+        }
+
+        public Options query(QueryBuilder query) {
+            this.query = query;
+            return this;
+        }
+    }
+
+    private final RestHighLevelClient client;
+    private final ElasticsearchOperations operations;
+    private final SearchHitsMapper mapper;
+
+    @Autowired
+    public IndexStreamReader(RestHighLevelClient client, ElasticsearchOperations operations) {
+        this.client = client;
+        this.operations = operations;
+        this.mapper = new SearchHitsMapper(operations.getElasticsearchConverter());
+    }
+
+    public Stream<Para> streamParas() {
+        return stream(Para.class, Options.defaults());
+    }
+
+    public <T> Stream<T> stream(Class<T> type, Options options) {
+        return stream(type, operations.getIndexCoordinatesFor(type), options);
+    }
+
+    public <T> Stream<T> stream(Class<T> type, IndexCoordinates index, Options options) {
+        CloseableIterator<T> iterator = iterator(type, index, options);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(iterator::close);
+    }
+
+    public <T> CloseableIterator<T> iterator(Class<T> type, IndexCoordinates index, Options options) {
+        return new PrefetchingIterator<>(type, index, options);
+    }
+
+    private class PrefetchingIterator<T> implements CloseableIterator<T> {
+        private final Class<T> type;
+        private final IndexCoordinates index;
+        private final Options options;
+
+        private Iterator<T> page = Collections.emptyIterator();
+        private PlainActionFuture<SearchResponse> next;
+        private String scrollId;
+        private boolean started;
+
+        PrefetchingIterator(Class<T> type, IndexCoordinates index, Options options) {
+            this.type = type;
+            this.index = index;
+            this.options = options;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!started) {
+                started = true;
+                next = search(firstRequest());
+            }
+            while (!page.hasNext()) {
+                if (next == null) {
+                    return false;
+                }
+                SearchResponse response = next.actionGet();
+                next = null;
+                scrollId = response.getScrollId();
+                SearchHit[] hits = response.getHits()
+                    .getHits();
+                if (hits.length == options.pageSize) {
+                    // prefetch while the caller works through this page
+                    next = fetchAfter(hits[hits.length - 1]);
+                } else {
+                    clearScroll();
+                }
+                page = toEntities(response);
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.next();
+        }
+
+        @Override
+        public void close() {
+            started = true;
+            page = Collections.emptyIterator();
+            if (next != null) {
+                next.cancel(true);
+                next = null;
+            }
+            clearScroll();
+        }
+
+        private void clearScroll() {
+            if (scrollId != null) {
+                ClearScrollRequest clear = new ClearScrollRequest();
+                clear.addScrollId(scrollId);
+                client.clearScrollAsync(clear, RequestOptions.DEFAULT, PlainActionFuture.newFuture());
+                scrollId = null;
+            }
+        }
+
+        private SearchRequest firstRequest() {
+            SearchSourceBuilder source = new SearchSourceBuilder().query(options.query)
+                .size(options.pageSize);
+            SearchRequest request = new SearchRequest(index.getIndexNames()).source(source);
+            if (options.mode == Mode.SCROLL) {
+                source.sort("_doc");
+                request.scroll(options.keepAlive);
+            } else {
+                source.sort(options.sortField, SortOrder.ASC)
+                    .trackTotalHits(false);
+            }
+            return request;
+        }
+
+        private PlainActionFuture<SearchResponse> fetchAfter(SearchHit last) {
+            if (options.mode == Mode.SCROLL) {
+                PlainActionFuture<SearchResponse> future = PlainActionFuture.newFuture();
+                client.scrollAsync(new SearchScrollRequest(scrollId).scroll(options.keepAlive), RequestOptions.DEFAULT, future);
+                return future;
+            }
+            SearchRequest request = firstRequest();
+            request.source()
+                .searchAfter(last.getSortValues());
+            return search(request);
+        }
+
+        private PlainActionFuture<SearchResponse> search(SearchRequest request) {
+            PlainActionFuture<SearchResponse> future = PlainActionFuture.newFuture();
+            client.searchAsync(request, RequestOptions.DEFAULT, future);
+            return future;
+        }
+
+        private Iterator<T> toEntities(SearchResponse response) {
+            List<T> entities = mapper.mapHits(response, type)
+                .getSearchHits()
+                .stream()
+                .map(hit -> hit.getContent())
+                .collect(Collectors.toList());
+            return entities.iterator();
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.springframework.core.env.PropertyResolver;
+
+/**
+ * Admission control for writes, so a cluster whose write thread pool is full gets less traffic instead of more.
+ * <p>
+ * Writes are submitted as callables, for example {@code () -> client.index(request, RequestOptions.DEFAULT)} or
+ * {@code () -> paraRepository.save(para)}, and run with at most {@link #getLimit()} of them in flight. The limit
+ * follows AIMD: it grows by about one per limit's worth of writes completing within the latency target, and is cut by
+ * the backoff factor when a write is rejected with {@code 429} or takes longer than the target. A cut only applies to
+ * writes started after the previous one, so a burst of rejections from the same window counts once.
+ * <p>
+ * Writes failing with a retryable status ({@code 429}, {@code 502}, {@code 503}, {@code 504}) are retried after a
+ * decorrelated jitter delay, {@code min(maxDelay, random(baseDelay, 3 * previousDelay))}, without holding a slot;
+ * retries go ahead of new writes. Writes waiting for a slot sit in a bounded queue; what happens when it is full is
+ * decided by the {@link OverflowPolicy}.
+ * <p>
+ * State is guarded by a {@link ReentrantLock} rather than the object's monitor, so submitters blocked on a full queue
+ * park without pinning a carrier thread when they are virtual threads.
+ */
+public class IngestionGovernor implements AutoCloseable {
+
+    private static final String PREFIX = "elasticsearch.ingest.";
+
+    public enum OverflowPolicy {
+        /**
+         * The submitting thread waits for room in the queue.
+         */
+        BLOCK,
+        /**
+         * The new write fails with a {@link RejectedExecutionException}.
+         */
+        REJECT,
+        /**
+         * The longest waiting write fails with a {@link RejectedExecutionException} to make room for the new one.
+         */
+        DROP_OLDEST
+    }
+
+    public static class Options {
+        private int initialLimit = 4;
+        private int minLimit = 1;
+        private int maxLimit = 64;
+        private long latencyTargetMillis = 500;
+        private double backoffFactor = 0.5;
+        private int queueCapacity = 1000;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+        private int maxRetries = 5;
+        private long baseDelayMillis = 50;
+        private long maxDelayMillis = 5000;
+
+        public static Options defaults() {
+            return new Options();
+        }
+
+        /**
+         * Reads the {@code elasticsearch.ingest.*} keys, falling back to the defaults above.
+         */
+        public static Options from(PropertyResolver properties) {
+            Options options = new Options();
+            options.initialLimit = properties.getProperty(PREFIX + "initial-limit", Integer.class, options.initialLimit);
+            options.minLimit = properties.getProperty(PREFIX + "min-limit", Integer.class, options.minLimit);
+            options.maxLimit = properties.getProperty(PREFIX + "max-limit", Integer.class, options.maxLimit);
+            options.latencyTargetMillis = properties.getProperty(PREFIX + "latency-target-millis", Long.class, options.latencyTargetMillis);
+            options.backoffFactor = properties.getProperty(PREFIX + "backoff-factor", Double.class, options.backoffFactor);
+            options.queueCapacity = properties.getProperty(PREFIX + "queue-capacity", Integer.class, options.queueCapacity);
+            options.overflowPolicy = properties.getProperty(PREFIX + "overflow-policy", OverflowPolicy.class, options.overflowPolicy);
+            options.maxRetries = properties.getProperty(PREFIX + "max-retries", Integer.class, options.maxRetries);
+            options.baseDelayMillis = properties.getProperty(PREFIX + "retry-base-delay-millis", Long.class, options.baseDelayMillis);
+            options.maxDelayMillis = properties.getProperty(PREFIX + "retry-max-delay-millis", Long.class, options.maxDelayMillis);
+            return options;
+        }
+
+        public Options limits(int initial, int min, int max) {
+            this.initialLimit = initial;
+            this.minLimit = min;
+            this.maxLimit = max;
+            return this;
+        }
+
+        /**
+         * Writes slower than this count as congestion, like a rejection.
+         */
+        public Options latencyTargetMillis(long latencyTargetMillis) {
+            this.latencyTargetMillis = latencyTargetMillis;
+            return this;
+        }
+
+        /**
+         * Factor the limit is multiplied by on congestion.
+         */
+        public Options backoffFactor(double backoffFactor) {
+            this.backoffFactor = backoffFactor;
+            return this;
+        }
+
+        public Options queue(int capacity, OverflowPolicy overflowPolicy) {
+            this.queueCapacity = capacity;
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        public Options retries(int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+            this.maxRetries = maxRetries;
+            this.baseDelayMillis = baseDelayMillis;
+            this.maxDelayMillis = maxDelayMillis;
+            return this;
+        }
+    }
+
+    private final Options options;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService retryTimer;
+    private final Deque<Write<?>> queue = new ArrayDeque<>();
+    private final Deque<Write<?>> retries = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private long lastDecreaseNanos;
+    private int scheduledRetries;
+    private boolean closed;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+
+    public IngestionGovernor(Options options) {
+        this.options = options;
+        this.limit = options.initialLimit;
+        this.lastDecreaseNanos = System.nanoTime();
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "ingest-governor-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.retryTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ingest-governor-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static IngestionGovernor from(PropertyResolver properties) {
+        return new IngestionGovernor(Options.from(properties));
+    }
+
+    /**
+     * Queues {@code write}; the future completes with its result once it succeeded, or with the last failure once it
+     * failed for good.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> write) {
+        Write<T> pending = new Write<>(write);
+        Write<?> dropped = null;
+        lock.lock();
+        try {
+            if (closed) {
+                throw new RejectedExecutionException("Ingestion governor is closed");
+            }
+            while (queue.size() >= options.queueCapacity && !closed) {
+                if (options.overflowPolicy == OverflowPolicy.REJECT) {
+                    overflowed.incrementAndGet();
+                    pending.future.completeExceptionally(new RejectedExecutionException("Ingestion queue is full (" + options.queueCapacity + ")"));
+                    return pending.future;
+                }
+                if (options.overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                    overflowed.incrementAndGet();
+                    dropped = queue.pollFirst();
+                    break;
+                }
+                try {
+                    slotFreed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread()
+                        .interrupt();
+                    pending.future.completeExceptionally(e);
+                    return pending.future;
+                }
+            }
+            if (closed) {
+                throw new RejectedExecutionException("Ingestion governor is closed");
+            }
+            queue.addLast(pending);
+        } finally {
+            lock.unlock();
+        }
+        if (dropped != null) {
+            dropped.future.completeExceptionally(new RejectedExecutionException("Dropped from the full ingestion queue"));
+        }
+        dispatch();
+        return pending.future;
+    }
+
+    /**
+     * Submits {@code write} and waits for it, rethrowing its failure.
+     */
+    public <T> T execute(Callable<T> write) throws Exception {
+        try {
+            return submit(write).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * Current concurrency limit.
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlightCount() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return queue.size() + retries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getRetriedCount() {
+        return retried.get();
+    }
+
+    /**
+     * Attempts rejected by the cluster with {@code 429}.
+     */
+    public long getThrottledCount() {
+        return throttled.get();
+    }
+
+    /**
+     * Writes rejected or dropped because the queue was full.
+     */
+    public long getOverflowCount() {
+        return overflowed.get();
+    }
+
+    /**
+     * Stops accepting writes; queued and in-flight ones, and their retries, still run before the threads stop.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            slotFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        dispatch();
+    }
+
+    private void dispatch() {
+        while (true) {
+            Write<?> next;
+            lock.lock();
+            try {
+                if (inFlight >= (int) limit) {
+                    return;
+                }
+                next = retries.isEmpty() ? queue.pollFirst() : retries.pollFirst();
+                if (next == null) {
+                    if (closed && inFlight == 0 && scheduledRetries == 0) {
+                        retryTimer.shutdown();
+                        workers.shutdown();
+                    }
+                    return;
+                }
+                inFlight++;
+                slotFreed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            Write<?> write = next;
+            workers.execute(write::attempt);
+        }
+    }
+
+    private void finished(long startNanos, boolean congested) {
+        lock.lock();
+        try {
+            inFlight--;
+            long latencyNanos = System.nanoTime() - startNanos;
+            if (congested || latencyNanos > TimeUnit.MILLISECONDS.toNanos(options.latencyTargetMillis)) {
+                if (startNanos > lastDecreaseNanos) {
+                    limit = Math.max(options.minLimit, limit * options.backoffFactor);
+                    lastDecreaseNanos = System.nanoTime();
+                }
+            } else {
+                limit = Math.min(options.maxLimit, limit + 1 / limit);
+            }
+        } finally {
+            lock.unlock();
+        }
+        dispatch();
+    }
+
+    /**
+     * HTTP status of {@code failure} when it is one worth retrying, otherwise {@code 0}.
+     */
+    static int retryableStatus(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            int status = 0;
+            if (cause instanceof EsRejectedExecutionException) {
+                status = 429;
+            } else if (cause instanceof ElasticsearchException) {
+                status = ((ElasticsearchException) cause).status()
+                    .getStatus();
+            } else if (cause instanceof ResponseException) {
+                status = ((ResponseException) cause).getResponse()
+                    .getStatusLine()
+                    .getStatusCode();
+            }
+            if (status == 429 || status == 502 || status == 503 || status == 504) {
+                return status;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return 0;
+    }
+
+    private class Write<T> {
+        private final Callable<T> write;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private int attempts;
+        private long delayMillis = options.baseDelayMillis;
+
+        Write(Callable<T> write) {
+            this.write = write;
+        }
+
+        void attempt() {
+            attempts++;
+            long start = System.nanoTime();
+            T result;
+            try {
+                result = write.call();
+            } catch (Throwable e) {
+                int status = retryableStatus(e);
+                if (status == 429) {
+                    throttled.incrementAndGet();
+                }
+                boolean retry = status != 0 && attempts <= options.maxRetries;
+                if (retry) {
+                    // counted before the slot is freed, so close() cannot stop the timer under this retry
+                    lock.lock();
+                    try {
+                        scheduledRetries++;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                finished(start, status != 0);
+                if (retry) {
+                    retried.incrementAndGet();
+                    delayMillis = Math.min(options.maxDelayMillis, ThreadLocalRandom.current()
+                        .nextLong(options.baseDelayMillis, Math.max(options.baseDelayMillis, delayMillis * 3) + 1));
+                    try {
+                        retryTimer.schedule(this::requeue, delayMillis, TimeUnit.MILLISECONDS);
+                    } catch (RejectedExecutionException rejected) {
+                        lock.lock();
+                        try {
+                            scheduledRetries--;
+                        } finally {
+                            lock.unlock();
+                        }
+                        rejected.addSuppressed(e);
+                        failed.incrementAndGet();
+                        future.completeExceptionally(rejected);
+                        dispatch();
+                    }
+                } else {
+                    failed.incrementAndGet();
+                    future.completeExceptionally(e);
+                }
+                return;
+            }
+            finished(start, false);
+            completed.incrementAndGet();
+            future.complete(result);
+        }
+
+        private void requeue() {
+            lock.lock();
+            try {
+                scheduledRetries--;
+                retries.addLast(this);
+            } finally {
+                lock.unlock();
+            }
+            dispatch();
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only record log in memory-mapped segment files, the durable half of {@link WriteBehindIndexer}.
+ * <p>
+ * Records are framed as {@code [length][crc32][payload]} and addressed by a global offset; each segment file is named
+ * after the offset of its first byte and a new one is started when a record no longer fits. A reader
+ * {@link #commit(long) commits} the offset it has fully processed, which is kept in a checkpoint file and lets the
+ * segments before it be deleted. On open, the last segment is scanned and everything after the last record with a
+ * valid checksum, such as a write torn by a crash, is discarded.
+ * <p>
+ * How far an append is durable depends on the {@link FsyncPolicy}: with {@code ALWAYS} the segment is forced to disk
+ * before {@link #append(byte[])} returns, otherwise a process crash loses nothing but an OS crash loses whatever was
+ * not yet {@link #sync() synced}. Appends, syncs and commits are serialized by a {@link ReentrantLock} rather than a
+ * monitor, so virtual threads waiting behind another thread's fsync park instead of pinning their carrier threads.
+ */
+public class MappedSegmentLog implements Closeable {
+
+    public enum FsyncPolicy {
+        /**
+         * Force the segment to disk on every append.
+         */
+        ALWAYS,
+        /**
+         * Force on a timer, see {@link MappedSegmentLog#sync()}.
+         */
+        INTERVAL,
+        /**
+         * Leave write-back to the operating system.
+         */
+        NEVER
+    }
+
+    /**
+     * Records read from the log, and the offset to continue from.
+     */
+    public static class Batch {
+        private final List<byte[]> records;
+        private final long nextOffset;
+
+        Batch(List<byte[]> records, long nextOffset) {
+            this.records = records;
+            this.nextOffset = nextOffset;
+        }
+
+        public List<byte[]> getRecords() {
+            return records;
+        }
+
+        public long getNextOffset() {
+            return nextOffset;
+        }
+
+        public boolean isEmpty() {
+            return records.isEmpty();
+        }
+    }
+
+    private static final int HEADER_BYTES = 8;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT = "committed.offset";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private long endOffset;
+    private long committedOffset;
+    private boolean dirty;
+
+    /**
+     * Opens the log in {@code directory}, recovering it if it exists.
+     *
+     * @param segmentBytes size of new segments, and so the largest record plus 8 bytes
+     */
+    public MappedSegmentLog(Path directory, int segmentBytes, FsyncPolicy fsyncPolicy) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        Files.createDirectories(directory);
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        if (Files.exists(checkpoint)) {
+            committedOffset = Long.parseLong(new String(Files.readAllBytes(checkpoint), StandardCharsets.US_ASCII).trim());
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName()
+                    .toString();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), map(file, 0));
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            endOffset = committedOffset;
+            segments.put(committedOffset, map(segmentFile(committedOffset), segmentBytes));
+        } else {
+            recover();
+        }
+    }
+
+    /**
+     * Appends {@code record} and returns the offset just after it.
+     *
+     * @throws IllegalArgumentException when the record does not fit in a segment
+     */
+    public long append(byte[] record) {
+        lock.lock();
+        try {
+            int size = HEADER_BYTES + record.length;
+            if (size > segmentBytes) {
+                throw new IllegalArgumentException("Record of " + record.length + " bytes does not fit in a " + segmentBytes + " byte segment");
+            }
+            Map.Entry<Long, MappedByteBuffer> active = segments.lastEntry();
+            int position = (int) (endOffset - active.getKey());
+            if (position + size > active.getValue()
+                .capacity()) {
+                long base = active.getKey() + active.getValue()
+                    .capacity();
+                force(active.getValue());
+                segments.put(base, map(segmentFile(base), segmentBytes));
+                endOffset = base;
+                active = segments.lastEntry();
+                position = 0;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(record, 0, record.length);
+            MappedByteBuffer buffer = active.getValue();
+            // payload and checksum first, so a reader never sees a length without its record
+            buffer.putInt(position + 4, (int) crc.getValue());
+            for (int i = 0; i < record.length; i++) {
+                buffer.put(position + HEADER_BYTES + i, record[i]);
+            }
+            buffer.putInt(position, record.length);
+            endOffset += size;
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                force(buffer);
+            } else {
+                dirty = true;
+            }
+            return endOffset;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Up to {@code maxRecords} records starting at {@code offset}.
+     */
+    public Batch read(long offset, int maxRecords) {
+        lock.lock();
+        try {
+            List<byte[]> records = new ArrayList<>();
+            while (offset < endOffset && records.size() < maxRecords) {
+                Map.Entry<Long, MappedByteBuffer> segment = segments.floorEntry(offset);
+                if (segment == null) {
+                    throw new IllegalStateException("Offset " + offset + " was already deleted");
+                }
+                MappedByteBuffer buffer = segment.getValue();
+                int position = (int) (offset - segment.getKey());
+                int length = position + HEADER_BYTES <= buffer.capacity() ? buffer.getInt(position) : 0;
+                if (length == 0) {
+                    // rest of the segment was left empty by a rotation
+                    offset = segment.getKey() + buffer.capacity();
+                    continue;
+                }
+                byte[] record = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    record[i] = buffer.get(position + HEADER_BYTES + i);
+                }
+                records.add(record);
+                offset += HEADER_BYTES + length;
+            }
+            return new Batch(records, offset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records everything before {@code offset} as processed and deletes the segments that only hold such records.
+     */
+    public void commit(long offset) {
+        lock.lock();
+        try {
+            try {
+                Path temporary = Files.createTempFile(directory, CHECKPOINT, ".tmp");
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                    channel.write(StandardCharsets.US_ASCII.encode(Long.toString(offset)));
+                    channel.force(true);
+                }
+                Files.move(temporary, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                committedOffset = offset;
+
+                Iterator<Map.Entry<Long, MappedByteBuffer>> iterator = segments.entrySet()
+                    .iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<Long, MappedByteBuffer> segment = iterator.next();
+                    if (segment.getKey() + segment.getValue()
+                        .capacity() > offset || segment.getKey()
+                            .equals(segments.lastKey())) {
+                        break;
+                    }
+                    iterator.remove();
+                    Files.deleteIfExists(segmentFile(segment.getKey()));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces appends made since the last sync to disk.
+     */
+    public void sync() {
+        lock.lock();
+        try {
+            if (dirty) {
+                force(segments.lastEntry()
+                    .getValue());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getEndOffset() {
+        lock.lock();
+        try {
+            return endOffset;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCommittedOffset() {
+        lock.lock();
+        try {
+            return committedOffset;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Bytes appended but not yet committed.
+     */
+    public long getBacklogBytes() {
+        lock.lock();
+        try {
+            return endOffset - committedOffset;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getSegmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            sync();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recover() {
+        Map.Entry<Long, MappedByteBuffer> last = segments.lastEntry();
+        MappedByteBuffer buffer = last.getValue();
+        int position = 0;
+        while (position + HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length > buffer.capacity()) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            for (int i = 0; i < length; i++) {
+                crc.update(buffer.get(position + HEADER_BYTES + i));
+            }
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            position += HEADER_BYTES + length;
+        }
+        // clear a torn tail so it cannot be mistaken for records once appends resume
+        for (int i = position; i < buffer.capacity() && i < position + HEADER_BYTES; i++) {
+            buffer.put(i, (byte) 0);
+        }
+        force(buffer);
+        endOffset = last.getKey() + position;
+        if (committedOffset > endOffset) {
+            committedOffset = endOffset;
+        }
+    }
+
+    private void force(MappedByteBuffer buffer) {
+        buffer.force();
+        dirty = false;
+    }
+
+    private Path segmentFile(long base) {
+        return directory.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+    }
+
+    private static MappedByteBuffer map(Path file, int size) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long length = size > 0 ? size : channel.size();
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
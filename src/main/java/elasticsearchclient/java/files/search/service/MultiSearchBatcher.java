@@ -0,0 +1,255 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.CriteriaQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.elasticsearch.core.query.Query;
+import org.springframework.data.elasticsearch.core.query.StringQuery;
+
+/**
+ * Coalesces searches issued close together into a single {@code _msearch} round trip.
+ * <p>
+ * The first search submitted starts a short window; everything submitted until it closes, or until
+ * {@code maxBatchSize} searches are waiting, goes out as one multi-search and each caller's future is completed from
+ * its own item of the response. A failed item fails only its own future. Callers that already know which searches
+ * belong together can skip the window with {@link #group()}. Hits are mapped on the IO thread, as in
+ * {@link AsyncParaSearchService}.
+ */
+public class MultiSearchBatcher implements AutoCloseable {
+
+    private static final String PREFIX = "elasticsearch.msearch.";
+
+    private final RestHighLevelClient client;
+    private final SearchHitsMapper mapper;
+    private final long windowMicros;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService timer;
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong roundTrips = new AtomicLong();
+
+    private List<PendingSearch<?>> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean closed;
+
+    public MultiSearchBatcher(RestHighLevelClient client, ElasticsearchConverter converter, long windowMicros, int maxBatchSize) {
+        this.client = client;
+        this.mapper = new SearchHitsMapper(converter);
+        this.windowMicros = windowMicros;
+        this.maxBatchSize = maxBatchSize;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "msearch-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Reads {@code elasticsearch.msearch.window-micros} (default 2000) and {@code elasticsearch.msearch.max-batch-size}
+     * (default 32).
+     */
+    public static MultiSearchBatcher from(RestHighLevelClient client, ElasticsearchConverter converter, PropertyResolver properties) {
+        return new MultiSearchBatcher(client, converter, properties.getProperty(PREFIX + "window-micros", Long.class, 2000L),
+            properties.getProperty(PREFIX + "max-batch-size", Integer.class, 32));
+    }
+
+    /**
+     * Batches a {@link NativeSearchQuery}, a {@link CriteriaQuery} or the {@link StringQuery} of a {@code @Query}
+     * method, see {@link SearchRequests#queryMethod}.
+     */
+    public <T> CompletableFuture<SearchHits<T>> search(Query query, Class<T> type, IndexCoordinates index) {
+        return search(toRequest(query, index), type);
+    }
+
+    /**
+     * Batches {@code request}; after {@link #close()} the returned future fails with an {@link IllegalStateException}.
+     */
+    public <T> CompletableFuture<SearchHits<T>> search(SearchRequest request, Class<T> type) {
+        PendingSearch<T> search = new PendingSearch<>(request, type);
+        List<PendingSearch<?>> full = null;
+        synchronized (this) {
+            if (closed) {
+                search.future.completeExceptionally(new IllegalStateException("The multi-search batcher is closed"));
+                return search.future;
+            }
+            pending.add(search);
+            if (pending.size() >= maxBatchSize) {
+                full = drain();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = timer.schedule(this::flush, windowMicros, TimeUnit.MICROSECONDS);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return search.future;
+    }
+
+    /**
+     * Sends whatever is waiting without waiting for the window to close.
+     */
+    public void flush() {
+        List<PendingSearch<?>> batch;
+        synchronized (this) {
+            batch = drain();
+        }
+        send(batch);
+    }
+
+    /**
+     * Starts an explicit batch, sent as one multi-search by {@link Group#execute()} regardless of the window.
+     */
+    public Group group() {
+        return new Group();
+    }
+
+    /**
+     * Searches submitted so far.
+     */
+    public long getSearchCount() {
+        return searches.get();
+    }
+
+    /**
+     * Requests sent for them; the further below {@link #getSearchCount()}, the more round trips were saved.
+     */
+    public long getRoundTripCount() {
+        return roundTrips.get();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+        timer.shutdown();
+    }
+
+    public class Group {
+        private final List<PendingSearch<?>> members = new ArrayList<>();
+
+        private Group() {
+        }
+
+        public <T> CompletableFuture<SearchHits<T>> search(Query query, Class<T> type, IndexCoordinates index) {
+            return search(toRequest(query, index), type);
+        }
+
+        public <T> CompletableFuture<SearchHits<T>> search(SearchRequest request, Class<T> type) {
+            PendingSearch<T> search = new PendingSearch<>(request, type);
+            members.add(search);
+            return search.future;
+        }
+
+        public void execute() {
+            send(new ArrayList<>(members));
+            members.clear();
+        }
+    }
+
+    private List<PendingSearch<?>> drain() {
+        List<PendingSearch<?>> batch = pending;
+        pending = new ArrayList<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void send(List<PendingSearch<?>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        searches.addAndGet(batch.size());
+        roundTrips.incrementAndGet();
+        if (batch.size() == 1) {
+            PendingSearch<?> search = batch.get(0);
+            client.searchAsync(search.request, RequestOptions.DEFAULT, new ActionListener<SearchResponse>() {
+
+                public void onResponse(SearchResponse response) {
+                    search.complete(response);
+                }
+
+                public void onFailure(Exception e) {
+                    search.future.completeExceptionally(e);
+                }
+            });
+            return;
+        }
+        MultiSearchRequest request = new MultiSearchRequest();
+        batch.forEach(search -> request.add(search.request));
+        client.msearchAsync(request, RequestOptions.DEFAULT, new ActionListener<MultiSearchResponse>() {
+
+            public void onResponse(MultiSearchResponse response) {
+                MultiSearchResponse.Item[] items = response.getResponses();
+                for (int i = 0; i < batch.size(); i++) {
+                    PendingSearch<?> search = batch.get(i);
+                    if (i >= items.length) {
+                        search.future.completeExceptionally(new IllegalStateException("No response for search " + i + " of the batch"));
+                    } else if (items[i].isFailure()) {
+                        search.future.completeExceptionally(items[i].getFailure());
+                    } else {
+                        search.complete(items[i].getResponse());
+                    }
+                }
+            }
+
+            public void onFailure(Exception e) {
+                batch.forEach(search -> search.future.completeExceptionally(e));
+            }
+        });
+    }
+
+    private static SearchRequest toRequest(Query query, IndexCoordinates index) {
+        if (query instanceof NativeSearchQuery) {
+            return SearchRequests.searchRequest((NativeSearchQuery) query, index);
+        }
+        if (query instanceof StringQuery) {
+            return SearchRequests.searchRequest((StringQuery) query, index);
+        }
+        if (query instanceof CriteriaQuery) {
+            return SearchRequests.searchRequest((CriteriaQuery) query, index);
+        }
+        throw new IllegalArgumentException("Only native, string and criteria queries can be batched, not " + query.getClass()
+            .getSimpleName());
+    }
+
+    private class PendingSearch<T> {
+        private final SearchRequest request;
+        private final Class<T> type;
+        private final CompletableFuture<SearchHits<T>> future = new CompletableFuture<>();
+
+        PendingSearch(SearchRequest request, Class<T> type) {
+            this.request = request;
+            this.type = type;
+        }
+
+        void complete(SearchResponse response) {
+            try {
+                future.complete(mapper.mapHits(response, type));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.stereotype.Service;
+
+import elasticsearchclient.java.files.search.design.Para;
+
+/**
+ * Accumulates {@link Para} documents and ships them as {@code _bulk} requests instead of one round trip per save.
+ * <p>
+ * A bulk is flushed once {@link Settings#bulkActions(int) a document count}, {@link Settings#bulkSize(ByteSizeValue)
+ * a payload size} or {@link Settings#flushInterval(TimeValue) a linger time} is reached. At most
+ * {@link Settings#concurrentRequests(int)} bulks are in flight; producers calling {@link #index(Para)} block while
+ * that limit is reached. Documents that still fail after the backoff policy are reported to the
+ * {@link FailureHandler}, which for the Spring bean is the {@code FailureHandler} bean of the context, or
+ * {@link #LOG_FAILURES} when there is none. Sources are written in the client's configured content type by a {@link SourceCodec}.
+ */
+@Service
+public class ParaBulkIndexer implements Closeable {
+
+    /**
+     * Receives the documents that could not be indexed.
+     */
+    public interface FailureHandler {
+
+        void onItemFailure(BulkItemResponse.Failure failure);
+
+        void onBulkFailure(BulkRequest request, Throwable cause);
+    }
+
+    public static class Settings {
+        private int bulkActions = 1000;
+        private ByteSizeValue bulkSize = new ByteSizeValue(5, ByteSizeUnit.MB);
+        private TimeValue flushInterval = TimeValue.timeValueSeconds(1);
+        private int concurrentRequests = 2;
+        private BackoffPolicy backoffPolicy = BackoffPolicy.exponentialBackoff();
+        private XContentType contentType = XContentType.JSON;
+
+        public static Settings defaults() {
+            return new Settings();
+        }
+
+        public Settings bulkActions(int bulkActions) {
+            this.bulkActions = bulkActions;
+            return this;
+        }
+
+        public Settings bulkSize(ByteSizeValue bulkSize) {
+            this.bulkSize = bulkSize;
+            return this;
+        }
+
+        public Settings flushInterval(TimeValue flushInterval) {
+            this.flushInterval = flushInterval;
+            return this;
+        }
+
+        public Settings concurrentRequests(int concurrentRequests) {
+            this.concurrentRequests = concurrentRequests;
+            return this;
+        }
+
+        public Settings backoffPolicy(BackoffPolicy backoffPolicy) {
+            this.backoffPolicy = backoffPolicy;
+            return this;
+        }
+
+        /**
+         * Format of the bulked sources; CBOR is sent as SMILE, see {@link SourceCodec#bulkContentType(XContentType)}.
+         */
+        public Settings contentType(XContentType contentType) {
+            this.contentType = contentType;
+            return this;
+        }
+    }
+
+    private static final Log LOGGER = LogFactory.getLog(ParaBulkIndexer.class);
+
+    /**
+     * Logs every failed document and failed bulk as a warning.
+     */
+    public static final FailureHandler LOG_FAILURES = new FailureHandler() {
+
+        public void onItemFailure(BulkItemResponse.Failure failure) {
+            LOGGER.warn("Failed to index document [" + failure.getId() + "] into [" + failure.getIndex() + "]: " + failure.getMessage(),
+                failure.getCause());
+        }
+
+        public void onBulkFailure(BulkRequest request, Throwable cause) {
+            LOGGER.warn("Failed to send a bulk of " + request.numberOfActions() + " documents", cause);
+        }
+    };
+
+    /**
+     * Drops failures silently, leaving only the failed count; for tests that assert on that count alone.
+     */
+    public static final FailureHandler IGNORE_FAILURES = new FailureHandler() {
+
+        public void onItemFailure(BulkItemResponse.Failure failure) {
+        }
+
+        public void onBulkFailure(BulkRequest request, Throwable cause) {
+        }
+    };
+
+    private final SourceCodec codec;
+    private final String indexName;
+    private final BulkProcessor processor;
+    private final FailureHandler failureHandler;
+
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong bulks = new AtomicLong();
+
+    @Autowired
+    public ParaBulkIndexer(RestHighLevelClient client, ElasticsearchOperations operations, Environment environment,
+        ObjectProvider<FailureHandler> failureHandler) {
+        this(client, operations, Settings.defaults()
+            .contentType(SourceCodec.contentType(environment)), failureHandler.getIfAvailable(() -> LOG_FAILURES));
+    }
+
+    public ParaBulkIndexer(RestHighLevelClient client, ElasticsearchOperations operations, Settings settings, FailureHandler failureHandler) {
+        this.codec = new SourceCodec(operations.getElasticsearchConverter(), SourceCodec.bulkContentType(settings.contentType));
+        this.indexName = operations.getIndexCoordinatesFor(Para.class)
+            .getIndexName();
+        this.failureHandler = failureHandler;
+        this.processor = BulkProcessor.builder((request, listener) -> client.bulkAsync(request, RequestOptions.DEFAULT, listener), new Listener())
+            .setBulkActions(settings.bulkActions)
+            .setBulkSize(settings.bulkSize)
+            .setFlushInterval(settings.flushInterval)
+            .setConcurrentRequests(settings.concurrentRequests)
+            .setBackoffPolicy(settings.backoffPolicy)
+            .build();
+    }
+
+    /**
+     * Queues the document, blocking while the maximum number of bulks is already in flight.
+     */
+    public void index(Para para) {
+        IndexRequest request = new IndexRequest(indexName).source(codec.write(para), codec.getContentType());
+        if (para.getId() != null) {
+            request.id(para.getId());
+        }
+        processor.add(request);
+    }
+
+    public void indexAll(Iterable<Para> paras) {
+        for (Para para : paras) {
+            index(para);
+        }
+    }
+
+    /**
+     * Sends whatever is currently buffered without waiting for the thresholds.
+     */
+    public void flush() {
+        processor.flush();
+    }
+
+    /**
+     * Flushes the buffer and waits for all in-flight bulks to complete.
+     */
+    public boolean awaitClose(long timeout, TimeUnit unit) throws InterruptedException {
+        return processor.awaitClose(timeout, unit);
+    }
+
+    @Override
+    public void close() {
+        processor.close();
+    }
+
+    public long getIndexedCount() {
+        return indexed.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getBulkCount() {
+        return bulks.get();
+    }
+
+    private class Listener implements BulkProcessor.Listener {
+
+        public void beforeBulk(long executionId, BulkRequest request) {
+            bulks.incrementAndGet();
+        }
+
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            for (BulkItemResponse item : response.getItems()) {
+                if (item.isFailed()) {
+                    failed.incrementAndGet();
+                    failureHandler.onItemFailure(item.getFailure());
+                } else {
+                    indexed.incrementAndGet();
+                }
+            }
+        }
+
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            failed.addAndGet(request.numberOfActions());
+            failureHandler.onBulkFailure(request, failure);
+        }
+    }
+}
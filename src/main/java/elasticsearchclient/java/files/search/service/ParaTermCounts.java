@@ -0,0 +1,376 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.service.TermCountMap.TermCount;
+
+/**
+ * Document counts per tag and per title term of the {@code Para} index, kept in memory so the top tags or terms are
+ * answered without a terms aggregation.
+ * <p>
+ * The counts are seeded by reading the whole index once and then follow the writes reported to this listener, which
+ * are those made through {@code CachingElasticsearchRestTemplate} and so through {@code ParaRepository}. Every
+ * document's terms are remembered by id, so overwriting a document moves its counts and deleting it takes them back.
+ * Writes that bypass the template, such as {@link ParaBulkIndexer} and {@link WriteBehindIndexer}, and those that
+ * cannot be followed, such as raw sources, updates and deletes by query, are only picked up by the next reconciliation,
+ * which reads the index again and swaps in fresh counts; an unfollowable write through the template brings it
+ * forward. Writes reported while a reconciliation reads are replayed over what it read, so none is lost.
+ * <p>
+ * Counts are of documents, as the {@code doc_count} of a terms aggregation: a document tagged twice with the same tag
+ * counts once. Titles are split with Lucene's standard analyzer without stop words, as the default {@code text}
+ * mapping of {@code title} does.
+ */
+public class ParaTermCounts implements DocumentWriteListener, Closeable {
+
+    private static final String PREFIX = "elasticsearch.term-counts.";
+
+    public static class Options {
+        private long reconcileIntervalMillis = TimeUnit.MINUTES.toMillis(10);
+        private long changeDelayMillis = 1000;
+        private int slices = 2;
+
+        public static Options defaults() {
+            return new Options();
+        }
+
+        /**
+         * Reads the {@code elasticsearch.term-counts.*} keys, falling back to the defaults above.
+         */
+        public static Options from(PropertyResolver properties) {
+            Options options = new Options();
+            options.reconcileIntervalMillis = properties.getProperty(PREFIX + "reconcile-interval-millis", Long.class,
+                options.reconcileIntervalMillis);
+            options.changeDelayMillis = properties.getProperty(PREFIX + "change-delay-millis", Long.class, options.changeDelayMillis);
+            options.slices = properties.getProperty(PREFIX + "slices", Integer.class, options.slices);
+            return options;
+        }
+
+        /**
+         * Time between reconciliations; {@code 0} leaves only the seeding read.
+         */
+        public Options reconcileIntervalMillis(long reconcileIntervalMillis) {
+            this.reconcileIntervalMillis = reconcileIntervalMillis;
+            return this;
+        }
+
+        /**
+         * How long after a write that could not be followed the next reconciliation starts, so a burst of them leads
+         * to one read.
+         */
+        public Options changeDelayMillis(long changeDelayMillis) {
+            this.changeDelayMillis = changeDelayMillis;
+            return this;
+        }
+
+        /**
+         * Sliced scrolls each read of the index runs.
+         */
+        public Options slices(int slices) {
+            this.slices = slices;
+            return this;
+        }
+    }
+
+    /**
+     * The distinct tags and title terms one document contributes.
+     */
+    private static class Terms {
+        private final String[] tags;
+        private final String[] titleTerms;
+
+        private Terms(String[] tags, String[] titleTerms) {
+            this.tags = tags;
+            this.titleTerms = titleTerms;
+        }
+    }
+
+    private static class Top {
+        private final long version;
+        private final int n;
+        private final List<TermCount> terms;
+
+        private Top(long version, int n, List<TermCount> terms) {
+            this.version = version;
+            this.n = n;
+            this.terms = terms;
+        }
+    }
+
+    private final SlicedIndexReader reader;
+    private final String indexName;
+    private final Options options;
+    private final Analyzer analyzer = new StandardAnalyzer(CharArraySet.EMPTY_SET);
+    private final ScheduledExecutorService scheduler;
+    private final CountDownLatch seeded = new CountDownLatch(1);
+    private final AtomicBoolean changePending = new AtomicBoolean();
+
+    private final Object lock = new Object();
+    private Map<String, Terms> documents = new HashMap<>();
+    private TermCountMap tags = new TermCountMap();
+    private TermCountMap titleTerms = new TermCountMap();
+    private Map<String, Terms> journal;
+    private volatile long version;
+    private volatile Top topTags = new Top(-1, 0, Collections.emptyList());
+    private volatile Top topTitleTerms = new Top(-1, 0, Collections.emptyList());
+
+    private final AtomicLong reconciliations = new AtomicLong();
+    private final AtomicLong reconcileFailures = new AtomicLong();
+    private final AtomicLong untrackedWrites = new AtomicLong();
+
+    public ParaTermCounts(RestHighLevelClient client, ElasticsearchOperations operations, Options options) {
+        this.reader = new SlicedIndexReader(client, operations);
+        this.indexName = operations.getIndexCoordinatesFor(Para.class)
+            .getIndexName();
+        this.options = options;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "para-term-counts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (options.reconcileIntervalMillis > 0) {
+            scheduler.scheduleWithFixedDelay(this::reconcileQuietly, 0, options.reconcileIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler.execute(this::reconcileQuietly);
+        }
+    }
+
+    public static ParaTermCounts from(RestHighLevelClient client, ElasticsearchOperations operations, PropertyResolver properties) {
+        return new ParaTermCounts(client, operations, Options.from(properties));
+    }
+
+    /**
+     * The {@code n} most used tags, most used first.
+     */
+    public List<TermCount> topTags(int n) {
+        Top top = topTags;
+        if (top.version != version || top.n < n) {
+            synchronized (lock) {
+                top = new Top(version, n, tags.top(n));
+                topTags = top;
+            }
+        }
+        return top.terms.size() > n ? top.terms.subList(0, n) : top.terms;
+    }
+
+    /**
+     * The {@code n} most used title terms, most used first.
+     */
+    public List<TermCount> topTitleTerms(int n) {
+        Top top = topTitleTerms;
+        if (top.version != version || top.n < n) {
+            synchronized (lock) {
+                top = new Top(version, n, titleTerms.top(n));
+                topTitleTerms = top;
+            }
+        }
+        return top.terms.size() > n ? top.terms.subList(0, n) : top.terms;
+    }
+
+    public long tagCount(String tag) {
+        synchronized (lock) {
+            return tags.get(tag);
+        }
+    }
+
+    /**
+     * Waits for the seeding read to complete.
+     */
+    public boolean awaitSeeded(long timeout, TimeUnit unit) throws InterruptedException {
+        return seeded.await(timeout, unit);
+    }
+
+    @Override
+    public void indexed(String id, Object entity, IndexCoordinates index) {
+        if (!indexName.equals(index.getIndexName())) {
+            return;
+        }
+        if (!(entity instanceof Para)) {
+            untrackedWrites.incrementAndGet();
+            reconcileSoon();
+            return;
+        }
+        Terms terms = terms((Para) entity);
+        synchronized (lock) {
+            apply(id, terms);
+            if (journal != null) {
+                journal.put(id, terms);
+            }
+        }
+    }
+
+    @Override
+    public void deleted(String id, IndexCoordinates index) {
+        if (!indexName.equals(index.getIndexName())) {
+            return;
+        }
+        synchronized (lock) {
+            if (!documents.containsKey(id)) {
+                untrackedWrites.incrementAndGet();
+            }
+            apply(id, null);
+            if (journal != null) {
+                journal.put(id, null);
+            }
+        }
+    }
+
+    @Override
+    public void changed(IndexCoordinates index) {
+        if (indexName.equals(index.getIndexName())) {
+            untrackedWrites.incrementAndGet();
+            reconcileSoon();
+        }
+    }
+
+    /**
+     * Reads the index and replaces the counts with what it holds, returning the number of documents read. Writes
+     * reported meanwhile are applied on top of the read.
+     */
+    public long reconcile() {
+        synchronized (lock) {
+            journal = new HashMap<>();
+        }
+        Map<String, Terms> read = new ConcurrentHashMap<>();
+        long count;
+        try {
+            count = reader.read(Para.class, SlicedIndexReader.Options.defaults()
+                .slices(options.slices)
+                .parallelism(options.slices), para -> read.put(para.getId(), terms(para)));
+        } catch (RuntimeException e) {
+            synchronized (lock) {
+                journal = null;
+            }
+            throw e;
+        }
+        synchronized (lock) {
+            for (Map.Entry<String, Terms> write : journal.entrySet()) {
+                if (write.getValue() == null) {
+                    read.remove(write.getKey());
+                } else {
+                    read.put(write.getKey(), write.getValue());
+                }
+            }
+            journal = null;
+            documents = new HashMap<>(read);
+            tags = new TermCountMap(documents.size());
+            titleTerms = new TermCountMap(documents.size());
+            for (Terms terms : documents.values()) {
+                count(terms, 1);
+            }
+            version++;
+        }
+        reconciliations.incrementAndGet();
+        seeded.countDown();
+        return count;
+    }
+
+    public long getReconcileCount() {
+        return reconciliations.get();
+    }
+
+    public long getReconcileFailureCount() {
+        return reconcileFailures.get();
+    }
+
+    /**
+     * Writes reported that could not be applied to the counts and wait for the next reconciliation.
+     */
+    public long getUntrackedWriteCount() {
+        return untrackedWrites.get();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        analyzer.close();
+    }
+
+    private void apply(String id, Terms terms) {
+        Terms previous = terms == null ? documents.remove(id) : documents.put(id, terms);
+        if (previous != null) {
+            count(previous, -1);
+        }
+        if (terms != null) {
+            count(terms, 1);
+        }
+        version++;
+    }
+
+    private void count(Terms terms, long delta) {
+        for (String tag : terms.tags) {
+            tags.add(tag, delta);
+        }
+        for (String term : terms.titleTerms) {
+            titleTerms.add(term, delta);
+        }
+    }
+
+    private void reconcileSoon() {
+        if (changePending.compareAndSet(false, true)) {
+            scheduler.schedule(() -> {
+                changePending.set(false);
+                reconcileQuietly();
+            }, options.changeDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            // the counts stay as they were until the next attempt
+            reconcileFailures.incrementAndGet();
+        }
+    }
+
+    private Terms terms(Para para) {
+        Set<String> distinctTags = new LinkedHashSet<>();
+        if (para.getTags() != null) {
+            for (String tag : para.getTags()) {
+                if (tag != null) {
+                    distinctTags.add(tag);
+                }
+            }
+        }
+        Set<String> distinctTerms = new LinkedHashSet<>();
+        if (para.getTitle() != null) {
+            try (TokenStream tokens = analyzer.tokenStream("title", para.getTitle())) {
+                CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+                tokens.reset();
+                while (tokens.incrementToken()) {
+                    distinctTerms.add(term.toString());
+                }
+                tokens.end();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return new Terms(distinctTags.toArray(new String[0]), distinctTerms.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,232 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.beans.Introspector;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.elasticsearch.common.document.DocumentField;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.core.convert.support.DefaultConversionService;
+
+import elasticsearchclient.java.files.search.design.DocValueField;
+
+/**
+ * Describes a projection of an indexed document and reads it straight from a raw hit.
+ * <p>
+ * A projection is either an interface with getters, backed by a proxy that compares and hashes by value, or a class
+ * with a no-arg constructor whose fields are set directly; an interface declaring anything but getters is rejected.
+ * Each property becomes a {@code _source} include, or a {@code docvalue_fields} entry when it is annotated with
+ * {@link DocValueField}; a property named {@code id} is taken from the hit's {@code _id}. When no property needs
+ * {@code _source} it is not fetched at all. Property values must be simple values, arrays or collections of them;
+ * nested objects are not mapped.
+ */
+public final class Projection<P> {
+
+    private static final Map<Class<?>, Projection<?>> PROJECTIONS = new ConcurrentHashMap<>();
+    private static final ConversionService CONVERSION = DefaultConversionService.getSharedInstance();
+
+    private static final class Property {
+        private final String name;
+        private final String docValueField;
+        private final TypeDescriptor type;
+        private final Field field;
+
+        Property(String name, String docValueField, TypeDescriptor type, Field field) {
+            this.name = name;
+            this.docValueField = docValueField;
+            this.type = type;
+            this.field = field;
+        }
+    }
+
+    private final Class<P> type;
+    private final List<Property> properties = new ArrayList<>();
+    private final Map<Method, Integer> getters = new ConcurrentHashMap<>();
+    private final String[] sourceIncludes;
+    private final List<String> docValueFields = new ArrayList<>();
+
+    private Projection(Class<P> type) {
+        this.type = type;
+        if (type.isInterface()) {
+            for (Method method : type.getMethods()) {
+                String name = propertyName(method);
+                if (name != null) {
+                    getters.put(method, properties.size());
+                    properties.add(new Property(name, docValueField(method.getAnnotation(DocValueField.class)),
+                        new TypeDescriptor(new MethodParameter(method, -1)), null));
+                } else if (!Modifier.isStatic(method.getModifiers()) && !isObjectMethod(method)) {
+                    throw new IllegalArgumentException("Projection " + type.getName() + " can only declare getters, not " + method.getName());
+                }
+            }
+        } else {
+            for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+                        field.setAccessible(true);
+                        properties.add(new Property(field.getName(), docValueField(field.getAnnotation(DocValueField.class)), new TypeDescriptor(field), field));
+                    }
+                }
+            }
+        }
+        List<String> includes = new ArrayList<>();
+        for (Property property : properties) {
+            if (property.docValueField != null) {
+                docValueFields.add(property.docValueField);
+            } else if (!"id".equals(property.name)) {
+                includes.add(property.name);
+            }
+        }
+        this.sourceIncludes = includes.toArray(new String[0]);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <P> Projection<P> of(Class<P> type) {
+        return (Projection<P>) PROJECTIONS.computeIfAbsent(type, Projection::new);
+    }
+
+    public Class<P> getType() {
+        return type;
+    }
+
+    public String[] getSourceIncludes() {
+        return sourceIncludes;
+    }
+
+    public List<String> getDocValueFields() {
+        return docValueFields;
+    }
+
+    /**
+     * Restricts {@code source} to what the projection reads, replacing any earlier source filter.
+     */
+    public SearchSourceBuilder applyTo(SearchSourceBuilder source) {
+        if (sourceIncludes.length == 0) {
+            source.fetchSource(false);
+        } else {
+            source.fetchSource(sourceIncludes, null);
+        }
+        for (String field : docValueFields) {
+            source.docValueField(field);
+        }
+        return source;
+    }
+
+    public P read(SearchHit hit) {
+        Map<String, Object> source = sourceIncludes.length == 0 ? null : hit.getSourceAsMap();
+        Object[] values = new Object[properties.size()];
+        for (int i = 0; i < values.length; i++) {
+            Property property = properties.get(i);
+            Object value;
+            if ("id".equals(property.name)) {
+                value = hit.getId();
+            } else if (property.docValueField != null) {
+                DocumentField field = hit.field(property.docValueField);
+                value = field == null ? null : singleOrAll(field.getValues(), property.type);
+            } else {
+                value = source == null ? null : source.get(property.name);
+            }
+            values[i] = value == null ? null : CONVERSION.convert(value, TypeDescriptor.forObject(value), property.type);
+        }
+        return type.isInterface() ? proxy(values) : instance(values);
+    }
+
+    private P instance(Object[] values) {
+        try {
+            P projection = type.getDeclaredConstructor()
+                .newInstance();
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    properties.get(i).field.set(projection, values[i]);
+                }
+            }
+            return projection;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create projection " + type.getName(), e);
+        }
+    }
+
+    private P proxy(Object[] values) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new Values(values)));
+    }
+
+    /**
+     * Backs an interface projection: getters return the read values, and two projections of the same interface are
+     * equal when their values are. The constructor rejects interfaces declaring any other method.
+     */
+    private final class Values implements InvocationHandler {
+        private final Object[] values;
+
+        Values(Object[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            Integer index = getters.get(method);
+            if (index != null) {
+                return values[index];
+            }
+            switch (method.getName()) {
+            case "equals":
+                return args[0] != null && type.isInstance(args[0]) && Proxy.isProxyClass(args[0].getClass()) && Proxy.getInvocationHandler(
+                    args[0]) instanceof Projection.Values && Arrays.deepEquals(values, ((Projection<?>.Values) Proxy.getInvocationHandler(args[0])).values);
+            case "hashCode":
+                return Arrays.deepHashCode(values);
+            case "toString":
+                return type.getSimpleName() + Arrays.deepToString(values);
+            default:
+                // the constructor only lets getters and Object's methods through
+                throw new IllegalStateException(method.toString());
+            }
+        }
+    }
+
+    private static Object singleOrAll(List<Object> values, TypeDescriptor type) {
+        if (type.isArray() || type.isCollection()) {
+            return values;
+        }
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    private static boolean isObjectMethod(Method method) {
+        switch (method.getName()) {
+        case "equals":
+            return method.getParameterCount() == 1 && method.getParameterTypes()[0] == Object.class;
+        case "hashCode":
+        case "toString":
+            return method.getParameterCount() == 0;
+        default:
+            return false;
+        }
+    }
+
+    private static String docValueField(DocValueField annotation) {
+        return annotation == null ? null : annotation.value();
+    }
+
+    private static String propertyName(Method method) {
+        if (method.getParameterCount() > 0 || method.isDefault() || Modifier.isStatic(method.getModifiers())) {
+            return null;
+        }
+        String name = method.getName();
+        if (name.startsWith("get") && name.length() > 3) {
+            return Introspector.decapitalize(name.substring(3));
+        }
+        if (name.startsWith("is") && name.length() > 2 && method.getReturnType() == boolean.class) {
+            return Introspector.decapitalize(name.substring(2));
+        }
+        return null;
+    }
+}
@@ -0,0 +1,84 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.SearchHitsImpl;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.stereotype.Service;
+
+import elasticsearchclient.java.files.search.design.Para;
+
+/**
+ * Runs {@code ParaRepository}-style searches that return a {@link Projection} instead of the full {@link Para}.
+ * <p>
+ * The request only asks for the projected {@code _source} fields and doc values, and each hit is mapped straight into
+ * the projection, so neither the unused bytes nor the {@code writers} and {@code tags} object graph are materialized.
+ */
+@Service
+public class ProjectionSearchService {
+
+    private final RestHighLevelClient client;
+    private final IndexCoordinates index;
+
+    @Autowired
+    public ProjectionSearchService(RestHighLevelClient client, ElasticsearchOperations operations) {
+        this.client = client;
+        this.index = operations.getIndexCoordinatesFor(Para.class);
+    }
+
+    public <P> SearchHits<P> findByWritersName(String name, Pageable pageable, Class<P> projection) {
+        return search(SearchRequests.byWritersName(name, pageable), projection);
+    }
+
+    public <P> SearchHits<P> findByFilteredTagQuery(String tag, Pageable pageable, Class<P> projection) {
+        return search(SearchRequests.byFilteredTag(tag, pageable), projection);
+    }
+
+    public <P> SearchHits<P> findByWritersNameAndFilteredTagQuery(String name, String tag, Pageable pageable, Class<P> projection) {
+        return search(SearchRequests.byWritersNameAndFilteredTag(name, tag, pageable), projection);
+    }
+
+    public <P> SearchHits<P> search(NativeSearchQuery query, Class<P> projection) {
+        return search(query, projection, index);
+    }
+
+    public <P> SearchHits<P> search(NativeSearchQuery query, Class<P> type, IndexCoordinates index) {
+        Projection<P> projection = Projection.of(type);
+        SearchRequest request = SearchRequests.searchRequest(query, index);
+        projection.applyTo(request.source());
+        try {
+            return mapHits(client.search(request, RequestOptions.DEFAULT), projection);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static <P> SearchHits<P> mapHits(SearchResponse response, Projection<P> projection) {
+        org.elasticsearch.search.SearchHits hits = response.getHits();
+        List<SearchHit<P>> content = new ArrayList<>(hits.getHits().length);
+        for (org.elasticsearch.search.SearchHit hit : hits.getHits()) {
+            content.add(new SearchHit<>(hit.getId(), hit.getScore(), hit.getSortValues(), Collections.emptyMap(), projection.read(hit)));
+        }
+        TotalHits total = hits.getTotalHits();
+        TotalHitsRelation relation = total == null || total.relation == TotalHits.Relation.EQUAL_TO ? TotalHitsRelation.EQUAL_TO
+            : TotalHitsRelation.GREATER_THAN_OR_EQUAL_TO;
+        return new SearchHitsImpl<>(total == null ? 0 : total.value, relation, hits.getMaxScore(), response.getScrollId(), content,
+            response.getAggregations());
+    }
+}
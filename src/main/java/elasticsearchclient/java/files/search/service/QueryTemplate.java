@@ -0,0 +1,393 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.search.Query;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.LoggingDeprecationHandler;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.AbstractQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryRewriteContext;
+import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.index.query.Rewriteable;
+import org.springframework.core.convert.support.DefaultConversionService;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * An {@code @Query} string parsed once into literal JSON and typed parameter slots.
+ * <p>
+ * A slot inside a JSON string ({@code "?0"}) receives the argument's string form, JSON-escaped; a bare slot
+ * ({@code ?0}) receives a JSON value: numbers and booleans as they are, {@code null}, arrays and collections as arrays
+ * and anything else as an escaped string. Binding an argument writes its bytes between the precomputed literal
+ * chunks, with no placeholder search or JSON parsing per call. {@link #bind} yields a {@link QueryBuilder} whose body
+ * is copied verbatim into the search request, instead of the base64 {@code wrapper} query the repository sends.
+ * <p>
+ * The same template can be registered as a stored mustache search template, see {@link #getStoredScriptId()}, so only
+ * the arguments travel with each request.
+ */
+public final class QueryTemplate {
+
+    private static final Map<String, QueryTemplate> TEMPLATES = new ConcurrentHashMap<>();
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final DefaultConversionService CONVERSIONS = new DefaultConversionService();
+
+    private final String source;
+    private final byte[][] literals;
+    private final int[] slots;
+    private final boolean[] quoted;
+    private final int parameterCount;
+    private final String storedScriptId;
+
+    private QueryTemplate(String source) {
+        this.source = source;
+        List<byte[]> literals = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        List<Boolean> quoted = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        boolean inString = false;
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (inString && c == '\\' && i + 1 < source.length()) {
+                literal.append(c)
+                    .append(source.charAt(++i));
+                continue;
+            }
+            if (c == '"') {
+                inString = !inString;
+            }
+            if (c == '?' && i + 1 < source.length() && Character.isDigit(source.charAt(i + 1))) {
+                int end = i + 1;
+                while (end < source.length() && Character.isDigit(source.charAt(end))) {
+                    end++;
+                }
+                literals.add(literal.toString()
+                    .getBytes(StandardCharsets.UTF_8));
+                literal.setLength(0);
+                slots.add(Integer.parseInt(source.substring(i + 1, end)));
+                quoted.add(inString);
+                i = end - 1;
+                continue;
+            }
+            literal.append(c);
+        }
+        literals.add(literal.toString()
+            .getBytes(StandardCharsets.UTF_8));
+
+        this.literals = literals.toArray(new byte[0][]);
+        this.slots = slots.stream()
+            .mapToInt(Integer::intValue)
+            .toArray();
+        this.quoted = new boolean[quoted.size()];
+        for (int i = 0; i < this.quoted.length; i++) {
+            this.quoted[i] = quoted.get(i);
+        }
+        this.parameterCount = Arrays.stream(this.slots)
+            .max()
+            .orElse(-1) + 1;
+        this.storedScriptId = "query-template-" + digest(source);
+        validate();
+    }
+
+    /**
+     * The compiled form of {@code source}, compiled on first use and shared afterwards.
+     *
+     * @throws IllegalArgumentException when the source is not valid JSON
+     */
+    public static QueryTemplate of(String source) {
+        return TEMPLATES.computeIfAbsent(source, QueryTemplate::new);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Highest parameter index used plus one.
+     */
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    public String getStoredScriptId() {
+        return storedScriptId;
+    }
+
+    /**
+     * Writes the query for {@code arguments}, the n-th argument filling every {@code ?n}.
+     */
+    public void writeTo(ByteArrayOutputStream out, Object[] arguments) {
+        if (arguments.length < parameterCount) {
+            throw new IllegalArgumentException("Query template needs " + parameterCount + " arguments, got " + arguments.length);
+        }
+        for (int i = 0; i < slots.length; i++) {
+            out.write(literals[i], 0, literals[i].length);
+            Object argument = arguments[slots[i]];
+            if (quoted[i]) {
+                writeEscaped(out, asString(argument));
+            } else {
+                writeValue(out, argument);
+            }
+        }
+        out.write(literals[slots.length], 0, literals[slots.length].length);
+    }
+
+    public byte[] render(Object[] arguments) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(source.length() + 16 * slots.length);
+        writeTo(out, arguments);
+        return out.toByteArray();
+    }
+
+    public QueryBuilder bind(Object... arguments) {
+        return new BoundQuery(this, arguments);
+    }
+
+    /**
+     * The template as a mustache search template: {@code p0}, {@code p1}, ... for the arguments, JSON-escaped by
+     * Elasticsearch inside strings and converted with {@code toJson} elsewhere, plus {@code from} and {@code size}.
+     */
+    public String toMustache() {
+        StringBuilder mustache = new StringBuilder("{\"from\":{{from}},\"size\":{{size}},\"version\":true,\"query\":");
+        for (int i = 0; i < slots.length; i++) {
+            mustache.append(new String(literals[i], StandardCharsets.UTF_8));
+            if (quoted[i]) {
+                mustache.append("{{p")
+                    .append(slots[i])
+                    .append("}}");
+            } else {
+                mustache.append("{{#toJson}}p")
+                    .append(slots[i])
+                    .append("{{/toJson}}");
+            }
+        }
+        return mustache.append(new String(literals[slots.length], StandardCharsets.UTF_8))
+            .append('}')
+            .toString();
+    }
+
+    private void validate() {
+        Object[] samples = new Object[parameterCount];
+        Arrays.fill(samples, 0);
+        try (JsonParser parser = JSON.createParser(render(samples))) {
+            while (parser.nextToken() != null) {
+                // reading every token is enough to find a syntax error
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Query template is not valid JSON: " + source, e);
+        }
+    }
+
+    private static String asString(Object argument) {
+        if (argument == null) {
+            return "null";
+        }
+        if (argument instanceof String) {
+            return (String) argument;
+        }
+        return CONVERSIONS.canConvert(argument.getClass(), String.class) ? CONVERSIONS.convert(argument, String.class) : argument.toString();
+    }
+
+    private static void writeValue(ByteArrayOutputStream out, Object argument) {
+        if (argument == null) {
+            writeAscii(out, "null");
+        } else if (argument instanceof Number || argument instanceof Boolean) {
+            writeAscii(out, argument.toString());
+        } else if (argument instanceof Collection || argument.getClass()
+            .isArray()) {
+            Collection<?> values = argument instanceof Collection ? (Collection<?>) argument : asList(argument);
+            out.write('[');
+            boolean first = true;
+            for (Object value : values) {
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                writeValue(out, value);
+            }
+            out.write(']');
+        } else {
+            out.write('"');
+            writeEscaped(out, asString(argument));
+            out.write('"');
+        }
+    }
+
+    private static List<Object> asList(Object array) {
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < Array.getLength(array); i++) {
+            values.add(Array.get(array, i));
+        }
+        return values;
+    }
+
+    private static void writeEscaped(ByteArrayOutputStream out, String value) {
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                writeUtf8(out, value, start, i);
+                out.write('\\');
+                switch (c) {
+                case '"':
+                case '\\':
+                    out.write(c);
+                    break;
+                case '\n':
+                    out.write('n');
+                    break;
+                case '\r':
+                    out.write('r');
+                    break;
+                case '\t':
+                    out.write('t');
+                    break;
+                default:
+                    writeAscii(out, String.format("u%04x", (int) c));
+                }
+                start = i + 1;
+            }
+        }
+        writeUtf8(out, value, start, value.length());
+    }
+
+    private static void writeUtf8(ByteArrayOutputStream out, String value, int start, int end) {
+        if (start < end) {
+            byte[] bytes = value.substring(start, end)
+                .getBytes(StandardCharsets.UTF_8);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static void writeAscii(ByteArrayOutputStream out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            out.write(value.charAt(i));
+        }
+    }
+
+    private static String digest(String source) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1")
+                .digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The rendered template, sent as it is. Like a {@code wrapper} query, a boost or query name wraps it in a
+     * {@code bool} query, and on a node it is parsed and rewritten into the query it contains before it runs.
+     */
+    private static final class BoundQuery implements QueryBuilder {
+        private final QueryTemplate template;
+        private final Object[] arguments;
+        private float boost = AbstractQueryBuilder.DEFAULT_BOOST;
+        private String queryName;
+
+        BoundQuery(QueryTemplate template, Object[] arguments) {
+            this.template = template;
+            this.arguments = arguments;
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            return builder.rawValue(new ByteArrayInputStream(body()), XContentType.JSON);
+        }
+
+        @Override
+        public Query toQuery(QueryShardContext context) throws IOException {
+            return Rewriteable.rewrite(this, context)
+                .toQuery(context);
+        }
+
+        @Override
+        public QueryBuilder rewrite(QueryRewriteContext context) throws IOException {
+            try (XContentParser parser = XContentType.JSON.xContent()
+                .createParser(context.getXContentRegistry(), LoggingDeprecationHandler.INSTANCE, body())) {
+                return AbstractQueryBuilder.parseInnerQueryBuilder(parser)
+                    .rewrite(context);
+            }
+        }
+
+        @Override
+        public QueryBuilder queryName(String queryName) {
+            this.queryName = queryName;
+            return this;
+        }
+
+        @Override
+        public String queryName() {
+            return queryName;
+        }
+
+        @Override
+        public float boost() {
+            return boost;
+        }
+
+        @Override
+        public QueryBuilder boost(float boost) {
+            this.boost = boost;
+            return this;
+        }
+
+        @Override
+        public String getName() {
+            return "query_template";
+        }
+
+        @Override
+        public String getWriteableName() {
+            return getName();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) {
+            throw new UncheckedIOException(new IOException("Query templates are only rendered on the client"));
+        }
+
+        @Override
+        public String toString() {
+            return new String(body(), StandardCharsets.UTF_8);
+        }
+
+        private byte[] body() {
+            byte[] query = template.render(arguments);
+            if (boost == AbstractQueryBuilder.DEFAULT_BOOST && queryName == null) {
+                return query;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(query.length + 64);
+            writeAscii(out, "{\"bool\":{\"must\":[");
+            out.write(query, 0, query.length);
+            writeAscii(out, "],\"boost\":" + boost);
+            if (queryName != null) {
+                writeAscii(out, ",\"_name\":\"");
+                writeEscaped(out, queryName);
+                out.write('"');
+            }
+            writeAscii(out, "}}");
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.elasticsearch.action.admin.cluster.storedscripts.PutStoredScriptRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.script.mustache.SearchTemplateRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+
+/**
+ * Runs {@link TemplateStringQuery TemplateStringQueries} with their bound template instead of a substituted string.
+ * <p>
+ * With stored templates enabled, each template is registered once as a mustache script and paged queries without
+ * sorting or source filtering are sent to {@code _search/template} with just the script id and the arguments; all
+ * other queries send the rendered template inline.
+ */
+public class QueryTemplateSearch {
+
+    private final RestHighLevelClient client;
+    private final SearchHitsMapper mapper;
+    private final boolean storedTemplates;
+    private final Set<String> registered = ConcurrentHashMap.newKeySet();
+
+    public QueryTemplateSearch(RestHighLevelClient client, ElasticsearchConverter converter, boolean storedTemplates) {
+        this.client = client;
+        this.mapper = new SearchHitsMapper(converter);
+        this.storedTemplates = storedTemplates;
+    }
+
+    public <T> SearchHits<T> search(TemplateStringQuery query, Class<T> type, IndexCoordinates index) {
+        try {
+            if (storedTemplates && query.getPageable()
+                .isPaged() && (query.getSort() == null || query.getSort()
+                    .isUnsorted()) && query.getSourceFilter() == null) {
+                return mapper.mapHits(client.searchTemplate(storedTemplateRequest(query, index), RequestOptions.DEFAULT)
+                    .getResponse(), type);
+            }
+            return mapper.mapHits(client.search(SearchRequests.searchRequest(query, index), RequestOptions.DEFAULT), type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private SearchTemplateRequest storedTemplateRequest(TemplateStringQuery query, IndexCoordinates index) throws IOException {
+        QueryTemplate template = query.getTemplate();
+        register(template);
+
+        Map<String, Object> parameters = new HashMap<>();
+        Object[] arguments = query.getArguments();
+        for (int i = 0; i < arguments.length; i++) {
+            parameters.put("p" + i, arguments[i]);
+        }
+        Pageable pageable = query.getPageable();
+        parameters.put("from", pageable.getOffset());
+        parameters.put("size", pageable.getPageSize());
+
+        SearchRequest searchRequest = new SearchRequest(index.getIndexNames());
+        if (query.getPreference() != null) {
+            searchRequest.preference(query.getPreference());
+        }
+        if (query.getRoute() != null) {
+            searchRequest.routing(query.getRoute());
+        }
+        SearchTemplateRequest request = new SearchTemplateRequest(searchRequest);
+        request.setScriptType(ScriptType.STORED);
+        request.setScript(template.getStoredScriptId());
+        request.setScriptParams(parameters);
+        return request;
+    }
+
+    private void register(QueryTemplate template) throws IOException {
+        if (registered.contains(template.getStoredScriptId())) {
+            return;
+        }
+        XContentBuilder content = XContentFactory.jsonBuilder()
+            .startObject()
+            .startObject("script")
+            .field("lang", "mustache")
+            .field("source", template.toMustache())
+            .endObject()
+            .endObject();
+        PutStoredScriptRequest request = new PutStoredScriptRequest().id(template.getStoredScriptId())
+            .content(BytesReference.bytes(content), XContentType.JSON);
+        client.putScript(request, RequestOptions.DEFAULT);
+        registered.add(template.getStoredScriptId());
+    }
+}
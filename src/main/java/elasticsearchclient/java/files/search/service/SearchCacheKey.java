@@ -0,0 +1,164 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.Criteria;
+import org.springframework.data.elasticsearch.core.query.CriteriaQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.elasticsearch.core.query.Query;
+import org.springframework.data.elasticsearch.core.query.SourceFilter;
+import org.springframework.data.elasticsearch.core.query.StringQuery;
+
+/**
+ * Identifies one page of one search in the {@link SearchResultCache}.
+ * <p>
+ * The query is reduced to a canonical string, so two queries built separately but asking the same thing share an
+ * entry. The index generation at lookup time is part of the key: a write bumps the generation, which makes entries
+ * loaded concurrently with the write unreachable instead of letting them resurrect stale results.
+ */
+public final class SearchCacheKey {
+
+    private final String index;
+    private final Class<?> type;
+    private final String query;
+    private final long generation;
+
+    SearchCacheKey(String index, Class<?> type, String query, long generation) {
+        this.index = index;
+        this.type = type;
+        this.query = query;
+        this.generation = generation;
+    }
+
+    /**
+     * The canonical form of {@code query}, or {@code null} when it cannot be cached: scrolls, highlighting and native
+     * queries using script fields, collapsing or index boosts.
+     */
+    public static String describe(Query query, IndexCoordinates index) {
+        if (query.hasScrollTime() || query.getHighlightQuery()
+            .isPresent()) {
+            return null;
+        }
+        StringBuilder description = new StringBuilder();
+        if (query instanceof NativeSearchQuery) {
+            NativeSearchQuery nativeQuery = (NativeSearchQuery) query;
+            if (nativeQuery.getHighlightBuilder() != null || nativeQuery.getHighlightFields() != null || nativeQuery.getScriptFields()
+                .size() > 0 || nativeQuery.getCollapseBuilder() != null || nativeQuery.getIndicesBoost() != null) {
+                return null;
+            }
+            // the translated source covers query, filter, sorts, aggregations, paging and source filter
+            description.append("native:")
+                .append(SearchRequests.searchRequest(nativeQuery, index)
+                    .source());
+        } else if (query instanceof StringQuery) {
+            description.append("string:")
+                .append(((StringQuery) query).getSource()
+                    .trim());
+        } else if (query instanceof CriteriaQuery) {
+            description.append("criteria:");
+            for (Criteria criteria : ((CriteriaQuery) query).getCriteria()
+                .getCriteriaChain()) {
+                describe(criteria, description);
+            }
+        } else {
+            return null;
+        }
+
+        Pageable pageable = query.getPageable();
+        if (pageable.isPaged()) {
+            description.append("|page=")
+                .append(pageable.getPageNumber())
+                .append(',')
+                .append(pageable.getPageSize());
+        }
+        description.append("|sort=")
+            .append(query.getSort());
+        SourceFilter sourceFilter = query.getSourceFilter();
+        if (sourceFilter != null) {
+            description.append("|source=")
+                .append(Arrays.toString(sourceFilter.getIncludes()))
+                .append(Arrays.toString(sourceFilter.getExcludes()));
+        }
+        description.append("|fields=")
+            .append(query.getFields())
+            .append("|ids=")
+            .append(query.getIds())
+            .append("|minScore=")
+            .append(query.getMinScore())
+            .append("|trackScores=")
+            .append(query.getTrackScores())
+            .append("|trackTotalHits=")
+            .append(query.getTrackTotalHits())
+            .append("|maxResults=")
+            .append(query.getMaxResults())
+            .append("|route=")
+            .append(query.getRoute())
+            .append("|preference=")
+            .append(query.getPreference())
+            .append("|searchType=")
+            .append(query.getSearchType());
+        return description.toString();
+    }
+
+    private static void describe(Criteria criteria, StringBuilder description) {
+        description.append('(')
+            .append(criteria.getConjunctionOperator())
+            .append(' ')
+            .append(criteria.getField() == null ? null
+                : criteria.getField()
+                    .getName())
+            .append(criteria.isNegating() ? " not" : "")
+            .append(" boost=")
+            .append(criteria.getBoost());
+        for (Criteria.CriteriaEntry entry : criteria.getQueryCriteriaEntries()) {
+            description.append(" q:")
+                .append(entry.getKey())
+                .append('=')
+                .append(Arrays.deepToString(new Object[] { entry.getValue() }));
+        }
+        for (Criteria.CriteriaEntry entry : criteria.getFilterCriteriaEntries()) {
+            description.append(" f:")
+                .append(entry.getKey())
+                .append('=')
+                .append(Arrays.deepToString(new Object[] { entry.getValue() }));
+        }
+        description.append(')');
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SearchCacheKey)) {
+            return false;
+        }
+        SearchCacheKey other = (SearchCacheKey) o;
+        return generation == other.generation && index.equals(other.index) && type.equals(other.type) && query.equals(other.query);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(index, type, query, generation);
+    }
+
+    @Override
+    public String toString() {
+        return "SearchCacheKey [index=" + index + ", type=" + type.getSimpleName() + ", generation=" + generation + ", query=" + query + "]";
+    }
+}
@@ -0,0 +1,38 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.SearchHitsImpl;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.SearchDocument;
+import org.springframework.data.elasticsearch.core.document.SearchDocumentResponse;
+
+/**
+ * Turns a raw {@link SearchResponse} into the {@link SearchHits} that {@code ElasticsearchRestTemplate.search} would
+ * have returned for it.
+ */
+public class SearchHitsMapper {
+
+    private final ElasticsearchConverter converter;
+
+    public SearchHitsMapper(ElasticsearchConverter converter) {
+        this.converter = converter;
+    }
+
+    public <T> SearchHits<T> mapHits(SearchResponse response, Class<T> type) {
+        SearchDocumentResponse documents = SearchDocumentResponse.from(response);
+        List<SearchHit<T>> hits = new ArrayList<>(documents.getSearchDocuments()
+            .size());
+        for (SearchDocument document : documents.getSearchDocuments()) {
+            T entity = converter.read(type, document);
+            hits.add(new SearchHit<>(document.getId(), document.getScore(), document.getSortValues(), document.getHighlightFields(), entity));
+        }
+        return new SearchHitsImpl<>(documents.getTotalHits(), TotalHitsRelation.valueOf(documents.getTotalHitsRelation()), documents.getMaxScore(), documents.getScrollId(), hits,
+            documents.getAggregations());
+    }
+}
@@ -0,0 +1,316 @@
+package elasticsearchclient.java.files.search.service;
+
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.existsQuery;
+import static org.elasticsearch.index.query.QueryBuilders.fuzzyQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.elasticsearch.index.query.QueryBuilders.wrapperQuery;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.queryparser.flexible.standard.QueryParserUtil;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.annotations.Query;
+import org.springframework.data.elasticsearch.core.query.Criteria;
+import org.springframework.data.elasticsearch.core.query.CriteriaQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.SourceFilter;
+import org.springframework.data.elasticsearch.core.query.StringQuery;
+
+/**
+ * Builds the search requests issued by the {@code ParaRepository} query methods so they can be sent through the
+ * client directly, outside of the repository proxy.
+ */
+public final class SearchRequests {
+
+    private SearchRequests() {
+    }
+
+    /**
+     * Same query as the derived {@code ParaRepository.findByWritersName}.
+     */
+    public static NativeSearchQuery byWritersName(String name, Pageable pageable) {
+        return new NativeSearchQueryBuilder().withQuery(queryStringQuery(QueryParserUtil.escape(name)).field("writers.name")
+            .defaultOperator(Operator.AND))
+            .withPageable(pageable)
+            .build();
+    }
+
+    /**
+     * Same query as {@code ParaRepository.findByFilteredTagQuery}.
+     */
+    public static NativeSearchQuery byFilteredTag(String tag, Pageable pageable) {
+        return new NativeSearchQueryBuilder().withQuery(boolQuery().must(matchAllQuery())
+            .filter(termQuery("tags", tag)))
+            .withPageable(pageable)
+            .build();
+    }
+
+    /**
+     * Same query as {@code ParaRepository.findByWritersNameAndFilteredTagQuery}.
+     */
+    public static NativeSearchQuery byWritersNameAndFilteredTag(String name, String tag, Pageable pageable) {
+        return new NativeSearchQueryBuilder().withQuery(boolQuery().must(matchQuery("writers.name", name))
+            .filter(termQuery("tags", tag)))
+            .withPageable(pageable)
+            .build();
+    }
+
+    /**
+     * The query a {@code @Query} repository method runs for {@code arguments}, as its compiled {@link QueryTemplate}
+     * bound to the arguments; a {@link Pageable} or {@link Sort} argument pages or sorts the query.
+     */
+    public static TemplateStringQuery queryMethod(Class<?> repository, String methodName, Object... arguments) {
+        for (Method method : repository.getMethods()) {
+            Query annotation = method.getAnnotation(Query.class);
+            if (annotation != null && method.getName()
+                .equals(methodName) && method.getParameterCount() == arguments.length) {
+                List<Object> bindable = new ArrayList<>();
+                Pageable pageable = Pageable.unpaged();
+                Sort sort = Sort.unsorted();
+                for (Object argument : arguments) {
+                    if (argument instanceof Pageable) {
+                        pageable = (Pageable) argument;
+                        sort = pageable.getSort();
+                    } else if (argument instanceof Sort) {
+                        sort = (Sort) argument;
+                    } else {
+                        bindable.add(argument);
+                    }
+                }
+                return new TemplateStringQuery(QueryTemplate.of(annotation.value()), bindable.toArray(), pageable, sort);
+            }
+        }
+        throw new IllegalArgumentException("No @Query method " + methodName + " with " + arguments.length + " parameters on " + repository.getName());
+    }
+
+    /**
+     * Translates a {@link StringQuery} the way {@code ElasticsearchRestTemplate.search} does.
+     */
+    public static SearchRequest searchRequest(StringQuery query, IndexCoordinates index) {
+        QueryBuilder queryBuilder = query instanceof TemplateStringQuery ? ((TemplateStringQuery) query).getTemplate()
+            .bind(((TemplateStringQuery) query).getArguments()) : wrapperQuery(query.getSource());
+        return searchRequest(query, new SearchSourceBuilder().query(queryBuilder), index);
+    }
+
+    /**
+     * Translates a {@link NativeSearchQuery} the way {@code ElasticsearchRestTemplate.search} does.
+     */
+    public static SearchRequest searchRequest(NativeSearchQuery query, IndexCoordinates index) {
+        SearchSourceBuilder source = new SearchSourceBuilder().query(query.getQuery() != null ? query.getQuery() : matchAllQuery());
+        if (query.getFilter() != null) {
+            source.postFilter(query.getFilter());
+        }
+        if (query.getElasticsearchSorts() != null) {
+            for (SortBuilder<?> sort : query.getElasticsearchSorts()) {
+                source.sort(sort);
+            }
+        }
+        if (query.getAggregations() != null) {
+            query.getAggregations()
+                .forEach(source::aggregation);
+        }
+        return searchRequest(query, source, index);
+    }
+
+    /**
+     * Translates a {@link CriteriaQuery} the way {@code ElasticsearchRestTemplate.search} does, with the query of
+     * {@link #criteriaQuery(Criteria)}.
+     */
+    public static SearchRequest searchRequest(CriteriaQuery query, IndexCoordinates index) {
+        QueryBuilder criteriaQuery = criteriaQuery(query.getCriteria());
+        return searchRequest(query, new SearchSourceBuilder().query(criteriaQuery != null ? criteriaQuery : matchAllQuery()), index);
+    }
+
+    private static SearchRequest searchRequest(org.springframework.data.elasticsearch.core.query.Query query, SearchSourceBuilder source,
+        IndexCoordinates index) {
+        applyCommon(query, source);
+        SearchRequest request = new SearchRequest(index.getIndexNames()).source(source);
+        if (query.getPreference() != null) {
+            request.preference(query.getPreference());
+        }
+        if (query.getRoute() != null) {
+            request.routing(query.getRoute());
+        }
+        return request;
+    }
+
+    /**
+     * Adds what the template sets for every kind of query to {@code source}: versions, scores, paging, the source
+     * filter, sort orders after any the query type added, min score, total hit tracking and highlighting.
+     */
+    private static void applyCommon(org.springframework.data.elasticsearch.core.query.Query query, SearchSourceBuilder source) {
+        source.version(true)
+            .trackScores(query.getTrackScores());
+
+        Pageable pageable = query.getPageable();
+        if (pageable.isPaged()) {
+            source.from((int) pageable.getOffset())
+                .size(pageable.getPageSize());
+        }
+
+        SourceFilter sourceFilter = query.getSourceFilter();
+        if (sourceFilter != null) {
+            source.fetchSource(sourceFilter.getIncludes(), sourceFilter.getExcludes());
+        }
+
+        if (query.getSort() != null) {
+            for (Sort.Order order : query.getSort()) {
+                source.sort(SortBuilders.fieldSort(order.getProperty())
+                    .order(order.isAscending() ? SortOrder.ASC : SortOrder.DESC));
+            }
+        }
+        if (query.getMinScore() > 0) {
+            source.minScore(query.getMinScore());
+        }
+        if (query.getTrackTotalHits()) {
+            source.trackTotalHits(true);
+        }
+        query.getHighlightQuery()
+            .ifPresent(highlight -> source.highlighter(highlight.getHighlightBuilder()));
+    }
+
+    /**
+     * The query {@code ElasticsearchRestTemplate} sends for the criteria of a {@code CriteriaQuery}, built as its
+     * {@code CriteriaQueryProcessor} builds it, or {@code null} when the criteria have no query entries. Geo criteria,
+     * which Spring Data sends as a post filter, are rejected with an {@link IllegalArgumentException}.
+     */
+    public static QueryBuilder criteriaQuery(Criteria criteria) {
+        List<QueryBuilder> should = new ArrayList<>();
+        List<QueryBuilder> mustNot = new ArrayList<>();
+        List<QueryBuilder> must = new ArrayList<>();
+        QueryBuilder first = null;
+        boolean negateFirst = false;
+        for (Criteria chained : criteria.getCriteriaChain()) {
+            if (!chained.getFilterCriteriaEntries()
+                .isEmpty()) {
+                throw new IllegalArgumentException("Geo criteria on [" + chained.getField()
+                    .getName() + "] are not supported, use a NativeSearchQuery with a geo filter");
+            }
+            QueryBuilder fragment = criteriaFragment(chained);
+            if (fragment == null) {
+                continue;
+            }
+            if (first == null) {
+                first = fragment;
+                negateFirst = chained.isNegating();
+            } else if (chained.isOr()) {
+                should.add(fragment);
+            } else if (chained.isNegating()) {
+                mustNot.add(fragment);
+            } else {
+                must.add(fragment);
+            }
+        }
+        if (first == null) {
+            return null;
+        }
+        if (!should.isEmpty() && mustNot.isEmpty() && must.isEmpty()) {
+            should.add(0, first);
+        } else if (negateFirst) {
+            mustNot.add(0, first);
+        } else {
+            must.add(0, first);
+        }
+        BoolQueryBuilder query = boolQuery();
+        should.forEach(query::should);
+        mustNot.forEach(query::mustNot);
+        must.forEach(query::must);
+        return query;
+    }
+
+    private static QueryBuilder criteriaFragment(Criteria criteria) {
+        if (criteria.getQueryCriteriaEntries()
+            .isEmpty()) {
+            return null;
+        }
+        String field = criteria.getField()
+            .getName();
+        QueryBuilder fragment;
+        if (criteria.getQueryCriteriaEntries()
+            .size() == 1) {
+            fragment = criteriaEntry(criteria.getQueryCriteriaEntries()
+                .iterator()
+                .next(), field);
+        } else {
+            BoolQueryBuilder all = boolQuery();
+            for (Criteria.CriteriaEntry entry : criteria.getQueryCriteriaEntries()) {
+                all.must(criteriaEntry(entry, field));
+            }
+            fragment = all;
+        }
+        if (fragment != null && !Float.isNaN(criteria.getBoost())) {
+            fragment.boost(criteria.getBoost());
+        }
+        return fragment;
+    }
+
+    private static QueryBuilder criteriaEntry(Criteria.CriteriaEntry entry, String field) {
+        Object value = entry.getValue();
+        if (value == null) {
+            return entry.getKey() == Criteria.OperationKey.EXISTS ? existsQuery(field) : null;
+        }
+        String text = QueryParserUtil.escape(value.toString());
+        switch (entry.getKey()) {
+        case EQUALS:
+            return queryStringQuery(text).field(field)
+                .defaultOperator(Operator.AND);
+        case CONTAINS:
+            return queryStringQuery("*" + text + "*").field(field)
+                .analyzeWildcard(true);
+        case STARTS_WITH:
+            return queryStringQuery(text + "*").field(field)
+                .analyzeWildcard(true);
+        case ENDS_WITH:
+            return queryStringQuery("*" + text).field(field)
+                .analyzeWildcard(true);
+        case EXPRESSION:
+            return queryStringQuery(value.toString()).field(field);
+        case LESS:
+            return rangeQuery(field).lt(value);
+        case LESS_EQUAL:
+            return rangeQuery(field).lte(value);
+        case GREATER:
+            return rangeQuery(field).gt(value);
+        case GREATER_EQUAL:
+            return rangeQuery(field).gte(value);
+        case BETWEEN:
+            Object[] range = (Object[]) value;
+            return rangeQuery(field).from(range[0])
+                .to(range[1]);
+        case FUZZY:
+            return fuzzyQuery(field, text);
+        case IN:
+        case NOT_IN:
+            BoolQueryBuilder in = boolQuery();
+            for (Object item : (Iterable<?>) value) {
+                QueryBuilder term = queryStringQuery(item.toString()).field(field);
+                if (entry.getKey() == Criteria.OperationKey.IN) {
+                    in.should(term);
+                } else {
+                    in.mustNot(term);
+                }
+            }
+            return in;
+        default:
+            throw new IllegalArgumentException("Criteria [" + entry.getKey() + "] on [" + field + "] are not supported");
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.Query;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Size bounded, time limited cache of search results, keyed by index, result type and the canonical query.
+ * <p>
+ * Eviction is Caffeine's Window TinyLFU, which keeps the few hot tag and writer queries resident while one-off queries
+ * pass through the small admission window. Writes to an index invalidate all of its entries. Cached
+ * {@link SearchHits} and their entities are shared between callers and must not be modified.
+ * <p>
+ * Misses go through {@link SingleFlightSearches}, so a burst of identical queries costs one search even before the
+ * first result is cached, and even with a zero TTL or size, which turns caching off.
+ */
+public class SearchResultCache {
+
+    private static final String PREFIX = "elasticsearch.cache.";
+    private static final long DEFAULT_SINGLE_FLIGHT_WAIT_MILLIS = 5000;
+
+    private final Cache<SearchCacheKey, SearchHits<?>> cache;
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final SingleFlightSearches singleFlight;
+    private final boolean enabled;
+
+    public SearchResultCache(long maximumSize, long ttlMillis) {
+        this(maximumSize, ttlMillis, Ticker.systemTicker());
+    }
+
+    public SearchResultCache(long maximumSize, long ttlMillis, Ticker ticker) {
+        this(maximumSize, ttlMillis, ticker, new SingleFlightSearches(DEFAULT_SINGLE_FLIGHT_WAIT_MILLIS));
+    }
+
+    public SearchResultCache(long maximumSize, long ttlMillis, Ticker ticker, SingleFlightSearches singleFlight) {
+        this.singleFlight = singleFlight;
+        this.enabled = maximumSize > 0 && ttlMillis > 0;
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+            .ticker(ticker)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * Reads {@code elasticsearch.cache.maximum-size} (default 10000), {@code elasticsearch.cache.ttl-millis} (default
+     * 30000) and {@code elasticsearch.cache.single-flight-wait-millis} (default 5000).
+     */
+    public static SearchResultCache from(PropertyResolver properties) {
+        return new SearchResultCache(properties.getProperty(PREFIX + "maximum-size", Long.class, 10_000L),
+            properties.getProperty(PREFIX + "ttl-millis", Long.class, 30_000L), Ticker.systemTicker(),
+            new SingleFlightSearches(properties.getProperty(PREFIX + "single-flight-wait-millis", Long.class, DEFAULT_SINGLE_FLIGHT_WAIT_MILLIS)));
+    }
+
+    /**
+     * Returns the cached hits for {@code query}, running {@code search} on a miss unless an identical search is
+     * already running. Queries that cannot be cached, see {@link SearchCacheKey#describe}, always run {@code search}.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> SearchHits<T> get(Query query, Class<T> type, IndexCoordinates index, Supplier<SearchHits<T>> search) {
+        String description = SearchCacheKey.describe(query, index);
+        if (description == null) {
+            return search.get();
+        }
+        String indexName = index.getIndexName();
+        SearchCacheKey key = new SearchCacheKey(indexName, type, description, generation(indexName).get());
+        if (!enabled) {
+            return singleFlight.run(key, search);
+        }
+        SearchHits<T> cached = (SearchHits<T>) cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        // not Cache.get(key, loader): its callers block on the loading bin without a time limit
+        SearchHits<T> hits = singleFlight.run(key, search);
+        cache.put(key, hits);
+        return hits;
+    }
+
+    /**
+     * Drops every entry of {@code index}; called after each write to it.
+     */
+    public void invalidate(IndexCoordinates index) {
+        String indexName = index.getIndexName();
+        generation(indexName).incrementAndGet();
+        invalidations.incrementAndGet();
+        cache.asMap()
+            .keySet()
+            .removeIf(key -> key.getIndex()
+                .equals(indexName));
+    }
+
+    public void invalidateAll() {
+        generations.values()
+            .forEach(AtomicLong::incrementAndGet);
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Hit, miss, load and eviction counts since the cache was created.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    public SingleFlightSearches getSingleFlight() {
+        return singleFlight;
+    }
+
+    public long getEstimatedSize() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * Runs pending maintenance such as size based eviction, which Caffeine otherwise does lazily.
+     */
+    public void cleanUp() {
+        cache.cleanUp();
+    }
+
+    private AtomicLong generation(String indexName) {
+        return generations.computeIfAbsent(indexName, ignored -> new AtomicLong());
+    }
+}
@@ -0,0 +1,106 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.elasticsearch.core.SearchHits;
+
+/**
+ * Lets identical searches that are in flight at the same time share one call to Elasticsearch.
+ * <p>
+ * The first caller for a {@link SearchCacheKey} runs the search; everyone asking for the same key before it returns
+ * waits for that call and gets the same {@link SearchHits}, or the same exception. Followers wait at most
+ * {@code maxWaitMillis} and then fail with a {@link QueryTimeoutException} rather than piling a search of their own
+ * onto a backend that is already slow. The key carries the index generation, so a search started after a write never
+ * joins one started before it.
+ * <p>
+ * Unlike the cache this keeps nothing once the search has returned; it collapses concurrent duplicates even when
+ * caching is disabled.
+ */
+public class SingleFlightSearches {
+
+    private final Map<SearchCacheKey, CompletableFuture<SearchHits<?>>> inFlight = new ConcurrentHashMap<>();
+    private final long maxWaitMillis;
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    public SingleFlightSearches(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> SearchHits<T> run(SearchCacheKey key, Supplier<SearchHits<T>> search) {
+        CompletableFuture<SearchHits<?>> call = new CompletableFuture<>();
+        CompletableFuture<SearchHits<?>> running = inFlight.putIfAbsent(key, call);
+        if (running != null) {
+            collapsed.incrementAndGet();
+            return (SearchHits<T>) await(running, key);
+        }
+        executed.incrementAndGet();
+        try {
+            SearchHits<T> hits = search.get();
+            call.complete(hits);
+            return hits;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    /**
+     * Searches actually sent.
+     */
+    public long getExecutedCount() {
+        return executed.get();
+    }
+
+    /**
+     * Searches answered by joining an identical one already in flight.
+     */
+    public long getCollapsedCount() {
+        return collapsed.get();
+    }
+
+    /**
+     * Followers that gave up waiting for the search they joined.
+     */
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private SearchHits<?> await(CompletableFuture<SearchHits<?>> running, SearchCacheKey key) {
+        try {
+            return running.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timedOut.incrementAndGet();
+            throw new QueryTimeoutException("Identical search on " + key.getIndex() + " still running after " + maxWaitMillis + " ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                .interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an identical search on " + key.getIndex(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Search on " + key.getIndex() + " failed", cause);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Remembers how far each slice of a {@link SlicedIndexReader} job got, so an interrupted job resumes instead of
+ * starting over.
+ * <p>
+ * A position is saved only after every document before it has been handed to the consumer, so resuming never skips a
+ * document; documents after the last saved position may be consumed twice.
+ */
+public interface SliceCheckpointStore {
+
+    /**
+     * Position of a slice that has been read to the end.
+     */
+    String COMPLETED = "\u0000completed";
+
+    /**
+     * Saved positions of {@code job}, by slice id; slices without an entry start from the beginning.
+     *
+     * @throws IllegalStateException when the job was checkpointed with a different slice count
+     */
+    Map<Integer, String> load(String job, int slices);
+
+    void save(String job, int slices, int slice, String position);
+
+    /**
+     * Forgets {@code job}, typically once it has completed.
+     */
+    void clear(String job);
+
+    static SliceCheckpointStore inMemory() {
+        return new InMemory();
+    }
+
+    /**
+     * Keeps every job in a {@code <job>.checkpoint} properties file in {@code directory}, replaced atomically on each
+     * save.
+     */
+    static SliceCheckpointStore directory(Path directory) {
+        return new Directory(directory);
+    }
+
+    class InMemory implements SliceCheckpointStore {
+        private final Map<String, Map<Integer, String>> jobs = new ConcurrentHashMap<>();
+        private final Map<String, Integer> sliceCounts = new ConcurrentHashMap<>();
+
+        @Override
+        public Map<Integer, String> load(String job, int slices) {
+            Integer saved = sliceCounts.get(job);
+            if (saved != null && saved != slices) {
+                throw new IllegalStateException("Job " + job + " was checkpointed with " + saved + " slices, not " + slices);
+            }
+            return new HashMap<>(jobs.getOrDefault(job, new HashMap<>()));
+        }
+
+        @Override
+        public void save(String job, int slices, int slice, String position) {
+            sliceCounts.put(job, slices);
+            jobs.computeIfAbsent(job, ignored -> new ConcurrentHashMap<>())
+                .put(slice, position);
+        }
+
+        @Override
+        public void clear(String job) {
+            jobs.remove(job);
+            sliceCounts.remove(job);
+        }
+    }
+
+    class Directory implements SliceCheckpointStore {
+        private final Path directory;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        Directory(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public Map<Integer, String> load(String job, int slices) {
+            lock.lock();
+            try {
+                Properties properties = read(job);
+                Map<Integer, String> positions = new HashMap<>();
+                if (properties.isEmpty()) {
+                    return positions;
+                }
+                int saved = Integer.parseInt(properties.getProperty("slices"));
+                if (saved != slices) {
+                    throw new IllegalStateException("Job " + job + " was checkpointed with " + saved + " slices, not " + slices);
+                }
+                for (String name : properties.stringPropertyNames()) {
+                    if (name.startsWith("slice.")) {
+                        positions.put(Integer.parseInt(name.substring("slice.".length())), properties.getProperty(name));
+                    }
+                }
+                return positions;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void save(String job, int slices, int slice, String position) {
+            lock.lock();
+            try {
+                Properties properties = read(job);
+                properties.setProperty("slices", String.valueOf(slices));
+                properties.setProperty("slice." + slice, position);
+                try {
+                    Files.createDirectories(directory);
+                    Path temporary = Files.createTempFile(directory, job, ".tmp");
+                    try (OutputStream out = Files.newOutputStream(temporary)) {
+                        properties.store(out, null);
+                    }
+                    Files.move(temporary, file(job), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void clear(String job) {
+            lock.lock();
+            try {
+                try {
+                    Files.deleteIfExists(file(job));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Properties read(String job) {
+            Properties properties = new Properties();
+            Path file = file(job);
+            if (Files.exists(file)) {
+                try (InputStream in = Files.newInputStream(file)) {
+                    properties.load(in);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return properties;
+        }
+
+        private Path file(String job) {
+            return directory.resolve(job + ".checkpoint");
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.stereotype.Service;
+
+/**
+ * Reads a whole index with several sliced scrolls at once, for exports and reindexing that should use every core.
+ * <p>
+ * The index is split into {@link Options#slices(int) slices}, each read by its own scroll on a fork-join pool of
+ * {@link Options#parallelism(int) parallelism} threads; while a slice's consumer works through one page the next one
+ * is already being fetched. The consumer is called concurrently from several slices and must be thread-safe; within a
+ * slice documents arrive in order.
+ * <p>
+ * With a {@link Options#checkpoints(SliceCheckpointStore, String) checkpoint store} every slice saves its position
+ * after each fully consumed page, and a rerun of the same job skips completed slices. Scroll contexts cannot be
+ * reopened, so to resume a slice from the middle the reader needs a {@link Options#sortField(String) sort field} that
+ * is unique and supports range queries, such as a keyword id; without one, unfinished slices restart from their
+ * beginning.
+ */
+@Service
+public class SlicedIndexReader {
+
+    public static class Options {
+        private int slices = Runtime.getRuntime()
+            .availableProcessors();
+        private int parallelism = Runtime.getRuntime()
+            .availableProcessors();
+        private int pageSize = 1000;
+        private TimeValue keepAlive = TimeValue.timeValueMinutes(1);
+        private String sortField;
+        private QueryBuilder query = QueryBuilders.matchAllQuery();
+        private SliceCheckpointStore checkpoints;
+        private String job;
+
+        public static Options defaults() {
+            return new Options();
+        }
+
+        public Options slices(int slices) {
+            this.slices = slices;
+            return this;
+        }
+
+        /**
+         * Threads driving the slices; slices beyond it wait for a free thread.
+         */
+        public Options parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public Options pageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        public Options keepAlive(TimeValue keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Unique field every slice is sorted by, so a checkpointed slice can resume after its last position. Slices
+         * are read in {@code _doc} order when not set.
+         */
+        public Options sortField(String sortField) {
+            this.sortField = sortField;
+            return this;
+        }
+
+        public Options query(QueryBuilder query) {
+            this.query = query;
+            return this;
+        }
+
+        public Options checkpoints(SliceCheckpointStore checkpoints, String job) {
+            this.checkpoints = checkpoints;
+            this.job = job;
+            return this;
+        }
+    }
+
+    private final RestHighLevelClient client;
+    private final ElasticsearchOperations operations;
+    private final SearchHitsMapper mapper;
+
+    @Autowired
+    public SlicedIndexReader(RestHighLevelClient client, ElasticsearchOperations operations) {
+        this.client = client;
+        this.operations = operations;
+        this.mapper = new SearchHitsMapper(operations.getElasticsearchConverter());
+    }
+
+    public <T> long read(Class<T> type, Options options, Consumer<? super T> consumer) {
+        return read(type, operations.getIndexCoordinatesFor(type), options, consumer);
+    }
+
+    /**
+     * Feeds every document of {@code index} to {@code consumer} and returns how many were consumed in this run. The
+     * first failure of any slice, or of the consumer, stops the other slices and is rethrown.
+     */
+    public <T> long read(Class<T> type, IndexCoordinates index, Options options, Consumer<? super T> consumer) {
+        Map<Integer, String> positions = options.checkpoints == null ? new HashMap<>()
+            : options.checkpoints.load(options.job, options.slices);
+        AtomicLong consumed = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        ForkJoinPool pool = new ForkJoinPool(options.parallelism);
+        List<Future<?>> slices = new ArrayList<>();
+        try {
+            for (int slice = 0; slice < options.slices; slice++) {
+                String position = positions.get(slice);
+                if (SliceCheckpointStore.COMPLETED.equals(position)) {
+                    continue;
+                }
+                SliceRead<T> read = new SliceRead<>(type, index, options, slice, position, consumer, consumed, failure);
+                slices.add(pool.submit(() -> {
+                    read.run();
+                    return null;
+                }));
+            }
+            for (Future<?> slice : slices) {
+                slice.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                .interrupt();
+            throw new IllegalStateException("Interrupted while reading " + index.getIndexName(), e);
+        } catch (ExecutionException e) {
+            // the slice that failed first, not one that was stopped because of it
+            Throwable cause = failure.get() != null ? failure.get() : e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw new UncheckedIOException((IOException) cause);
+            }
+            throw new IllegalStateException("Reading " + index.getIndexName() + " failed", cause);
+        } finally {
+            failure.compareAndSet(null, new CancellationException("Reading " + index.getIndexName() + " was abandoned"));
+            pool.shutdownNow();
+        }
+        return consumed.get();
+    }
+
+    private class SliceRead<T> {
+        private final Class<T> type;
+        private final IndexCoordinates index;
+        private final Options options;
+        private final int slice;
+        private final String resumeAfter;
+        private final Consumer<? super T> consumer;
+        private final AtomicLong consumed;
+        private final AtomicReference<Throwable> failure;
+
+        SliceRead(Class<T> type, IndexCoordinates index, Options options, int slice, String resumeAfter, Consumer<? super T> consumer,
+            AtomicLong consumed, AtomicReference<Throwable> failure) {
+            this.type = type;
+            this.index = index;
+            this.options = options;
+            this.slice = slice;
+            this.resumeAfter = resumeAfter;
+            this.consumer = consumer;
+            this.consumed = consumed;
+            this.failure = failure;
+        }
+
+        void run() throws IOException {
+            try {
+                read();
+            } catch (IOException | RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            }
+        }
+
+        private void read() throws IOException {
+            SearchResponse response = client.search(firstRequest(), RequestOptions.DEFAULT);
+            String scrollId = response.getScrollId();
+            PlainActionFuture<SearchResponse> next = null;
+            try {
+                while (true) {
+                    int pageHits = response.getHits()
+                        .getHits().length;
+                    if (pageHits == options.pageSize) {
+                        // prefetch while the consumer works through this page
+                        next = PlainActionFuture.newFuture();
+                        client.scrollAsync(new SearchScrollRequest(scrollId).scroll(options.keepAlive), RequestOptions.DEFAULT, next);
+                    }
+                    SearchHits<T> hits = mapper.mapHits(response, type);
+                    for (SearchHit<T> hit : hits) {
+                        if (failure.get() != null) {
+                            throw new CancellationException("Slice " + slice + " of " + index.getIndexName() + " was stopped");
+                        }
+                        consumer.accept(hit.getContent());
+                    }
+                    consumed.addAndGet(pageHits);
+                    if (next == null) {
+                        checkpoint(SliceCheckpointStore.COMPLETED);
+                        return;
+                    }
+                    if (options.sortField != null && pageHits > 0) {
+                        checkpoint(String.valueOf(hits.getSearchHit(pageHits - 1)
+                            .getSortValues()
+                            .get(0)));
+                    }
+                    response = next.actionGet();
+                    next = null;
+                    scrollId = response.getScrollId();
+                }
+            } finally {
+                if (next != null) {
+                    next.cancel(true);
+                }
+                ClearScrollRequest clear = new ClearScrollRequest();
+                clear.addScrollId(scrollId);
+                client.clearScrollAsync(clear, RequestOptions.DEFAULT, PlainActionFuture.newFuture());
+            }
+        }
+
+        private SearchRequest firstRequest() {
+            QueryBuilder query = options.query;
+            if (resumeAfter != null && options.sortField != null) {
+                query = QueryBuilders.boolQuery()
+                    .must(query)
+                    .filter(QueryBuilders.rangeQuery(options.sortField)
+                        .gt(resumeAfter));
+            }
+            SearchSourceBuilder source = new SearchSourceBuilder().query(query)
+                .size(options.pageSize);
+            if (options.sortField != null) {
+                source.sort(options.sortField, SortOrder.ASC);
+            } else {
+                source.sort("_doc");
+            }
+            if (options.slices > 1) {
+                source.slice(new SliceBuilder(slice, options.slices));
+            }
+            return new SearchRequest(index.getIndexNames()).source(source)
+                .scroll(options.keepAlive);
+        }
+
+        private void checkpoint(String position) {
+            if (options.checkpoints != null) {
+                options.checkpoints.save(options.job, options.slices, slice, position);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Writes entities such as {@code Para} and {@code Company} as document sources in JSON, SMILE or CBOR, and reads them
+ * back, through the Spring Data mapping converter.
+ * <p>
+ * The converter's own route, {@code mapObject(entity).toJson()}, always produces a JSON string that is then encoded
+ * to bytes again; here the mapped document is written straight to bytes of the chosen format by Jackson, which also
+ * backs {@code toJson()}, so values such as dates come out the same in every format. Sources are read in the codec's
+ * format unless the caller says which one they were written in, as for sources kept from before a change of format.
+ */
+public class SourceCodec {
+
+    private static final String CONTENT_TYPE_PROPERTY = "elasticsearch.client.content-type";
+
+    private final ElasticsearchConverter converter;
+    private final XContentType contentType;
+    private final ObjectWriter writer;
+
+    public SourceCodec(ElasticsearchConverter converter, XContentType contentType) {
+        this.converter = converter;
+        this.contentType = contentType;
+        this.writer = new ObjectMapper(factory(contentType)).writer();
+    }
+
+    /**
+     * The client's configured format, {@code elasticsearch.client.content-type}.
+     */
+    public static XContentType contentType(PropertyResolver properties) {
+        String contentType = properties.getProperty(CONTENT_TYPE_PROPERTY);
+        return contentType == null ? XContentType.JSON : XContentType.fromMediaTypeOrFormat(contentType.trim());
+    }
+
+    /**
+     * The format to write bulked sources in: {@code _bulk} accepts only JSON and SMILE, so CBOR falls back to SMILE.
+     */
+    public static XContentType bulkContentType(XContentType contentType) {
+        return contentType == XContentType.CBOR ? XContentType.SMILE : contentType;
+    }
+
+    public XContentType getContentType() {
+        return contentType;
+    }
+
+    public BytesReference write(Object entity) {
+        try {
+            return new BytesArray(writer.writeValueAsBytes(converter.mapObject(entity)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public <T> T read(Class<T> type, byte[] source) {
+        return read(type, new BytesArray(source));
+    }
+
+    public <T> T read(Class<T> type, BytesReference source) {
+        return read(type, source, contentType);
+    }
+
+    public <T> T read(Class<T> type, BytesReference source, XContentType sourceType) {
+        Map<String, Object> map = XContentHelper.convertToMap(source, false, sourceType)
+            .v2();
+        return converter.read(type, Document.from(map));
+    }
+
+    private static JsonFactory factory(XContentType contentType) {
+        switch (contentType) {
+        case JSON:
+            return new JsonFactory();
+        case SMILE:
+            return new SmileFactory();
+        case CBOR:
+            return new CBORFactory();
+        default:
+            throw new IllegalArgumentException("Unsupported content type " + contentType + ", use json, smile or cbor");
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchScrollHits;
+import org.springframework.data.elasticsearch.core.SearchHitsImpl;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Maps a search response into entities in a single streaming pass over the response body.
+ * <p>
+ * The usual route, {@code SearchResponse.fromXContent} followed by {@code hit.getSourceAsString()} and
+ * {@code JSON.parseObject}, parses every {@code _source} twice and keeps it as bytes, a {@code String} and often a
+ * {@code Map} along the way. Here the body is read token by token from the response stream, and each {@code _source} is
+ * bound directly onto the entity by a cached Jackson reader positioned on it; nothing else of the hit is kept. A
+ * {@code _source} without an {@code id} gets the hit's {@code _id} through the entity's {@code setId(String)}, if it
+ * has one. Aggregations, highlights and other response sections are skipped.
+ */
+@Service
+public class StreamingHitReader {
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final ObjectMapper MAPPER = new ObjectMapper(JSON).disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    // the reader is JSON only, whatever format the client asks for by default
+    private static final RequestOptions JSON_RESPONSE = RequestOptions.DEFAULT.toBuilder()
+        .addHeader(HttpHeaders.ACCEPT, "application/json")
+        .build();
+
+    private final RestClient client;
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Optional<Method[]>> idAccessors = new ConcurrentHashMap<>();
+
+    @Autowired
+    public StreamingHitReader(RestHighLevelClient client) {
+        this(client.getLowLevelClient());
+    }
+
+    public StreamingHitReader(RestClient client) {
+        this.client = client;
+    }
+
+    public <T> SearchScrollHits<T> search(SearchRequest request, Class<T> type) {
+        try {
+            Response response = client.performRequest(toRequest(request));
+            try (InputStream body = response.getEntity()
+                .getContent()) {
+                return read(body, type);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Like {@link #search}, mapping on the IO thread that received the response.
+     */
+    public <T> CompletableFuture<SearchScrollHits<T>> searchAsync(SearchRequest request, Class<T> type) {
+        CompletableFuture<SearchScrollHits<T>> future = new CompletableFuture<>();
+        Request lowLevelRequest;
+        try {
+            lowLevelRequest = toRequest(request);
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        client.performRequestAsync(lowLevelRequest, new ResponseListener() {
+
+            @Override
+            public void onSuccess(Response response) {
+                try (InputStream body = response.getEntity()
+                    .getContent()) {
+                    future.complete(read(body, type));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                future.completeExceptionally(exception);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Reads a search response body, as returned by {@code _search} or {@code _search/scroll}.
+     */
+    public <T> SearchScrollHits<T> read(InputStream body, Class<T> type) throws IOException {
+        ObjectReader reader = readers.computeIfAbsent(type, MAPPER::readerFor);
+        String scrollId = null;
+        long total = 0;
+        TotalHitsRelation relation = TotalHitsRelation.EQUAL_TO;
+        float maxScore = Float.NaN;
+        List<SearchHit<T>> hits = Collections.emptyList();
+
+        try (JsonParser parser = JSON.createParser(body)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("_scroll_id".equals(field)) {
+                    scrollId = parser.getText();
+                } else if ("hits".equals(field) && value == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String hitsField = parser.getCurrentName();
+                        JsonToken hitsValue = parser.nextToken();
+                        if ("total".equals(hitsField)) {
+                            if (hitsValue == JsonToken.START_OBJECT) {
+                                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                    String totalField = parser.getCurrentName();
+                                    parser.nextToken();
+                                    if ("value".equals(totalField)) {
+                                        total = parser.getLongValue();
+                                    } else if ("relation".equals(totalField) && "gte".equals(parser.getText())) {
+                                        relation = TotalHitsRelation.GREATER_THAN_OR_EQUAL_TO;
+                                    }
+                                }
+                            } else if (hitsValue.isNumeric()) {
+                                total = parser.getLongValue();
+                            }
+                        } else if ("max_score".equals(hitsField)) {
+                            maxScore = hitsValue.isNumeric() ? parser.getFloatValue() : Float.NaN;
+                        } else if ("hits".equals(hitsField) && hitsValue == JsonToken.START_ARRAY) {
+                            hits = new ArrayList<>();
+                            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                                hits.add(readHit(parser, reader, type));
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new SearchHitsImpl<>(total, relation, maxScore, scrollId, hits, null);
+    }
+
+    private <T> SearchHit<T> readHit(JsonParser parser, ObjectReader reader, Class<T> type) throws IOException {
+        String id = null;
+        float score = Float.NaN;
+        Object[] sortValues = new Object[0];
+        T content = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("_id".equals(field)) {
+                id = parser.getText();
+            } else if ("_score".equals(field)) {
+                score = value.isNumeric() ? parser.getFloatValue() : Float.NaN;
+            } else if ("_source".equals(field)) {
+                content = reader.readValue(parser);
+            } else if ("sort".equals(field) && value == JsonToken.START_ARRAY) {
+                List<Object> sort = new ArrayList<>(2);
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    sort.add(parser.currentToken()
+                        .isNumeric() ? parser.getNumberValue() : parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getText());
+                }
+                sortValues = sort.toArray();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (content != null && id != null) {
+            assignId(content, id);
+        }
+        return new SearchHit<>(id, score, sortValues, Collections.emptyMap(), content);
+    }
+
+    private void assignId(Object content, String id) {
+        Optional<Method[]> accessors = idAccessors.computeIfAbsent(content.getClass(), StreamingHitReader::idAccessors);
+        if (!accessors.isPresent()) {
+            return;
+        }
+        try {
+            if (accessors.get()[0].invoke(content) == null) {
+                accessors.get()[1].invoke(content, id);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot set the id of " + content.getClass()
+                .getName(), e);
+        }
+    }
+
+    private static Optional<Method[]> idAccessors(Class<?> type) {
+        try {
+            return Optional.of(new Method[] { type.getMethod("getId"), type.getMethod("setId", String.class) });
+        } catch (NoSuchMethodException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Expected " + expected + " but found " + actual + " in the search response");
+        }
+    }
+
+    private static Request toRequest(SearchRequest searchRequest) throws IOException {
+        String indices = String.join(",", searchRequest.indices());
+        Request request = new Request("POST", (indices.isEmpty() ? "" : "/" + indices) + "/_search");
+        request.setOptions(JSON_RESPONSE);
+        if (searchRequest.routing() != null) {
+            request.addParameter("routing", searchRequest.routing());
+        }
+        if (searchRequest.preference() != null) {
+            request.addParameter("preference", searchRequest.preference());
+        }
+        if (searchRequest.scroll() != null) {
+            request.addParameter("scroll", searchRequest.scroll()
+                .keepAlive()
+                .getStringRep());
+        }
+        request.addParameter("search_type", searchRequest.searchType()
+            .name()
+            .toLowerCase());
+        if (searchRequest.source() != null) {
+            BytesReference source = XContentHelper.toXContent(searchRequest.source(), XContentType.JSON, false);
+            request.setEntity(new NByteArrayEntity(BytesReference.toBytes(source), ContentType.APPLICATION_JSON));
+        }
+        return request;
+    }
+}
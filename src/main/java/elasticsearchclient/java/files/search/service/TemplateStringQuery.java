@@ -0,0 +1,42 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.query.StringQuery;
+
+/**
+ * A {@link StringQuery} that keeps its compiled {@link QueryTemplate} and arguments rather than a substituted string.
+ * <p>
+ * Searches that know about it send the bound template; everything else sees the rendered source through
+ * {@link #getSource()}.
+ */
+public class TemplateStringQuery extends StringQuery {
+
+    private final QueryTemplate template;
+    private final Object[] arguments;
+    private String source;
+
+    public TemplateStringQuery(QueryTemplate template, Object[] arguments, Pageable pageable, Sort sort) {
+        super(template.getSource(), pageable, sort);
+        this.template = template;
+        this.arguments = arguments.clone();
+    }
+
+    public QueryTemplate getTemplate() {
+        return template;
+    }
+
+    public Object[] getArguments() {
+        return arguments.clone();
+    }
+
+    @Override
+    public String getSource() {
+        if (source == null) {
+            source = new String(template.render(arguments), StandardCharsets.UTF_8);
+        }
+        return source;
+    }
+}
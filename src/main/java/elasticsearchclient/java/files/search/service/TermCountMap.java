@@ -0,0 +1,221 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Open-addressing hash map from {@code String} terms to primitive {@code long} counts, the storage behind
+ * {@link ParaTermCounts}.
+ * <p>
+ * Keys and counts sit in two parallel arrays probed linearly, so updating a count is a hash and a few array reads
+ * without allocating, where a {@code HashMap<String, Long>} allocates an entry and boxes every new value. A count that
+ * drops to zero removes its term by shifting the rest of the probe run back, so no tombstones build up. Not
+ * thread-safe.
+ */
+public class TermCountMap {
+
+    /**
+     * A term and its count, as returned by {@link TermCountMap#top(int)}.
+     */
+    public static class TermCount {
+        private final String term;
+        private final long count;
+
+        public TermCount(String term, long count) {
+            this.term = term;
+            this.count = count;
+        }
+
+        public String getTerm() {
+            return term;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return term + "=" + count;
+        }
+    }
+
+    private static final int MIN_CAPACITY = 16;
+
+    private String[] keys;
+    private long[] counts;
+    private int mask;
+    private int size;
+
+    public TermCountMap() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    public TermCountMap(int expectedSize) {
+        allocate(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize) * 2 - 1) << 1));
+    }
+
+    /**
+     * Adds {@code delta}, which may be negative, to the count of {@code term} and returns the new count; a term whose
+     * count would drop to zero or below is removed.
+     */
+    public long add(String term, long delta) {
+        int slot = slot(term);
+        if (keys[slot] == null) {
+            if (delta <= 0) {
+                return 0;
+            }
+            keys[slot] = term;
+            counts[slot] = delta;
+            // at most half full keeps probe runs short
+            if (++size > keys.length >> 1) {
+                allocate(keys.length << 1);
+            }
+            return delta;
+        }
+        long count = counts[slot] + delta;
+        if (count <= 0) {
+            remove(slot);
+            return 0;
+        }
+        counts[slot] = count;
+        return count;
+    }
+
+    public long get(String term) {
+        int slot = slot(term);
+        return keys[slot] == null ? 0 : counts[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(ObjLongConsumer<String> consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                consumer.accept(keys[i], counts[i]);
+            }
+        }
+    }
+
+    /**
+     * The {@code n} terms with the highest counts, highest first and ties in term order, as a terms aggregation orders
+     * its buckets.
+     */
+    public List<TermCount> top(int n) {
+        int[] heap = new int[Math.min(n, size)];
+        int heapSize = 0;
+        for (int slot = 0; slot < keys.length && heap.length > 0; slot++) {
+            if (keys[slot] == null) {
+                continue;
+            }
+            if (heapSize < heap.length) {
+                heap[heapSize] = slot;
+                siftUp(heap, heapSize++);
+            } else if (before(slot, heap[0])) {
+                heap[0] = slot;
+                siftDown(heap, 0, heapSize);
+            }
+        }
+        TermCount[] top = new TermCount[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            top[i] = new TermCount(keys[heap[0]], counts[heap[0]]);
+            heap[0] = heap[i];
+            siftDown(heap, 0, i);
+        }
+        return new ArrayList<>(Arrays.asList(top));
+    }
+
+    private int slot(String term) {
+        int slot = hash(term) & mask;
+        while (keys[slot] != null && !keys[slot].equals(term)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void remove(int slot) {
+        int gap = slot;
+        for (int i = (slot + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+            int home = hash(keys[i]) & mask;
+            // move the entry into the gap unless its home lies between the gap and where it sits now
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                counts[gap] = counts[i];
+                gap = i;
+            }
+        }
+        keys[gap] = null;
+        counts[gap] = 0;
+        size--;
+    }
+
+    private void allocate(int capacity) {
+        String[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new String[capacity];
+        counts = new long[capacity];
+        mask = capacity - 1;
+        if (oldKeys != null) {
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    int slot = slot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the term in slot {@code a} ranks before the one in slot {@code b}.
+     */
+    private boolean before(int a, int b) {
+        return counts[a] != counts[b] ? counts[a] > counts[b] : keys[a].compareTo(keys[b]) < 0;
+    }
+
+    // min-heap on rank: the root is the lowest ranked of the terms kept so far
+    private void siftUp(int[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(heap[parent], heap[i])) {
+                return;
+            }
+            swap(heap, i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int i, int heapSize) {
+        while (true) {
+            int lowest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < heapSize && before(heap[lowest], heap[left])) {
+                lowest = left;
+            }
+            if (right < heapSize && before(heap[lowest], heap[right])) {
+                lowest = right;
+            }
+            if (lowest == i) {
+                return;
+            }
+            swap(heap, i, lowest);
+            i = lowest;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int slot = heap[i];
+        heap[i] = heap[j];
+        heap[j] = slot;
+    }
+
+    private static int hash(String term) {
+        int h = term.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
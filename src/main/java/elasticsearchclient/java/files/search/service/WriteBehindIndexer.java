@@ -0,0 +1,425 @@
+package elasticsearchclient.java.files.search.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.rest.RestStatus;
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentProperty;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.mapping.PersistentPropertyAccessor;
+
+import elasticsearchclient.java.files.search.service.MappedSegmentLog.FsyncPolicy;
+
+/**
+ * Write-behind alternative to {@code ParaRepository.save}: documents are appended to a local {@link MappedSegmentLog}
+ * and acknowledged at once, and a background drainer replays the log into {@code _bulk} requests in order.
+ * <p>
+ * A save returns as soon as the document is in the log, so neither Elasticsearch latency nor a short outage reaches
+ * the caller. The drainer commits the log offset only after a bulk was accepted; a failed bulk, or one with items
+ * rejected with {@code 429}, is retried as a whole with exponential backoff, which keeps documents in order, and so is
+ * a batch whose records could not be read or whose offset could not be committed. Other item failures, such as
+ * mapping errors, are reported to the {@link ParaBulkIndexer.FailureHandler} and skipped, and so are records that can
+ * no longer be decoded. An {@link FsyncPolicy#INTERVAL interval} fsync runs on its own thread, so a slow bulk does not
+ * delay it.
+ * After a restart the drainer resumes from the committed offset. Documents without an id get a random one when saved,
+ * so replaying a bulk whose commit was lost overwrites instead of duplicating. Each record notes the format of its
+ * source, so records logged before a change of content type are converted rather than sent mislabelled.
+ * <p>
+ * Saved documents become searchable only once drained; callers that need to read their own writes should keep using
+ * the repository.
+ */
+public class WriteBehindIndexer implements Closeable {
+
+    private static final String PREFIX = "elasticsearch.write-behind.";
+
+    public static class Options {
+        private Path directory = Paths.get(System.getProperty("java.io.tmpdir"), "elasticsearch-write-behind");
+        private int segmentBytes = 64 * 1024 * 1024;
+        private FsyncPolicy fsyncPolicy = FsyncPolicy.INTERVAL;
+        private long fsyncIntervalMillis = 200;
+        private int bulkActions = 1000;
+        private long drainIntervalMillis = 100;
+        private long maxBackoffMillis = 30_000;
+        private XContentType contentType = XContentType.JSON;
+
+        public static Options defaults() {
+            return new Options();
+        }
+
+        /**
+         * Reads the {@code elasticsearch.write-behind.*} keys and the client's content type, falling back to the
+         * defaults above.
+         */
+        public static Options from(PropertyResolver properties) {
+            Options options = new Options();
+            String directory = properties.getProperty(PREFIX + "directory");
+            if (directory != null) {
+                options.directory = Paths.get(directory);
+            }
+            options.segmentBytes = properties.getProperty(PREFIX + "segment-bytes", Integer.class, options.segmentBytes);
+            options.fsyncPolicy = properties.getProperty(PREFIX + "fsync-policy", FsyncPolicy.class, options.fsyncPolicy);
+            options.fsyncIntervalMillis = properties.getProperty(PREFIX + "fsync-interval-millis", Long.class, options.fsyncIntervalMillis);
+            options.bulkActions = properties.getProperty(PREFIX + "bulk-actions", Integer.class, options.bulkActions);
+            options.drainIntervalMillis = properties.getProperty(PREFIX + "drain-interval-millis", Long.class, options.drainIntervalMillis);
+            options.maxBackoffMillis = properties.getProperty(PREFIX + "max-backoff-millis", Long.class, options.maxBackoffMillis);
+            options.contentType = SourceCodec.contentType(properties);
+            return options;
+        }
+
+        public Options directory(Path directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        public Options segmentBytes(int segmentBytes) {
+            this.segmentBytes = segmentBytes;
+            return this;
+        }
+
+        public Options fsync(FsyncPolicy fsyncPolicy, long intervalMillis) {
+            this.fsyncPolicy = fsyncPolicy;
+            this.fsyncIntervalMillis = intervalMillis;
+            return this;
+        }
+
+        public Options bulkActions(int bulkActions) {
+            this.bulkActions = bulkActions;
+            return this;
+        }
+
+        /**
+         * Pause between drains once the log is empty; also the first backoff after a failed bulk.
+         */
+        public Options drainIntervalMillis(long drainIntervalMillis) {
+            this.drainIntervalMillis = drainIntervalMillis;
+            return this;
+        }
+
+        public Options maxBackoffMillis(long maxBackoffMillis) {
+            this.maxBackoffMillis = maxBackoffMillis;
+            return this;
+        }
+
+        /**
+         * Format sources are logged and bulked in; CBOR is sent as SMILE, see
+         * {@link SourceCodec#bulkContentType(XContentType)}.
+         */
+        public Options contentType(XContentType contentType) {
+            this.contentType = contentType;
+            return this;
+        }
+    }
+
+    private final RestHighLevelClient client;
+    private final ElasticsearchOperations operations;
+    private final Options options;
+    private final ParaBulkIndexer.FailureHandler failureHandler;
+    private final SourceCodec codec;
+    private final MappedSegmentLog log;
+    private final ScheduledExecutorService drainer;
+    private final ScheduledExecutorService syncer;
+
+    private final AtomicLong saved = new AtomicLong();
+    private final AtomicLong drained = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong bulkFailures = new AtomicLong();
+
+    private long backoffMillis;
+
+    public WriteBehindIndexer(RestHighLevelClient client, ElasticsearchOperations operations, Options options,
+        ParaBulkIndexer.FailureHandler failureHandler) {
+        this.client = client;
+        this.operations = operations;
+        this.options = options;
+        this.failureHandler = failureHandler;
+        this.codec = new SourceCodec(operations.getElasticsearchConverter(), SourceCodec.bulkContentType(options.contentType));
+        try {
+            this.log = new MappedSegmentLog(options.directory, options.segmentBytes, options.fsyncPolicy);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the write-behind log in " + options.directory, e);
+        }
+        this.backoffMillis = options.drainIntervalMillis;
+        this.drainer = daemonExecutor("write-behind-drainer");
+        if (options.fsyncPolicy == FsyncPolicy.INTERVAL) {
+            this.syncer = daemonExecutor("write-behind-sync");
+            syncer.scheduleWithFixedDelay(log::sync, options.fsyncIntervalMillis, options.fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.syncer = null;
+        }
+        drainer.schedule(this::drainAndReschedule, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Configured from the {@code elasticsearch.write-behind.*} keys; failures are logged, see
+     * {@link ParaBulkIndexer#LOG_FAILURES}.
+     */
+    public static WriteBehindIndexer from(RestHighLevelClient client, ElasticsearchOperations operations, PropertyResolver properties) {
+        return new WriteBehindIndexer(client, operations, Options.from(properties), ParaBulkIndexer.LOG_FAILURES);
+    }
+
+    /**
+     * Logs {@code entity} for its mapped index and returns its id, assigning one if it had none.
+     */
+    public String save(Object entity) {
+        return save(entity, operations.getIndexCoordinatesFor(entity.getClass()));
+    }
+
+    /**
+     * Logs {@code entity} for {@code index}, for documents such as {@code Company} that are not mapped to one.
+     */
+    public String save(Object entity, IndexCoordinates index) {
+        String id = idOf(entity);
+        BytesReference source = codec.write(entity);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(source.length() + 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(index.getIndexName());
+            out.writeUTF(id);
+            out.writeByte(codec.getContentType()
+                .ordinal());
+            source.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.append(bytes.toByteArray());
+        saved.incrementAndGet();
+        return id;
+    }
+
+    /**
+     * Waits until everything saved so far has been indexed.
+     */
+    public boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (log.getBacklogBytes() > 0) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            drainer.submit(this::drain);
+            Thread.sleep(Math.max(1, Math.min(options.drainIntervalMillis, 50)));
+        }
+        return true;
+    }
+
+    public long getSavedCount() {
+        return saved.get();
+    }
+
+    public long getDrainedCount() {
+        return drained.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getBulkFailureCount() {
+        return bulkFailures.get();
+    }
+
+    /**
+     * Bytes of the log not yet indexed.
+     */
+    public long getBacklogBytes() {
+        return log.getBacklogBytes();
+    }
+
+    /**
+     * Stops draining and syncs the log; what was not drained yet is picked up on the next start.
+     */
+    @Override
+    public void close() {
+        drainer.shutdownNow();
+        if (syncer != null) {
+            syncer.shutdownNow();
+        }
+        try {
+            drainer.awaitTermination(10, TimeUnit.SECONDS);
+            if (syncer != null) {
+                syncer.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                .interrupt();
+        }
+        log.close();
+    }
+
+    /**
+     * Drains and schedules the next drain, also when draining threw; an exception escaping a scheduled task would
+     * cancel it silently and stop the drainer for good.
+     */
+    private void drainAndReschedule() {
+        boolean drainedAll = false;
+        try {
+            drainedAll = drain();
+        } finally {
+            long delay = options.drainIntervalMillis;
+            if (drainedAll) {
+                backoffMillis = options.drainIntervalMillis;
+            } else {
+                delay = backoffMillis;
+                backoffMillis = Math.min(options.maxBackoffMillis, backoffMillis * 2);
+            }
+            try {
+                drainer.schedule(this::drainAndReschedule, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // closed
+            }
+        }
+    }
+
+    /**
+     * Drains until the log is empty or a batch fails; only ever runs on the drainer thread. Failing to read the log
+     * or to commit its offset fails the batch like a failed bulk, so it is retried after the backoff.
+     */
+    private boolean drain() {
+        while (!Thread.currentThread()
+            .isInterrupted()) {
+            BulkRequest request = new BulkRequest();
+            try {
+                MappedSegmentLog.Batch batch = log.read(log.getCommittedOffset(), options.bulkActions);
+                if (batch.isEmpty()) {
+                    return true;
+                }
+                List<BulkItemResponse.Failure> skipped = new ArrayList<>();
+                for (byte[] record : batch.getRecords()) {
+                    try {
+                        request.add(indexRequest(record));
+                    } catch (IOException | RuntimeException e) {
+                        skipped.add(undecodable(record, e));
+                    }
+                }
+                if (request.numberOfActions() > 0) {
+                    BulkResponse response = client.bulk(request, RequestOptions.DEFAULT);
+                    if (hasRejections(response)) {
+                        throw new IllegalStateException("Bulk of " + request.numberOfActions() + " documents was partly rejected with 429");
+                    }
+                    for (BulkItemResponse item : response.getItems()) {
+                        if (item.isFailed()) {
+                            failed.incrementAndGet();
+                            failureHandler.onItemFailure(item.getFailure());
+                        } else {
+                            drained.incrementAndGet();
+                        }
+                    }
+                }
+                // reported once the rest of the batch went through, so a retried bulk does not report them again
+                for (BulkItemResponse.Failure failure : skipped) {
+                    failed.incrementAndGet();
+                    failureHandler.onItemFailure(failure);
+                }
+                log.commit(batch.getNextOffset());
+            } catch (IOException | RuntimeException e) {
+                bulkFailures.incrementAndGet();
+                failureHandler.onBulkFailure(request, e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasRejections(BulkResponse response) {
+        for (BulkItemResponse item : response.getItems()) {
+            if (item.isFailed() && item.status() == RestStatus.TOO_MANY_REQUESTS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private IndexRequest indexRequest(byte[] record) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            String index = in.readUTF();
+            String id = in.readUTF();
+            XContentType logged = XContentType.values()[in.readUnsignedByte()];
+            byte[] source = new byte[in.available()];
+            in.readFully(source);
+            XContentType contentType = codec.getContentType();
+            if (logged != contentType) {
+                // logged before the content type was changed; a bulk cannot mix formats
+                Map<String, Object> document = XContentHelper.convertToMap(new BytesArray(source), false, logged)
+                    .v2();
+                try (XContentBuilder builder = XContentFactory.contentBuilder(contentType)) {
+                    source = BytesReference.toBytes(BytesReference.bytes(builder.map(document)));
+                }
+            }
+            return new IndexRequest(index).id(id)
+                .source(source, contentType);
+        }
+    }
+
+    /**
+     * The item failure reported for a record that cannot be turned into an index request, with its index and id when
+     * at least those can be read.
+     */
+    private static BulkItemResponse.Failure undecodable(byte[] record, Exception cause) {
+        String index = "";
+        String id = "";
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            index = in.readUTF();
+            id = in.readUTF();
+        } catch (IOException | RuntimeException e) {
+            // not even the header is readable
+        }
+        return new BulkItemResponse.Failure(index, MapperService.SINGLE_MAPPING_NAME, id, cause);
+    }
+
+    private static ScheduledExecutorService daemonExecutor(String name) {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private String idOf(Object entity) {
+        ElasticsearchPersistentEntity<?> persistentEntity = operations.getElasticsearchConverter()
+            .getMappingContext()
+            .getRequiredPersistentEntity(entity.getClass());
+        ElasticsearchPersistentProperty idProperty = persistentEntity.getIdProperty();
+        if (idProperty == null) {
+            return UUID.randomUUID()
+                .toString();
+        }
+        PersistentPropertyAccessor<Object> accessor = persistentEntity.getPropertyAccessor(entity);
+        Object id = accessor.getProperty(idProperty);
+        if (id == null) {
+            id = UUID.randomUUID()
+                .toString();
+            accessor.setProperty(idProperty, id);
+        }
+        return id.toString();
+    }
+}
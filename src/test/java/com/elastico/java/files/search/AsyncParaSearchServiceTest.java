@@ -0,0 +1,158 @@
+package com.elastico.java.files.search;
+
+import static java.util.Arrays.asList;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.client.ClientConfiguration;
+import org.springframework.data.elasticsearch.client.RestClients;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.query.HighlightQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.design.Writer;
+import elasticsearchclient.java.files.search.service.AsyncParaSearchService;
+
+public class AsyncParaSearchServiceTest {
+
+    private final Set<String> requestBodies = ConcurrentHashMap.newKeySet();
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private AsyncParaSearchService service;
+
+    @Before
+    public void setUp() throws Exception {
+        Para para = new Para("Spring Data Elasticsearch");
+        para.setId("1");
+        para.setWriters(asList(new Writer("John Smith"), new Writer("John Doe")));
+        para.setTags("elasticsearch", "spring data");
+        String response = CannedResponses.searchResponse(asList(para), 3);
+
+        server = new StubElasticsearchServer(64).on("/blog/_search", request -> {
+            requestBodies.add(request.getBodyAsString());
+            Thread.sleep(20);
+            return StubElasticsearchServer.StubResponse.ok(response);
+        });
+        client = RestClients.create(ClientConfiguration.builder()
+            .connectedTo(server.hostAndPort())
+            .build())
+            .rest();
+        service = new AsyncParaSearchService(client, new ElasticsearchRestTemplate(client));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void givenTagQuery_whenSearchedAsync_thenHitsAreMappedToParas() throws Exception {
+        SearchHits<Para> hits = service.findByFilteredTagQuery("elasticsearch", PageRequest.of(0, 10))
+            .get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, hits.getTotalHits());
+        Para para = hits.getSearchHit(0)
+            .getContent();
+        assertEquals("1", para.getId());
+        assertEquals("Spring Data Elasticsearch", para.getTitle());
+        assertEquals("John Doe", para.getWriters()
+            .get(1)
+            .getName());
+        assertTrue(requestBodies.iterator()
+            .next()
+            .contains("\"tags\""));
+    }
+
+    @Test
+    public void givenAllQueryShapes_whenSearchedAsync_thenEachSendsItsOwnQuery() throws Exception {
+        CompletableFuture.allOf(service.findByWritersName("Smith", PageRequest.of(0, 10)),
+            service.findByFilteredTagQuery("elasticsearch", PageRequest.of(0, 10)),
+            service.findByWritersNameAndFilteredTagQuery("Doe", "elasticsearch", PageRequest.of(1, 5)))
+            .get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, requestBodies.size());
+        assertTrue(requestBodies.stream()
+            .anyMatch(body -> body.contains("\"from\":5") && body.contains("\"size\":5")));
+    }
+
+    @Test
+    public void givenNativeQueryWithMinScoreAndHighlight_whenSearchedAsync_thenBothAreSent() throws Exception {
+        NativeSearchQuery query = new NativeSearchQueryBuilder().withQuery(matchQuery("title", "elasticsearch"))
+            .build();
+        query.setMinScore(0.5f);
+        query.setHighlightQuery(new HighlightQuery(new HighlightBuilder().field("title")));
+
+        service.search(query)
+            .get(5, TimeUnit.SECONDS);
+
+        String body = requestBodies.iterator()
+            .next();
+        assertTrue(body, body.contains("\"min_score\":0.5"));
+        assertTrue(body, body.contains("\"highlight\":{\"fields\":{\"title\":{}}}"));
+    }
+
+    @Test
+    public void givenNameWithQuerySyntax_whenSearchedByWritersName_thenItIsSentEscaped() throws Exception {
+        service.findByWritersName("Smith: (Jr) \"Doe\"/2", PageRequest.of(0, 10))
+            .get(5, TimeUnit.SECONDS);
+
+        assertTrue(requestBodies.toString(), requestBodies.iterator()
+            .next()
+            .contains("\"query\":\"Smith\\\\: \\\\(Jr\\\\) \\\\\\\"Doe\\\\\\\"\\\\/2\""));
+    }
+
+    @Test
+    public void givenManyConcurrentSearches_whenIssued_thenCallerIsNotBlockedAndFewThreadsAreUsed() throws Exception {
+        final int searches = 500;
+        Set<String> completingThreads = ConcurrentHashMap.newKeySet();
+        List<CompletableFuture<SearchHits<Para>>> futures = new ArrayList<>(searches);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < searches; i++) {
+            futures.add(service.findByWritersName("John " + i, PageRequest.of(0, 10))
+                .whenComplete((hits, error) -> completingThreads.add(Thread.currentThread()
+                    .getName())));
+        }
+        long issueMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+            .get(60, TimeUnit.SECONDS);
+        for (CompletableFuture<SearchHits<Para>> future : futures) {
+            assertEquals(1, future.get()
+                .getSearchHits()
+                .size());
+        }
+
+        // issuing 500 searches that each take at least 20ms on the server must not wait for them
+        assertTrue("issuing took " + issueMillis + "ms", issueMillis < searches * 20L);
+        assertTrue(completingThreads.toString(), completingThreads.size() <= Runtime.getRuntime()
+            .availableProcessors());
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void givenServerError_whenSearchedAsync_thenFutureCompletesExceptionally() throws Exception {
+        server.on(".*", request -> StubElasticsearchServer.StubResponse.json(500, "{}"));
+        service.search(new org.elasticsearch.action.search.SearchRequest("missing"), Para.class)
+            .get(5, TimeUnit.SECONDS);
+    }
+}
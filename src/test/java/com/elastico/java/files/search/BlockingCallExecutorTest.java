@@ -0,0 +1,157 @@
+package com.elastico.java.files.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import elasticsearchclient.java.files.search.config.ClientConnectionPool;
+import elasticsearchclient.java.files.search.config.ClientTuning;
+import elasticsearchclient.java.files.search.service.BlockingCallExecutor;
+import elasticsearchclient.java.files.search.service.BlockingCallExecutor.Mode;
+
+public class BlockingCallExecutorTest {
+
+    private static final String EMPTY_RESPONSE = "{\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,"
+        + "\"failed\":0},\"hits\":{\"total\":{\"value\":0,\"relation\":\"eq\"},\"max_score\":null,\"hits\":[]}}";
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private BlockingCallExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubElasticsearchServer(4).latency(200)
+            .on("/blog/_search", request -> StubElasticsearchServer.StubResponse.ok(EMPTY_RESPONSE));
+        client = new RestHighLevelClient(new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(server.hostAndPort())).restClientBuilder());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (executor != null) {
+            executor.close();
+        }
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void givenSlowCluster_whenManyBlockingSearchesAreSubmitted_thenTheyWaitTogetherRatherThanInTurn() {
+        executor = new BlockingCallExecutor(BlockingCallExecutor.Options.defaults()
+            .mode(Mode.PLATFORM)
+            .threadNamePrefix("search-"));
+        List<CompletableFuture<String>> searches = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < 40; i++) {
+            searches.add(executor.submit(() -> {
+                SearchResponse response = client.search(new SearchRequest("blog"), RequestOptions.DEFAULT);
+                return Thread.currentThread()
+                    .getName() + " " + response.getHits()
+                        .getHits().length;
+            }));
+        }
+        searches.forEach(CompletableFuture::join);
+
+        // 40 searches of 200 ms one after another would take 8 s; the four stub threads are not held by the delay
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertTrue(searches.get(0)
+            .join()
+            .matches("search-\\d+ 0"));
+        assertEquals(40, executor.getCompletedCount());
+        assertEquals(0, executor.getInFlightCount());
+        assertTrue(executor.getPeakInFlightCount() > 20);
+    }
+
+    @Test
+    public void givenSlowCluster_whenSearchingSynchronously_thenTheCallerParksInsteadOfWaitingOnAMonitor() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        Thread caller = new Thread(() -> {
+            started.countDown();
+            try {
+                client.search(new SearchRequest("blog"), RequestOptions.DEFAULT);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        caller.start();
+        started.await();
+        Thread.sleep(100);
+
+        // a monitor wait, as on Apache's BasicFuture, would pin the carrier of a virtual thread for the whole round trip
+        StackTraceElement[] stack = caller.getStackTrace();
+        assertTrue(caller.getState() == Thread.State.WAITING || caller.getState() == Thread.State.TIMED_WAITING);
+        for (StackTraceElement frame : stack) {
+            assertFalse(frame.toString(), "java.lang.Object".equals(frame.getClassName()) && "wait".equals(frame.getMethodName()));
+        }
+        assertTrue(stack[0].getMethodName()
+            .equals("park"));
+        caller.join(5000);
+        assertFalse(caller.isAlive());
+    }
+
+    @Test
+    public void givenMaxConcurrency_whenCallsAreSubmitted_thenNoMoreThanThatRunAtOnce() {
+        executor = new BlockingCallExecutor(BlockingCallExecutor.Options.defaults()
+            .maxConcurrency(3));
+        List<CompletableFuture<Object>> calls = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            calls.add(executor.submit(() -> {
+                Thread.sleep(20);
+                return null;
+            }));
+        }
+        calls.forEach(CompletableFuture::join);
+
+        assertEquals(3, executor.getPeakInFlightCount());
+        assertEquals(20, executor.getCompletedCount());
+    }
+
+    @Test
+    public void givenFailingCall_whenSubmitted_thenTheFutureFailsWithItsException() {
+        executor = new BlockingCallExecutor(BlockingCallExecutor.Options.defaults());
+        IllegalStateException failure = new IllegalStateException("cluster unavailable");
+
+        try {
+            executor.submit(() -> {
+                throw failure;
+            })
+                .join();
+            fail("the call did not fail");
+        } catch (CompletionException e) {
+            assertSame(failure, e.getCause());
+        }
+        assertEquals(1, executor.getFailedCount());
+    }
+
+    @Test
+    public void givenAutoMode_whenVirtualThreadsAreMissing_thenPlatformThreadsAreUsedAndVirtualModeFails() {
+        executor = new BlockingCallExecutor(BlockingCallExecutor.Options.defaults());
+
+        try {
+            new BlockingCallExecutor(BlockingCallExecutor.Options.defaults()
+                .mode(Mode.VIRTUAL)).close();
+            assertTrue(executor.isVirtual());
+        } catch (IllegalStateException e) {
+            assertFalse(executor.isVirtual());
+        }
+        assertFalse(new BlockingCallExecutor(BlockingCallExecutor.Options.defaults()
+            .mode(Mode.PLATFORM)).isVirtual());
+    }
+}
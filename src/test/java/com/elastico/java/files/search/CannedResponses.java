@@ -0,0 +1,105 @@
+package com.elastico.java.files.search;
+
+import java.util.List;
+
+import com.alibaba.fastjson.JSON;
+
+import elasticsearchclient.Company;
+import elasticsearchclient.java.files.search.design.Para;
+
+/**
+ * Response bodies in the shape Elasticsearch 7.6 returns them, for use with {@link StubElasticsearchServer}.
+ */
+public final class CannedResponses {
+
+    private CannedResponses() {
+    }
+
+    public static String searchResponse(List<Para> paras) {
+        return searchResponse(paras, paras.size());
+    }
+
+    public static String searchResponse(List<Para> paras, long totalHits) {
+        return "{\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},\"hits\":"
+            + hits(paras, totalHits) + "}";
+    }
+
+    /**
+     * Search response over {@link Company} documents, as {@code EsTest} reads them, with ids numbered from 0.
+     */
+    public static String companySearchResponse(List<Company> companies) {
+        StringBuilder hits = new StringBuilder();
+        for (int i = 0; i < companies.size(); i++) {
+            if (hits.length() > 0) {
+                hits.append(',');
+            }
+            hits.append("{\"_index\":\"company\",\"_type\":\"_doc\",\"_id\":\"")
+                .append(i)
+                .append("\",\"_score\":1.0,\"_source\":")
+                .append(JSON.toJSONString(companies.get(i)))
+                .append('}');
+        }
+        return "{\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},\"hits\":{\"total\":{\"value\":"
+            + companies.size() + ",\"relation\":\"eq\"},\"max_score\":1.0,\"hits\":[" + hits + "]}}";
+    }
+
+    /**
+     * One page of a scroll or {@code search_after} export: carries the scroll id, if any, and sorts every hit by its id.
+     */
+    public static String pageResponse(List<Para> paras, String scrollId) {
+        return "{" + (scrollId == null ? "" : "\"_scroll_id\":\"" + scrollId + "\",") + "\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},\"hits\":"
+            + hits(paras, paras.size(), true) + "}";
+    }
+
+    /**
+     * What a projected search returns: only the title in {@code _source}, if asked for, and the tags as doc values.
+     */
+    public static String projectedResponse(List<Para> paras, boolean title, boolean tags) {
+        StringBuilder hits = new StringBuilder();
+        for (Para para : paras) {
+            if (hits.length() > 0) {
+                hits.append(',');
+            }
+            hits.append("{\"_index\":\"blog\",\"_type\":\"_doc\",\"_id\":\"")
+                .append(para.getId())
+                .append("\",\"_score\":1.0");
+            if (title) {
+                hits.append(",\"_source\":{\"title\":")
+                    .append(JSON.toJSONString(para.getTitle()))
+                    .append('}');
+            }
+            if (tags) {
+                hits.append(",\"fields\":{\"tags\":")
+                    .append(JSON.toJSONString(para.getTags()))
+                    .append('}');
+            }
+            hits.append('}');
+        }
+        return "{\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},\"hits\":"
+            + "{\"total\":{\"value\":" + paras.size() + ",\"relation\":\"eq\"},\"max_score\":1.0,\"hits\":[" + hits + "]}}";
+    }
+
+    public static String hits(List<Para> paras, long totalHits) {
+        return hits(paras, totalHits, false);
+    }
+
+    private static String hits(List<Para> paras, long totalHits, boolean sorted) {
+        StringBuilder hits = new StringBuilder();
+        for (Para para : paras) {
+            if (hits.length() > 0) {
+                hits.append(',');
+            }
+            hits.append("{\"_index\":\"blog\",\"_type\":\"_doc\",\"_id\":\"")
+                .append(para.getId())
+                .append("\",\"_score\":1.0,\"_source\":")
+                .append(JSON.toJSONString(para));
+            if (sorted) {
+                hits.append(",\"sort\":[\"")
+                    .append(para.getId())
+                    .append("\"]");
+            }
+            hits.append('}');
+        }
+        return "{\"total\":{\"value\":" + totalHits + ",\"relation\":\"eq\"},\"max_score\":1.0,\"hits\":[" + hits + "]}";
+    }
+}
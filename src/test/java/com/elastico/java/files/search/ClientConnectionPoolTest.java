@@ -0,0 +1,212 @@
+package com.elastico.java.files.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import elasticsearchclient.java.files.search.config.ClientConnectionPool;
+import elasticsearchclient.java.files.search.config.ClientPoolStats;
+import elasticsearchclient.java.files.search.config.ClientTuning;
+
+public class ClientConnectionPoolTest {
+
+    private final List<StubElasticsearchServer> servers = new ArrayList<>();
+    private RestClient client;
+
+    @After
+    public void tearDown() throws Exception {
+        if (client != null) {
+            client.close();
+        }
+        for (StubElasticsearchServer server : servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void givenProperties_whenTuningIsRead_thenEveryKeyIsApplied() {
+        MockEnvironment environment = new MockEnvironment().withProperty("elasticsearch.client.hosts", "es1:9200, https://es2:9243")
+            .withProperty("elasticsearch.client.max-conn-total", "200")
+            .withProperty("elasticsearch.client.max-conn-per-route", "80")
+            .withProperty("elasticsearch.client.io-thread-count", "3")
+            .withProperty("elasticsearch.client.keep-alive-millis", "15000")
+            .withProperty("elasticsearch.client.compression", "true")
+            .withProperty("elasticsearch.client.connection-request-timeout-millis", "250");
+
+        ClientTuning tuning = ClientTuning.from(environment);
+
+        assertEquals(2, tuning.getHosts()
+            .size());
+        assertEquals("https", tuning.getHosts()
+            .get(1)
+            .getSchemeName());
+        assertEquals(200, tuning.getMaxConnTotal());
+        assertEquals(80, tuning.getMaxConnPerRoute());
+        assertEquals(3, tuning.getIoThreadCount());
+        assertEquals(15000, tuning.getKeepAliveMillis());
+        assertTrue(tuning.isCompression());
+        assertEquals(250, tuning.getConnectionRequestTimeoutMillis());
+        assertEquals(5000, tuning.getSocketTimeoutMillis());
+    }
+
+    @Test
+    public void givenSmallPool_whenMoreRequestsThanConnections_thenStatsShowLeasedAndPending() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        StubElasticsearchServer server = server().on("/slow", request -> {
+            release.await(10, TimeUnit.SECONDS);
+            return StubElasticsearchServer.StubResponse.ok("{}");
+        });
+        ClientConnectionPool pool = new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(server.hostAndPort())
+            .maxConnPerRoute(2)
+            .connectionRequestTimeoutMillis(10_000)
+            .socketTimeoutMillis(10_000));
+        client = pool.restClientBuilder()
+            .build();
+
+        List<CompletableFuture<Response>> responses = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            responses.add(performAsync(new Request("GET", "/slow")));
+        }
+
+        ClientPoolStats stats = awaitStats(pool, 2, 4);
+        assertEquals(2, stats.getLeased());
+        assertEquals(4, stats.getPending());
+
+        release.countDown();
+        CompletableFuture.allOf(responses.toArray(new CompletableFuture[0]))
+            .get(10, TimeUnit.SECONDS);
+
+        stats = pool.getTotalStats();
+        assertEquals(0, stats.getLeased());
+        assertEquals(0, stats.getPending());
+        assertEquals(2, stats.getAvailable());
+    }
+
+    @Test
+    public void givenSeveralSeedHosts_whenRequestsAreSent_thenEveryHostIsUsed() throws Exception {
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger second = new AtomicInteger();
+        StubElasticsearchServer one = server().on("/", request -> {
+            first.incrementAndGet();
+            return StubElasticsearchServer.StubResponse.ok("{}");
+        });
+        StubElasticsearchServer two = server().on("/", request -> {
+            second.incrementAndGet();
+            return StubElasticsearchServer.StubResponse.ok("{}");
+        });
+        client = new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(one.hostAndPort(), two.hostAndPort())).restClientBuilder()
+                .build();
+
+        for (int i = 0; i < 10; i++) {
+            client.performRequest(new Request("GET", "/"));
+        }
+
+        assertTrue(first.get() > 0);
+        assertTrue(second.get() > 0);
+        assertEquals(10, first.get() + second.get());
+    }
+
+    @Test
+    public void givenCompression_whenLargeBodyIsSent_thenRequestIsGzippedAndResponseInflated() throws Exception {
+        StringBuilder json = new StringBuilder("{\"query\":{\"terms\":{\"tags\":[");
+        for (int i = 0; i < 200; i++) {
+            json.append(i == 0 ? "" : ",")
+                .append("\"elasticsearch\"");
+        }
+        String body = json.append("]}}}")
+            .toString();
+
+        StubElasticsearchServer server = server().on("/blog/_search", request -> {
+            assertEquals("gzip", request.getHeader("Content-Encoding"));
+            assertEquals("gzip", request.getHeader("Accept-Encoding"));
+            String received = new String(gunzip(request.getBody()), StandardCharsets.UTF_8);
+            return new StubElasticsearchServer.StubResponse(200, "application/json", gzip(received.getBytes(StandardCharsets.UTF_8)))
+                .withHeader("Content-Encoding", "gzip");
+        });
+        client = new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(server.hostAndPort())
+            .compression(true)
+            .compressionThresholdBytes(512)).restClientBuilder()
+                .build();
+
+        Request request = new Request("POST", "/blog/_search");
+        request.setJsonEntity(body);
+        Response response = client.performRequest(request);
+
+        assertEquals(body, EntityUtils.toString(response.getEntity()));
+    }
+
+    private StubElasticsearchServer server() throws Exception {
+        StubElasticsearchServer server = new StubElasticsearchServer();
+        servers.add(server);
+        return server;
+    }
+
+    private CompletableFuture<Response> performAsync(Request request) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        Cancellable ignored = client.performRequestAsync(request, new ResponseListener() {
+
+            public void onSuccess(Response response) {
+                future.complete(response);
+            }
+
+            public void onFailure(Exception exception) {
+                future.completeExceptionally(exception);
+            }
+        });
+        return future;
+    }
+
+    private static ClientPoolStats awaitStats(ClientConnectionPool pool, int leased, int pending) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        ClientPoolStats stats = pool.getTotalStats();
+        while ((stats.getLeased() != leased || stats.getPending() != pending) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            stats = pool.getTotalStats();
+        }
+        return stats;
+    }
+
+    private static byte[] gzip(byte[] bytes) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = gzip.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,205 @@
+package com.elastico.java.files.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.HdrHistogram.Histogram;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+import org.junit.After;
+import org.junit.Test;
+
+import com.sun.management.ThreadMXBean;
+
+import elasticsearchclient.java.files.search.config.ClientConnectionPool;
+import elasticsearchclient.java.files.search.config.ClientMetrics;
+import elasticsearchclient.java.files.search.config.ClientTuning;
+import elasticsearchclient.java.files.search.config.OperationMetrics;
+
+public class ClientMetricsTest {
+
+    private static final String SEARCH_RESPONSE = "{\"_scroll_id\":\"DXF1ZXJ5QW5kRmV0Y2gBAAAAAAAAAD4WYm9laVYtZndUQlNsdDcwakFMNjU1QQ==\","
+        + "\"took\":42,\"timed_out\":false,\"hits\":{\"total\":{\"value\":0,\"relation\":\"eq\"},\"hits\":[]}}";
+
+    private StubElasticsearchServer server;
+    private RestClient client;
+
+    @After
+    public void tearDown() throws Exception {
+        if (client != null) {
+            client.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void givenRequestPaths_whenClassified_thenOperationAndIndexAreResolved() {
+        ClientMetrics metrics = new ClientMetrics("test", null);
+
+        assertMetrics("search", "blog", metrics.forRequest("POST", "/blog/_search"));
+        assertMetrics("search", "_all", metrics.forRequest("GET", "/_search"));
+        assertMetrics("scroll", "_all", metrics.forRequest("POST", "/_search/scroll"));
+        assertMetrics("clear_scroll", "_all", metrics.forRequest("DELETE", "/_search/scroll"));
+        assertMetrics("bulk", "_all", metrics.forRequest("POST", "/_bulk?timeout=1m"));
+        assertMetrics("index", "blog", metrics.forRequest("PUT", "/blog/_doc/1"));
+        assertMetrics("get", "blog", metrics.forRequest("GET", "/blog/_doc/1"));
+        assertMetrics("delete", "blog", metrics.forRequest("DELETE", "/blog/_doc/1"));
+        assertMetrics("index_exists", "blog", metrics.forRequest("HEAD", "/blog"));
+        assertMetrics("refresh", "blog", metrics.forRequest("POST", "/blog/_refresh"));
+        assertMetrics("info", "_all", metrics.forRequest("GET", "/"));
+
+        assertTrue(metrics.forRequest("POST", "/blog/_search?typed_keys=true") == metrics.get("search", "blog"));
+    }
+
+    @Test
+    public void givenManyIndices_whenClassified_thenRegistryIsBounded() {
+        ClientMetrics metrics = new ClientMetrics("test", null);
+        for (int day = 0; day < 200; day++) {
+            metrics.forRequest("POST", "/logs-" + day + "/_search");
+        }
+
+        assertEquals(65, metrics.getOperationMetrics()
+            .size());
+        assertMetrics("search", "_other", metrics.forRequest("POST", "/logs-199/_search"));
+    }
+
+    @Test
+    public void givenWarmMetrics_whenRequestsAreRecorded_thenNothingIsAllocated() {
+        ClientMetrics metrics = new ClientMetrics("test", null);
+        for (int i = 0; i < 20_000; i++) {
+            record(metrics, i);
+        }
+
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread()
+            .getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 100_000; i++) {
+            record(metrics, i);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue("allocated " + allocated + " bytes", allocated < 10_000);
+        assertEquals(120_000, metrics.get("search", "blog")
+            .getCount());
+    }
+
+    @Test
+    public void givenLatencyHistogram_whenMoreIsRecordedAndReset_thenTheReturnedHistogramDoesNotChange() {
+        ClientMetrics metrics = new ClientMetrics("test", null);
+        for (int i = 0; i < 100; i++) {
+            record(metrics, i);
+        }
+        OperationMetrics search = metrics.get("search", "blog");
+
+        Histogram latency = search.getLatencyHistogram();
+        for (int i = 0; i < 100; i++) {
+            record(metrics, i);
+        }
+        assertEquals(200, search.getTookCount());
+        search.reset();
+
+        assertEquals(100, latency.getTotalCount());
+        assertEquals(0, search.getTookCount());
+        assertEquals(0, search.getLatencyMaxMicros());
+    }
+
+    @Test
+    public void givenStubCluster_whenRequestsAreSent_thenLatencyTookBytesAndErrorsAreRecorded() throws Exception {
+        CountDownLatch slow = new CountDownLatch(1);
+        server = new StubElasticsearchServer().on("/blog/_search", request -> StubElasticsearchServer.StubResponse.ok(SEARCH_RESPONSE))
+            .on("/broken/_search", request -> StubElasticsearchServer.StubResponse.json(500, "{\"status\":500}"))
+            .on("/slow/_search", request -> {
+                slow.await(5, TimeUnit.SECONDS);
+                return StubElasticsearchServer.StubResponse.ok(SEARCH_RESPONSE);
+            });
+        ClientConnectionPool pool = new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(server.hostAndPort())
+            .socketTimeoutMillis(300));
+        client = pool.restClientBuilder()
+            .build();
+
+        for (int i = 0; i < 20; i++) {
+            Request request = new Request("POST", "/blog/_search");
+            request.setJsonEntity("{\"query\":{\"match_all\":{}}}");
+            client.performRequest(request);
+        }
+        try {
+            client.performRequest(new Request("POST", "/broken/_search"));
+            fail("expected a 500");
+        } catch (ResponseException expected) {
+        }
+        try {
+            client.performRequest(new Request("POST", "/slow/_search"));
+            fail("expected a timeout");
+        } catch (Exception expected) {
+        }
+        slow.countDown();
+
+        OperationMetrics search = pool.getMetrics()
+            .get("search", "blog");
+        assertEquals(20, search.getCount());
+        assertEquals(0, search.getErrorCount());
+        assertEquals(0, search.getInFlight());
+        assertEquals(20, search.getTookCount());
+        assertEquals(42_000, search.getTookP50Micros(), 42_000 * 0.01);
+        assertTrue(search.getLatencyP50Micros() > 0);
+        assertTrue(search.getLatencyP999Micros() >= search.getLatencyP50Micros());
+        assertEquals(20 * "{\"query\":{\"match_all\":{}}}".length(), search.getRequestBytesTotal());
+        assertEquals(20 * SEARCH_RESPONSE.length(), search.getResponseBytesTotal());
+
+        assertEquals(1, pool.getMetrics()
+            .get("search", "broken")
+            .getErrorCount());
+        assertEquals(1, pool.getMetrics()
+            .get("search", "slow")
+            .getTimeoutCount());
+        assertEquals(1, pool.getMetrics()
+            .getTimeoutCount());
+    }
+
+    @Test
+    public void givenNamedPool_whenClientIsOpen_thenMetricsAreExportedOverJmx() throws Exception {
+        server = new StubElasticsearchServer().on("/blog/_search", request -> StubElasticsearchServer.StubResponse.ok(SEARCH_RESPONSE));
+        client = new ClientConnectionPool("jmx-test", ClientTuning.defaults()
+            .hosts(server.hostAndPort())).restClientBuilder()
+                .build();
+        client.performRequest(new Request("POST", "/blog/_search"));
+
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        ObjectName search = new ObjectName("elasticsearchclient:client=\"jmx-test\",type=OperationMetrics,operation=search,index=\"blog\"");
+        ObjectName clientName = new ObjectName("elasticsearchclient:client=\"jmx-test\",type=ClientMetrics");
+        assertEquals(1L, mbeans.getAttribute(search, "Count"));
+        assertNotNull(mbeans.getAttribute(search, "LatencyP99Micros"));
+        assertEquals(1L, mbeans.getAttribute(clientName, "Count"));
+
+        client.close();
+        client = null;
+        assertFalse(mbeans.isRegistered(search));
+        assertFalse(mbeans.isRegistered(clientName));
+    }
+
+    private static void record(ClientMetrics metrics, int i) {
+        OperationMetrics operation = metrics.forRequest("POST", "/blog/_search");
+        operation.started(120);
+        operation.completed(1_000_000 + i, 4096, 3, false);
+    }
+
+    private static void assertMetrics(String operation, String index, OperationMetrics metrics) {
+        assertEquals(operation, metrics.getOperation());
+        assertEquals(index, metrics.getIndex());
+    }
+}
@@ -0,0 +1,225 @@
+package com.elastico.java.files.search;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchPhraseQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.elasticsearch.index.query.QueryBuilders.multiMatchQuery;
+import static org.elasticsearch.index.query.QueryBuilders.nestedQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import org.apache.lucene.search.join.ScoreMode;
+import org.elasticsearch.common.unit.Fuzziness;
+import org.elasticsearch.index.query.MultiMatchQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.query.Criteria;
+import org.springframework.data.elasticsearch.core.query.CriteriaQuery;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import elasticsearchclient.java.files.search.config.EmbeddedConfigurations;
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.design.Writer;
+import elasticsearchclient.java.files.search.repository.ParaRepository;
+import elasticsearchclient.java.files.search.service.EmbeddedParaIndex;
+import elasticsearchclient.java.files.search.service.TermCountMap.TermCount;
+
+/**
+ * The queries of {@code esManualQueries}, run against the embedded index with no cluster.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = EmbeddedConfigurations.class)
+public class EmbeddedParaRepositoryTest {
+
+    @Autowired
+    private ParaRepository paraRepository;
+
+    @Autowired
+    private EmbeddedParaIndex index;
+
+    private final Writer johnSmith = new Writer("John Smith");
+    private final Writer johnDoe = new Writer("John Doe");
+
+    @Before
+    public void before() {
+        Para para = new Para("Spring Data Elasticsearch");
+        para.setWriters(asList(johnSmith, johnDoe));
+        para.setTags("elasticsearch", "spring data");
+        paraRepository.save(para);
+
+        para = new Para("Search engines");
+        para.setWriters(asList(johnDoe));
+        para.setTags("search engines", "tutorial");
+        paraRepository.save(para);
+
+        para = new Para("Second Article About Elasticsearch");
+        para.setWriters(asList(johnSmith));
+        para.setTags("elasticsearch", "spring data");
+        paraRepository.save(para);
+
+        para = new Para("Elasticsearch Tutorial");
+        para.setWriters(asList(johnDoe));
+        para.setTags("elasticsearch");
+        paraRepository.save(para);
+    }
+
+    @After
+    public void after() {
+        paraRepository.deleteAll();
+    }
+
+    @Test
+    public void givenMatchPhraseFuzzyAndMultiMatchQueries_whenSearched_thenTheyMatchAsInElasticsearch() {
+        assertEquals(1, count(matchQuery("title", "Search engines").operator(Operator.AND)));
+        assertEquals(1, count(matchQuery("title", "Engines Solutions")));
+        assertEquals(3, count(matchQuery("title", "elasticsearch data")));
+        assertEquals(1, count(matchQuery("title.verbatim", "Second Article About Elasticsearch")));
+        assertEquals(0, count(matchQuery("title.verbatim", "Second Para About")));
+        assertEquals(1, count(matchPhraseQuery("title", "spring elasticsearch").slop(1)));
+        assertEquals(0, count(matchPhraseQuery("title", "spring elasticsearch")));
+        assertEquals(1, count(matchQuery("title", "spring date elasticserch").operator(Operator.AND)
+            .fuzziness(Fuzziness.ONE)
+            .prefixLength(3)));
+        assertEquals(2, count(multiMatchQuery("tutorial").field("title")
+            .field("tags")
+            .type(MultiMatchQueryBuilder.Type.BEST_FIELDS)));
+    }
+
+    @Test
+    public void givenNestedWriters_whenQueriedByNameAndTag_thenOnlyTheirParasAreFound() {
+        assertEquals(2, count(nestedQuery("writers", boolQuery().must(termQuery("writers.name", "smith")), ScoreMode.None)));
+        assertEquals(2, count(boolQuery().must(nestedQuery("writers", boolQuery().must(termQuery("writers.name", "doe")), ScoreMode.None))
+            .filter(termQuery("tags", "elasticsearch"))));
+        // both names occur across writers of the first para, but never in the same writer
+        assertEquals(0, count(nestedQuery("writers", boolQuery().must(matchQuery("writers.name", "smith doe").operator(Operator.AND)),
+            ScoreMode.None)));
+        assertEquals(2, paraRepository.findByWritersName("John Smith", PageRequest.of(0, 10))
+            .getTotalElements());
+        assertEquals(3, paraRepository.findByFilteredTagQuery("elasticsearch", PageRequest.of(0, 10))
+            .getTotalElements());
+        assertEquals(1, paraRepository.findByWritersNameAndFilteredTagQuery("Smith", "spring data", PageRequest.of(0, 1))
+            .getContent()
+            .size());
+        try {
+            count(nestedQuery("authors", termQuery("authors.name", "doe"), ScoreMode.None));
+            fail("an unmapped nested path was accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void givenTermsAggregations_whenRun_thenTextIsCountedPerTokenAndKeywordsPerValue() {
+        assertEquals(asList("elasticsearch", "spring data", "search engines", "tutorial"), index.terms("tags", matchAllQuery(), 10)
+            .stream()
+            .map(TermCount::getTerm)
+            .collect(toList()));
+        assertEquals(asList("about", "article", "data", "elasticsearch", "engines", "search", "second", "spring", "tutorial"), index
+            .terms("title", matchAllQuery(), 20)
+            .stream()
+            .map(TermCount::getTerm)
+            .sorted()
+            .collect(toList()));
+        assertEquals(3, index.terms("title", matchAllQuery(), 1)
+            .get(0)
+            .getCount());
+    }
+
+    @Test
+    public void givenSavedPara_whenOverwrittenAndDeleted_thenReadsFollow() {
+        Para para = paraRepository.findByFilteredTagQuery("tutorial", PageRequest.of(0, 10))
+            .getContent()
+            .get(0);
+        para.setTags("engines");
+        paraRepository.save(para);
+
+        assertEquals(4, paraRepository.count());
+        assertEquals(0, paraRepository.findByFilteredTagQuery("tutorial", PageRequest.of(0, 10))
+            .getTotalElements());
+        assertEquals(asList("engines"), asList(paraRepository.findById(para.getId())
+            .get()
+            .getTags()));
+        Page<Para> sorted = paraRepository.findAll(PageRequest.of(1, 2, Sort.by("title.verbatim")));
+        assertEquals(asList("Second Article About Elasticsearch", "Spring Data Elasticsearch"), sorted.getContent()
+            .stream()
+            .map(Para::getTitle)
+            .collect(toList()));
+
+        paraRepository.deleteById(para.getId());
+
+        assertFalse(paraRepository.existsById(para.getId()));
+        assertEquals(3, paraRepository.count());
+        assertEquals(2, count(nestedQuery("writers", termQuery("writers.name", "doe"), ScoreMode.None)));
+    }
+
+    @Test
+    public void givenCriteriaQueries_whenSearched_thenTheyMatchAsTheTemplateTranslatesThem() {
+        assertEquals(1, count(Criteria.where("title")
+            .is("Search engines")));
+        assertEquals(2, count(Criteria.where("writers.name")
+            .is("John Smith")));
+        assertEquals(3, count(Criteria.where("title")
+            .contains("lastic")));
+        assertEquals(2, count(Criteria.where("title")
+            .startsWith("tut")
+            .or("title")
+            .is("engines")));
+        assertEquals(2, count(Criteria.where("tags")
+            .is("elasticsearch")
+            .and("title")
+            .is("tutorial")
+            .not()));
+        assertEquals(3, count(Criteria.where("tags")
+            .notIn("tutorial")));
+        assertEquals(3, count(Criteria.where("title.verbatim")
+            .greaterThan("S")));
+        assertEquals(3, count(Criteria.where("title")
+            .fuzzy("elasticserch")));
+        assertEquals(4, count(Criteria.where("tags")
+            .exists()));
+        Page<Para> sorted = paraRepository.search(new CriteriaQuery(Criteria.where("title")
+            .is("elasticsearch"), PageRequest.of(0, 2, Sort.by("title.verbatim"))));
+        assertEquals(asList("Elasticsearch Tutorial", "Second Article About Elasticsearch"), sorted.getContent()
+            .stream()
+            .map(Para::getTitle)
+            .collect(toList()));
+    }
+
+    @Test
+    public void givenSavedPara_whenSearchedForSimilar_thenParasSharingItsFrequentTermsAreFound() {
+        paraRepository.save(new Para("Elasticsearch in Action"));
+        paraRepository.save(new Para("Relevant Elasticsearch"));
+        Para liked = paraRepository.save(new Para("Elasticsearch, Elasticsearch Internals"));
+
+        Page<Para> similar = paraRepository.searchSimilar(liked, null, PageRequest.of(0, 10));
+
+        assertEquals(asList("Elasticsearch Tutorial", "Elasticsearch in Action", "Relevant Elasticsearch", "Second Article About Elasticsearch",
+            "Spring Data Elasticsearch"), similar.getContent()
+                .stream()
+                .map(Para::getTitle)
+                .sorted()
+                .collect(toList()));
+    }
+
+    private long count(Criteria criteria) {
+        return paraRepository.search(new CriteriaQuery(criteria, PageRequest.of(0, 10)))
+            .getTotalElements();
+    }
+
+    private long count(org.elasticsearch.index.query.QueryBuilder query) {
+        return paraRepository.search(query, PageRequest.of(0, 10))
+            .getTotalElements();
+    }
+}
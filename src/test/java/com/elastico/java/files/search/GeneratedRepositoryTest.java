@@ -0,0 +1,197 @@
+package com.elastico.java.files.search;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.convert.MappingElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.mapping.SimpleElasticsearchMappingContext;
+import org.springframework.data.elasticsearch.core.query.Criteria;
+import org.springframework.data.elasticsearch.core.query.CriteriaQuery;
+
+import elasticsearchclient.Company;
+import elasticsearchclient.CompanyMapper;
+import elasticsearchclient.java.files.search.config.AotConfigurations;
+import elasticsearchclient.java.files.search.config.ClientConnectionPool;
+import elasticsearchclient.java.files.search.config.ClientTuning;
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.design.ParaMapper;
+import elasticsearchclient.java.files.search.design.Writer;
+import elasticsearchclient.java.files.search.repository.GeneratedParaRepository;
+import elasticsearchclient.java.files.search.repository.ParaRepository;
+
+public class GeneratedRepositoryTest {
+
+    private static final String INDEXED = "{\"_index\":\"blog\",\"_type\":\"_doc\",\"_id\":\"7\",\"_version\":1,\"result\":\"created\","
+        + "\"_shards\":{\"total\":2,\"successful\":1,\"failed\":0},\"_seq_no\":0,\"_primary_term\":1}";
+    private static final String REFRESHED = "{\"_shards\":{\"total\":2,\"successful\":1,\"failed\":0}}";
+
+    private final MappingElasticsearchConverter converter = new MappingElasticsearchConverter(new SimpleElasticsearchMappingContext());
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        converter.afterPropertiesSet();
+        server = new StubElasticsearchServer().on("/blog/_search", request -> {
+            requests.add(request.getBodyAsString());
+            return StubElasticsearchServer.StubResponse.ok(CannedResponses.searchResponse(asList(para("1", "Spring Data Elasticsearch")), 30));
+        });
+        client = new RestHighLevelClient(new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(server.hostAndPort())).restClientBuilder());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void givenEntities_whenWrittenByGeneratedMappers_thenSourcesMatchTheSpringDataConverter() {
+        Para para = para("1", "Spring Data Elasticsearch");
+        Company company = new Company(25, "Elastic", new Date(1262304000000L));
+
+        assertEquals(converter.mapObject(para)
+            .toJson(), Document.from(ParaMapper.INSTANCE.write(para))
+                .toJson());
+        assertEquals(converter.mapObject(new Para())
+            .toJson(), Document.from(ParaMapper.INSTANCE.write(new Para()))
+                .toJson());
+        assertEquals(converter.mapObject(company)
+            .toJson(), Document.from(CompanyMapper.INSTANCE.write(company))
+                .toJson());
+        assertEquals("1", ParaMapper.INSTANCE.getId(para));
+    }
+
+    @Test
+    public void givenSourcesFromTheCluster_whenReadByGeneratedMappers_thenEntitiesMatchTheSpringDataConverter() {
+        Map<String, Object> source = new HashMap<>();
+        source.put("_class", Para.class.getName());
+        source.put("title", 5);
+        source.put("tags", "single");
+        source.put("writers", asList(new HashMap<>(Collections.singletonMap("name", "John Doe"))));
+        Map<String, Object> companySource = new HashMap<>();
+        companySource.put("age", 25);
+        companySource.put("dateOfEstd", 1262304000000L);
+
+        Para read = ParaMapper.INSTANCE.read(source);
+        ParaMapper.INSTANCE.setId(read, "9");
+        Document document = Document.from(source);
+        document.setId("9");
+
+        assertEquals(converter.read(Para.class, document)
+            .toString(), read.toString());
+        assertEquals(converter.read(Company.class, Document.from(companySource))
+            .toString(), CompanyMapper.INSTANCE.read(companySource)
+                .toString());
+    }
+
+    @Test
+    public void givenGeneratedRepository_whenFindingByWritersName_thenTheDerivedQueryIsSentAndHitsAreMapped() {
+        ParaRepository repository = new GeneratedParaRepository(client);
+
+        Page<Para> page = repository.findByWritersName("John Smith", PageRequest.of(1, 5));
+
+        assertEquals(1, requests.size());
+        String body = requests.get(0);
+        assertTrue(body, body.contains("\"from\":5,\"size\":5"));
+        assertTrue(body, body.contains("\"bool\":{\"must\":[{\"query_string\":{\"query\":\"John Smith\",\"fields\":[\"writers.name^1.0\"]"));
+        assertTrue(body, body.contains("\"default_operator\":\"and\""));
+        assertEquals(30, page.getTotalElements());
+        assertEquals("Spring Data Elasticsearch", page.getContent()
+            .get(0)
+            .getTitle());
+        assertEquals("John Smith", page.getContent()
+            .get(0)
+            .getWriters()
+            .get(0)
+            .getName());
+        assertEquals("1", page.getContent()
+            .get(0)
+            .getId());
+    }
+
+    @Test
+    public void givenGeneratedRepository_whenRunningAQueryMethod_thenItsTemplateIsSentBound() {
+        ParaRepository repository = new GeneratedParaRepository(client);
+
+        repository.findByWritersNameAndFilteredTagQuery("John Doe", "tutorial", PageRequest.of(0, 10));
+
+        String body = requests.get(0)
+            .replaceAll("\\s", "");
+        assertTrue(body, body.contains("\"match\":{\"writers.name\":\"JohnDoe\"}"));
+        assertTrue(body, body.contains("\"term\":{\"tags\":\"tutorial\"}"));
+    }
+
+    @Test
+    public void givenGeneratedRepository_whenSearchingWithACriteriaQuery_thenTheCriteriaAreSentAsTheTemplateSendsThem() {
+        ParaRepository repository = new GeneratedParaRepository(client);
+
+        Page<Para> page = repository.search(new CriteriaQuery(Criteria.where("title")
+            .is("Spring")
+            .and("tags")
+            .is("tutorial")
+            .not(), PageRequest.of(0, 5, Sort.by("title.verbatim"))));
+
+        String body = requests.get(0);
+        assertTrue(body, body.contains("\"must_not\":[{\"query_string\":{\"query\":\"tutorial\",\"fields\":[\"tags^1.0\"]"));
+        assertTrue(body, body.contains("\"must\":[{\"query_string\":{\"query\":\"Spring\",\"fields\":[\"title^1.0\"]"));
+        assertTrue(body, body.contains("\"sort\":[{\"title.verbatim\":{\"order\":\"asc\"}}]"));
+        assertEquals(30, page.getTotalElements());
+    }
+
+    @Test
+    public void givenAotConfigurations_whenTheContextStarts_thenTheGeneratedRepositorySavesAndFinds() {
+        server.on("/blog/_doc/7", request -> StubElasticsearchServer.StubResponse.ok(request.getMethod()
+            .equals("GET") ? "{\"_index\":\"blog\",\"_type\":\"_doc\",\"_id\":\"7\",\"_version\":1,\"_seq_no\":0,\"_primary_term\":1,"
+                + "\"found\":true,\"_source\":" + requests.get(requests.size() - 1) + "}" : indexed(request.getBodyAsString())))
+            .on("/blog/_refresh", request -> StubElasticsearchServer.StubResponse.ok(REFRESHED));
+        System.setProperty("elasticsearch.client.hosts", server.hostAndPort());
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(AotConfigurations.class)) {
+            ParaRepository repository = context.getBean(ParaRepository.class);
+            assertTrue(repository instanceof GeneratedParaRepository);
+
+            repository.save(para("7", "Elasticsearch Tutorial"));
+            Para found = repository.findById("7")
+                .get();
+
+            assertEquals(converter.mapObject(para("7", "Elasticsearch Tutorial"))
+                .toJson(), requests.get(0));
+            assertEquals(para("7", "Elasticsearch Tutorial").toString(), found.toString());
+        } finally {
+            System.clearProperty("elasticsearch.client.hosts");
+        }
+    }
+
+    private String indexed(String body) {
+        requests.add(body);
+        return INDEXED;
+    }
+
+    private static Para para(String id, String title) {
+        Para para = new Para(title);
+        para.setId(id);
+        para.setWriters(asList(new Writer("John Smith")));
+        para.setTags("elasticsearch", "spring data");
+        return para;
+    }
+}
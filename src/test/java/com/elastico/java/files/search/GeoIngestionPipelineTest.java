@@ -0,0 +1,181 @@
+package com.elastico.java.files.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.After;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import elasticsearchclient.java.files.search.config.ClientConnectionPool;
+import elasticsearchclient.java.files.search.config.ClientTuning;
+import elasticsearchclient.java.files.search.design.GeoFeature;
+import elasticsearchclient.java.files.search.service.GeoIngestionPipeline;
+import elasticsearchclient.java.files.search.service.GeoJsonStreamReader;
+
+public class GeoIngestionPipelineTest {
+
+    private static final String COLLECTION = "{\"type\":\"FeatureCollection\",\"features\":["
+        + "{\"type\":\"Feature\",\"id\":\"giza\",\"properties\":{\"name\":\"Pyramids of Giza\"},"
+        + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[31.131302,29.976480]}},"
+        + "{\"type\":\"Feature\",\"properties\":{\"name\":\"Agra\"},\"geometry\":{\"type\":\"Polygon\",\"coordinates\":"
+        + "[[[75,25],[80.1,25],[80.1,30.2],[75,30.2],[75,25]],[[76,26],[77,26],[77,27],[76,26]]]}},"
+        + "{\"type\":\"Feature\",\"properties\":{\"name\":\"Islands\"},\"geometry\":{\"type\":\"MultiPolygon\",\"coordinates\":"
+        + "[[[[0,0],[1,0],[1,1],[0,0]]],[[[2,2],[3,2],[3,3],[2,2]]]]}},"
+        + "{\"type\":\"Feature\",\"properties\":{\"name\":\"Broken\"},\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[[0,0],[1,1],[0,0]]]}}"
+        + "]}\n"
+        + "{\"type\":\"Feature\",\"id\":\"kutch\",\"properties\":{\"name\":\"The Great Rann of Kutch\"},"
+        + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[69.859741,23.733732]}}";
+
+    private final GeometryFactory factory = new GeometryFactory();
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+
+    @After
+    public void tearDown() throws Exception {
+        if (client != null) {
+            client.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void givenCollectionFollowedByFeature_whenStreamed_thenEveryFeatureIsReadAndBrokenOnesRejected() throws Exception {
+        List<GeoFeature> features = new ArrayList<>();
+        List<RuntimeException> rejected = new ArrayList<>();
+
+        long read = new GeoJsonStreamReader(factory).read(new ByteArrayInputStream(COLLECTION.getBytes(StandardCharsets.UTF_8)),
+            features::add, rejected::add);
+
+        assertEquals(5, read);
+        assertEquals(4, features.size());
+        assertEquals(1, rejected.size());
+        assertEquals("giza", features.get(0)
+            .getId());
+        assertEquals("Agra", features.get(1)
+            .getProperties()
+            .get("name"));
+        assertEquals(1, ((Polygon) features.get(1)
+            .getGeometry()).getNumInteriorRing());
+        assertEquals("MultiPolygon", features.get(2)
+            .getGeometry()
+            .getGeometryType());
+        assertEquals("kutch", features.get(3)
+            .getId());
+    }
+
+    @Test
+    public void givenDetailedPolygonWithHole_whenPrepared_thenVerticesDropAndTopologyIsKept() {
+        Polygon detailed = factory.createPolygon(ring(10, 10, 1, 4000, 0.002), new LinearRing[] { ring(10, 10, 0.3, 1000, 0.002) });
+        assertTrue(detailed.isValid());
+
+        try (GeoIngestionPipeline pipeline = new GeoIngestionPipeline(null, GeoIngestionPipeline.Options.defaults()
+            .tolerance(0.01))) {
+            Geometry prepared = pipeline.prepare(detailed);
+
+            assertTrue(prepared.isValid());
+            assertEquals(1, ((Polygon) prepared).getNumInteriorRing());
+            assertTrue(prepared.getNumPoints() + " vertices", prepared.getNumPoints() < detailed.getNumPoints() / 10);
+            assertEquals(detailed.getArea(), prepared.getArea(), detailed.getArea() * 0.02);
+            assertTrue(pipeline.getVertexRatio() < 0.1);
+        }
+    }
+
+    @Test
+    public void givenSelfIntersectingOrOutOfRangeShapes_whenPrepared_thenTheyAreRepairedOrDropped() {
+        Polygon bowtie = factory.createPolygon(new Coordinate[] { new Coordinate(0, 0), new Coordinate(2, 2), new Coordinate(2, 0),
+            new Coordinate(0, 2), new Coordinate(0, 0) });
+        Polygon outOfRange = factory.createPolygon(new Coordinate[] { new Coordinate(170, 80), new Coordinate(190, 80), new Coordinate(190, 85),
+            new Coordinate(170, 80) });
+
+        try (GeoIngestionPipeline pipeline = new GeoIngestionPipeline(null, GeoIngestionPipeline.Options.defaults()
+            .tolerance(0))) {
+            Geometry repaired = pipeline.prepare(bowtie);
+
+            assertNotNull(repaired);
+            assertTrue(repaired.isValid());
+            assertEquals(2, repaired.getArea(), 1e-9);
+            assertEquals(1, pipeline.getRepairedCount());
+            assertNull(pipeline.prepare(outOfRange));
+        }
+    }
+
+    @Test
+    public void givenGeoJson_whenIngested_thenShapesPointsAndEnvelopesAreBulkIndexed() throws Exception {
+        List<JSONObject> sources = new CopyOnWriteArrayList<>();
+        server = new StubElasticsearchServer().on("/_bulk", request -> {
+            String[] lines = request.getBodyAsString()
+                .split("\n");
+            StringBuilder items = new StringBuilder();
+            for (int i = 0; i + 1 < lines.length; i += 2) {
+                sources.add(JSON.parseObject(lines[i + 1]));
+                items.append(items.length() == 0 ? "" : ",")
+                    .append("{\"index\":{\"_index\":\"wonders-of-world\",\"_type\":\"_doc\",\"_id\":\"")
+                    .append(i)
+                    .append("\",\"_version\":1,\"result\":\"created\",\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},"
+                        + "\"_seq_no\":0,\"_primary_term\":1,\"status\":201}}");
+            }
+            return StubElasticsearchServer.StubResponse.ok("{\"took\":1,\"errors\":false,\"items\":[" + items + "]}");
+        });
+        client = new RestHighLevelClient(new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(server.hostAndPort())).restClientBuilder());
+
+        try (GeoIngestionPipeline pipeline = new GeoIngestionPipeline(client, GeoIngestionPipeline.Options.defaults()
+            .parallelism(3)
+            .bulkActions(2))) {
+            assertEquals(5, pipeline.ingest(new ByteArrayInputStream(COLLECTION.getBytes(StandardCharsets.UTF_8))));
+            assertTrue(pipeline.awaitClose(5, TimeUnit.SECONDS));
+
+            assertEquals(4, pipeline.getIndexedCount());
+            assertEquals(1, pipeline.getDroppedCount());
+        }
+
+        JSONObject agra = sources.stream()
+            .filter(source -> "Agra".equals(source.getString("name")))
+            .findFirst()
+            .get();
+        assertEquals("Polygon", agra.getJSONObject("region")
+            .getString("type"));
+        JSONArray location = agra.getJSONArray("location");
+        assertTrue(location.getDoubleValue(0) > 75 && location.getDoubleValue(0) < 80.1);
+        assertEquals("[[75,30.2],[80.1,25]]", agra.getJSONObject("envelope")
+            .getJSONArray("coordinates")
+            .toJSONString()
+            .replace(".0", ""));
+    }
+
+    /**
+     * A closed ring of {@code vertices} points around a circle, each pushed in or out by up to {@code noise}.
+     */
+    private LinearRing ring(double x, double y, double radius, int vertices, double noise) {
+        Coordinate[] coordinates = new Coordinate[vertices + 1];
+        for (int i = 0; i < vertices; i++) {
+            double angle = 2 * Math.PI * i / vertices;
+            double r = radius + noise * Math.sin(i * 7.3);
+            coordinates[i] = new Coordinate(x + r * Math.cos(angle), y + r * Math.sin(angle));
+        }
+        coordinates[vertices] = coordinates[0];
+        return factory.createLinearRing(coordinates);
+    }
+}
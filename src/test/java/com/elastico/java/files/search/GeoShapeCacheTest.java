@@ -0,0 +1,200 @@
+package com.elastico.java.files.search;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toSet;
+import static org.elasticsearch.index.query.QueryBuilders.geoBoundingBoxQuery;
+import static org.elasticsearch.index.query.QueryBuilders.geoDistanceQuery;
+import static org.elasticsearch.index.query.QueryBuilders.geoPolygonQuery;
+import static org.elasticsearch.index.query.QueryBuilders.geoShapeQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.common.geo.ShapeRelation;
+import org.elasticsearch.common.unit.DistanceUnit;
+import org.elasticsearch.geometry.Rectangle;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import elasticsearchclient.java.files.search.config.ClientConnectionPool;
+import elasticsearchclient.java.files.search.config.ClientTuning;
+import elasticsearchclient.java.files.search.service.GeoShapeCache;
+import elasticsearchclient.java.files.search.service.GeoShapeCache.Document;
+
+public class GeoShapeCacheTest {
+
+    private final Map<String, Long> versions = new TreeMap<>();
+    private final Map<String, String> sources = new TreeMap<>();
+    private final List<String> fetchedIds = new CopyOnWriteArrayList<>();
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private GeoShapeCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        put("taj-mahal", 27.1751, 78.0421, "{\"type\":\"Polygon\",\"coordinates\":[[[78.0,27.1],[78.1,27.1],[78.1,27.2],[78.0,27.2],[78.0,27.1]]]}");
+        put("giza", 29.9792, 31.1342, "{\"type\":\"Polygon\",\"coordinates\":[[[31.0,29.9],[31.2,29.9],[31.2,30.1],[31.0,30.1],[31.0,29.9]]]}");
+        put("colosseum", 41.8902, 12.4922, "{\"type\":\"envelope\",\"coordinates\":[[12.4,41.9],[12.6,41.8]]}");
+        put("christ-the-redeemer", -22.9519, -43.2105, null);
+        put("fiji", -17.7, 179.5, null);
+        put("samoa", -13.8, -179.5, null);
+
+        server = new StubElasticsearchServer().on("/wonders-of-world/_search", request -> {
+            StringBuilder hits = new StringBuilder();
+            synchronized (versions) {
+                for (Map.Entry<String, Long> version : versions.entrySet()) {
+                    hits.append(hits.length() == 0 ? "" : ",")
+                        .append("{\"_index\":\"wonders-of-world\",\"_type\":\"_doc\",\"_id\":\"")
+                        .append(version.getKey())
+                        .append("\",\"_version\":")
+                        .append(version.getValue())
+                        .append(",\"_score\":null,\"sort\":[0]}");
+                }
+            }
+            return StubElasticsearchServer.StubResponse.ok("{\"_scroll_id\":\"scroll\",\"took\":1,\"timed_out\":false,"
+                + "\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},"
+                + "\"hits\":{\"total\":{\"value\":" + versions.size() + ",\"relation\":\"eq\"},\"max_score\":null,\"hits\":[" + hits + "]}}");
+        })
+            .on("/_search/scroll", request -> StubElasticsearchServer.StubResponse.ok("DELETE".equals(request.getMethod())
+                ? "{\"succeeded\":true,\"num_freed\":1}"
+                : "{\"_scroll_id\":\"scroll\",\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},"
+                    + "\"hits\":{\"total\":{\"value\":0,\"relation\":\"eq\"},\"max_score\":null,\"hits\":[]}}"))
+            .on("/_mget", request -> {
+                StringBuilder docs = new StringBuilder();
+                for (Object item : JSON.parseObject(request.getBodyAsString())
+                    .getJSONArray("docs")) {
+                    String id = ((JSONObject) item).getString("_id");
+                    fetchedIds.add(id);
+                    docs.append(docs.length() == 0 ? "" : ",")
+                        .append("{\"_index\":\"wonders-of-world\",\"_type\":\"_doc\",\"_id\":\"")
+                        .append(id)
+                        .append("\",\"_version\":")
+                        .append(versions.get(id))
+                        .append(",\"_seq_no\":0,\"_primary_term\":1,\"found\":true,\"_source\":")
+                        .append(sources.get(id))
+                        .append('}');
+                }
+                return StubElasticsearchServer.StubResponse.ok("{\"docs\":[" + docs + "]}");
+            });
+        client = new RestHighLevelClient(new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(server.hostAndPort())).restClientBuilder());
+        cache = new GeoShapeCache(client, GeoShapeCache.Options.defaults()
+            .refreshIntervalMillis(0)
+            .pageSize(4));
+        assertTrue(cache.awaitLoaded(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.close();
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void givenPointQueries_whenSearched_thenBoxesDistancesAndPolygonsMatchAsInElasticsearch() {
+        assertEquals(ids("giza", "colosseum"), ids(cache.search(geoBoundingBoxQuery("location").setCorners(45, 0, 25, 40))));
+        // the dateline-crossing box and the edge of the box are both included
+        assertEquals(ids("fiji", "samoa"), ids(cache.search(geoBoundingBoxQuery("location").setCorners(0, 170, -30, -170))));
+        assertEquals(ids("giza"), ids(cache.search(geoBoundingBoxQuery("location").setCorners(29.9792, 31.1342, 29, 32))));
+
+        // Cairo to Giza is about 14 km, to Rome about 2100 km
+        assertEquals(ids("giza"), ids(cache.search(geoDistanceQuery("location").point(30.0444, 31.2357)
+            .distance(50, DistanceUnit.KILOMETERS))));
+        assertEquals(ids("giza", "colosseum"), ids(cache.search(geoDistanceQuery("location").point(30.0444, 31.2357)
+            .distance(2200, DistanceUnit.KILOMETERS))));
+        // Fiji to Samoa, across the dateline, is about 1150 km
+        assertEquals(ids("fiji", "samoa"), ids(cache.withinDistance(-17.7, 179.5, 1_200_000)));
+
+        assertEquals(ids("taj-mahal", "giza"), ids(cache.search(geoPolygonQuery("location", asList(new GeoPoint(20, 20), new GeoPoint(20, 90),
+            new GeoPoint(35, 90), new GeoPoint(35, 20))))));
+    }
+
+    @Test
+    public void givenShapeQueries_whenSearched_thenEachRelationIsHonoured() throws Exception {
+        assertEquals(ids("giza", "colosseum"), ids(cache.search(geoShapeQuery("region", new Rectangle(10, 31.1, 42, 29)))));
+        assertEquals(ids("colosseum"), ids(cache.search(geoShapeQuery("region", new Rectangle(10, 31.1, 42, 29)).relation(
+            ShapeRelation.WITHIN))));
+        assertEquals(ids("taj-mahal"), ids(cache.search(geoShapeQuery("region", new Rectangle(10, 31.1, 42, 29)).relation(
+            ShapeRelation.DISJOINT))));
+        assertEquals(ids("giza"), ids(cache.search(geoShapeQuery("region", new org.elasticsearch.geometry.Point(31.1, 30)).relation(
+            ShapeRelation.CONTAINS))));
+        assertEquals(0, cache.getUnparsableCount());
+        assertEquals(6, cache.size());
+    }
+
+    @Test
+    public void givenIndexChanges_whenRefreshed_thenOnlyChangedDocumentsAreFetched() {
+        assertEquals(6, fetchedIds.size());
+        fetchedIds.clear();
+
+        assertEquals(0, cache.refresh());
+        assertTrue(fetchedIds.isEmpty());
+
+        synchronized (versions) {
+            put("giza", 10, 10, null);
+            versions.put("giza", 2L);
+            versions.remove("fiji");
+            sources.remove("fiji");
+            put("petra", 30.3285, 35.4444, null);
+        }
+        assertEquals(3, cache.refresh());
+
+        assertEquals(ids("giza", "petra"), new HashSet<>(fetchedIds));
+        assertEquals(6, cache.size());
+        assertEquals(2, cache.get("giza")
+            .getVersion());
+        assertTrue(cache.search(geoDistanceQuery("location").point(30.0444, 31.2357)
+            .distance(50, DistanceUnit.KILOMETERS))
+            .isEmpty());
+        assertEquals(ids("samoa"), ids(cache.boundingBox(0, 170, -30, -170)));
+        assertFalse(cache.search(geoBoundingBoxQuery("location").setCorners(31, 35, 30, 36))
+            .isEmpty());
+        assertEquals(3, cache.getRefreshCount());
+    }
+
+    @Test
+    public void givenQueriesTheCacheCannotAnswer_whenSearched_thenTheyAreRejected() {
+        for (org.elasticsearch.index.query.QueryBuilder query : asList(matchQuery("name", "giza"), geoBoundingBoxQuery("region").setCorners(1,
+            0, 0, 1), geoShapeQuery("region", "taj-mahal"))) {
+            try {
+                cache.search(query);
+                fail(query + " was answered");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    private void put(String id, double lat, double lon, String region) {
+        versions.put(id, 1L);
+        sources.put(id, "{\"name\":\"" + id + "\",\"location\":[" + lon + "," + lat + "]" + (region == null ? "" : ",\"region\":" + region)
+            + "}");
+    }
+
+    private static Set<String> ids(String... ids) {
+        return new HashSet<>(asList(ids));
+    }
+
+    private static Set<String> ids(List<Document> documents) {
+        return documents.stream()
+            .map(Document::getId)
+            .collect(toSet());
+    }
+}
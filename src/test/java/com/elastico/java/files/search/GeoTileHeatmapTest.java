@@ -0,0 +1,230 @@
+package com.elastico.java.files.search;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.geometry.utils.Geohash;
+import org.elasticsearch.search.aggregations.bucket.geogrid.GeoTileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import elasticsearchclient.java.files.search.config.ClientConnectionPool;
+import elasticsearchclient.java.files.search.config.ClientTuning;
+import elasticsearchclient.java.files.search.service.GeoTileHeatmap;
+import elasticsearchclient.java.files.search.service.GeoTileHeatmap.Bucket;
+import elasticsearchclient.java.files.search.service.GeoTileHeatmap.Grid;
+import elasticsearchclient.java.files.search.service.GeoTileHeatmap.Tile;
+
+public class GeoTileHeatmapTest {
+
+    /**
+     * Latitude and longitude of the points in the stub's index.
+     */
+    private static final double[][] POINTS = { { 27.1751, 78.0421 }, { 29.9792, 31.1342 }, { 41.8902, 12.4922 }, { 41.9, 12.5 },
+        { -22.9519, -43.2105 }, { 48.8584, 2.2945 }, { 51.5007, -0.1246 }, { -17.7, 179.5 }, { -13.8, -179.5 }, { 0, 0 } };
+
+    private final List<List<String>> requestedTiles = new CopyOnWriteArrayList<>();
+    private final AtomicLong now = new AtomicLong();
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubElasticsearchServer().on("/_msearch", request -> {
+            String[] lines = request.getBodyAsString()
+                .split("\n");
+            StringBuilder responses = new StringBuilder();
+            for (int i = 1; i < lines.length; i += 2) {
+                responses.append(responses.length() == 0 ? "" : ",")
+                    .append(aggregate(JSON.parseObject(lines[i])
+                        .getJSONObject("aggregations")
+                        .getJSONObject("tiles")));
+            }
+            return StubElasticsearchServer.StubResponse.ok("{\"took\":1,\"responses\":[" + responses + "]}");
+        });
+        client = new RestHighLevelClient(new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(server.hostAndPort())).restClientBuilder());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void givenWholeWorld_whenAggregated_thenEveryPointIsInOneCellOfOneTile() {
+        GeoTileHeatmap heatmap = heatmap(GeoTileHeatmap.Options.defaults()
+            .detail(3));
+
+        List<Tile> tiles = heatmap.heatmap(1, 85, -180, -85, 179.99);
+
+        assertEquals(asList("1/0/0", "1/1/0", "1/0/1", "1/1/1"), tiles.stream()
+            .map(Tile::getKey)
+            .collect(toList()));
+        assertEquals(POINTS.length, tiles.stream()
+            .mapToLong(Tile::getCount)
+            .sum());
+        // Paris and the two points in Rome share a cell; the point at 0,0 is only counted in the tile of its cell
+        Bucket rome = tiles.get(1)
+            .getBuckets()
+            .stream()
+            .filter(bucket -> "4/8/5".equals(bucket.getKey()))
+            .findFirst()
+            .get();
+        assertEquals(3, rome.getCount());
+        assertTrue(rome.getLat() > 40 && rome.getLat() < 56 && rome.getLon() > 0 && rome.getLon() < 22.5);
+        assertEquals(1, requestedTiles.size());
+    }
+
+    @Test
+    public void givenPannedViewport_whenAggregated_thenOnlyTilesComingIntoViewAreFetched() {
+        GeoTileHeatmap heatmap = heatmap(GeoTileHeatmap.Options.defaults());
+
+        List<Tile> europe = heatmap.heatmap(3, 60, -10, 35, 20);
+        List<Tile> panned = heatmap.heatmap(3, 60, 40, 35, 80);
+        heatmap.heatmap(3, 60, -10, 35, 20);
+
+        assertEquals(asList("3/3/2", "3/4/2", "3/3/3", "3/4/3"), keys(europe));
+        assertEquals(asList("3/4/2", "3/5/2", "3/4/3", "3/5/3"), keys(panned));
+        assertEquals(asList(asList("3/3/2", "3/4/2", "3/3/3", "3/4/3"), asList("3/5/2", "3/5/3")), requestedTiles);
+        assertEquals(6, heatmap.getMissCount());
+        assertEquals(6, heatmap.getHitCount());
+        assertEquals(5, europe.stream()
+            .mapToLong(Tile::getCount)
+            .sum());
+    }
+
+    @Test
+    public void givenFullOrExpiredCache_whenViewportIsSeenAgain_thenLeastRecentlyUsedAndStaleTilesAreFetchedAgain() {
+        GeoTileHeatmap heatmap = heatmap(GeoTileHeatmap.Options.defaults()
+            .maximumTiles(4)
+            .ttlMillis(1000)
+            .maxBucketsPerSearch(600));
+
+        heatmap.heatmap(3, 60, -10, 35, 20);
+        heatmap.heatmap(3, 60, 40, 35, 80);
+        heatmap.heatmap(3, 60, 40, 35, 80);
+        heatmap.heatmap(3, 60, -10, 35, 20);
+
+        // two tiles per search: 600 buckets hold two tiles of 256 cells
+        assertEquals(asList(asList("3/3/2", "3/4/2"), asList("3/3/3", "3/4/3"), asList("3/5/2", "3/5/3"), asList("3/3/2", "3/3/3")),
+            requestedTiles);
+        assertEquals(4, heatmap.getEvictionCount());
+
+        requestedTiles.clear();
+        now.addAndGet(1000);
+        heatmap.heatmap(3, 60, -10, 35, 20);
+        assertEquals(4, requestedTiles.stream()
+            .mapToInt(List::size)
+            .sum());
+    }
+
+    @Test
+    public void givenGeohashGridAcrossTheDateline_whenAggregated_thenBucketsAreGeohashCells() {
+        GeoTileHeatmap heatmap = heatmap(GeoTileHeatmap.Options.defaults()
+            .grid(Grid.GEOHASH)
+            .detail(2));
+
+        List<Tile> tiles = heatmap.heatmap(3, 0, 170, -30, -170);
+
+        assertEquals(asList("3/7/4", "3/0/4"), keys(tiles));
+        Bucket fiji = tiles.get(0)
+            .getBuckets()
+            .get(0);
+        Bucket samoa = tiles.get(1)
+            .getBuckets()
+            .get(0);
+        assertEquals(Geohash.stringEncode(179.5, -17.7, 2), fiji.getKey());
+        assertEquals(Geohash.stringEncode(-179.5, -13.8, 2), samoa.getKey());
+        assertEquals(1, fiji.getCount());
+        assertEquals(1, samoa.getCount());
+        assertTrue(Math.abs(fiji.getLon() - 174.375) < 1e-9);
+    }
+
+    private GeoTileHeatmap heatmap(GeoTileHeatmap.Options options) {
+        return new GeoTileHeatmap(client, options, now::get);
+    }
+
+    private static List<String> keys(List<Tile> tiles) {
+        return tiles.stream()
+            .map(Tile::getKey)
+            .collect(toList());
+    }
+
+    /**
+     * What the cluster would answer for a {@code filters} aggregation of tile bounds with a grid below it.
+     */
+    private String aggregate(JSONObject tiles) {
+        JSONObject filters = tiles.getJSONObject("filters")
+            .getJSONObject("filters");
+        JSONObject cells = tiles.getJSONObject("aggregations")
+            .getJSONObject("cells");
+        boolean geohash = cells.containsKey("geohash_grid");
+        int precision = cells.getJSONObject(geohash ? "geohash_grid" : "geotile_grid")
+            .getIntValue("precision");
+        List<String> keys = new ArrayList<>(filters.keySet());
+        keys.sort((a, b) -> Integer.compare(tilesOrder(a), tilesOrder(b)));
+        requestedTiles.add(keys);
+
+        StringBuilder buckets = new StringBuilder();
+        for (String key : keys) {
+            JSONObject bounds = filters.getJSONObject(key)
+                .getJSONObject("geo_bounding_box")
+                .getJSONObject("location");
+            JSONArray topLeft = bounds.getJSONArray("top_left");
+            JSONArray bottomRight = bounds.getJSONArray("bottom_right");
+            Map<String, Integer> counts = new TreeMap<>();
+            int docs = 0;
+            for (double[] point : POINTS) {
+                if (point[0] <= topLeft.getDoubleValue(1) && point[0] >= bottomRight.getDoubleValue(1) && point[1] >= topLeft
+                    .getDoubleValue(0) && point[1] <= bottomRight.getDoubleValue(0)) {
+                    docs++;
+                    counts.merge(geohash ? Geohash.stringEncode(point[1], point[0], precision)
+                        : GeoTileUtils.stringEncode(GeoTileUtils.longEncode(point[1], point[0], precision)), 1, Integer::sum);
+                }
+            }
+            buckets.append(buckets.length() == 0 ? "" : ",")
+                .append('"')
+                .append(key)
+                .append("\":{\"doc_count\":")
+                .append(docs)
+                .append(",\"")
+                .append(geohash ? "geohash_grid" : "geotile_grid")
+                .append("#cells\":{\"buckets\":[")
+                .append(counts.entrySet()
+                    .stream()
+                    .map(count -> "{\"key\":\"" + count.getKey() + "\",\"doc_count\":" + count.getValue() + "}")
+                    .collect(joining(",")))
+                .append("]}}");
+        }
+        return "{\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},"
+            + "\"hits\":{\"total\":{\"value\":0,\"relation\":\"eq\"},\"max_score\":null,\"hits\":[]},"
+            + "\"aggregations\":{\"filters#tiles\":{\"buckets\":{" + buckets + "}}},\"status\":200}";
+    }
+
+    /**
+     * Row-major order of a tile key, so the recorded requests read like the viewport.
+     */
+    private static int tilesOrder(String key) {
+        String[] parts = key.split("/");
+        return Integer.parseInt(parts[2]) * 1024 + Integer.parseInt(parts[1]);
+    }
+}
@@ -0,0 +1,295 @@
+package com.elastico.java.files.search;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.elasticsearch.client.ClientConfiguration;
+import org.springframework.data.elasticsearch.client.RestClients;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import elasticsearchclient.java.files.search.config.ClientConnectionPool;
+import elasticsearchclient.java.files.search.config.ClientTuning;
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.service.IndexMigrationService;
+import elasticsearchclient.java.files.search.service.IndexMigrationService.Migration;
+import elasticsearchclient.java.files.search.service.IndexMigrationService.Options;
+
+public class IndexMigrationServiceTest {
+
+    private static final int DOCUMENTS_PER_SLICE = 3;
+
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final Map<String, String> bodies = new ConcurrentHashMap<>();
+    private final List<String> copiedIds = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> readAccepts = new CopyOnWriteArrayList<>();
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private IndexMigrationService service;
+
+    private volatile String aliasedIndex = "blog_v1";
+    private volatile boolean blogExists = true;
+    private volatile String liveDurability = null;
+    private volatile boolean bulkFails = false;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubElasticsearchServer().on("/_alias/blog", request -> {
+            log(request);
+            if (aliasedIndex == null) {
+                return StubElasticsearchServer.StubResponse.json(404, "{\"error\":\"alias [blog] missing\",\"status\":404}");
+            }
+            return StubElasticsearchServer.StubResponse.ok("{\"" + aliasedIndex + "\":{\"aliases\":{\"blog\":{}}}}");
+        })
+            .on("/blog", request -> {
+                log(request);
+                return new StubElasticsearchServer.StubResponse(blogExists ? 200 : 404, "application/json", new byte[0]);
+            })
+            .on("/blog(_v\\d+)?/_settings", request -> {
+                log(request);
+                if ("GET".equals(request.getMethod())) {
+                    String index = request.getPath()
+                        .split("/")[1];
+                    String translog = liveDurability == null ? "" : ",\"translog\":{\"durability\":\"" + liveDurability + "\"}";
+                    return StubElasticsearchServer.StubResponse.ok("{\"" + index + "\":{\"settings\":{\"index\":{\"number_of_replicas\":\"2\",\"refresh_interval\":\"30s\""
+                        + translog + "}},\"defaults\":{\"index\":{\"translog\":{\"durability\":\"request\"}}}}}");
+                }
+                return StubElasticsearchServer.StubResponse.ok("{\"acknowledged\":true}");
+            })
+            .on("/blog(_v\\d+)?/_search", request -> {
+                log(request);
+                readAccepts.add(request.getHeader("Accept"));
+                JSONObject slice = JSON.parseObject(request.getBodyAsString())
+                    .getJSONObject("slice");
+                String sliceId = slice == null ? "all" : slice.getString("id");
+                List<Para> paras = new ArrayList<>();
+                for (int i = 0; i < DOCUMENTS_PER_SLICE; i++) {
+                    Para para = new Para("Para " + i);
+                    para.setId(sliceId + "-" + i);
+                    paras.add(para);
+                }
+                return StubElasticsearchServer.StubResponse.ok(CannedResponses.pageResponse(paras, "scroll-" + sliceId));
+            })
+            .on("/_search/scroll", request -> {
+                log(request);
+                if ("DELETE".equals(request.getMethod())) {
+                    return StubElasticsearchServer.StubResponse.ok("{\"succeeded\":true,\"num_freed\":1}");
+                }
+                readAccepts.add(request.getHeader("Accept"));
+                String scrollId = JSON.parseObject(request.getBodyAsString())
+                    .getString("scroll_id");
+                return StubElasticsearchServer.StubResponse.ok(CannedResponses.pageResponse(Collections.emptyList(), scrollId));
+            })
+            .on("/_bulk", request -> {
+                log(request);
+                if (bulkFails) {
+                    return StubElasticsearchServer.StubResponse.json(500, "{\"error\":\"node is shutting down\",\"status\":500}");
+                }
+                String[] lines = request.getBodyAsString()
+                    .split("\n");
+                StringBuilder items = new StringBuilder();
+                for (int i = 0; i + 1 < lines.length; i += 2) {
+                    JSONObject action = JSON.parseObject(lines[i])
+                        .getJSONObject("index");
+                    copiedIds.add(action.getString("_index") + "/" + action.getString("_id"));
+                    items.append(items.length() > 0 ? "," : "")
+                        .append("{\"index\":{\"_index\":\"")
+                        .append(action.getString("_index"))
+                        .append("\",\"_type\":\"_doc\",\"_id\":\"")
+                        .append(action.getString("_id"))
+                        .append("\",\"_version\":1,\"result\":\"created\",\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},")
+                        .append("\"_seq_no\":0,\"_primary_term\":1,\"status\":201}}");
+                }
+                return StubElasticsearchServer.StubResponse.ok("{\"took\":1,\"errors\":false,\"items\":[" + items + "]}");
+            })
+            .on("/blog_v\\d+/_(refresh|forcemerge)", request -> {
+                log(request);
+                return StubElasticsearchServer.StubResponse.ok("{\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0}}");
+            })
+            .on("/_aliases", request -> {
+                log(request);
+                return StubElasticsearchServer.StubResponse.ok("{\"acknowledged\":true}");
+            })
+            .on("/blog_v\\d+", request -> {
+                log(request);
+                String index = request.getPath()
+                    .substring(1);
+                return StubElasticsearchServer.StubResponse.ok("{\"acknowledged\":true,\"shards_acknowledged\":true,\"index\":\"" + index + "\"}");
+            });
+        client = RestClients.create(ClientConfiguration.builder()
+            .connectedTo(server.hostAndPort())
+            .build())
+            .rest();
+        service = new IndexMigrationService(client, new ElasticsearchRestTemplate(client));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void givenAliasedIndex_whenMigrated_thenNextVersionIsBulkLoadedTunedAndSwappedIn() {
+        Migration migration = service.migrate(Para.class, Options.defaults()
+            .slices(2));
+
+        assertEquals("blog_v1", migration.getSource());
+        assertEquals("blog_v2", migration.getTarget());
+        assertEquals(2 * DOCUMENTS_PER_SLICE, migration.getCopied());
+        assertEquals(2 * DOCUMENTS_PER_SLICE, copiedIds.size());
+        assertTrue(copiedIds.contains("blog_v2/0-2"));
+        assertTrue(copiedIds.contains("blog_v2/1-0"));
+
+        JSONObject created = JSON.parseObject(bodies.get("PUT /blog_v2"));
+        JSONObject settings = created.getJSONObject("settings")
+            .getJSONObject("index");
+        assertEquals("-1", settings.getString("refresh_interval"));
+        assertEquals("0", settings.getString("number_of_replicas"));
+        assertEquals("async", settings.getJSONObject("translog")
+            .getString("durability"));
+        assertEquals("nested", created.getJSONObject("mappings")
+            .getJSONObject("properties")
+            .getJSONObject("writers")
+            .getString("type"));
+
+        JSONObject restored = JSON.parseObject(bodies.get("PUT /blog_v2/_settings"))
+            .getJSONObject("index");
+        assertEquals("30s", restored.getString("refresh_interval"));
+        assertEquals("2", restored.getString("number_of_replicas"));
+        assertEquals("request", restored.getJSONObject("translog")
+            .getString("durability"));
+
+        JSONArray actions = JSON.parseObject(bodies.get("POST /_aliases"))
+            .getJSONArray("actions");
+        assertEquals(2, actions.size());
+        assertEquals("blog_v2", actions.getJSONObject(0)
+            .getJSONObject("add")
+            .getJSONArray("indices")
+            .getString(0));
+        assertEquals("blog_v1", actions.getJSONObject(1)
+            .getJSONObject("remove")
+            .getJSONArray("indices")
+            .getString(0));
+
+        int forceMerge = indexOf("POST /blog_v2/_forcemerge");
+        assertTrue(indexOf("PUT /blog_v2/_settings") < forceMerge);
+        assertTrue(forceMerge < indexOf("POST /_aliases"));
+        assertEquals(2, requests.stream()
+            .filter(request -> request.equals("DELETE /_search/scroll"))
+            .count());
+    }
+
+    @Test
+    public void givenLiveIndexWithAsyncTranslog_whenMigrated_thenTheTargetKeepsItsDurability() {
+        liveDurability = "async";
+
+        service.migrate(Para.class, Options.defaults()
+            .slices(1));
+
+        assertEquals("async", JSON.parseObject(bodies.get("PUT /blog_v2/_settings"))
+            .getJSONObject("index")
+            .getJSONObject("translog")
+            .getString("durability"));
+    }
+
+    @Test
+    public void givenFailingCopy_whenMigrated_thenTheTargetIsDeletedAndTheAliasIsLeftAlone() {
+        bulkFails = true;
+
+        try {
+            service.migrate(Para.class, Options.defaults()
+                .slices(2));
+            fail("a failed copy must fail the migration");
+        } catch (RuntimeException expected) {
+        }
+
+        assertTrue(indexOf("PUT /blog_v2") < indexOf("DELETE /blog_v2"));
+        assertFalse(requests.contains("POST /_aliases"));
+    }
+
+    @Test
+    public void givenSmileClient_whenMigrated_thenDocumentsAreReadAsJsonForTheJsonBulk() throws Exception {
+        RestHighLevelClient smileClient = new RestHighLevelClient(new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(server.hostAndPort())
+            .contentType(XContentType.SMILE)).restClientBuilder());
+        try {
+            Migration migration = new IndexMigrationService(smileClient, new ElasticsearchRestTemplate(smileClient)).migrate(Para.class,
+                Options.defaults()
+                    .slices(1));
+
+            assertEquals(DOCUMENTS_PER_SLICE, migration.getCopied());
+        } finally {
+            smileClient.close();
+        }
+        // the first page and the scroll that finds no more
+        assertEquals(asList("application/json", "application/json"), readAccepts);
+    }
+
+    @Test
+    public void givenConcreteLegacyIndex_whenMigrated_thenItIsReplacedByTheAliasAtomically() {
+        aliasedIndex = null;
+
+        Migration migration = service.migrate(Para.class, Options.defaults()
+            .slices(1));
+
+        assertEquals("blog", migration.getSource());
+        assertEquals("blog_v2", migration.getTarget());
+        assertEquals(DOCUMENTS_PER_SLICE, migration.getCopied());
+        assertFalse(bodies.get("POST /blog/_search")
+            .contains("slice"));
+        JSONArray actions = JSON.parseObject(bodies.get("POST /_aliases"))
+            .getJSONArray("actions");
+        assertEquals("blog", actions.getJSONObject(1)
+            .getJSONObject("remove_index")
+            .getJSONArray("indices")
+            .getString(0));
+    }
+
+    @Test
+    public void givenNoIndex_whenCreatedIfMissing_thenFirstVersionIsCreatedBehindTheAlias() {
+        blogExists = false;
+
+        assertTrue(service.createIfMissing(Para.class));
+
+        assertTrue(requests.contains("PUT /blog_v1"));
+        JSONObject add = JSON.parseObject(bodies.get("POST /_aliases"))
+            .getJSONArray("actions")
+            .getJSONObject(0)
+            .getJSONObject("add");
+        assertEquals("blog", add.getJSONArray("aliases")
+            .getString(0));
+        assertTrue(add.getBooleanValue("is_write_index"));
+    }
+
+    private void log(StubElasticsearchServer.StubRequest request) {
+        String key = request.getMethod() + " " + request.getPath();
+        requests.add(key);
+        bodies.put(key, request.getBodyAsString());
+    }
+
+    private int indexOf(String request) {
+        int index = requests.indexOf(request);
+        assertTrue(request + " was not sent", index >= 0);
+        return index;
+    }
+}
@@ -0,0 +1,156 @@
+package com.elastico.java.files.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.elasticsearch.client.ClientConfiguration;
+import org.springframework.data.elasticsearch.client.RestClients;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.service.IndexStreamReader;
+import elasticsearchclient.java.files.search.service.IndexStreamReader.Mode;
+import elasticsearchclient.java.files.search.service.IndexStreamReader.Options;
+
+public class IndexStreamReaderTest {
+
+    private static final int DOCUMENTS = 2500;
+    private static final int PAGE_SIZE = 1000;
+
+    private final List<Para> paras = new ArrayList<>();
+    private final AtomicInteger searches = new AtomicInteger();
+    private final AtomicInteger scrollPage = new AtomicInteger();
+    private final AtomicInteger clearedScrolls = new AtomicInteger();
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private IndexStreamReader reader;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < DOCUMENTS; i++) {
+            Para para = new Para("Para " + i);
+            para.setId(String.format("%05d", i));
+            paras.add(para);
+        }
+        server = new StubElasticsearchServer().on("/blog/_search", request -> {
+            searches.incrementAndGet();
+            if (request.getQuery() != null && request.getQuery()
+                .contains("scroll=")) {
+                return StubElasticsearchServer.StubResponse.ok(CannedResponses.pageResponse(page(0), "scroll-1"));
+            }
+            JSONArray after = JSON.parseObject(request.getBodyAsString())
+                .getJSONArray("search_after");
+            int from = after == null ? 0 : Integer.parseInt(after.getString(0)) + 1;
+            return StubElasticsearchServer.StubResponse.ok(CannedResponses.pageResponse(page(from), null));
+        })
+            .on("/_search/scroll", request -> {
+                if ("DELETE".equals(request.getMethod())) {
+                    clearedScrolls.incrementAndGet();
+                    return StubElasticsearchServer.StubResponse.ok("{\"succeeded\":true,\"num_freed\":1}");
+                }
+                searches.incrementAndGet();
+                int from = scrollPage.incrementAndGet() * PAGE_SIZE;
+                return StubElasticsearchServer.StubResponse.ok(CannedResponses.pageResponse(page(from), "scroll-1"));
+            });
+        client = RestClients.create(ClientConfiguration.builder()
+            .connectedTo(server.hostAndPort())
+            .build())
+            .rest();
+        reader = new IndexStreamReader(client, new ElasticsearchRestTemplate(client));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void givenScrollMode_whenStreamIsConsumed_thenEveryDocumentIsReadInOrderAndScrollIsCleared() throws Exception {
+        List<String> ids;
+        try (Stream<Para> stream = reader.stream(Para.class, Options.defaults()
+            .pageSize(PAGE_SIZE))) {
+            ids = stream.map(Para::getId)
+                .collect(Collectors.toList());
+        }
+
+        assertEquals(DOCUMENTS, ids.size());
+        assertEquals("00000", ids.get(0));
+        assertEquals("02499", ids.get(DOCUMENTS - 1));
+        assertEquals(3, searches.get());
+        assertEquals(1, awaitClearedScrolls());
+    }
+
+    @Test
+    public void givenSearchAfterMode_whenStreamIsConsumed_thenPagesFollowTheLastSortValue() {
+        List<String> ids;
+        try (Stream<Para> stream = reader.stream(Para.class, IndexCoordinates.of("blog"), Options.defaults()
+            .pageSize(PAGE_SIZE)
+            .mode(Mode.SEARCH_AFTER))) {
+            ids = stream.map(Para::getId)
+                .collect(Collectors.toList());
+        }
+
+        assertEquals(DOCUMENTS, ids.size());
+        for (int i = 0; i < DOCUMENTS; i++) {
+            assertEquals(String.format("%05d", i), ids.get(i));
+        }
+        assertEquals(0, clearedScrolls.get());
+    }
+
+    @Test
+    public void givenFullFirstPage_whenFirstDocumentIsRead_thenNextPageIsAlreadyRequested() throws Exception {
+        Iterator<Para> iterator = reader.iterator(Para.class, IndexCoordinates.of("blog"), Options.defaults()
+            .pageSize(PAGE_SIZE));
+        assertEquals(0, searches.get());
+
+        assertEquals("00000", iterator.next()
+            .getId());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (searches.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, searches.get());
+    }
+
+    @Test
+    public void givenStreamClosedEarly_whenOnlyPartlyConsumed_thenScrollIsStillCleared() throws Exception {
+        try (Stream<Para> stream = reader.streamParas()) {
+            assertTrue(stream.limit(10)
+                .count() == 10);
+        }
+
+        assertEquals(1, awaitClearedScrolls());
+        assertFalse(scrollPage.get() > 1);
+    }
+
+    private List<Para> page(int from) {
+        return paras.subList(Math.min(from, DOCUMENTS), Math.min(from + PAGE_SIZE, DOCUMENTS));
+    }
+
+    private int awaitClearedScrolls() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (clearedScrolls.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return clearedScrolls.get();
+    }
+}
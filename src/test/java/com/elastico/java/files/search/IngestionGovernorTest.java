@@ -0,0 +1,181 @@
+package com.elastico.java.files.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.DocWriteResponse.Result;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.elasticsearch.client.ClientConfiguration;
+import org.springframework.data.elasticsearch.client.RestClients;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.repository.support.ElasticsearchRepositoryFactory;
+
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.repository.ParaRepository;
+import elasticsearchclient.java.files.search.service.IngestionGovernor;
+import elasticsearchclient.java.files.search.service.IngestionGovernor.OverflowPolicy;
+
+public class IngestionGovernorTest {
+
+    private static final String REJECTED = "{\"error\":{\"root_cause\":[{\"type\":\"es_rejected_execution_exception\",\"reason\":\"rejected execution\"}],"
+        + "\"type\":\"es_rejected_execution_exception\",\"reason\":\"rejected execution\"},\"status\":429}";
+
+    private final AtomicInteger rejectionsLeft = new AtomicInteger();
+    private final AtomicInteger attempts = new AtomicInteger();
+    private volatile long delayMillis;
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private IngestionGovernor governor;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubElasticsearchServer().on("/(people|blog)/_doc.*", request -> {
+            attempts.incrementAndGet();
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+            if (rejectionsLeft.getAndDecrement() > 0) {
+                return StubElasticsearchServer.StubResponse.json(429, REJECTED);
+            }
+            String index = request.getPath()
+                .split("/")[1];
+            return StubElasticsearchServer.StubResponse.json(201, "{\"_index\":\"" + index + "\",\"_type\":\"_doc\",\"_id\":\"1\",\"_version\":1,"
+                + "\"result\":\"created\",\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},\"_seq_no\":0,\"_primary_term\":1}");
+        })
+            .on("/blog/_refresh", request -> StubElasticsearchServer.StubResponse.ok("{\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0}}"));
+        client = RestClients.create(ClientConfiguration.builder()
+            .connectedTo(server.hostAndPort())
+            .build())
+            .rest();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (governor != null) {
+            governor.close();
+        }
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void givenClusterRejectsWith429_whenIndexing_thenWriteIsRetriedWithBackoffAndLimitIsCut() throws Exception {
+        governor = new IngestionGovernor(IngestionGovernor.Options.defaults()
+            .limits(8, 1, 16)
+            .retries(5, 1, 20));
+        rejectionsLeft.set(3);
+        IndexRequest request = new IndexRequest("people").source("{\"age\":20,\"fullName\":\"John Doe\"}", XContentType.JSON);
+
+        IndexResponse response = governor.execute(() -> client.index(request, RequestOptions.DEFAULT));
+
+        assertEquals(Result.CREATED, response.getResult());
+        assertEquals(4, attempts.get());
+        assertEquals(3, governor.getRetriedCount());
+        assertEquals(3, governor.getThrottledCount());
+        assertEquals(1, governor.getCompletedCount());
+        assertTrue("limit was " + governor.getLimit(), governor.getLimit() < 8);
+    }
+
+    @Test
+    public void givenPersistentRejections_whenRepositorySaves_thenItGivesUpAfterMaxRetries() throws Exception {
+        governor = new IngestionGovernor(IngestionGovernor.Options.defaults()
+            .retries(2, 1, 5));
+        rejectionsLeft.set(Integer.MAX_VALUE);
+        ParaRepository repository = new ElasticsearchRepositoryFactory(new ElasticsearchRestTemplate(client)).getRepository(ParaRepository.class);
+        Para para = new Para("Rejected");
+        para.setId("1");
+
+        try {
+            governor.execute(() -> repository.save(para));
+            fail("the save must fail once retries are exhausted");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof ElasticsearchStatusException);
+        }
+        assertEquals(3, attempts.get());
+        assertEquals(1, governor.getFailedCount());
+        assertEquals(1, governor.getLimit());
+    }
+
+    @Test
+    public void givenSlowResponses_whenLatencyExceedsTarget_thenLimitShrinksAndRecoversWhenFast() throws Exception {
+        governor = new IngestionGovernor(IngestionGovernor.Options.defaults()
+            .limits(8, 1, 16)
+            .latencyTargetMillis(30));
+        IndexRequest request = new IndexRequest("people").source("{\"age\":20}", XContentType.JSON);
+
+        delayMillis = 60;
+        for (int i = 0; i < 4; i++) {
+            governor.execute(() -> client.index(request, RequestOptions.DEFAULT));
+        }
+        assertEquals(1, governor.getLimit());
+
+        delayMillis = 0;
+        for (int i = 0; i < 10; i++) {
+            governor.execute(() -> client.index(request, RequestOptions.DEFAULT));
+        }
+        assertTrue("limit was " + governor.getLimit(), governor.getLimit() > 1);
+    }
+
+    @Test
+    public void givenFullQueue_whenOverflowPolicyApplies_thenNewOrOldestWriteIsRejected() throws Exception {
+        for (OverflowPolicy policy : new OverflowPolicy[] { OverflowPolicy.REJECT, OverflowPolicy.DROP_OLDEST }) {
+            CountDownLatch release = new CountDownLatch(1);
+            try (IngestionGovernor bounded = new IngestionGovernor(IngestionGovernor.Options.defaults()
+                .limits(1, 1, 1)
+                .queue(2, policy))) {
+                bounded.submit(() -> release.await(10, TimeUnit.SECONDS));
+                CompletableFuture<Integer> first = bounded.submit(() -> 1);
+                CompletableFuture<Integer> second = bounded.submit(() -> 2);
+                CompletableFuture<Integer> third = bounded.submit(() -> 3);
+
+                CompletableFuture<Integer> rejected = policy == OverflowPolicy.REJECT ? third : first;
+                CompletableFuture<Integer> kept = policy == OverflowPolicy.REJECT ? first : third;
+                try {
+                    rejected.getNow(null);
+                    fail(policy + " must reject a write");
+                } catch (CompletionException e) {
+                    assertTrue(e.getCause() instanceof RejectedExecutionException);
+                }
+                assertEquals(1, bounded.getOverflowCount());
+                release.countDown();
+                assertEquals(2, (int) second.get(10, TimeUnit.SECONDS));
+                assertTrue(kept.get(10, TimeUnit.SECONDS) > 0);
+            }
+        }
+    }
+
+    @Test
+    public void givenClosedWhileAWriteIsInFlight_whenItIsRejectedWith429_thenItsRetryStillRuns() throws Exception {
+        governor = new IngestionGovernor(IngestionGovernor.Options.defaults()
+            .limits(1, 1, 1)
+            .retries(5, 1, 20));
+        rejectionsLeft.set(1);
+        delayMillis = 200;
+        IndexRequest request = new IndexRequest("people").source("{\"age\":20,\"fullName\":\"John Doe\"}", XContentType.JSON);
+
+        CompletableFuture<IndexResponse> response = governor.submit(() -> client.index(request, RequestOptions.DEFAULT));
+        governor.close();
+
+        assertEquals(Result.CREATED, response.get(10, TimeUnit.SECONDS)
+            .getResult());
+        assertEquals(2, attempts.get());
+        assertEquals(1, governor.getRetriedCount());
+    }
+}
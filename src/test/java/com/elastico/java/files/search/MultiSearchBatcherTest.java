@@ -0,0 +1,210 @@
+package com.elastico.java.files.search;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.client.ClientConfiguration;
+import org.springframework.data.elasticsearch.client.RestClients;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.Criteria;
+import org.springframework.data.elasticsearch.core.query.CriteriaQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.StringQuery;
+
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.repository.ParaRepository;
+import elasticsearchclient.java.files.search.service.MultiSearchBatcher;
+import elasticsearchclient.java.files.search.service.SearchRequests;
+
+public class MultiSearchBatcherTest {
+
+    private static final IndexCoordinates BLOG = IndexCoordinates.of("blog");
+
+    private final List<String> msearchBodies = new ArrayList<>();
+    private final AtomicInteger searches = new AtomicInteger();
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private MultiSearchBatcher batcher;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubElasticsearchServer().on("/_msearch", request -> {
+            String body = request.getBodyAsString();
+            msearchBodies.add(body);
+            List<String> items = new ArrayList<>();
+            String[] lines = body.split("\n");
+            for (int i = 1; i < lines.length; i += 2) {
+                items.add(item(lines[i - 1], lines[i]));
+            }
+            return StubElasticsearchServer.StubResponse.ok("{\"took\":2,\"responses\":[" + String.join(",", items) + "]}");
+        })
+            .on("/blog/_search", request -> {
+                searches.incrementAndGet();
+                return StubElasticsearchServer.StubResponse.ok(CannedResponses.searchResponse(paras(1)));
+            });
+        client = RestClients.create(ClientConfiguration.builder()
+            .connectedTo(server.hostAndPort())
+            .build())
+            .rest();
+        batcher = new MultiSearchBatcher(client, new ElasticsearchRestTemplate(client).getElasticsearchConverter(), 50_000, 32);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        batcher.close();
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void givenPageRenderQueries_whenSubmittedTogether_thenOneMultiSearchAnswersEveryCaller() throws Exception {
+        NativeSearchQuery tagCounts = new NativeSearchQueryBuilder().withPageable(PageRequest.of(0, 1))
+            .addAggregation(AggregationBuilders.terms("tags")
+                .field("tags"))
+            .build();
+
+        CompletableFuture<SearchHits<Para>> byWriter = batcher.search(SearchRequests.byWritersName("John Smith", PageRequest.of(0, 10)), Para.class, BLOG);
+        CompletableFuture<SearchHits<Para>> byTag = batcher.search(
+            SearchRequests.queryMethod(ParaRepository.class, "findByFilteredTagQuery", "elasticsearch", PageRequest.of(0, 10)), Para.class, BLOG);
+        CompletableFuture<SearchHits<Para>> tags = batcher.search(tagCounts, Para.class, BLOG);
+
+        assertEquals(2, byWriter.get(10, TimeUnit.SECONDS)
+            .getTotalHits());
+        assertEquals("Para 1", byTag.get(10, TimeUnit.SECONDS)
+            .getSearchHit(1)
+            .getContent()
+            .getTitle());
+        Terms terms = tags.get(10, TimeUnit.SECONDS)
+            .getAggregations()
+            .get("tags");
+        assertEquals(7, terms.getBucketByKey("elasticsearch")
+            .getDocCount());
+
+        assertEquals(1, msearchBodies.size());
+        assertEquals(0, searches.get());
+        assertEquals(3, batcher.getSearchCount());
+        assertEquals(1, batcher.getRoundTripCount());
+        String body = msearchBodies.get(0);
+        assertTrue(body.contains("writers.name"));
+        assertTrue(body.contains("\"filter\": {\"term\": {\"tags\": \"elasticsearch\" }}"));
+        assertTrue(body.contains("\"aggregations\""));
+    }
+
+    @Test
+    public void givenOneFailingItem_whenBatchReturns_thenOnlyThatCallerFails() throws Exception {
+        MultiSearchBatcher.Group group = batcher.group();
+        CompletableFuture<SearchHits<Para>> ok = group.search(SearchRequests.byFilteredTag("elasticsearch", PageRequest.of(0, 10)), Para.class, BLOG);
+        StringQuery brokenQuery = new StringQuery("{\"match\":{\"title\":\"x\"}}");
+        brokenQuery.setPreference("broken");
+        CompletableFuture<SearchHits<Para>> broken = group.search(brokenQuery, Para.class, BLOG);
+        group.execute();
+
+        assertEquals(2, ok.get(10, TimeUnit.SECONDS)
+            .getTotalHits());
+        try {
+            broken.get(10, TimeUnit.SECONDS);
+            fail("the failed item must fail its future");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause()
+                .getMessage()
+                .contains("search_phase_execution_exception"));
+        }
+        assertEquals(1, msearchBodies.size());
+    }
+
+    @Test
+    public void givenSingleSearchInWindow_whenFlushed_thenPlainSearchIsSent() throws Exception {
+        SearchHits<Para> hits = batcher.search(SearchRequests.byFilteredTag("elasticsearch", PageRequest.of(0, 10)), Para.class, BLOG)
+            .get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, hits.getTotalHits());
+        assertEquals(1, searches.get());
+        assertEquals(0, msearchBodies.size());
+    }
+
+    @Test
+    public void givenCriteriaQuery_whenBatched_thenItsTranslatedCriteriaAreSent() throws Exception {
+        MultiSearchBatcher.Group group = batcher.group();
+        CompletableFuture<SearchHits<Para>> byTag = group.search(new CriteriaQuery(Criteria.where("tags")
+            .is("elasticsearch"), PageRequest.of(0, 10)), Para.class, BLOG);
+        group.search(SearchRequests.byFilteredTag("tutorial", PageRequest.of(0, 10)), Para.class, BLOG);
+        group.execute();
+
+        assertEquals(2, byTag.get(10, TimeUnit.SECONDS)
+            .getTotalHits());
+        assertTrue(msearchBodies.get(0), msearchBodies.get(0)
+            .contains("\"query_string\":{\"query\":\"elasticsearch\",\"fields\":[\"tags^1.0\"]"));
+    }
+
+    @Test
+    public void givenClosedBatcher_whenSearched_thenTheFutureFailsWithoutQueueingTheSearch() throws Exception {
+        batcher.close();
+
+        CompletableFuture<SearchHits<Para>> late = batcher.search(SearchRequests.byFilteredTag("elasticsearch", PageRequest.of(0, 10)), Para.class,
+            BLOG);
+
+        try {
+            late.get(10, TimeUnit.SECONDS);
+            fail("a search after close must fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        batcher.flush();
+        assertEquals(0, batcher.getSearchCount());
+        assertEquals(0, searches.get());
+    }
+
+    @Test
+    public void givenRepositoryQueryMethod_whenTranslated_thenParametersAreBoundAndEscaped() {
+        StringQuery query = SearchRequests.queryMethod(ParaRepository.class, "findByWritersNameAndFilteredTagQuery", "John \"J\" Smith", "tag",
+            PageRequest.of(2, 5));
+
+        assertEquals("{\"bool\": {\"must\": {\"match\": {\"writers.name\": \"John \\\"J\\\" Smith\"}}, \"filter\": {\"term\": {\"tags\": \"tag\" }}}}",
+            query.getSource());
+        assertEquals(10, query.getPageable()
+            .getOffset());
+    }
+
+    private static String item(String header, String source) {
+        if (header.contains("broken")) {
+            return "{\"error\":{\"root_cause\":[],\"type\":\"search_phase_execution_exception\",\"reason\":\"all shards failed\"},\"status\":400}";
+        }
+        if (source.contains("aggregations")) {
+            return "{\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},\"hits\":{\"total\":{\"value\":7,\"relation\":\"eq\"},\"max_score\":null,\"hits\":[]},"
+                + "\"aggregations\":{\"sterms#tags\":{\"doc_count_error_upper_bound\":0,\"sum_other_doc_count\":0,\"buckets\":[{\"key\":\"elasticsearch\",\"doc_count\":7}]}},\"status\":200}";
+        }
+        String response = CannedResponses.searchResponse(paras(2));
+        return response.substring(0, response.length() - 1) + ",\"status\":200}";
+    }
+
+    private static List<Para> paras(int count) {
+        List<Para> paras = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Para para = new Para("Para " + i);
+            para.setId(String.valueOf(i));
+            para.setTags(asList("elasticsearch", "tag" + i).toArray(new String[0]));
+            paras.add(para);
+        }
+        return paras;
+    }
+}
@@ -0,0 +1,246 @@
+package com.elastico.java.files.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.After;
+import org.junit.Test;
+
+import elasticsearchclient.java.files.search.config.ClientConnectionPool;
+import elasticsearchclient.java.files.search.config.ClientTuning;
+import elasticsearchclient.java.files.search.config.HedgedSearches;
+import elasticsearchclient.java.files.search.config.NodeScoreboard;
+
+public class NodeRoutingTest {
+
+    private final List<StubElasticsearchServer> servers = new ArrayList<>();
+    private final List<AutoCloseable> closeables = new ArrayList<>();
+
+    @After
+    public void tearDown() throws Exception {
+        for (AutoCloseable closeable : closeables) {
+            closeable.close();
+        }
+        for (StubElasticsearchServer server : servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void givenOneSlowNode_whenRequestsAreSent_thenTheFastNodesServeAlmostAll() throws Exception {
+        AtomicInteger slowCount = new AtomicInteger();
+        StubElasticsearchServer slow = server().on("/", request -> {
+            slowCount.incrementAndGet();
+            Thread.sleep(50);
+            return StubElasticsearchServer.StubResponse.ok("{}");
+        });
+        StubElasticsearchServer fast1 = server().on("/", request -> StubElasticsearchServer.StubResponse.ok("{}"));
+        StubElasticsearchServer fast2 = server().on("/", request -> StubElasticsearchServer.StubResponse.ok("{}"));
+        RestClient client = client(new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(slow.hostAndPort(), fast1.hostAndPort(), fast2.hostAndPort())));
+
+        for (int i = 0; i < 40; i++) {
+            client.performRequest(new Request("GET", "/"));
+        }
+
+        assertTrue("slow node served " + slowCount.get(), slowCount.get() <= 2);
+        assertEquals(40, slowCount.get() + fast1.requestCount() + fast2.requestCount());
+    }
+
+    @Test
+    public void givenFailingNode_whenBreakerOpens_thenNodeIsEjectedAndProbedBackIn() throws Exception {
+        AtomicBoolean healthy = new AtomicBoolean();
+        AtomicInteger badCount = new AtomicInteger();
+        StubElasticsearchServer good = server().on("/", request -> StubElasticsearchServer.StubResponse.ok("{}"));
+        StubElasticsearchServer bad = server().on("/", request -> {
+            badCount.incrementAndGet();
+            return healthy.get() ? StubElasticsearchServer.StubResponse.ok("{}")
+                : StubElasticsearchServer.StubResponse.json(503, "{\"status\":503}");
+        });
+        ClientConnectionPool pool = new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(good.hostAndPort(), bad.hostAndPort())
+            .latencyDecayMillis(20)
+            .breaker(2, 500));
+        RestClient client = client(pool);
+        HttpHost badHost = HttpHost.create(bad.hostAndPort());
+
+        sendUntil(client, () -> badCount.get() >= 2);
+        assertEquals(NodeScoreboard.BreakerState.OPEN, pool.getScoreboard()
+            .getBreakerState(badHost));
+
+        int ejectedAt = badCount.get();
+        long until = System.currentTimeMillis() + 200;
+        while (System.currentTimeMillis() < until) {
+            send(client);
+        }
+        assertEquals(ejectedAt, badCount.get());
+
+        healthy.set(true);
+        sendUntil(client, () -> badCount.get() > ejectedAt);
+        assertEquals(NodeScoreboard.BreakerState.CLOSED, pool.getScoreboard()
+            .getBreakerState(badHost));
+    }
+
+    @Test
+    public void givenDueNodeSelectedButNotSent_whenRequestsAreSent_thenItIsStillProbedBackIn() throws Exception {
+        AtomicBoolean healthy = new AtomicBoolean();
+        AtomicInteger badCount = new AtomicInteger();
+        StubElasticsearchServer good = server().on("/", request -> StubElasticsearchServer.StubResponse.ok("{}"));
+        StubElasticsearchServer bad = server().on("/", request -> {
+            badCount.incrementAndGet();
+            return healthy.get() ? StubElasticsearchServer.StubResponse.ok("{}")
+                : StubElasticsearchServer.StubResponse.json(503, "{\"status\":503}");
+        });
+        ClientConnectionPool pool = new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(good.hostAndPort(), bad.hostAndPort())
+            .latencyDecayMillis(20)
+            .breaker(2, 100));
+        RestClient client = client(pool);
+        HttpHost badHost = HttpHost.create(bad.hostAndPort());
+        sendUntil(client, () -> badCount.get() >= 2);
+        Thread.sleep(150);
+
+        // picked, as a hedged copy's node or a request that goes elsewhere would be, but never sent
+        pool.getScoreboard()
+            .select(new ArrayList<>(Collections.singletonList(new Node(badHost))));
+
+        assertEquals(NodeScoreboard.BreakerState.OPEN, pool.getScoreboard()
+            .getBreakerState(badHost));
+        healthy.set(true);
+        int ejectedAt = badCount.get();
+        sendUntil(client, () -> badCount.get() > ejectedAt);
+        assertEquals(NodeScoreboard.BreakerState.CLOSED, pool.getScoreboard()
+            .getBreakerState(badHost));
+    }
+
+    @Test
+    public void givenPreferredNodeRefusesConnections_whenRequestIsSent_thenItFailsOverToTheNextNode() throws Exception {
+        StubElasticsearchServer down = new StubElasticsearchServer();
+        HttpHost downHost = HttpHost.create(down.hostAndPort());
+        down.close();
+        StubElasticsearchServer up = server().on("/", request -> StubElasticsearchServer.StubResponse.ok("{}"));
+        ClientConnectionPool pool = new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(down.hostAndPort(), up.hostAndPort()));
+        RestClient client = client(pool);
+        // gives the live node a latency, so the unmeasured one scores better and is tried first
+        NodeScoreboard.excluding(downHost, () -> {
+            try {
+                return client.performRequest(new Request("GET", "/"));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        client.performRequest(new Request("GET", "/"));
+
+        assertEquals(downHost, NodeScoreboard.lastSelected());
+        assertTrue(pool.getScoreboard()
+            .getLatencyMillis(downHost) > 0);
+        assertEquals(2, up.requestCount());
+    }
+
+    @Test
+    public void givenSlowPrimary_whenSearchIsHedged_thenAnotherNodeAnswers() throws Exception {
+        String body = CannedResponses.searchResponse(Collections.emptyList());
+        StubElasticsearchServer slow = server().on("/blog/_search", request -> {
+            Thread.sleep(2000);
+            return StubElasticsearchServer.StubResponse.ok(body);
+        });
+        StubElasticsearchServer fast = server().on("/blog/_search", request -> StubElasticsearchServer.StubResponse.ok(body));
+        ClientConnectionPool pool = new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(slow.hostAndPort(), fast.hostAndPort()));
+        RestHighLevelClient client = new RestHighLevelClient(pool.restClientBuilder());
+        closeables.add(client);
+        HedgedSearches hedged = new HedgedSearches(client, 50);
+        closeables.add(hedged);
+
+        long start = System.nanoTime();
+        // steer the first copy to the slow node
+        SearchResponse response = NodeScoreboard.excluding(HttpHost.create(fast.hostAndPort()),
+            () -> hedged.searchAsync(new SearchRequest("blog")))
+            .get(5, TimeUnit.SECONDS);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(0, response.getHits()
+            .getTotalHits().value);
+        assertTrue("answered after " + millis + " ms", millis < 1000);
+        assertEquals(1, hedged.getHedgeCount());
+        assertEquals(1, hedged.getHedgeWinCount());
+        assertEquals(1, fast.requestCount());
+    }
+
+    @Test
+    public void givenSniffInterval_whenClientIsAttached_thenNodesComeFromTheCluster() throws Exception {
+        StubElasticsearchServer data = server().on("/", request -> StubElasticsearchServer.StubResponse.ok("{}"));
+        StubElasticsearchServer seed = server().on("/_nodes/http", request -> StubElasticsearchServer.StubResponse
+            .ok("{\"nodes\":{\"n1\":{\"http\":{\"publish_address\":\"data-1/" + data.hostAndPort() + "\"}}}}"));
+        RestClient client = client(new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(seed.hostAndPort())
+            .sniffIntervalMillis(60_000)));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!client.getNodes()
+            .get(0)
+            .getHost()
+            .equals(HttpHost.create(data.hostAndPort())) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        client.performRequest(new Request("GET", "/"));
+
+        assertEquals(1, client.getNodes()
+            .size());
+        assertEquals(1, data.requestCount());
+        assertEquals(1, seed.requestCount());
+    }
+
+    private StubElasticsearchServer server() throws Exception {
+        StubElasticsearchServer server = new StubElasticsearchServer();
+        servers.add(server);
+        return server;
+    }
+
+    private RestClient client(ClientConnectionPool pool) {
+        RestClient client = pool.restClientBuilder()
+            .build();
+        pool.attach(client);
+        closeables.add(client);
+        return client;
+    }
+
+    private static void sendUntil(RestClient client, BooleanSupplier condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            send(client);
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static void send(RestClient client) throws Exception {
+        try {
+            client.performRequest(new Request("GET", "/"));
+        } catch (ResponseException e) {
+            assertEquals(503, e.getResponse()
+                .getStatusLine()
+                .getStatusCode());
+        }
+    }
+}
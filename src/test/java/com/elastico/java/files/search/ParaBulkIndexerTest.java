@@ -0,0 +1,200 @@
+package com.elastico.java.files.search;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.data.elasticsearch.client.ClientConfiguration;
+import org.springframework.data.elasticsearch.client.RestClients;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.design.Writer;
+import elasticsearchclient.java.files.search.service.ParaBulkIndexer;
+
+public class ParaBulkIndexerTest {
+
+    private final AtomicInteger documentsReceived = new AtomicInteger();
+    private final AtomicInteger bulksReceived = new AtomicInteger();
+    private final AtomicInteger maxDocumentsPerBulk = new AtomicInteger();
+    private final List<BulkItemResponse.Failure> failures = new CopyOnWriteArrayList<>();
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private ElasticsearchRestTemplate template;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubElasticsearchServer().on("/_bulk", request -> {
+            bulksReceived.incrementAndGet();
+            String[] lines = request.getBodyAsString()
+                .split("\n");
+            StringBuilder items = new StringBuilder();
+            int documents = 0;
+            boolean errors = false;
+            for (int i = 0; i + 1 < lines.length; i += 2) {
+                JSONObject action = JSON.parseObject(lines[i])
+                    .getJSONObject("index");
+                String id = action.getString("_id") != null ? action.getString("_id") : "auto-" + documentsReceived.get() + "-" + i;
+                if (items.length() > 0) {
+                    items.append(',');
+                }
+                if (id.startsWith("bad-")) {
+                    errors = true;
+                    items.append("{\"index\":{\"_index\":\"blog\",\"_type\":\"_doc\",\"_id\":\"")
+                        .append(id)
+                        .append("\",\"status\":400,\"error\":{\"type\":\"mapper_parsing_exception\",\"reason\":\"failed to parse\"}}}");
+                } else {
+                    items.append("{\"index\":{\"_index\":\"blog\",\"_type\":\"_doc\",\"_id\":\"")
+                        .append(id)
+                        .append("\",\"_version\":1,\"result\":\"created\",\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},")
+                        .append("\"_seq_no\":0,\"_primary_term\":1,\"status\":201}}");
+                }
+                documents++;
+            }
+            documentsReceived.addAndGet(documents);
+            maxDocumentsPerBulk.accumulateAndGet(documents, Math::max);
+            return StubElasticsearchServer.StubResponse.ok("{\"took\":1,\"errors\":" + errors + ",\"items\":[" + items + "]}");
+        });
+
+        client = RestClients.create(ClientConfiguration.builder()
+            .connectedTo(server.hostAndPort())
+            .build())
+            .rest();
+        template = new ElasticsearchRestTemplate(client);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void givenManyParas_whenBulkIndexed_thenAllDocumentsReachTheServerInBulks() throws Exception {
+        final int documents = 20_000;
+        ParaBulkIndexer indexer = new ParaBulkIndexer(client, template, ParaBulkIndexer.Settings.defaults()
+            .bulkActions(500)
+            .flushInterval(null)
+            .concurrentRequests(4), recordingHandler());
+
+        for (int i = 0; i < documents; i++) {
+            indexer.index(para("doc-" + i));
+        }
+        assertTrue(indexer.awaitClose(30, TimeUnit.SECONDS));
+
+        assertEquals(documents, documentsReceived.get());
+        assertEquals(documents, indexer.getIndexedCount());
+        assertEquals(documents / 500, bulksReceived.get());
+        assertEquals(500, maxDocumentsPerBulk.get());
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    public void givenByteSizeThreshold_whenPayloadExceedsIt_thenBulkIsFlushedEarly() throws Exception {
+        ParaBulkIndexer indexer = new ParaBulkIndexer(client, template, ParaBulkIndexer.Settings.defaults()
+            .bulkActions(10_000)
+            .bulkSize(new ByteSizeValue(4, ByteSizeUnit.KB)), recordingHandler());
+
+        for (int i = 0; i < 200; i++) {
+            indexer.index(para("doc-" + i));
+        }
+        assertTrue(indexer.awaitClose(10, TimeUnit.SECONDS));
+
+        assertEquals(200, documentsReceived.get());
+        assertTrue(bulksReceived.get() > 1);
+    }
+
+    @Test
+    public void givenLingerTime_whenFewDocuments_thenBulkIsFlushedByTimer() throws Exception {
+        ParaBulkIndexer indexer = new ParaBulkIndexer(client, template, ParaBulkIndexer.Settings.defaults()
+            .bulkActions(1000)
+            .flushInterval(TimeValue.timeValueMillis(50)), recordingHandler());
+
+        indexer.index(para("doc-1"));
+        indexer.index(para("doc-2"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (documentsReceived.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, documentsReceived.get());
+        assertTrue(indexer.awaitClose(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void givenRejectedItems_whenBulkIndexed_thenFailuresAreReportedPerItem() throws Exception {
+        ParaBulkIndexer indexer = new ParaBulkIndexer(client, template, ParaBulkIndexer.Settings.defaults()
+            .bulkActions(10)
+            .backoffPolicy(BackoffPolicy.noBackoff()), recordingHandler());
+
+        for (int i = 0; i < 30; i++) {
+            indexer.index(para((i % 3 == 0 ? "bad-" : "doc-") + i));
+        }
+        assertTrue(indexer.awaitClose(10, TimeUnit.SECONDS));
+
+        assertEquals(10, indexer.getFailedCount());
+        assertEquals(20, indexer.getIndexedCount());
+        assertEquals(10, failures.size());
+        assertTrue(failures.get(0)
+            .getId()
+            .startsWith("bad-"));
+    }
+
+    @Test
+    public void givenFailureHandlerBean_whenTheSpringBeanRejectsItems_thenTheHandlerBeanReceivesThem() throws Exception {
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        beans.addBean("failureHandler", recordingHandler());
+        ParaBulkIndexer indexer = new ParaBulkIndexer(client, template, new StandardEnvironment(), beans.getBeanProvider(
+            ParaBulkIndexer.FailureHandler.class));
+
+        indexer.index(para("bad-1"));
+        indexer.index(para("doc-2"));
+        assertTrue(indexer.awaitClose(10, TimeUnit.SECONDS));
+
+        assertEquals(1, failures.size());
+        assertEquals("bad-1", failures.get(0)
+            .getId());
+    }
+
+    private ParaBulkIndexer.FailureHandler recordingHandler() {
+        return new ParaBulkIndexer.FailureHandler() {
+
+            public void onItemFailure(BulkItemResponse.Failure failure) {
+                failures.add(failure);
+            }
+
+            public void onBulkFailure(BulkRequest request, Throwable cause) {
+                throw new AssertionError("bulk failed", cause);
+            }
+        };
+    }
+
+    private static Para para(String id) {
+        Para para = new Para("Spring Data Elasticsearch " + id);
+        para.setId(id);
+        para.setWriters(asList(new Writer("John Smith"), new Writer("John Doe")));
+        para.setTags("elasticsearch", "spring data");
+        return para;
+    }
+}
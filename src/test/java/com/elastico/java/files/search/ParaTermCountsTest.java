@@ -0,0 +1,161 @@
+package com.elastico.java.files.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.elasticsearch.client.ClientConfiguration;
+import org.springframework.data.elasticsearch.client.RestClients;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.repository.support.ElasticsearchRepositoryFactory;
+
+import elasticsearchclient.java.files.search.config.CachingElasticsearchRestTemplate;
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.repository.ParaRepository;
+import elasticsearchclient.java.files.search.service.ParaTermCounts;
+import elasticsearchclient.java.files.search.service.SearchResultCache;
+import elasticsearchclient.java.files.search.service.TermCountMap;
+import elasticsearchclient.java.files.search.service.TermCountMap.TermCount;
+
+public class ParaTermCountsTest {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final List<Para> indexed = new CopyOnWriteArrayList<>();
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private CachingElasticsearchRestTemplate template;
+    private ParaTermCounts counts;
+
+    @Before
+    public void setUp() throws Exception {
+        indexed.add(para("1", "Spring Data Elasticsearch", "java", "elasticsearch"));
+        indexed.add(para("2", "Elasticsearch clients", "elasticsearch", "elasticsearch"));
+        indexed.add(para("3", "The Java high level client", "java"));
+        server = new StubElasticsearchServer().on("/blog/_search", request -> StubElasticsearchServer.StubResponse.ok(CannedResponses
+            .pageResponse(new ArrayList<>(indexed), "scroll-1")))
+            .on("/_search/scroll", request -> StubElasticsearchServer.StubResponse.ok("DELETE".equals(request.getMethod())
+                ? "{\"succeeded\":true,\"num_freed\":1}"
+                : CannedResponses.pageResponse(Collections.emptyList(), "scroll-1")))
+            .on("/blog/_refresh", request -> StubElasticsearchServer.StubResponse.ok("{\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0}}"))
+            .on("/blog/_doc/.*", request -> {
+                String id = request.getPath()
+                    .substring("/blog/_doc/".length());
+                return StubElasticsearchServer.StubResponse.ok("{\"_index\":\"blog\",\"_type\":\"_doc\",\"_id\":\"" + id + "\","
+                    + "\"_version\":2,\"result\":\"" + ("DELETE".equals(request.getMethod()) ? "deleted" : "updated")
+                    + "\",\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},\"_seq_no\":1,\"_primary_term\":1}");
+            })
+            .on("/blog", request -> new StubElasticsearchServer.StubResponse(200, "application/json", EMPTY));
+        client = RestClients.create(ClientConfiguration.builder()
+            .connectedTo(server.hostAndPort())
+            .build())
+            .rest();
+        template = new CachingElasticsearchRestTemplate(client, new SearchResultCache(100, 30_000));
+        counts = new ParaTermCounts(client, template, ParaTermCounts.Options.defaults()
+            .reconcileIntervalMillis(0)
+            .changeDelayMillis(0)
+            .slices(1));
+        template.addWriteListener(counts);
+        assertTrue(counts.awaitSeeded(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        counts.close();
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void givenRandomAddsAndRemovals_whenComparedWithHashMap_thenCountsAndTopOrderMatch() {
+        TermCountMap map = new TermCountMap();
+        Map<String, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            String term = "term-" + random.nextInt(2000);
+            long delta = random.nextInt(5) - 2;
+            map.add(term, delta);
+            long count = expected.getOrDefault(term, 0L) + delta;
+            if (count > 0) {
+                expected.put(term, count);
+            } else {
+                expected.remove(term);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        expected.forEach((term, count) -> assertEquals(term, (long) count, map.get(term)));
+        List<Map.Entry<String, Long>> ranked = new ArrayList<>(expected.entrySet());
+        ranked.sort(Map.Entry.<String, Long> comparingByValue()
+            .reversed()
+            .thenComparing(Map.Entry.comparingByKey()));
+        List<TermCount> top = map.top(50);
+        assertEquals(50, top.size());
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals(ranked.get(i)
+                .getKey(),
+                top.get(i)
+                    .getTerm());
+        }
+    }
+
+    @Test
+    public void givenSeededIndex_whenTopIsAsked_thenDocumentCountsAreReturned() {
+        assertEquals("[elasticsearch=2, java=2]", counts.topTags(10)
+            .toString());
+        assertEquals("[elasticsearch=2, client=1, clients=1]", counts.topTitleTerms(3)
+            .toString());
+        assertEquals(1, counts.getReconcileCount());
+    }
+
+    @Test
+    public void givenRepositoryWrites_whenSavedAndDeleted_thenCountsFollowWithoutReadingTheIndex() {
+        ParaRepository repository = new ElasticsearchRepositoryFactory(template).getRepository(ParaRepository.class);
+        indexed.clear();
+
+        repository.save(para("3", "The Java high level client", "spring"));
+        repository.save(para("4", "Spring Boot", "spring", "java"));
+        repository.deleteById("1");
+
+        assertEquals("[spring=2, elasticsearch=1, java=1]", counts.topTags(10)
+            .toString());
+        assertEquals(0, counts.tagCount("missing"));
+        assertEquals(1, counts.getReconcileCount());
+        assertEquals(0, counts.getUntrackedWriteCount());
+    }
+
+    @Test
+    public void givenChangeThatCannotBeFollowed_whenReported_thenIndexIsReadAgain() throws Exception {
+        indexed.add(para("4", "Spring Boot", "spring"));
+
+        counts.changed(IndexCoordinates.of("blog"));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (counts.getReconcileCount() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, counts.getReconcileCount());
+        assertEquals(1, counts.tagCount("spring"));
+        assertEquals(1, counts.getUntrackedWriteCount());
+    }
+
+    private static Para para(String id, String title, String... tags) {
+        Para para = new Para(title);
+        para.setId(id);
+        para.setTags(tags);
+        return para;
+    }
+}
@@ -0,0 +1,200 @@
+package com.elastico.java.files.search;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.client.ClientConfiguration;
+import org.springframework.data.elasticsearch.client.RestClients;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.SearchHits;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import elasticsearchclient.java.files.search.design.DocValueField;
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.design.ParaSummary;
+import elasticsearchclient.java.files.search.design.ParaTitle;
+import elasticsearchclient.java.files.search.design.Writer;
+import elasticsearchclient.java.files.search.service.Projection;
+import elasticsearchclient.java.files.search.service.ProjectionSearchService;
+import elasticsearchclient.java.files.search.service.SearchHitsMapper;
+
+public class ProjectionSearchServiceTest {
+
+    private final List<String> requestBodies = new ArrayList<>();
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private ElasticsearchRestTemplate template;
+    private ProjectionSearchService service;
+
+    @Before
+    public void setUp() throws Exception {
+        List<Para> paras = paras(3);
+        server = new StubElasticsearchServer().on("/blog/_search", request -> {
+            String body = request.getBodyAsString();
+            requestBodies.add(body);
+            boolean tags = body.contains("docvalue_fields");
+            return StubElasticsearchServer.StubResponse.ok(CannedResponses.projectedResponse(paras, true, tags));
+        });
+        client = RestClients.create(ClientConfiguration.builder()
+            .connectedTo(server.hostAndPort())
+            .build())
+            .rest();
+        template = new ElasticsearchRestTemplate(client);
+        service = new ProjectionSearchService(client, template);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void givenInterfaceProjection_whenSearched_thenOnlyTitleIsFetchedAndMapped() {
+        SearchHits<ParaTitle> hits = service.findByFilteredTagQuery("elasticsearch", PageRequest.of(0, 10), ParaTitle.class);
+
+        assertEquals(3, hits.getTotalHits());
+        ParaTitle title = hits.getSearchHit(1)
+            .getContent();
+        assertEquals("1", title.getId());
+        assertEquals("Para 1", title.getTitle());
+
+        JSONObject source = JSON.parseObject(requestBodies.get(0))
+            .getJSONObject("_source");
+        assertEquals(asList("title"), source.getJSONArray("includes"));
+        assertFalse(requestBodies.get(0)
+            .contains("docvalue_fields"));
+    }
+
+    @Test
+    public void givenClassProjectionWithDocValues_whenSearched_thenTagsComeFromDocValueFields() {
+        SearchHits<ParaSummary> hits = service.findByWritersName("John Smith", PageRequest.of(0, 10), ParaSummary.class);
+
+        ParaSummary summary = hits.getSearchHit(2)
+            .getContent();
+        assertEquals("2", summary.getId());
+        assertEquals("Para 2", summary.getTitle());
+        assertArrayEquals(new String[] { "elasticsearch", "tag2" }, summary.getTags());
+
+        JSONObject body = JSON.parseObject(requestBodies.get(0));
+        assertEquals(asList("title"), body.getJSONObject("_source")
+            .getJSONArray("includes"));
+        assertEquals("tags", body.getJSONArray("docvalue_fields")
+            .getJSONObject(0)
+            .getString("field"));
+    }
+
+    @Test
+    public void givenOnlyIdAndDocValues_whenDescribed_thenSourceIsNotFetched() {
+        Projection<IdAndTags> projection = Projection.of(IdAndTags.class);
+
+        assertEquals(0, projection.getSourceIncludes().length);
+        assertTrue(projection.applyTo(new SearchSourceBuilder())
+            .toString()
+            .contains("\"_source\":false"));
+        assertNull(projection.read(new SearchHit(1))
+            .getTags());
+    }
+
+    @Test
+    public void givenPageOfHits_whenProjected_thenFewerBytesAreReceivedAndTheSameTitlesAreMapped() throws Exception {
+        List<Para> paras = paras(100);
+        byte[] full = CannedResponses.searchResponse(paras)
+            .getBytes(StandardCharsets.UTF_8);
+        byte[] projected = CannedResponses.projectedResponse(paras, true, false)
+            .getBytes(StandardCharsets.UTF_8);
+
+        SearchHits<Para> fullHits = new SearchHitsMapper(template.getElasticsearchConverter()).mapHits(parse(full), Para.class);
+        SearchHits<ParaTitle> titles = ProjectionSearchService.mapHits(parse(projected), Projection.of(ParaTitle.class));
+
+        // allocation per hit of both paths is measured by SearchResponseParsingBenchmark with -prof gc
+        assertTrue(projected.length * 2 < full.length);
+        assertEquals(100, titles.getSearchHits()
+            .size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(fullHits.getSearchHit(i)
+                .getContent()
+                .getTitle(), titles.getSearchHit(i)
+                    .getContent()
+                    .getTitle());
+        }
+    }
+
+    @Test
+    public void givenInterfaceProjections_whenCompared_thenEqualityAndHashCodeFollowTheValues() throws Exception {
+        List<Para> paras = paras(2);
+        paras.add(paras.get(0));
+        SearchHits<ParaTitle> titles = ProjectionSearchService.mapHits(parse(CannedResponses.projectedResponse(paras, true, false)
+            .getBytes(StandardCharsets.UTF_8)), Projection.of(ParaTitle.class));
+        ParaTitle first = titles.getSearchHit(0)
+            .getContent();
+        ParaTitle again = titles.getSearchHit(2)
+            .getContent();
+
+        assertEquals(first, again);
+        assertEquals(first.hashCode(), again.hashCode());
+        assertFalse(first.equals(titles.getSearchHit(1)
+            .getContent()));
+        assertEquals("ParaTitle[0, Para 0]", first.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenInterfaceWithANonGetter_whenDescribed_thenItIsRejected() {
+        Projection.of(TitleWithSummary.class);
+    }
+
+    public interface TitleWithSummary {
+        String getTitle();
+
+        String summarize(int length);
+    }
+
+    public interface IdAndTags {
+        String getId();
+
+        @DocValueField("tags")
+        List<String> getTags();
+    }
+
+    private static List<Para> paras(int count) {
+        List<Para> paras = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Para para = new Para("Para " + i);
+            para.setId(String.valueOf(i));
+            para.setWriters(asList(new Writer("John Smith"), new Writer("John Doe"), new Writer("Jane Roe")));
+            para.setTags("elasticsearch", "tag" + i);
+            paras.add(para);
+        }
+        return paras;
+    }
+
+    private static SearchResponse parse(byte[] json) throws Exception {
+        try (XContentParser parser = XContentType.JSON.xContent()
+            .createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, json)) {
+            return SearchResponse.fromXContent(parser);
+        }
+    }
+}
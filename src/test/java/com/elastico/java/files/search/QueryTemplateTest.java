@@ -0,0 +1,154 @@
+package com.elastico.java.files.search;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.QueryRewriteContext;
+import org.elasticsearch.index.query.Rewriteable;
+import org.elasticsearch.search.SearchModule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.client.ClientConfiguration;
+import org.springframework.data.elasticsearch.client.RestClients;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+
+import elasticsearchclient.java.files.search.config.CachingElasticsearchRestTemplate;
+import elasticsearchclient.java.files.search.config.CompiledQueryRepositoryFactoryBean;
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.repository.ParaRepository;
+import elasticsearchclient.java.files.search.service.QueryTemplate;
+import elasticsearchclient.java.files.search.service.SearchRequests;
+import elasticsearchclient.java.files.search.service.SearchResultCache;
+
+public class QueryTemplateTest {
+
+    private static final IndexCoordinates BLOG = IndexCoordinates.of("blog");
+
+    private final List<String> searchBodies = new CopyOnWriteArrayList<>();
+    private final List<String> templateBodies = new CopyOnWriteArrayList<>();
+    private final List<String> storedScripts = new CopyOnWriteArrayList<>();
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        Para para = new Para("Spring Data Elasticsearch");
+        para.setId("1");
+        String response = CannedResponses.searchResponse(asList(para));
+
+        server = new StubElasticsearchServer().on("/_scripts/.*", request -> {
+            storedScripts.add(request.getPath() + " " + request.getBodyAsString());
+            return StubElasticsearchServer.StubResponse.ok("{\"acknowledged\":true}");
+        })
+            .on("/blog/_search/template", request -> {
+                templateBodies.add(request.getBodyAsString());
+                return StubElasticsearchServer.StubResponse.ok(response);
+            })
+            .on("/blog/_search", request -> {
+                searchBodies.add(request.getBodyAsString());
+                return StubElasticsearchServer.StubResponse.ok(response);
+            });
+        client = RestClients.create(ClientConfiguration.builder()
+            .connectedTo(server.hostAndPort())
+            .build())
+            .rest();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void givenQuotedAndBareSlots_whenRendered_thenArgumentsAreEscapedByType() {
+        QueryTemplate template = QueryTemplate.of("{\"bool\":{\"must\":{\"match\":{\"title\":\"?0\"}},\"filter\":[{\"terms\":{\"tags\":?1}},{\"range\":{\"year\":{\"gte\":?2}}}]}}");
+
+        String rendered = new String(template.render(new Object[] { "say \"hi\"\\\n", asList("a", "b\"c"), 2020 }), StandardCharsets.UTF_8);
+
+        assertEquals(3, template.getParameterCount());
+        assertEquals("{\"bool\":{\"must\":{\"match\":{\"title\":\"say \\\"hi\\\"\\\\\\n\"}},\"filter\":[{\"terms\":{\"tags\":[\"a\",\"b\\\"c\"]}},{\"range\":{\"year\":{\"gte\":2020}}}]}}",
+            rendered);
+        assertTrue(template == QueryTemplate.of(template.getSource()));
+    }
+
+    @Test
+    public void givenBoostAndQueryName_whenBound_thenTheTemplateIsWrappedAndRewrittenIntoTheQueryItContains() throws Exception {
+        QueryBuilder bound = QueryTemplate.of("{\"term\":{\"tags\":\"?0\"}}")
+            .bind("java")
+            .boost(2.0f)
+            .queryName("tagged");
+        QueryRewriteContext context = new QueryRewriteContext(new NamedXContentRegistry(new SearchModule(Settings.EMPTY, false, emptyList())
+            .getNamedXContents()), null, null, System::currentTimeMillis);
+
+        QueryBuilder rewritten = Rewriteable.rewrite(bound, context);
+
+        assertEquals("{\"bool\":{\"must\":[{\"term\":{\"tags\":\"java\"}}],\"boost\":2.0,\"_name\":\"tagged\"}}", bound.toString());
+        assertEquals(QueryBuilders.boolQuery()
+            .must(QueryBuilders.termQuery("tags", "java"))
+            .boost(2.0f)
+            .queryName("tagged"), rewritten);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenMalformedQuery_whenCompiled_thenItIsRejectedUpFront() {
+        QueryTemplate.of("{\"match\":{\"title\":\"?0\"}");
+    }
+
+    @Test
+    public void givenCompiledRepository_whenQueryMethodCalled_thenBoundTemplateIsSentVerbatim() {
+        CompiledQueryRepositoryFactoryBean<ParaRepository, Para, String> factory = new CompiledQueryRepositoryFactoryBean<>(ParaRepository.class);
+        factory.setElasticsearchOperations(new CachingElasticsearchRestTemplate(client, new SearchResultCache(100, 30_000, System::nanoTime)));
+        factory.afterPropertiesSet();
+        ParaRepository repository = factory.getObject();
+
+        Page<Para> page = repository.findByWritersNameAndFilteredTagQuery("John \"J\" Smith", "tag", PageRequest.of(0, 10));
+
+        assertEquals(1, page.getTotalElements());
+        assertEquals(1, searchBodies.size());
+        String body = searchBodies.get(0);
+        assertTrue(body.contains("\"query\":{\"bool\": {\"must\": {\"match\": {\"writers.name\": \"John \\\"J\\\" Smith\"}}"));
+        assertFalse(body.contains("\"wrapper\""));
+    }
+
+    @Test
+    public void givenStoredTemplates_whenSearchedTwice_thenTemplateIsRegisteredOnceAndOnlyParametersAreSent() {
+        CachingElasticsearchRestTemplate template = new CachingElasticsearchRestTemplate(client, new SearchResultCache(0, 30_000, System::nanoTime),
+            true);
+
+        SearchHits<Para> first = template.search(SearchRequests.queryMethod(ParaRepository.class, "findByFilteredTagQuery", "elasticsearch",
+            PageRequest.of(0, 10)), Para.class, BLOG);
+        template.search(SearchRequests.queryMethod(ParaRepository.class, "findByFilteredTagQuery", "spring", PageRequest.of(1, 10)), Para.class,
+            BLOG);
+
+        assertEquals(1, first.getTotalHits());
+        assertEquals(0, searchBodies.size());
+        assertEquals(1, storedScripts.size());
+        assertTrue(storedScripts.get(0)
+            .contains("\"lang\":\"mustache\""));
+        assertTrue(storedScripts.get(0)
+            .contains("{{p0}}"));
+        assertEquals(2, templateBodies.size());
+        String second = templateBodies.get(1);
+        assertTrue(second.contains("\"p0\":\"spring\""));
+        assertTrue(second.contains("\"from\":10"));
+        assertFalse(second.contains("match_all"));
+    }
+}
@@ -0,0 +1,149 @@
+package com.elastico.java.files.search;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.client.ClientConfiguration;
+import org.springframework.data.elasticsearch.client.RestClients;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.elasticsearch.core.query.StringQuery;
+import org.springframework.data.elasticsearch.repository.support.ElasticsearchRepositoryFactory;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import elasticsearchclient.java.files.search.config.CachingElasticsearchRestTemplate;
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.repository.ParaRepository;
+import elasticsearchclient.java.files.search.service.SearchCacheKey;
+import elasticsearchclient.java.files.search.service.SearchRequests;
+import elasticsearchclient.java.files.search.service.SearchResultCache;
+
+public class SearchResultCacheTest {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final AtomicInteger searches = new AtomicInteger();
+    private final AtomicLong nanos = new AtomicLong();
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private SearchResultCache cache;
+    private ParaRepository repository;
+
+    @Before
+    public void setUp() throws Exception {
+        Para para = new Para("Spring Data Elasticsearch");
+        para.setId("1");
+        para.setTags("elasticsearch");
+        String response = CannedResponses.searchResponse(asList(para));
+
+        server = new StubElasticsearchServer().on("/blog/_search", request -> {
+            searches.incrementAndGet();
+            return StubElasticsearchServer.StubResponse.ok(response);
+        })
+            .on("/blog/_refresh", request -> StubElasticsearchServer.StubResponse.ok("{\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0}}"))
+            .on("/blog/_doc/.*", request -> StubElasticsearchServer.StubResponse.ok("{\"_index\":\"blog\",\"_type\":\"_doc\",\"_id\":\"1\","
+                + "\"_version\":2,\"result\":\"" + ("DELETE".equals(request.getMethod()) ? "deleted" : "updated")
+                + "\",\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},\"_seq_no\":1,\"_primary_term\":1}"))
+            .on("/blog", request -> new StubElasticsearchServer.StubResponse(200, "application/json", EMPTY));
+        client = RestClients.create(ClientConfiguration.builder()
+            .connectedTo(server.hostAndPort())
+            .build())
+            .rest();
+        cache = new SearchResultCache(100, 30_000, nanos::get);
+        repository = new ElasticsearchRepositoryFactory(new CachingElasticsearchRestTemplate(client, cache)).getRepository(ParaRepository.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void givenRepeatedRepositoryQuery_whenCached_thenOnlyFirstCallReachesElasticsearch() {
+        for (int i = 0; i < 5; i++) {
+            Page<Para> page = repository.findByFilteredTagQuery("elasticsearch", PageRequest.of(0, 10));
+            assertEquals("1", page.getContent()
+                .get(0)
+                .getId());
+        }
+        repository.findByWritersName("John Smith", PageRequest.of(0, 10));
+        repository.findByWritersName("John Smith", PageRequest.of(0, 10));
+        repository.findByWritersName("John Smith", PageRequest.of(1, 10));
+
+        assertEquals(3, searches.get());
+        CacheStats stats = cache.getStats();
+        assertEquals(5, stats.hitCount());
+        assertEquals(3, stats.missCount());
+    }
+
+    @Test
+    public void givenCachedQuery_whenParaIsSavedOrDeleted_thenNextQueryGoesToElasticsearch() {
+        repository.findByFilteredTagQuery("elasticsearch", PageRequest.of(0, 10));
+        Para para = new Para("Updated");
+        para.setId("1");
+
+        repository.save(para);
+        repository.findByFilteredTagQuery("elasticsearch", PageRequest.of(0, 10));
+        repository.findByFilteredTagQuery("elasticsearch", PageRequest.of(0, 10));
+        repository.deleteById("1");
+        repository.findByFilteredTagQuery("elasticsearch", PageRequest.of(0, 10));
+
+        assertEquals(3, searches.get());
+        assertEquals(2, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void givenTtl_whenEntryExpires_thenQueryIsReloaded() {
+        repository.findByFilteredTagQuery("elasticsearch", PageRequest.of(0, 10));
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(29));
+        repository.findByFilteredTagQuery("elasticsearch", PageRequest.of(0, 10));
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        repository.findByFilteredTagQuery("elasticsearch", PageRequest.of(0, 10));
+
+        assertEquals(2, searches.get());
+    }
+
+    @Test
+    public void givenMoreQueriesThanMaximumSize_whenCacheIsFull_thenEntriesAreEvicted() {
+        for (int i = 0; i < 150; i++) {
+            repository.findByFilteredTagQuery("tag" + i, PageRequest.of(0, 10));
+        }
+        cache.cleanUp();
+
+        assertEquals(100, cache.getEstimatedSize());
+        assertEquals(50, cache.getStats()
+            .evictionCount());
+    }
+
+    @Test
+    public void givenEquivalentQueries_whenDescribed_thenKeysMatchAndScrollsAreNotCached() {
+        IndexCoordinates index = IndexCoordinates.of("blog");
+        NativeSearchQuery first = SearchRequests.byFilteredTag("elasticsearch", PageRequest.of(0, 10));
+        NativeSearchQuery second = SearchRequests.byFilteredTag("elasticsearch", PageRequest.of(0, 10));
+
+        assertEquals(SearchCacheKey.describe(first, index), SearchCacheKey.describe(second, index));
+        assertEquals(SearchCacheKey.describe(new StringQuery("{\"match_all\":{}} "), index),
+            SearchCacheKey.describe(new StringQuery(" {\"match_all\":{}}"), index));
+
+        StringQuery scroll = new StringQuery("{\"match_all\":{}}");
+        scroll.setScrollTime(Duration.ofMinutes(1));
+        assertNull(SearchCacheKey.describe(scroll, index));
+        assertNotNull(SearchCacheKey.describe(new StringQuery("{\"match_all\":{}}"), index));
+    }
+}
@@ -0,0 +1,165 @@
+package com.elastico.java.files.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.SearchHitsImpl;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.service.SearchRequests;
+import elasticsearchclient.java.files.search.service.SearchResultCache;
+import elasticsearchclient.java.files.search.service.SingleFlightSearches;
+
+public class SingleFlightSearchesTest {
+
+    private static final IndexCoordinates BLOG = IndexCoordinates.of("blog");
+
+    private final ExecutorService callers = Executors.newFixedThreadPool(8);
+    private final AtomicInteger searches = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void givenIdenticalConcurrentQueries_whenCachingIsOff_thenOneSearchAnswersAll() throws Exception {
+        SearchResultCache cache = new SearchResultCache(0, 0, System::nanoTime, new SingleFlightSearches(5000));
+        CountDownLatch release = new CountDownLatch(1);
+        SearchHits<Para> result = hits();
+
+        List<Future<SearchHits<Para>>> calls = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            calls.add(callers.submit(() -> cache.get(SearchRequests.byFilteredTag("elasticsearch", PageRequest.of(0, 10)), Para.class, BLOG, () -> {
+                searches.incrementAndGet();
+                await(release);
+                return result;
+            })));
+        }
+        awaitInFlight(cache, 7);
+        release.countDown();
+
+        for (Future<SearchHits<Para>> call : calls) {
+            assertSame(result, call.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, searches.get());
+        assertEquals(1, cache.getSingleFlight()
+            .getExecutedCount());
+        assertEquals(7, cache.getSingleFlight()
+            .getCollapsedCount());
+        assertEquals(0, cache.getSingleFlight()
+            .getInFlightCount());
+
+        // nothing is kept once the search returned
+        cache.get(SearchRequests.byFilteredTag("elasticsearch", PageRequest.of(0, 10)), Para.class, BLOG, () -> {
+            searches.incrementAndGet();
+            return result;
+        });
+        assertEquals(2, searches.get());
+    }
+
+    @Test
+    public void givenSlowSearch_whenFollowerWaitsTooLong_thenItTimesOutWithoutSearchingItself() throws Exception {
+        SearchResultCache cache = new SearchResultCache(0, 0, System::nanoTime, new SingleFlightSearches(50));
+        CountDownLatch release = new CountDownLatch(1);
+        Future<SearchHits<Para>> leader = callers.submit(() -> cache.get(SearchRequests.byFilteredTag("slow", PageRequest.of(0, 10)), Para.class,
+            BLOG, () -> {
+                searches.incrementAndGet();
+                await(release);
+                return hits();
+            }));
+        awaitInFlight(cache, 0);
+
+        try {
+            cache.get(SearchRequests.byFilteredTag("slow", PageRequest.of(0, 10)), Para.class, BLOG, () -> {
+                searches.incrementAndGet();
+                return hits();
+            });
+            fail("the follower must give up after its wait limit");
+        } catch (QueryTimeoutException expected) {
+            assertEquals(1, cache.getSingleFlight()
+                .getTimedOutCount());
+        }
+        release.countDown();
+        leader.get(10, TimeUnit.SECONDS);
+        assertEquals(1, searches.get());
+    }
+
+    @Test
+    public void givenFailingSearch_whenFollowersJoined_thenAllSeeTheSameFailureAndNextCallRetries() throws Exception {
+        SearchResultCache cache = new SearchResultCache(100, 30_000, System::nanoTime, new SingleFlightSearches(5000));
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("all shards failed");
+
+        List<Future<SearchHits<Para>>> calls = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            calls.add(callers.submit(() -> cache.get(SearchRequests.byFilteredTag("broken", PageRequest.of(0, 10)), Para.class, BLOG, () -> {
+                searches.incrementAndGet();
+                await(release);
+                throw failure;
+            })));
+        }
+        awaitInFlight(cache, 3);
+        release.countDown();
+
+        for (Future<SearchHits<Para>> call : calls) {
+            try {
+                call.get(10, TimeUnit.SECONDS);
+                fail("every caller must see the failure");
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+        SearchHits<Para> retried = cache.get(SearchRequests.byFilteredTag("broken", PageRequest.of(0, 10)), Para.class, BLOG, () -> {
+            searches.incrementAndGet();
+            return hits();
+        });
+        assertTrue(retried.isEmpty());
+        assertEquals(2, searches.get());
+    }
+
+    private static SearchHits<Para> hits() {
+        return new SearchHitsImpl<>(0, TotalHitsRelation.EQUAL_TO, 0, null, Collections.emptyList(), null);
+    }
+
+    private static void awaitInFlight(SearchResultCache cache, long collapsed) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (cache.getSingleFlight()
+            .getInFlightCount() == 0 || cache.getSingleFlight()
+                .getCollapsedCount() < collapsed) {
+            if (System.nanoTime() > deadline) {
+                fail("searches did not start");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                .interrupt();
+        }
+    }
+}
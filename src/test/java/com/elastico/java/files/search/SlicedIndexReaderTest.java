@@ -0,0 +1,235 @@
+package com.elastico.java.files.search;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.elasticsearch.client.ClientConfiguration;
+import org.springframework.data.elasticsearch.client.RestClients;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import elasticsearchclient.Company;
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.service.SliceCheckpointStore;
+import elasticsearchclient.java.files.search.service.SlicedIndexReader;
+import elasticsearchclient.java.files.search.service.SlicedIndexReader.Options;
+
+public class SlicedIndexReaderTest {
+
+    private static final int SLICES = 4;
+    private static final int DOCUMENTS_PER_SLICE = 250;
+    private static final int PAGE_SIZE = 100;
+    private static final Pattern RESUME_AFTER = Pattern.compile("\"from\":\"([^\"]+)\"");
+
+    private final Map<String, List<Para>> scrolls = new ConcurrentHashMap<>();
+    private final List<String> searchBodies = new ArrayList<>();
+    private final AtomicInteger scrollIds = new AtomicInteger();
+    private final AtomicInteger clearedScrolls = new AtomicInteger();
+    private final CountDownLatch allSlicesStarted = new CountDownLatch(SLICES);
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private SlicedIndexReader reader;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubElasticsearchServer().on("/blog/_search", request -> {
+            String body = request.getBodyAsString();
+            synchronized (searchBodies) {
+                searchBodies.add(body);
+            }
+            // every slice's first page waits for the others, which only returns if they are read concurrently
+            allSlicesStarted.countDown();
+            allSlicesStarted.await(5, TimeUnit.SECONDS);
+            JSONObject slice = JSON.parseObject(body)
+                .getJSONObject("slice");
+            int sliceId = slice == null ? 0 : slice.getIntValue("id");
+            Matcher resume = RESUME_AFTER.matcher(body);
+            String after = resume.find() ? resume.group(1) : null;
+            List<Para> remaining = new ArrayList<>();
+            for (int i = 0; i < DOCUMENTS_PER_SLICE; i++) {
+                Para para = new Para("Para " + i);
+                para.setId(String.format("%d-%03d", sliceId, i));
+                if (after == null || para.getId()
+                    .compareTo(after) > 0) {
+                    remaining.add(para);
+                }
+            }
+            return page("scroll-" + scrollIds.incrementAndGet(), remaining);
+        })
+            .on("/_search/scroll", request -> {
+                if ("DELETE".equals(request.getMethod())) {
+                    clearedScrolls.incrementAndGet();
+                    return StubElasticsearchServer.StubResponse.ok("{\"succeeded\":true,\"num_freed\":1}");
+                }
+                String scrollId = JSON.parseObject(request.getBodyAsString())
+                    .getString("scroll_id");
+                return page(scrollId, scrolls.get(scrollId));
+            });
+        client = RestClients.create(ClientConfiguration.builder()
+            .connectedTo(server.hostAndPort())
+            .build())
+            .rest();
+        reader = new SlicedIndexReader(client, new ElasticsearchRestTemplate(client));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void givenSeveralSlices_whenRead_thenSlicesRunConcurrentlyAndEveryDocumentIsConsumedOnce() throws Exception {
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+
+        long consumed = reader.read(Para.class, Options.defaults()
+            .slices(SLICES)
+            .parallelism(SLICES)
+            .pageSize(PAGE_SIZE), para -> {
+                if (!ids.add(para.getId())) {
+                    duplicates.incrementAndGet();
+                }
+            });
+
+        assertEquals(SLICES * DOCUMENTS_PER_SLICE, consumed);
+        assertEquals(SLICES * DOCUMENTS_PER_SLICE, ids.size());
+        assertEquals(0, duplicates.get());
+        assertEquals(0, allSlicesStarted.getCount());
+        for (String body : searchBodies) {
+            assertEquals(SLICES, JSON.parseObject(body)
+                .getJSONObject("slice")
+                .getIntValue("max"));
+        }
+        assertEquals(SLICES, awaitClearedScrolls(SLICES));
+    }
+
+    @Test
+    public void givenInterruptedExport_whenRerunWithCheckpoints_thenCompletedPagesAndSlicesAreSkipped() throws Exception {
+        SliceCheckpointStore checkpoints = SliceCheckpointStore.inMemory();
+        Options options = Options.defaults()
+            .slices(SLICES)
+            .parallelism(SLICES)
+            .pageSize(PAGE_SIZE)
+            .sortField("id")
+            .checkpoints(checkpoints, "export");
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+
+        try {
+            reader.read(Para.class, options, para -> {
+                if (para.getId()
+                    .equals("2-150")) {
+                    throw new IllegalStateException("disk full");
+                }
+                ids.add(para.getId());
+            });
+            fail("the consumer failure must stop the read");
+        } catch (IllegalStateException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+
+        Map<Integer, String> positions = checkpoints.load("export", SLICES);
+        assertEquals("2-099", positions.get(2));
+
+        searchBodies.clear();
+        long resumed = reader.read(Para.class, options, para -> ids.add(para.getId()));
+
+        assertEquals(SLICES * DOCUMENTS_PER_SLICE, ids.size());
+        assertTrue(resumed < SLICES * DOCUMENTS_PER_SLICE);
+        assertTrue(searchBodies.stream()
+            .anyMatch(body -> body.contains("\"from\":\"2-099\"")));
+        for (int slice = 0; slice < SLICES; slice++) {
+            assertEquals(SliceCheckpointStore.COMPLETED, checkpoints.load("export", SLICES)
+                .get(slice));
+        }
+    }
+
+    @Test
+    public void givenCompanyIndex_whenRead_thenEveryCompanyOfEverySliceIsConsumed() throws Exception {
+        AtomicInteger companySlices = new AtomicInteger();
+        server.on("/company/_search", request -> {
+            int slice = companySlices.getAndIncrement();
+            List<Company> companies = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                companies.add(new Company(slice * 10 + i, "Company " + slice + "-" + i, null));
+            }
+            // one short page per slice, so no further scroll is asked for
+            return StubElasticsearchServer.StubResponse.ok("{\"_scroll_id\":\"company-" + slice + "\","
+                + CannedResponses.companySearchResponse(companies)
+                    .substring(1));
+        });
+        Set<String> names = ConcurrentHashMap.newKeySet();
+
+        long consumed = reader.read(Company.class, IndexCoordinates.of("company"), Options.defaults()
+            .slices(2)
+            .parallelism(2)
+            .pageSize(PAGE_SIZE), company -> names.add(company.getCompanyName() + "@" + company.getAge()));
+
+        assertEquals(6, consumed);
+        assertEquals(new HashSet<>(asList("Company 0-0@0", "Company 0-1@1", "Company 0-2@2", "Company 1-0@10", "Company 1-1@11",
+            "Company 1-2@12")), names);
+        assertEquals(2, awaitClearedScrolls(2));
+    }
+
+    @Test
+    public void givenDirectoryStore_whenSavedAndReloaded_thenPositionsSurviveAndSliceCountIsChecked() throws Exception {
+        Path directory = Files.createTempDirectory("checkpoints");
+        SliceCheckpointStore store = SliceCheckpointStore.directory(directory);
+        store.save("export", 2, 0, "0-099");
+        store.save("export", 2, 1, SliceCheckpointStore.COMPLETED);
+
+        Map<Integer, String> positions = SliceCheckpointStore.directory(directory)
+            .load("export", 2);
+        assertEquals("0-099", positions.get(0));
+        assertEquals(SliceCheckpointStore.COMPLETED, positions.get(1));
+        try {
+            store.load("export", 3);
+            fail("a different slice count cannot resume");
+        } catch (IllegalStateException expected) {
+        }
+
+        store.clear("export");
+        assertTrue(store.load("export", 3)
+            .isEmpty());
+        assertFalse(Files.exists(directory.resolve("export.checkpoint")));
+    }
+
+    private StubElasticsearchServer.StubResponse page(String scrollId, List<Para> remaining) {
+        List<Para> page = new ArrayList<>(remaining.subList(0, Math.min(PAGE_SIZE, remaining.size())));
+        scrolls.put(scrollId, new ArrayList<>(remaining.subList(page.size(), remaining.size())));
+        return StubElasticsearchServer.StubResponse.ok(CannedResponses.pageResponse(page, scrollId));
+    }
+
+    private int awaitClearedScrolls(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (clearedScrolls.get() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return clearedScrolls.get();
+    }
+}
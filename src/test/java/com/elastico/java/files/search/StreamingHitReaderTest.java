@@ -0,0 +1,153 @@
+package com.elastico.java.files.search;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.elasticsearch.client.ClientConfiguration;
+import org.springframework.data.elasticsearch.client.RestClients;
+import org.springframework.data.elasticsearch.core.SearchScrollHits;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
+
+import com.alibaba.fastjson.JSON;
+
+import elasticsearchclient.Company;
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.design.Writer;
+import elasticsearchclient.java.files.search.service.StreamingHitReader;
+
+public class StreamingHitReaderTest {
+
+    private final List<String> requestPaths = new ArrayList<>();
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private StreamingHitReader reader;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubElasticsearchServer().on("/blog/_search", request -> {
+            requestPaths.add(request.getPath() + "?" + request.getQuery());
+            return StubElasticsearchServer.StubResponse.ok(CannedResponses.pageResponse(paras(3), "scroll-1"));
+        });
+        client = RestClients.create(ClientConfiguration.builder()
+            .connectedTo(server.hostAndPort())
+            .build())
+            .rest();
+        reader = new StreamingHitReader(client);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void givenSearchRequest_whenStreamed_thenHitsAreMappedInOnePass() throws Exception {
+        SearchRequest request = new SearchRequest("blog").source(new SearchSourceBuilder().query(QueryBuilders.termQuery("tags", "elasticsearch")))
+            .routing("r1");
+
+        SearchScrollHits<Para> hits = reader.searchAsync(request, Para.class)
+            .get(10, TimeUnit.SECONDS);
+
+        assertEquals(3, hits.getTotalHits());
+        assertEquals(TotalHitsRelation.EQUAL_TO, hits.getTotalHitsRelation());
+        assertEquals("scroll-1", hits.getScrollId());
+        Para para = hits.getSearchHit(2)
+            .getContent();
+        assertEquals("2", para.getId());
+        assertEquals("Para 2", para.getTitle());
+        assertEquals("Jane Roe", para.getWriters()
+            .get(2)
+            .getName());
+        assertArrayEquals(new String[] { "elasticsearch", "tag2" }, para.getTags());
+        assertEquals(asList("2"), hits.getSearchHit(2)
+            .getSortValues());
+        assertTrue(requestPaths.get(0)
+            .contains("routing=r1"));
+    }
+
+    @Test
+    public void givenSourceWithoutIdAndOtherSections_whenRead_thenIdComesFromHitAndTheRestIsSkipped() throws Exception {
+        String body = "{\"took\":3,\"hits\":{\"total\":{\"value\":10000,\"relation\":\"gte\"},\"max_score\":null,\"hits\":["
+            + "{\"_id\":\"a\",\"_score\":null,\"_source\":{\"title\":\"t\",\"unknown\":{\"x\":[1,2]}},\"highlight\":{\"title\":[\"<em>t</em>\"]},\"sort\":[7,null]}]},"
+            + "\"aggregations\":{\"tags\":{\"buckets\":[{\"key\":\"x\",\"doc_count\":1}]}}}";
+
+        SearchScrollHits<Para> hits = reader.read(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), Para.class);
+
+        assertEquals(10000, hits.getTotalHits());
+        assertEquals(TotalHitsRelation.GREATER_THAN_OR_EQUAL_TO, hits.getTotalHitsRelation());
+        assertNull(hits.getScrollId());
+        assertEquals("a", hits.getSearchHit(0)
+            .getContent()
+            .getId());
+        assertEquals("t", hits.getSearchHit(0)
+            .getContent()
+            .getTitle());
+        assertEquals(asList(7, null), hits.getSearchHit(0)
+            .getSortValues());
+    }
+
+    @Test
+    public void givenCompanyHits_whenStreamed_thenCompaniesMatchParsingEachSourceWithFastjson() throws Exception {
+        List<Company> companies = asList(new Company(25, "Elastic", new Date(1_262_304_000_000L)), new Company(7, "Acme", null), new Company());
+        String body = CannedResponses.companySearchResponse(companies);
+
+        SearchScrollHits<Company> hits = reader.read(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), Company.class);
+
+        assertEquals(3, hits.getTotalHits());
+        for (int i = 0; i < companies.size(); i++) {
+            assertEquals(String.valueOf(i), hits.getSearchHit(i)
+                .getId());
+            assertEquals(JSON.parseObject(JSON.toJSONString(companies.get(i)), Company.class)
+                .toString(),
+                hits.getSearchHit(i)
+                    .getContent()
+                    .toString());
+        }
+    }
+
+    @Test
+    public void givenCompanySourcesWithOtherFields_whenSearched_thenKnownFieldsAreMappedAndTheRestIgnored() throws Exception {
+        String body = "{\"took\":2,\"hits\":{\"total\":{\"value\":1,\"relation\":\"eq\"},\"hits\":[{\"_id\":\"p1\",\"_source\":"
+            + "{\"age\":20,\"dateOfBirth\":1471466076564,\"fullName\":\"John Doe\",\"dateOfEstd\":1262304000000}}]}}";
+        server.on("/people/_search", request -> StubElasticsearchServer.StubResponse.ok(body));
+
+        Company company = reader.search(new SearchRequest("people"), Company.class)
+            .getSearchHit(0)
+            .getContent();
+
+        assertEquals(20, company.getAge());
+        assertNull(company.getCompanyName());
+        assertEquals(new Date(1_262_304_000_000L), company.getDateOfEstd());
+    }
+
+    private static List<Para> paras(int count) {
+        List<Para> paras = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Para para = new Para("Para " + i);
+            para.setId(String.valueOf(i));
+            para.setWriters(asList(new Writer("John Smith"), new Writer("John Doe"), new Writer("Jane Roe")));
+            para.setTags("elasticsearch", "tag" + i);
+            paras.add(para);
+        }
+        return paras;
+    }
+}
@@ -0,0 +1,241 @@
+package com.elastico.java.files.search;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Minimal in-process HTTP server speaking just enough of the Elasticsearch REST protocol for tests that must run
+ * without a cluster. Handlers are matched in registration order against the request path.
+ * <p>
+ * With a {@link #latency(long) latency} set, responses are sent that long after the request from a scheduler, so
+ * requests being delayed do not hold the server's threads and any number of them can be waiting at once.
+ */
+public class StubElasticsearchServer implements AutoCloseable {
+
+    public interface Handler {
+        StubResponse handle(StubRequest request) throws Exception;
+    }
+
+    public static class StubRequest {
+        private final String method;
+        private final String path;
+        private final String query;
+        private final Headers headers;
+        private final byte[] body;
+
+        StubRequest(String method, String path, String query, Headers headers, byte[] body) {
+            this.method = method;
+            this.path = path;
+            this.query = query;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public String getHeader(String name) {
+            return headers.getFirst(name);
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getQuery() {
+            return query;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getBodyAsString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    public static class StubResponse {
+        private final int status;
+        private final String contentType;
+        private final byte[] body;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+
+        public StubResponse(int status, String contentType, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        public StubResponse withHeader(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        public static StubResponse json(int status, String body) {
+            return new StubResponse(status, "application/json; charset=UTF-8", body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public static StubResponse ok(String body) {
+            return json(200, body);
+        }
+    }
+
+    private static class Route {
+        private final Pattern path;
+        private final Handler handler;
+
+        Route(Pattern path, Handler handler) {
+            this.path = path;
+            this.handler = handler;
+        }
+    }
+
+    static {
+        // headers and body go out in separate writes; without TCP_NODELAY each response waits for a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final List<Route> routes = new CopyOnWriteArrayList<>();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService delays = Executors.newScheduledThreadPool(4, runnable -> {
+        Thread thread = new Thread(runnable, "stub-latency");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile long latencyMillis;
+
+    public StubElasticsearchServer() throws IOException {
+        this(32);
+    }
+
+    public StubElasticsearchServer(int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/", this::dispatch);
+        server.start();
+    }
+
+    /**
+     * Registers a handler for every request whose path matches {@code pathRegex}.
+     */
+    public StubElasticsearchServer on(String pathRegex, Handler handler) {
+        routes.add(new Route(Pattern.compile(pathRegex), handler));
+        return this;
+    }
+
+    /**
+     * Delays every response by {@code millis}.
+     */
+    public StubElasticsearchServer latency(long millis) {
+        latencyMillis = millis;
+        return this;
+    }
+
+    public String hostAndPort() {
+        return "127.0.0.1:" + server.getAddress()
+            .getPort();
+    }
+
+    public int port() {
+        return server.getAddress()
+            .getPort();
+    }
+
+    public long requestCount() {
+        return requestCount.get();
+    }
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        StubResponse response;
+        try {
+            String path = exchange.getRequestURI()
+                .getPath();
+            StubRequest request = new StubRequest(exchange.getRequestMethod(), path, exchange.getRequestURI()
+                .getRawQuery(), exchange.getRequestHeaders(), readFully(exchange.getRequestBody()));
+            response = null;
+            for (Route route : routes) {
+                if (route.path.matcher(path)
+                    .matches()) {
+                    response = route.handler.handle(request);
+                    break;
+                }
+            }
+            if (response == null) {
+                response = StubResponse.json(404, "{\"error\":\"no stub for " + path + "\",\"status\":404}");
+            }
+        } catch (Exception e) {
+            response = StubResponse.json(500, "{\"error\":\"" + e + "\",\"status\":500}");
+        }
+        long latency = latencyMillis;
+        if (latency > 0) {
+            StubResponse delayed = response;
+            delays.schedule(() -> respond(exchange, delayed), latency, TimeUnit.MILLISECONDS);
+        } else {
+            respond(exchange, response);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, StubResponse response) {
+        try {
+            write(exchange, response);
+        } catch (IOException e) {
+            // the client went away
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void write(HttpExchange exchange, StubResponse response) throws IOException {
+        exchange.getResponseHeaders()
+            .set("Content-Type", response.contentType);
+        response.headers.forEach(exchange.getResponseHeaders()::set);
+        exchange.sendResponseHeaders(response.status, response.body.length == 0 ? -1 : response.body.length);
+        if (response.body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response.body);
+            }
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        server.stop(0);
+        delays.shutdownNow();
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
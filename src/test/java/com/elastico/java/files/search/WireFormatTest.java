@@ -0,0 +1,168 @@
+package com.elastico.java.files.search;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.convert.MappingElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.mapping.SimpleElasticsearchMappingContext;
+import org.springframework.mock.env.MockEnvironment;
+
+import elasticsearchclient.Company;
+import elasticsearchclient.java.files.search.config.ClientConnectionPool;
+import elasticsearchclient.java.files.search.config.ClientTuning;
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.service.ParaBulkIndexer;
+import elasticsearchclient.java.files.search.service.SourceCodec;
+
+public class WireFormatTest {
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+
+    @After
+    public void tearDown() throws Exception {
+        if (client != null) {
+            client.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void givenEachFormat_whenParaAndCompanyAreWrittenAndRead_thenTheyRoundTrip() {
+        MappingElasticsearchConverter converter = new MappingElasticsearchConverter(new SimpleElasticsearchMappingContext());
+        converter.afterPropertiesSet();
+        Para para = new Para("Spring Data Elasticsearch");
+        para.setId("1");
+        para.setTags("elasticsearch", "smile");
+        Company company = new Company(25, "Elastic", new Date(1_262_304_000_000L));
+
+        for (XContentType type : asList(XContentType.JSON, XContentType.SMILE, XContentType.CBOR)) {
+            SourceCodec codec = new SourceCodec(converter, type);
+            BytesReference paraSource = codec.write(para);
+            assertEquals(type, codec.getContentType());
+            assertEquals("Spring Data Elasticsearch", XContentHelper.convertToMap(paraSource, false, type)
+                .v2()
+                .get("title"));
+
+            Para readPara = codec.read(Para.class, paraSource);
+            assertEquals("1", readPara.getId());
+            assertEquals("Spring Data Elasticsearch", readPara.getTitle());
+            assertArrayEquals(para.getTags(), readPara.getTags());
+
+            Company readCompany = codec.read(Company.class, codec.write(company));
+            assertEquals("Elastic", readCompany.getCompanyName());
+            assertEquals(25, readCompany.getAge());
+            assertEquals(company.getDateOfEstd(), readCompany.getDateOfEstd());
+        }
+    }
+
+    @Test
+    public void givenCbor_whenParasAreBulkIndexed_thenTheBulkIsSentAsSmile() throws Exception {
+        AtomicReference<String> contentType = new AtomicReference<>();
+        AtomicReference<byte[]> body = new AtomicReference<>();
+        AtomicReference<Throwable> bulkFailure = new AtomicReference<>();
+        server = new StubElasticsearchServer().on("/_bulk", request -> {
+            contentType.set(request.getHeader("Content-Type"));
+            body.set(request.getBody());
+            return StubElasticsearchServer.StubResponse.ok("{\"took\":1,\"errors\":false,\"items\":[{\"index\":{\"_index\":\"blog\",\"_type\":\"_doc\","
+                + "\"_id\":\"1\",\"_version\":1,\"result\":\"created\",\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},"
+                + "\"_seq_no\":0,\"_primary_term\":1,\"status\":201}}]}");
+        });
+        client = new RestHighLevelClient(new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(server.hostAndPort())).restClientBuilder());
+        Para para = new Para("Spring Data Elasticsearch");
+        para.setId("1");
+
+        try (ParaBulkIndexer indexer = new ParaBulkIndexer(client, new ElasticsearchRestTemplate(client), ParaBulkIndexer.Settings.defaults()
+            .bulkActions(1)
+            .contentType(XContentType.CBOR), new ParaBulkIndexer.FailureHandler() {
+
+                public void onItemFailure(BulkItemResponse.Failure failure) {
+                }
+
+                public void onBulkFailure(BulkRequest request, Throwable cause) {
+                    bulkFailure.set(cause);
+                }
+            })) {
+            indexer.index(para);
+            assertTrue(indexer.awaitClose(5, TimeUnit.SECONDS));
+            assertEquals(null, bulkFailure.get());
+            assertEquals(1, indexer.getIndexedCount());
+        }
+
+        assertTrue(contentType.get(), contentType.get()
+            .startsWith("application/smile"));
+        // every SMILE document starts with the ":)\n" header
+        assertEquals(':', body.get()[0]);
+        assertEquals(')', body.get()[1]);
+    }
+
+    @Test
+    public void givenSmileClient_whenSearching_thenSmileIsAskedForAndParsed() throws Exception {
+        Para para = new Para("Spring Data Elasticsearch");
+        para.setId("1");
+        Map<String, Object> response = XContentHelper.convertToMap(new BytesArray(CannedResponses.searchResponse(asList(para))), true,
+            XContentType.JSON)
+            .v2();
+        byte[] smile;
+        try (XContentBuilder builder = XContentFactory.smileBuilder()) {
+            smile = BytesReference.toBytes(BytesReference.bytes(builder.map(response)));
+        }
+        AtomicReference<String> accept = new AtomicReference<>();
+        server = new StubElasticsearchServer().on("/blog/_search", request -> {
+            accept.set(request.getHeader("Accept"));
+            return new StubElasticsearchServer.StubResponse(200, "application/smile", smile);
+        });
+        client = new RestHighLevelClient(new ClientConnectionPool(ClientTuning.defaults()
+            .hosts(server.hostAndPort())
+            .contentType(XContentType.SMILE)).restClientBuilder());
+
+        SearchResponse searchResponse = client.search(new SearchRequest("blog"), RequestOptions.DEFAULT);
+
+        assertEquals("application/smile", accept.get());
+        assertEquals(1, searchResponse.getHits()
+            .getTotalHits().value);
+        assertEquals("Spring Data Elasticsearch", searchResponse.getHits()
+            .getAt(0)
+            .getSourceAsMap()
+            .get("title"));
+    }
+
+    @Test
+    public void givenContentTypeProperty_whenTuningIsRead_thenOnlyJsonSmileAndCborAreAccepted() {
+        assertEquals(XContentType.CBOR, ClientTuning.from(new MockEnvironment().withProperty("elasticsearch.client.content-type", "cbor"))
+            .getContentType());
+        assertEquals(XContentType.SMILE, SourceCodec.contentType(new MockEnvironment().withProperty("elasticsearch.client.content-type", "smile")));
+        assertEquals(XContentType.JSON, ClientTuning.from(new MockEnvironment())
+            .getContentType());
+        try {
+            ClientTuning.from(new MockEnvironment().withProperty("elasticsearch.client.content-type", "yaml"));
+            throw new AssertionError("yaml was accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
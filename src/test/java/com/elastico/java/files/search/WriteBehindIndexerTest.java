@@ -0,0 +1,285 @@
+package com.elastico.java.files.search;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.elasticsearch.client.ClientConfiguration;
+import org.springframework.data.elasticsearch.client.RestClients;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import elasticsearchclient.Company;
+import elasticsearchclient.java.files.search.design.Para;
+import elasticsearchclient.java.files.search.service.MappedSegmentLog;
+import elasticsearchclient.java.files.search.service.MappedSegmentLog.FsyncPolicy;
+import elasticsearchclient.java.files.search.service.ParaBulkIndexer;
+import elasticsearchclient.java.files.search.service.WriteBehindIndexer;
+
+public class WriteBehindIndexerTest {
+
+    private final List<String> indexed = new CopyOnWriteArrayList<>();
+    private final List<Throwable> bulkFailures = new CopyOnWriteArrayList<>();
+    private final List<BulkItemResponse.Failure> itemFailures = new CopyOnWriteArrayList<>();
+    private volatile boolean available = true;
+
+    private StubElasticsearchServer server;
+    private RestHighLevelClient client;
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("write-behind");
+        server = new StubElasticsearchServer().on("/_bulk", request -> {
+            if (!available) {
+                return StubElasticsearchServer.StubResponse.json(503, "{\"error\":{\"type\":\"cluster_block_exception\",\"reason\":\"blocked\"},\"status\":503}");
+            }
+            String[] lines = request.getBodyAsString()
+                .split("\n");
+            StringBuilder items = new StringBuilder();
+            for (int i = 0; i + 1 < lines.length; i += 2) {
+                JSONObject action = JSON.parseObject(lines[i])
+                    .getJSONObject("index");
+                indexed.add(action.getString("_index") + "/" + JSON.parseObject(lines[i + 1])
+                    .getString(action.getString("_index")
+                        .equals("blog") ? "title" : "companyName"));
+                items.append(items.length() > 0 ? "," : "")
+                    .append("{\"index\":{\"_index\":\"")
+                    .append(action.getString("_index"))
+                    .append("\",\"_type\":\"_doc\",\"_id\":\"")
+                    .append(action.getString("_id"))
+                    .append("\",\"_version\":1,\"result\":\"created\",\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},")
+                    .append("\"_seq_no\":0,\"_primary_term\":1,\"status\":201}}");
+            }
+            return StubElasticsearchServer.StubResponse.ok("{\"took\":1,\"errors\":false,\"items\":[" + items + "]}");
+        });
+        client = RestClients.create(ClientConfiguration.builder()
+            .connectedTo(server.hostAndPort())
+            .build())
+            .rest();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void givenUndecodableRecord_whenDrained_thenItIsReportedAsAnItemFailureAndSkipped() throws Exception {
+        try (MappedSegmentLog log = new MappedSegmentLog(directory, 4096, FsyncPolicy.ALWAYS)) {
+            log.append(bytes("garbage"));
+        }
+
+        try (WriteBehindIndexer indexer = indexer()) {
+            indexer.save(new Para("After garbage"));
+
+            assertTrue(indexer.awaitDrained(10, TimeUnit.SECONDS));
+            assertEquals(asList("blog/After garbage"), indexed);
+            assertEquals(1, indexer.getDrainedCount());
+            assertEquals(1, indexer.getFailedCount());
+            assertEquals(1, itemFailures.size());
+            assertTrue(bulkFailures.isEmpty());
+        }
+    }
+
+    @Test
+    public void givenCheckpointThatCannotBeWritten_whenDrained_thenTheBatchIsRetriedOnceItCanBe() throws Exception {
+        try (WriteBehindIndexer indexer = indexer()) {
+            // the checkpoint cannot replace a non-empty directory
+            Path blocked = Files.createDirectories(directory.resolve("committed.offset")
+                .resolve("blocked"));
+            indexer.save(new Para("Para 1"));
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (bulkFailures.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(bulkFailures.get(0) instanceof UncheckedIOException);
+            Files.delete(blocked);
+            Files.delete(blocked.getParent());
+
+            // polled rather than awaitDrained, which drains by itself, to see the scheduled drainer carry on
+            while (indexer.getBacklogBytes() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(0, indexer.getBacklogBytes());
+            assertEquals("blog/Para 1", indexed.get(indexed.size() - 1));
+        }
+    }
+
+    @Test
+    public void givenClusterUnavailable_whenSaving_thenSavesAreAcknowledgedAndDrainedInOrderOnceItRecovers() throws Exception {
+        available = false;
+        try (WriteBehindIndexer indexer = indexer()) {
+            for (int i = 0; i < 5; i++) {
+                Para para = new Para("Para " + i);
+                assertNotNull(indexer.save(para));
+                assertNotNull(para.getId());
+            }
+            assertEquals(5, indexer.getSavedCount());
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (indexer.getBulkFailureCount() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(indexer.getBulkFailureCount() > 0);
+            assertEquals(indexer.getBulkFailureCount(), bulkFailures.size());
+
+            available = true;
+            assertTrue(indexer.awaitDrained(10, TimeUnit.SECONDS));
+            assertEquals(asList("blog/Para 0", "blog/Para 1", "blog/Para 2", "blog/Para 3", "blog/Para 4"), indexed);
+            assertEquals(5, indexer.getDrainedCount());
+            assertTrue(itemFailures.isEmpty());
+        }
+    }
+
+    @Test
+    public void givenUndrainedSaves_whenRestarted_thenTheNewIndexerDrainsThem() throws Exception {
+        available = false;
+        try (WriteBehindIndexer indexer = indexer()) {
+            indexer.save(new Para("Before restart"));
+            indexer.save(new Company(10, "Acme", new Date()), IndexCoordinates.of("people"));
+        }
+
+        available = true;
+        try (WriteBehindIndexer restarted = indexer()) {
+            assertTrue(restarted.awaitDrained(10, TimeUnit.SECONDS));
+        }
+        // a bulk abandoned by close() may still reach the stub; replays carry the same ids, so only order matters
+        assertEquals(asList("blog/Before restart", "people/Acme"), indexed.stream()
+            .distinct()
+            .collect(Collectors.toList()));
+        assertTrue(itemFailures.isEmpty());
+    }
+
+    @Test
+    public void givenSavesLoggedAsSmile_whenDrainedAfterSwitchingToJson_thenTheyAreConvertedToJson() throws Exception {
+        available = false;
+        try (WriteBehindIndexer indexer = indexer(XContentType.SMILE)) {
+            indexer.save(new Para("Logged as SMILE"));
+        }
+
+        available = true;
+        try (WriteBehindIndexer restarted = indexer(XContentType.JSON)) {
+            assertTrue(restarted.awaitDrained(10, TimeUnit.SECONDS));
+        }
+        assertEquals(asList("blog/Logged as SMILE"), indexed.stream()
+            .distinct()
+            .collect(Collectors.toList()));
+        assertTrue(itemFailures.isEmpty());
+    }
+
+    @Test
+    public void givenTornTail_whenLogIsReopened_thenOnlyCompleteRecordsSurvive() throws IOException {
+        long end;
+        try (MappedSegmentLog log = new MappedSegmentLog(directory, 1024, FsyncPolicy.ALWAYS)) {
+            log.append(bytes("first"));
+            end = log.append(bytes("second"));
+        }
+        // a record whose length made it to disk but whose payload did not
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(12);
+            torn.putInt(4)
+                .putInt(12345)
+                .put("th".getBytes(StandardCharsets.US_ASCII));
+            torn.flip();
+            channel.write(torn, end);
+        }
+
+        try (MappedSegmentLog reopened = new MappedSegmentLog(directory, 1024, FsyncPolicy.ALWAYS)) {
+            assertEquals(end, reopened.getEndOffset());
+            reopened.append(bytes("third"));
+            assertEquals(asList("first", "second", "third"), strings(reopened.read(0, 10)
+                .getRecords()));
+        }
+    }
+
+    @Test
+    public void givenSmallSegments_whenCommitted_thenLogRotatesAndDeletesDrainedSegments() throws IOException {
+        try (MappedSegmentLog log = new MappedSegmentLog(directory, 64, FsyncPolicy.NEVER)) {
+            for (int i = 0; i < 10; i++) {
+                log.append(bytes("record-" + i + "-padding"));
+            }
+            assertTrue(log.getSegmentCount() > 3);
+
+            MappedSegmentLog.Batch batch = log.read(0, 8);
+            assertEquals(8, batch.getRecords()
+                .size());
+            log.commit(batch.getNextOffset());
+
+            assertEquals(asList("record-8-padding", "record-9-padding"), strings(log.read(log.getCommittedOffset(), 10)
+                .getRecords()));
+            assertEquals(log.getSegmentCount(), segments().size());
+            assertTrue(segments().size() <= 2);
+        }
+    }
+
+    private WriteBehindIndexer indexer() {
+        return indexer(XContentType.JSON);
+    }
+
+    private WriteBehindIndexer indexer(XContentType contentType) {
+        return new WriteBehindIndexer(client, new ElasticsearchRestTemplate(client), WriteBehindIndexer.Options.defaults()
+            .directory(directory)
+            .contentType(contentType)
+            .segmentBytes(4096)
+            .drainIntervalMillis(5)
+            .maxBackoffMillis(20), new ParaBulkIndexer.FailureHandler() {
+
+                public void onItemFailure(BulkItemResponse.Failure failure) {
+                    itemFailures.add(failure);
+                }
+
+                public void onBulkFailure(BulkRequest request, Throwable cause) {
+                    bulkFailures.add(cause);
+                }
+            });
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString()
+                .endsWith(".log"))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> strings(List<byte[]> records) {
+        List<String> values = new ArrayList<>();
+        records.forEach(record -> values.add(new String(record, StandardCharsets.UTF_8)));
+        return values;
+    }
+}